@@ -0,0 +1,372 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+import cz.muni.fi.crocs.rcard.client.Util;
+
+import jcprofiler.args.Args;
+import jcprofiler.args.DaemonArgs;
+import jcprofiler.util.SpoonModelCache;
+
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.OutputStreamAppender;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pro.javacard.JavaCardSDK;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Long-lived JCProfilerNext process serving executions forwarded by thin clients over a local socket.
+ * <br><br>
+ * The daemon keeps the JVM with already loaded Spoon, JDT, Velocity and jCardSim classes and the in-memory caches,
+ * e.g. the Spoon models of {@link SpoonModelCache} or the initialized Velocity engine, warm across executions.
+ * The client sends its commandline arguments with paths made absolute and the daemon forwards it the log
+ * messages and the result of the execution.  The executions are served one at a time and the daemon listens
+ * on the loopback interface only.
+ * <br><br>
+ * Only clients of the user that started the daemon are served.  On start, the daemon generates a random token
+ * and stores it to a file readable only by its owner in the {@link #TOKEN_DIRNAME} directory in the home
+ * directory.  Every client must send the token first, otherwise the connection is closed.
+ * <br><br>
+ * Protocol: the client sends the token, the number of arguments and the UTF-encoded arguments, the daemon replies
+ * with length-prefixed chunks of log output terminated by {@link #END_OF_OUTPUT} and the result.
+ */
+public class Daemon {
+    /**
+     * Name of the command starting the daemon
+     */
+    public static final String COMMAND = "daemon";
+
+    /**
+     * Name of the directory in the home directory with the token files
+     */
+    public static final String TOKEN_DIRNAME = ".jcprofiler";
+
+    private static final int END_OF_OUTPUT = -1;
+    private static final int TOKEN_LENGTH = 32;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    private static final String APPENDER_NAME = "daemonClient";
+    private static final String LOG_PATTERN = "%d{HH:mm:ss.SSS} [%t] %-5level %logger{36} - %msg%n";
+
+    private static final Logger log = LoggerFactory.getLogger(Daemon.class);
+
+    // static class!
+    private Daemon() {}
+
+    /**
+     * Parses the commandline arguments of the daemon and serves the clients until the daemon is killed.
+     *
+     * @param  argv array of commandline arguments following the {@link #COMMAND}
+     * @return      false if the arguments could not be parsed or the daemon could not be started, otherwise true
+     */
+    static boolean main(final String[] argv) {
+        final DaemonArgs args = new DaemonArgs();
+        final JCommander jc = JCommander.newBuilder()
+                .addObject(args)
+                .programName("JCProfilerNext " + COMMAND)
+                .build();
+
+        try {
+            jc.parse(argv);
+        } catch (Exception e) {
+            log.error("Argument parsing failed!", e);
+            return false;
+        }
+
+        if (args.help) {
+            jc.usage();
+            return true;
+        }
+
+        try {
+            serve(args.port);
+        } catch (Exception e) {
+            log.error("Caught exception!", e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Serves the clients on the given local port.
+     *
+     * @param  port local port
+     *
+     * @throws RuntimeException if the port could not be bound or the token could not be stored
+     */
+    public static void serve(final int port) {
+        try (final ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            final byte[] token = new byte[TOKEN_LENGTH];
+            new SecureRandom().nextBytes(token);
+            final String encodedToken = Util.bytesToHex(token);
+
+            final Path tokenFile = getTokenFile(port);
+            storeToken(tokenFile, encodedToken);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(tokenFile);
+                } catch (IOException e) {
+                    log.warn("Deleting {} failed!", tokenFile, e);
+                }
+            }));
+
+            log.info("JCProfilerNext daemon listening on {}.", server.getLocalSocketAddress());
+            while (true) {
+                try (final Socket socket = server.accept()) {
+                    handle(socket, encodedToken);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Serving a client failed!", e);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the path to the file with the token of the daemon listening on the given local port.
+     *
+     * @param  port local port of the daemon
+     * @return      path to the token file
+     */
+    private static Path getTokenFile(final int port) {
+        return Paths.get(System.getProperty("user.home"), TOKEN_DIRNAME, String.format("daemon-%d.token", port));
+    }
+
+    /**
+     * Stores the given token to a new file readable only by its owner.
+     *
+     * @param  tokenFile path to the token file
+     * @param  token     encoded token
+     *
+     * @throws IOException if the token could not be stored
+     */
+    private static void storeToken(final Path tokenFile, final String token) throws IOException {
+        Files.createDirectories(tokenFile.getParent());
+
+        // never reuse an existing file, its permissions might have been changed
+        Files.deleteIfExists(tokenFile);
+        try {
+            Files.createFile(tokenFile,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            log.warn("{} does not support POSIX permissions, make sure that it is not readable by others.",
+                    tokenFile.getParent());
+            Files.createFile(tokenFile);
+        }
+
+        Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+        log.debug("Daemon token stored to {}.", tokenFile);
+    }
+
+    /**
+     * Executes JCProfilerNext with the arguments received from the given client and forwards
+     * the log output to it.  Clients that did not send the given token are rejected.
+     *
+     * @param  socket client socket
+     * @param  token  encoded token of the daemon
+     *
+     * @throws IOException if the communication with the client failed
+     */
+    private static void handle(final Socket socket, final String token) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // do not let unauthenticated clients block the daemon
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Rejecting a client with an invalid token.");
+            return;
+        }
+        socket.setSoTimeout(0);
+
+        final String[] argv = new String[in.readInt()];
+        for (int i = 0; i < argv.length; i++)
+            argv[i] = in.readUTF();
+        log.info("Executing: {}", String.join(" ", argv));
+
+        // forward log messages of the execution to the client
+        final LoggerContext context = LoggerContext.getContext(false);
+        final OutputStreamAppender appender = OutputStreamAppender.newBuilder()
+                .setName(APPENDER_NAME)
+                .setLayout(PatternLayout.newBuilder().withPattern(LOG_PATTERN).build())
+                .setTarget(new ChunkedOutputStream(out))
+                .build();
+        appender.start();
+        context.getConfiguration().getRootLogger().addAppender(appender, null, null);
+        context.updateLoggers();
+
+        final boolean success;
+        try {
+            success = Main.execute(argv, /* forward */ false);
+        } finally {
+            context.getConfiguration().getRootLogger().removeAppender(APPENDER_NAME);
+            context.updateLoggers();
+            appender.stop();
+        }
+
+        out.writeInt(END_OF_OUTPUT);
+        out.writeBoolean(success);
+        out.flush();
+        log.info("Execution {}.", success ? "succeeded" : "failed");
+    }
+
+    /**
+     * Forwards the execution with the given commandline arguments to the daemon listening on the given
+     * local port and prints its log output.
+     *
+     * @param  port local port of the daemon
+     * @param  argv array of commandline arguments
+     * @return      true if the execution succeeded, otherwise false
+     *
+     * @throws RuntimeException if the daemon could not be reached
+     */
+    public static boolean forward(final int port, final String[] argv) {
+        log.info("Forwarding the execution to the daemon on port {}.", port);
+
+        // the daemon may run in another directory
+        final Set<String> pathOptions = getPathOptions();
+        final String[] forwardedArgv = argv.clone();
+        for (int i = 0; i < forwardedArgv.length; i++) {
+            final String arg = forwardedArgv[i];
+            final int separator = arg.indexOf('=');
+            if (separator != -1 && pathOptions.contains(arg.substring(0, separator))) {
+                forwardedArgv[i] = arg.substring(0, separator + 1) + toAbsolutePath(arg.substring(separator + 1));
+            } else if (pathOptions.contains(arg) && i + 1 < forwardedArgv.length) {
+                i++;
+                forwardedArgv[i] = toAbsolutePath(forwardedArgv[i]);
+            }
+        }
+
+        final Path tokenFile = getTokenFile(port);
+        final String token;
+        try {
+            token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format(
+                    "Reading the token of JCProfilerNext daemon from %s failed! Is the daemon running?", tokenFile), e);
+        }
+
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(token);
+            out.writeInt(forwardedArgv.length);
+            for (final String arg : forwardedArgv)
+                out.writeUTF(arg);
+            out.flush();
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int length;
+            while ((length = in.readInt()) != END_OF_OUTPUT) {
+                final byte[] chunk = new byte[length];
+                in.readFully(chunk);
+                System.out.write(chunk, 0, chunk.length);
+                System.out.flush();
+            }
+
+            return in.readBoolean();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format(
+                    "Communication with JCProfilerNext daemon on port %d failed!", port), e);
+        }
+    }
+
+    /**
+     * Makes the given path absolute.
+     *
+     * @param  path path
+     * @return      absolute path
+     */
+    private static String toAbsolutePath(final String path) {
+        return Paths.get(path).toAbsolutePath().toString();
+    }
+
+    /**
+     * Returns the names of the {@link Args} options whose values are paths.
+     *
+     * @return set of option names
+     */
+    private static Set<String> getPathOptions() {
+        final Set<String> pathOptions = new HashSet<>();
+        for (final Field field : Args.class.getFields()) {
+            final Parameter parameter = field.getAnnotation(Parameter.class);
+            if (parameter == null)
+                continue;
+
+            final Type type = field.getGenericType();
+            final boolean isPathList = type instanceof ParameterizedType &&
+                                       ((ParameterizedType) type).getActualTypeArguments()[0] == Path.class;
+            if (type == Path.class || type == JavaCardSDK.class || isPathList)
+                pathOptions.addAll(Arrays.asList(parameter.names()));
+        }
+
+        return pathOptions;
+    }
+
+    /**
+     * Output stream writing length-prefixed chunks into the underlying {@link DataOutputStream}.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final DataOutputStream out;
+
+        /**
+         * Constructs the {@link ChunkedOutputStream} class.
+         *
+         * @param out underlying output stream
+         */
+        ChunkedOutputStream(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0)
+                return;
+
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        // the socket is closed by the daemon
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -10,17 +10,16 @@ import jcprofiler.compilation.Compiler;
 import jcprofiler.installation.Installer;
 import jcprofiler.instrumentation.Instrumenter;
 import jcprofiler.profiling.AbstractProfiler;
+import jcprofiler.profiling.JournalReplayer;
 import jcprofiler.util.enums.Mode;
 import jcprofiler.util.enums.Stage;
+import jcprofiler.util.InstrumentationManifest;
 import jcprofiler.util.JCProfilerUtil;
 import jcprofiler.visualisation.AbstractVisualiser;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import spoon.reflect.CtModel;
-import spoon.reflect.declaration.CtClass;
-
 /**
  * JCProfilerNext's main class
  */
@@ -52,20 +51,28 @@ public class JCProfiler {
             log.info("Instrumentation complete.");
         }
 
-        // check that the generated sources are compilable by rebuilding the model after instrumentation
-        final CtModel model = JCProfilerUtil.getInstrumentedSpoon(args).getModel();
         if (args.stopAfter == Stage.instrumentation)
             return;
 
-        // get entry point class (needed from compilation to profiling)
-        final CtClass<?> entryPoint = args.startFrom != Stage.visualisation
-                                            ? JCProfilerUtil.getEntryPoint(model, args.entryPoint)
-                                            : null;
+        // get the instrumented entry point class and executable without building the Spoon model
+        final InstrumentationManifest manifest = InstrumentationManifest.get(args);
+
+        // explicitly given options must select the instrumented entry point class and executable
+        if (args.entryPoint != null && !args.entryPoint.equals(manifest.getEntryPoint()))
+            throw new RuntimeException(String.format(
+                    "The sources were instrumented with %s as the entry point but --entry-point %s was given!",
+                    manifest.getEntryPoint(), args.entryPoint));
+        if (args.executable != null && !JCProfilerUtil.isSelectedExecutable(args.executable, manifest.getExecutable()))
+            throw new RuntimeException(String.format(
+                    "The sources were instrumented for the %s executable but --executable %s was given!",
+                    manifest.getExecutable(), args.executable));
+        args.entryPoint = manifest.getEntryPoint();
+        args.executable = manifest.getExecutable();
 
         // Compilation
         if (args.startFrom.ordinal() <= Stage.compilation.ordinal()) {
             log.info("Compilation started.");
-            Compiler.compile(args, entryPoint);
+            Compiler.compile(args, args.entryPoint);
             log.info("Compilation complete.");
         }
 
@@ -80,7 +87,7 @@ public class JCProfiler {
                 log.info("Skipping installation because simulator is used.");
             } else {
                 log.info("Installation started.");
-                cardManager = Installer.installOnCard(args, entryPoint);
+                cardManager = Installer.installOnCard(args, args.entryPoint);
                 log.info("Installation complete.");
             }
         }
@@ -93,10 +100,19 @@ public class JCProfiler {
             // Connect if the installation was skipped or simulator is used
             if (cardManager == null)
                 // TODO: move connection stuff to a separate class?
-                cardManager = Installer.connect(args, entryPoint);
+                cardManager = Installer.connect(args, args.entryPoint);
+
+            // check the recorded card session instead of profiling
+            if (args.replayJournal != null) {
+                log.info("Replaying card journal started.");
+                new JournalReplayer(args, cardManager).replay();
+                log.info("Replaying card journal complete.");
+                return;
+            }
 
             log.info("Profiling started.");
-            final AbstractProfiler profiler = AbstractProfiler.create(args, cardManager, model);
+            final AbstractProfiler profiler = AbstractProfiler.create(
+                    args, cardManager, JCProfilerUtil.getInstrumentedModel(args));
             profiler.profile();
             profiler.generateCSV();
             log.info("Profiling complete.");
@@ -107,7 +123,7 @@ public class JCProfiler {
 
         // Visualisation
         log.info("Visualising results.");
-        final AbstractVisualiser vis = AbstractVisualiser.create(args, model);
+        final AbstractVisualiser vis = AbstractVisualiser.create(args, manifest);
         vis.loadAndProcessMeasurements();
         vis.generateHTML();
         vis.insertMeasurementsToSources();
@@ -6,7 +6,10 @@ package jcprofiler;
 import com.beust.jcommander.JCommander;
 
 import jcprofiler.args.Args;
+import jcprofiler.profiling.MemoryProfiler;
 import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.enums.ClockSource;
+import jcprofiler.util.enums.InputDivision;
 import jcprofiler.util.enums.Mode;
 import jcprofiler.util.enums.Stage;
 
@@ -15,8 +18,11 @@ import org.apache.logging.log4j.core.config.Configurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pro.javacard.JavaCardSDK;
+
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.jar.JarFile;
 
 /**
@@ -33,6 +39,27 @@ public class Main {
     public static void main(final String[] argv) {
         Configurator.setRootLevel(Level.INFO);
 
+        // start the daemon
+        if (argv.length > 0 && argv[0].equals(Daemon.COMMAND)) {
+            if (!Daemon.main(Arrays.copyOfRange(argv, 1, argv.length)))
+                System.exit(1);
+            return;
+        }
+
+        if (!execute(argv, /* forward */ true))
+            System.exit(1);
+    }
+
+    /**
+     * Parses the commandline arguments and executes JCProfilerNext.
+     *
+     * @param  argv    array of commandline arguments
+     * @param  forward if true, the execution is forwarded to a {@link Daemon} if {@link Args#daemonPort} is set
+     * @return         true if the execution succeeded, otherwise false
+     */
+    static boolean execute(final String[] argv, final boolean forward) {
+        Configurator.setRootLevel(Level.INFO);
+
         // parse commandline arguments
         final Args args = new Args();
         final JCommander jc = JCommander.newBuilder()
@@ -44,13 +71,23 @@ public class Main {
             jc.parse(argv);
         } catch (Exception e) {
             log.error("Argument parsing failed!", e);
-            System.exit(1);
+            return false;
         }
 
         // show help
         if (args.help) {
             jc.usage();
-            return;
+            return true;
+        }
+
+        // the daemon logs on its own
+        if (forward && args.daemonPort != null) {
+            try {
+                return Daemon.forward(args.daemonPort, argv);
+            } catch (Exception e) {
+                log.error("Caught exception!", e);
+                return false;
+            }
         }
 
         // TODO: add proper versioning info as well
@@ -76,9 +113,10 @@ public class Main {
             validateArgs(args);
             JCProfiler.run(args);
             log.info("Success!");
+            return true;
         } catch (Exception e) {
             log.error("Caught exception!", e);
-            System.exit(1);
+            return false;
         }
     }
 
@@ -106,6 +144,86 @@ public class Main {
                         "Visualisation of applet instrumented in custom mode is unsupported!");
         }
 
+        // validate time mode specific options
+        if (args.mode != Mode.time && args.trapCursor)
+            throw new UnsupportedOperationException("Option --trap-cursor is supported in time mode only!");
+        if (args.mode != Mode.time && args.checkReachability)
+            throw new UnsupportedOperationException("Option --check-reachability is supported in time mode only!");
+        if (args.mode != Mode.time && args.transitive)
+            throw new UnsupportedOperationException("Option --transitive is supported in time mode only!");
+        if (args.mode != Mode.time && args.resume)
+            throw new UnsupportedOperationException("Option --resume is supported in time mode only!");
+        if (args.simulatorWorkers > 1 && (args.mode != Mode.time || !args.useSimulator))
+            throw new UnsupportedOperationException(
+                    "Option --simulator-workers is supported in time mode with --simulator only!");
+        if (args.clockSource != ClockSource.wall && (args.mode != Mode.time || !args.useSimulator))
+            throw new UnsupportedOperationException(String.format(
+                    "Option --clock %s is supported in time mode with --simulator only!", args.clockSource));
+        if (args.costWeights != null && args.clockSource != ClockSource.bytecode)
+            throw new UnsupportedOperationException("Option --cost-weights requires --clock bytecode!");
+        if (args.precision != null) {
+            if (args.mode != Mode.time)
+                throw new UnsupportedOperationException("Option --precision is supported in time mode only!");
+            if (args.resume || args.simulatorWorkers > 1)
+                throw new UnsupportedOperationException(
+                        "Option --precision cannot be combined with --resume or --simulator-workers!");
+            if (args.inputDivision != InputDivision.none)
+                throw new UnsupportedOperationException("Option --precision cannot be combined with --input-division!");
+            // converged traps are not sampled, so the call tree would be computed from a changing subset of traps
+            if (args.transitive)
+                throw new UnsupportedOperationException("Option --precision cannot be combined with --transitive!");
+        }
+        if (args.sessionScript) {
+            if (args.mode != Mode.time)
+                throw new UnsupportedOperationException("Option --session-script is supported in time mode only!");
+            if (args.resume || args.precision != null || args.simulatorWorkers > 1)
+                throw new UnsupportedOperationException(
+                        "Option --session-script cannot be combined with --resume, --precision " +
+                        "or --simulator-workers!");
+            if (args.trapCursor || args.checkReachability)
+                throw new UnsupportedOperationException(
+                        "Option --session-script cannot be combined with --trap-cursor or --check-reachability!");
+        }
+
+        if (args.mode != Mode.memory && args.multiInput)
+            throw new UnsupportedOperationException("Option --multi-input is supported in memory mode only!");
+        if (args.mode != Mode.memory && args.leakDetection)
+            throw new UnsupportedOperationException("Option --leak-detection is supported in memory mode only!");
+        if (args.mode != Mode.memory && args.allocationSites)
+            throw new UnsupportedOperationException("Option --allocation-sites is supported in memory mode only!");
+        if (args.mode != Mode.memory && args.commitCapacity)
+            throw new UnsupportedOperationException("Option --commit-capacity is supported in memory mode only!");
+        if (args.memoryBudget != null) {
+            if (args.mode != Mode.memory)
+                throw new UnsupportedOperationException("Option --memory-budget is supported in memory mode only!");
+            if (args.leakDetection)
+                throw new UnsupportedOperationException(
+                        "Option --memory-budget cannot be combined with --leak-detection!");
+            if (args.allocationSites)
+                throw new UnsupportedOperationException(
+                        "Option --memory-budget cannot be combined with --allocation-sites!");
+            // the header and a single entry must fit, the PM uses short offsets
+            // values are stored as integers with JCSDK 3.0.4+ unless jCardSim is used, see Instrumenter
+            final boolean useNewerAPI = !args.useSimulator &&
+                    args.jcSDK.getVersion().ordinal() >= JavaCardSDK.Version.V304.ordinal();
+            final int minimalBudget = MemoryProfiler.getMinimalMemoryBudget(useNewerAPI ? Integer.BYTES : Short.BYTES);
+            if (args.memoryBudget < minimalBudget || args.memoryBudget > Short.MAX_VALUE)
+                throw new UnsupportedOperationException(String.format(
+                        "Option --memory-budget must be between %d and %d B!", minimalBudget, Short.MAX_VALUE));
+        }
+
+        // validate card journal options
+        if (args.recordJournal && args.simulatorWorkers > 1)
+            throw new UnsupportedOperationException(
+                    "Option --record-journal cannot be combined with --simulator-workers!");
+        if (args.replayJournal != null) {
+            if (!args.useSimulator)
+                throw new UnsupportedOperationException("Option --replay-journal requires --simulator!");
+            if (args.recordJournal)
+                throw new UnsupportedOperationException(
+                        "Options --record-journal and --replay-journal cannot be specified simultaneously!");
+        }
+
         // validate --data-regex and --data-file
         if ((args.dataRegex == null) == (args.dataFile == null)) {
             if (args.dataRegex != null)
@@ -116,6 +234,7 @@ public class Main {
             // when we're not memory profiling an entry point class constructor
             final int profilingStage = Stage.profiling.ordinal();
             if (args.startFrom.ordinal() <= profilingStage && profilingStage <= args.stopAfter.ordinal() &&
+                    args.replayJournal == null &&
                     ((args.mode != Mode.memory && args.mode != Mode.stats) || args.executable != null))
                 throw new UnsupportedOperationException(
                         "Either --data-file or --data-regex options must be specified for the profiling stage!");
@@ -57,10 +57,24 @@ public class Args {
                validateWith = JarFileValidator.class)
     public List<Path> jars = new ArrayList<>();
 
+    @Parameter(names = {"--no-model-cache"},
+               description = "Always rebuild Spoon models instead of loading them from the cache")
+    public boolean noModelCache = false;
+
+    @Parameter(names = {"--daemon-port"},
+               description = "Forward the execution to a JCProfilerNext daemon listening on the given local port",
+               validateWith = PositiveIntegerValidator.class)
+    public Integer daemonPort;
+
     @Parameter(names = {"--simulator"},
                description = "Use jCardSim simulator instead of a real card")
     public boolean useSimulator = false;
 
+    @Parameter(names = {"--simulator-workers"},
+               description = "Number of isolated jCardSim instances used in parallel (time profiling only)",
+               validateWith = PositiveIntegerValidator.class)
+    public int simulatorWorkers = 1;
+
     @Parameter(names = {"--executable"},
                description = "Constructor or method to profile or leave unset to instrument applet entry point " +
                              "constructor (constructors are custom and memory profiling only)")
@@ -96,10 +110,94 @@ public class Args {
     public Path customHandler;
 
     @Parameter(names = {"--repeat-count"},
-               description = "Number of profiling rounds (custom or time profiling only)",
+               description = "Number of profiling rounds (custom, time or memory profiling " +
+                             "with --multi-input or --leak-detection only)",
                validateWith = PositiveIntegerValidator.class)
     public int repeatCount = 1000;
 
+    @Parameter(names = {"--clock"},
+               description = "Clock source for the measurements, threadCpu measures the CPU time spent " +
+                             "in the process method of the simulated applet, bytecode counts bytecodes " +
+                             "executed by the applet (time profiling with --simulator only)",
+               converter = ClockSourceConverter.class)
+    public ClockSource clockSource = ClockSource.wall;
+
+    @Parameter(names = {"--cost-weights"},
+               description = "Properties file with weights of API calls, e.g. javacard.security.Signature.sign=100, " +
+                             "added to the bytecode count (time profiling with --clock bytecode only)",
+               converter = FilePathConverter.class)
+    public Path costWeights;
+
+    @Parameter(names = {"--precision"},
+               description = "Stop measuring a trap once the 95% confidence interval of its mean is narrower than " +
+                             "the given fraction of the mean, e.g. 0.05, and stop profiling once all traps " +
+                             "converge or --repeat-count rounds are measured (time profiling only)",
+               validateWith = FractionValidator.class)
+    public Double precision;
+
+    @Parameter(names = {"--trap-cursor"},
+               description = "Advance the fatal trap on the card after it is reached so that only the trigger " +
+                             "APDU has to be sent for each measurement (time profiling only)")
+    public boolean trapCursor = false;
+
+    @Parameter(names = {"--check-reachability"},
+               description = "Detect traps reachable with the given input in a single execution and measure " +
+                             "only those (time profiling only)")
+    public boolean checkReachability = false;
+
+    @Parameter(names = {"--transitive"},
+               description = "Instrument also the applet methods transitively called by the profiled method and " +
+                             "report the inclusive and exclusive time of every callee (time profiling only)")
+    public boolean transitive = false;
+
+    @Parameter(names = {"--resume"},
+               description = "Resume an interrupted profiling session from the measurement log (time profiling only)")
+    public boolean resume = false;
+
+    @Parameter(names = {"--multi-input"},
+               description = "Execute --repeat-count inputs and report the minimal free memory at each trap " +
+                             "across all executions (memory profiling only)")
+    public boolean multiInput = false;
+
+    @Parameter(names = {"--leak-detection"},
+               description = "Execute --repeat-count inputs and record free memory at the first and the last " +
+                             "reached trap of every execution to report its drift per execution " +
+                             "(memory profiling only)")
+    public boolean leakDetection = false;
+
+    @Parameter(names = {"--memory-budget"},
+               description = "Use a low-footprint PM class that stores only the reached traps in a single " +
+                             "array of the given size in bytes (memory profiling only)",
+               validateWith = PositiveIntegerValidator.class)
+    public Integer memoryBudget;
+
+    @Parameter(names = {"--allocation-sites"},
+               description = "Measure free memory around every allocation reachable from the profiled executable " +
+                             "and report the allocated bytes per allocation site (memory profiling only)")
+    public boolean allocationSites = false;
+
+    @Parameter(names = {"--commit-capacity"},
+               description = "Also record the minimal unused commit capacity of the transaction buffer at every " +
+                             "trap, the compact PM class always records it (memory profiling only)")
+    public boolean commitCapacity = false;
+
+    @Parameter(names = {"--session-script"},
+               description = "Compile the profiling session into a binary script in the working directory and " +
+                             "measure it with a low-overhead replay runner, an existing script compiled for " +
+                             "the same session is replayed as is (time profiling only)")
+    public boolean sessionScript = false;
+
+    @Parameter(names = {"--record-journal"},
+               description = "Record every command and response APDU exchanged with the card during profiling " +
+                             "to a binary journal in the working directory")
+    public boolean recordJournal = false;
+
+    @Parameter(names = {"--replay-journal"},
+               description = "Replay the given card journal against the simulator instead of profiling and check " +
+                             "that all status words still match (requires --simulator)",
+               converter = FilePathConverter.class)
+    public Path replayJournal;
+
     @Parameter(names = {"--reset-ins"},
                description = "Applet reset instruction in hex",
                converter = ByteConverter.class)
@@ -135,6 +233,11 @@ public class Args {
                converter = FilePathConverter.class)
     public Path dataFile;
 
+    @Parameter(names = {"--seed"},
+               description = "Seed of the input generator, inputs stored in the working directory are reused " +
+                             "when they match the input specification and seed")
+    public Long seed;
+
     @Parameter(names = {"--input-division"},
                description = "Divide generated inputs into two categories based on given characteristic",
                converter = InputDivisionConverter.class)
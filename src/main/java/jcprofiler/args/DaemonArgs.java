@@ -0,0 +1,24 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.args;
+
+import com.beust.jcommander.Parameter;
+
+import jcprofiler.args.validators.PositiveIntegerValidator;
+
+/**
+ * Description of commandline arguments of the daemon
+ */
+public class DaemonArgs {
+    @Parameter(names = {"-h", "--help"},
+               description = "Show help",
+               help = true)
+    public boolean help = false;
+
+    @Parameter(names = {"--port"},
+               description = "Local port to listen on",
+               required = true,
+               validateWith = PositiveIntegerValidator.class)
+    public int port;
+}
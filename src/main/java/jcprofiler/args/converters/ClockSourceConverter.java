@@ -0,0 +1,16 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.args.converters;
+
+import com.beust.jcommander.converters.EnumConverter;
+import jcprofiler.util.enums.ClockSource;
+
+/**
+ * Parameter converter for the {@link ClockSource} enum
+ */
+public class ClockSourceConverter extends EnumConverter<ClockSource> {
+    public ClockSourceConverter(String optionName, Class<ClockSource> clazz) {
+        super(optionName, clazz);
+    }
+}
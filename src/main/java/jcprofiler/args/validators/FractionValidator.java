@@ -0,0 +1,33 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.args.validators;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Parameter validator for real numbers from the (0, 1) interval
+ */
+public class FractionValidator implements IParameterValidator {
+    /**
+     * Checks that the parameter represents a real number from the (0, 1) interval.
+     *
+     * @param  name  parameter name
+     * @param  value input string
+     *
+     * @throws ParameterException if the value does not represent a real number from the (0, 1) interval
+     */
+    @Override
+    public void validate(final String name, final String value) throws ParameterException {
+        try {
+            double d = Double.parseDouble(value);
+            if (!(d > 0. && d < 1.))
+                throw new ParameterException(String.format(
+                        "\"%s\": \"%s\" is not a number from the (0, 1) interval", name, value));
+        } catch (NumberFormatException e) {
+            throw new ParameterException(String.format(
+                    "\"%s\": \"%s\" is not a number from the (0, 1) interval", name, value), e);
+        }
+    }
+}
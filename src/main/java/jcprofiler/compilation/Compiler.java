@@ -5,6 +5,7 @@ package jcprofiler.compilation;
 
 import jcprofiler.args.Args;
 import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.SpoonModelCache;
 
 import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
@@ -18,14 +19,16 @@ import pro.javacard.ant.JavaCard.JCCap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import spoon.reflect.declaration.CtClass;
-
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
  * This class represents the compilation stage.
  */
 public class Compiler {
+    private static final String KEY_FILENAME = "compilation.sha256";
     private static final Logger log = LoggerFactory.getLogger(Compiler.class);
 
     // static class
@@ -34,15 +37,39 @@ public class Compiler {
     /**
      * Compiles the instrumented sources into a CAP package, JAR archive, JCA file and *.class files
      * and stores in the {@link JCProfilerUtil#APPLET_OUT_DIRNAME} directory.
+     * <br><br>
+     * The compilation is skipped if the instrumented sources, the class path and the entry point
+     * did not change since the last compilation.
+     *
+     * @param  args       object with commandline arguments
+     * @param  entryPoint fully qualified name of the applet entry point class
      *
-     * @param args       object with commandline arguments
-     * @param entryPoint applet entry point class
+     * @throws RuntimeException if the key file could not be read or written
      */
-    public static void compile(final Args args, final CtClass<?> entryPoint) {
+    public static void compile(final Args args, final String entryPoint) {
         // NOTE: Check that the code was instrumented is already done in the JCProfiler class.
 
-        // always recreate the output directory
         final Path appletDir = JCProfilerUtil.getAppletOutputDirectory(args.workDir);
+        final Path keyFile = JCProfilerUtil.getCacheDirectory(args.workDir).resolve(KEY_FILENAME);
+        final String key;
+        try {
+            key = JCProfilerUtil.getDigest(entryPoint + '\0' + SpoonModelCache.computeKey(
+                    JCProfilerUtil.getInstrOutputDirectory(args.workDir), JCProfilerUtil.getSpoonClasspath(args)));
+
+            final Path cap = appletDir.resolve(JCProfilerUtil.getSimpleName(entryPoint) + ".cap");
+            final Path jar = appletDir.resolve(JCProfilerUtil.getPackageSimpleName(entryPoint) + ".jar");
+            if (Files.exists(cap) && Files.exists(jar) && Files.exists(keyFile) &&
+                    new String(Files.readAllBytes(keyFile), StandardCharsets.UTF_8).equals(key)) {
+                log.info("Compiled applet is up-to-date.");
+                return;
+            }
+
+            Files.deleteIfExists(keyFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // always recreate the output directory
         JCProfilerUtil.recreateDirectory(appletDir);
 
         // create an empty project
@@ -99,13 +126,13 @@ public class Compiler {
         cap.setStrip(false);
 
         cap.setAID(JCProfilerUtil.PACKAGE_AID);
-        cap.setJca(entryPoint.getPackage().getSimpleName() + ".jca");
-        cap.setPackage(entryPoint.getPackage().getQualifiedName());
-        cap.setOutput(entryPoint.getSimpleName() + ".cap");
+        cap.setJca(JCProfilerUtil.getPackageSimpleName(entryPoint) + ".jca");
+        cap.setPackage(JCProfilerUtil.getPackageName(entryPoint));
+        cap.setOutput(JCProfilerUtil.getSimpleName(entryPoint) + ".cap");
 
         // add applet to the CAP file
         final JCApplet app = cap.createApplet();
-        app.setClass(entryPoint.getQualifiedName());
+        app.setClass(entryPoint);
 
         // add JAR files with dependencies to the project
         for (final Path jar : args.jars) {
@@ -113,7 +140,14 @@ public class Compiler {
             cap.createImport().setJar(jar.toString());
         }
 
-        log.debug("Compiling into {}.cap", entryPoint.getSimpleName());
+        log.debug("Compiling into {}.cap", JCProfilerUtil.getSimpleName(entryPoint));
         project.executeTarget(project.getDefaultTarget());
+
+        try {
+            Files.createDirectories(keyFile.getParent());
+            Files.write(keyFile, key.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 }
@@ -0,0 +1,35 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+/**
+ * Per-thread counter of executed bytecodes updated by classes loaded with {@link BytecodeCountingClassLoader}.
+ * <br><br>
+ * The counter is thread-local, so parallel simulator instances driven by different threads do not
+ * influence each other.
+ */
+public class BytecodeCounter {
+    private static final ThreadLocal<long[]> counter = ThreadLocal.withInitial(() -> new long[1]);
+
+    // static class
+    private BytecodeCounter() {}
+
+    /**
+     * Increases the counter of the current thread.  Called from the instrumented bytecode.
+     *
+     * @param cost number of executed bytecodes including weights of API calls
+     */
+    public static void add(final int cost) {
+        counter.get()[0] += cost;
+    }
+
+    /**
+     * Returns the counter of the current thread.
+     *
+     * @return number of bytecodes executed by the current thread
+     */
+    public static long get() {
+        return counter.get()[0];
+    }
+}
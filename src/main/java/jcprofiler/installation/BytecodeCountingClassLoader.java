@@ -0,0 +1,227 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import org.apache.commons.io.IOUtils;
+
+import org.objectweb.asm.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class loader that instruments loaded classes to count executed bytecodes using {@link BytecodeCounter}.
+ * <br><br>
+ * The cost of every straight-line sequence of bytecodes is added to the counter before the instruction
+ * that ends it, i.e. before every jump, switch, return, throw and method invocation, and at every
+ * fall-through to a label.  Therefore, the counter also contains all bytecodes executed before
+ * an invoked method throws, e.g. when {@code PM.check} stops the execution.  Invocations of methods
+ * declared in classes that are not instrumented, e.g. the Java Card API, may have additional weights.
+ */
+public class BytecodeCountingClassLoader extends URLClassLoader {
+    private static final String COUNTER_CLASS = Type.getInternalName(BytecodeCounter.class);
+
+    private final Set<String> excludedClasses;
+    private final Map<String, Integer> apiWeights;
+
+    private static final Logger log = LoggerFactory.getLogger(BytecodeCountingClassLoader.class);
+
+    /**
+     * Constructs the {@link BytecodeCountingClassLoader} class.
+     *
+     * @param urls            URLs of JAR archives to load the classes from
+     * @param excludedClasses fully qualified names of classes that should not be instrumented
+     * @param apiWeights      map between {@code package.Class.method} names and weights of their invocations
+     */
+    public BytecodeCountingClassLoader(final URL[] urls, final Set<String> excludedClasses,
+                                       final Map<String, Integer> apiWeights) {
+        super(urls);
+        this.excludedClasses = excludedClasses;
+        this.apiWeights = apiWeights;
+    }
+
+    /**
+     * Loads the class from the given JAR archives and instruments it unless it is excluded.
+     *
+     * @param  name fully qualified name of the class
+     * @return      loaded class
+     *
+     * @throws ClassNotFoundException if the class could not be found or read
+     */
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final URL url = findResource(name.replace('.', '/') + ".class");
+        if (url == null)
+            throw new ClassNotFoundException(name);
+
+        byte[] bytecode;
+        try (final InputStream is = url.openStream()) {
+            bytecode = IOUtils.toByteArray(is);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+
+        if (!excludedClasses.contains(name)) {
+            log.debug("Instrumenting {} to count executed bytecodes.", name);
+            final ClassReader reader = new ClassReader(bytecode);
+            final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+            reader.accept(new CountingClassVisitor(writer), /* parsingOptions */ 0);
+            bytecode = writer.toByteArray();
+        }
+
+        return defineClass(name, bytecode, 0, bytecode.length);
+    }
+
+    /**
+     * Class visitor that instruments every method
+     */
+    private class CountingClassVisitor extends ClassVisitor {
+        /**
+         * Constructs the {@link CountingClassVisitor} class.
+         *
+         * @param cv delegated class visitor
+         */
+        private CountingClassVisitor(final ClassVisitor cv) {
+            super(Opcodes.ASM9, cv);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
+                                         final String signature, final String[] exceptions) {
+            final MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+            return mv != null ? new CountingMethodVisitor(mv) : null;
+        }
+    }
+
+    /**
+     * Method visitor that inserts {@link BytecodeCounter#add(int)} calls
+     */
+    private class CountingMethodVisitor extends MethodVisitor {
+        // cost of the current straight-line sequence that was not added to the counter yet
+        private int pendingCost = 0;
+
+        /**
+         * Constructs the {@link CountingMethodVisitor} class.
+         *
+         * @param mv delegated method visitor
+         */
+        private CountingMethodVisitor(final MethodVisitor mv) {
+            super(Opcodes.ASM9, mv);
+        }
+
+        /**
+         * Inserts a {@link BytecodeCounter#add(int)} call with the pending cost, if there is any.
+         * The inserted code does not change the operand stack.
+         */
+        private void flush() {
+            if (pendingCost == 0)
+                return;
+
+            super.visitLdcInsn(pendingCost);
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, COUNTER_CLASS, "add", "(I)V", /* isInterface */ false);
+            pendingCost = 0;
+        }
+
+        @Override
+        public void visitLabel(final Label label) {
+            flush();
+            super.visitLabel(label);
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            pendingCost++;
+            if ((Opcodes.IRETURN <= opcode && opcode <= Opcodes.RETURN) || opcode == Opcodes.ATHROW)
+                flush();
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            pendingCost++;
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int varIndex) {
+            pendingCost++;
+            super.visitVarInsn(opcode, varIndex);
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+            pendingCost++;
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(final int opcode, final String owner, final String name,
+                                   final String descriptor) {
+            pendingCost++;
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(final int opcode, final String owner, final String name,
+                                    final String descriptor, final boolean isInterface) {
+            pendingCost += 1 + apiWeights.getOrDefault(owner.replace('/', '.') + '.' + name, 0);
+            flush();
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(final String name, final String descriptor, final Handle bsm,
+                                           final Object... bsmArgs) {
+            pendingCost++;
+            flush();
+            super.visitInvokeDynamicInsn(name, descriptor, bsm, bsmArgs);
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            pendingCost++;
+            flush();
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLdcInsn(final Object value) {
+            pendingCost++;
+            super.visitLdcInsn(value);
+        }
+
+        @Override
+        public void visitIincInsn(final int varIndex, final int increment) {
+            pendingCost++;
+            super.visitIincInsn(varIndex, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+            pendingCost++;
+            flush();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            pendingCost++;
+            flush();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
+            pendingCost++;
+            super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Binary journal of command and response APDUs exchanged with a card.
+ * <br><br>
+ * The journal starts with a header containing the wall-clock time of its creation followed by one entry
+ * for every transmitted APDU.  Each entry contains the time since the creation of the journal and the duration
+ * of the transmission, both in nanoseconds, and the command and response APDUs, each stored as a length-prefixed
+ * byte array.  Every entry is flushed once written, so the journal of a session that failed or was
+ * interrupted contains all APDUs exchanged before the failure.
+ */
+public class CardJournal implements Closeable {
+    /**
+     * Default file name of the journal
+     */
+    public static final String FILE_NAME = "session.journal";
+
+    private static final int MAGIC = 0x4A43504A; // JCPJ
+    private static final short VERSION = 1;
+
+    private final DataOutputStream dos;
+    private final long startTimeNano;
+    private long entryCount;
+
+    /**
+     * Creates a new journal.  Any existing journal is overwritten.
+     *
+     * @param  path path to the journal
+     *
+     * @throws IOException if the journal could not be created
+     */
+    public CardJournal(final Path path) throws IOException {
+        dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        startTimeNano = System.nanoTime();
+
+        dos.writeInt(MAGIC);
+        dos.writeShort(VERSION);
+        dos.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a single command and response pair to the journal and flushes it.
+     *
+     * @param  timestampNano value of {@link System#nanoTime()} before the command was sent
+     * @param  durationNano  duration of the transmission
+     * @param  command       command APDU
+     * @param  response      response APDU
+     *
+     * @throws IOException if the entry could not be written
+     */
+    public synchronized void record(final long timestampNano, final long durationNano, final CommandAPDU command,
+                                    final ResponseAPDU response) throws IOException {
+        dos.writeLong(timestampNano - startTimeNano);
+        dos.writeLong(durationNano);
+        putBytes(command.getBytes());
+        putBytes(response.getBytes());
+        dos.flush();
+        entryCount++;
+    }
+
+    /**
+     * Returns the number of recorded entries.
+     *
+     * @return number of entries
+     */
+    public synchronized long getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        dos.close();
+    }
+
+    /**
+     * Writes a length-prefixed byte array.
+     *
+     * @param  bytes array to be written
+     *
+     * @throws IOException if the array could not be written
+     */
+    private void putBytes(final byte[] bytes) throws IOException {
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    /**
+     * Single journal entry
+     */
+    public static class Entry {
+        /**
+         * Time since the creation of the journal in nanoseconds
+         */
+        public final long timestampNano;
+        /**
+         * Duration of the transmission in nanoseconds
+         */
+        public final long durationNano;
+        /**
+         * Command APDU
+         */
+        public final CommandAPDU command;
+        /**
+         * Response APDU
+         */
+        public final ResponseAPDU response;
+
+        /**
+         * Constructs the {@link Entry} class.
+         *
+         * @param timestampNano time since the creation of the journal in nanoseconds
+         * @param durationNano  duration of the transmission in nanoseconds
+         * @param command       command APDU
+         * @param response      response APDU
+         */
+        private Entry(final long timestampNano, final long durationNano, final CommandAPDU command,
+                      final ResponseAPDU response) {
+            this.timestampNano = timestampNano;
+            this.durationNano = durationNano;
+            this.command = command;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Sequential reader of journal entries
+     */
+    public static class Reader implements Closeable {
+        private final Path path;
+        private final DataInputStream dis;
+        private final long startTimeMillis;
+
+        /**
+         * Opens the given journal.
+         *
+         * @param  path path to the journal
+         *
+         * @throws IOException if the journal could not be read or is not valid
+         */
+        public Reader(final Path path) throws IOException {
+            this.path = path;
+            dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            try {
+                if (dis.readInt() != MAGIC || dis.readShort() != VERSION)
+                    throw new IOException(path + " is not a valid card journal!");
+                startTimeMillis = dis.readLong();
+            } catch (IOException e) {
+                dis.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the wall-clock time of the creation of the journal.
+         *
+         * @return time in milliseconds since the epoch
+         */
+        public long getStartTimeMillis() {
+            return startTimeMillis;
+        }
+
+        /**
+         * Reads the next entry.
+         *
+         * @return an {@link Entry} instance or {@code null} if the end of the journal was reached
+         *
+         * @throws IOException if the journal is truncated or could not be read
+         */
+        public Entry next() throws IOException {
+            final long timestampNano;
+            try {
+                timestampNano = dis.readLong();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            try {
+                final long durationNano = dis.readLong();
+                final CommandAPDU command = new CommandAPDU(getBytes());
+                final ResponseAPDU response = new ResponseAPDU(getBytes());
+                return new Entry(timestampNano, durationNano, command, response);
+            } catch (EOFException e) {
+                throw new IOException("Card journal " + path + " is truncated!", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            dis.close();
+        }
+
+        /**
+         * Reads a length-prefixed byte array.
+         *
+         * @return read array
+         *
+         * @throws IOException if the array could not be read
+         */
+        private byte[] getBytes() throws IOException {
+            final int length = dis.readInt();
+            if (length < 0)
+                throw new IOException("Corrupted length in card journal " + path + ": " + length);
+
+            final byte[] bytes = new byte[length];
+            dis.readFully(bytes);
+            return bytes;
+        }
+    }
+}
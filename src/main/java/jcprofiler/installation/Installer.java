@@ -17,6 +17,7 @@ import javacard.framework.Applet;
 
 import jcprofiler.args.Args;
 import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.enums.ClockSource;
 import jcprofiler.util.enums.Stage;
 
 import org.apache.commons.io.output.NullOutputStream;
@@ -25,13 +26,14 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import spoon.reflect.declaration.CtClass;
-
 import javax.smartcardio.*;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -63,22 +65,22 @@ public class Installer {
      * Installs the applet on a selected card.
      *
      * @param  args       object with commandline arguments
-     * @param  entryPoint applet entry point class
+     * @param  entryPoint fully qualified name of the applet entry point class
      * @return            {@link CardManager} connection instance
      *
      * @throws RuntimeException if the applet could not be installed or selected successfully
      */
-    public static CardManager installOnCard(final Args args, final CtClass<?> entryPoint) {
+    public static CardManager installOnCard(final Args args, final String entryPoint) {
         if (args.useSimulator)
             throw new UnsupportedOperationException("Installation on a simulator is not possible");
 
         // connect to the card
-        final CardManager cardManager = connectToCard(/* select */ false);
+        final CardManager cardManager = connectToCard(args, /* select */ false);
         final BIBO bibo = CardBIBO.wrap(cardManager.getChannel().getCard());
 
         // get path to CAP package
         final Path capPath = JCProfilerUtil.getAppletOutputDirectory(args.workDir)
-                .resolve(entryPoint.getSimpleName() + ".cap");
+                .resolve(JCProfilerUtil.getSimpleName(entryPoint) + ".cap");
         JCProfilerUtil.checkFile(capPath, Stage.compilation);
 
         // construct argv for GPTool
@@ -112,25 +114,26 @@ public class Installer {
      * commandline arguments.
      *
      * @param  args       object with commandline arguments
-     * @param  entryPoint applet entry point class
+     * @param  entryPoint fully qualified name of the applet entry point class
      * @return            {@link CardManager} connection instance
      */
-    public static CardManager connect(final Args args, final CtClass<?> entryPoint) {
+    public static CardManager connect(final Args args, final String entryPoint) {
         return args.useSimulator ? configureSimulator(args, entryPoint)
-                                 : connectToCard(/* select */ true);
+                                 : connectToCard(args, /* select */ true);
     }
 
     /**
      * Creates and configures a jCardSim simulator instance for given applet.
      *
      * @param  args       object with commandline arguments
-     * @param  entryPoint applet entry point class
+     * @param  entryPoint fully qualified name of the applet entry point class
      * @return            {@link CardManager} connection instance
      *
      * @throws RuntimeException if the simulator could not be executed or the applet
      *                          could not be  selected successfully
      */
-    private static CardManager configureSimulator(final Args args, final CtClass<?> entryPoint) {
+    // synchronized because of the temporary redirection of stdout
+    private static synchronized CardManager configureSimulator(final Args args, final String entryPoint) {
         log.info("Configuring jCardSim simulator.");
 
         // assure jCardSim compatibility with newer bouncycastle
@@ -138,12 +141,12 @@ public class Installer {
 
         // get path to JAR archive
         final Path jarPath = JCProfilerUtil.getAppletOutputDirectory(args.workDir)
-                        .resolve(entryPoint.getPackage().getSimpleName() + ".jar");
+                        .resolve(JCProfilerUtil.getPackageSimpleName(entryPoint) + ".jar");
         JCProfilerUtil.checkFile(jarPath, Stage.compilation);
-        final CardManager cardManager = new CardManager(/* logging */ true, APPLET_AID);
+        final CardManager cardManager = createCardManager(args);
 
         try {
-            log.debug("Loading {} from {}.", entryPoint.getQualifiedName(), jarPath);
+            log.debug("Loading {} from {}.", entryPoint, jarPath);
 
             // get a list of all classes that must be loaded for the simulator
             final Set<Path> jarList = new HashSet<>();
@@ -173,8 +176,18 @@ public class Installer {
 
             // load the simulated class
             // FIXME: this leak is intentional so that the simulator can access every class in the loaded JAR
-            final URLClassLoader classLoader = new URLClassLoader(jarURLArray);
-            final Class<? extends Applet> cls = classLoader.loadClass(entryPoint.getQualifiedName())
+            final URLClassLoader classLoader;
+            switch (args.clockSource) {
+                case bytecode:
+                    classLoader = createBytecodeCountingClassLoader(args, entryPoint, jarURLArray);
+                    break;
+                case threadCpu:
+                    classLoader = new ProcessTimingClassLoader(jarURLArray);
+                    break;
+                default:
+                    classLoader = new URLClassLoader(jarURLArray);
+            }
+            final Class<? extends Applet> cls = classLoader.loadClass(entryPoint)
                     .asSubclass(Applet.class);
             final RunConfig runCfg = RunConfig.getDefaultConfig()
                     .setTestCardType(CardType.JCARDSIMLOCAL)
@@ -203,18 +216,74 @@ public class Installer {
         }
     }
 
+    /**
+     * Creates a class loader that instruments the loaded applet classes to count executed bytecodes.
+     * The {@code PM} and {@code PMC} classes are not instrumented.
+     *
+     * @param  args        object with commandline arguments
+     * @param  entryPoint  fully qualified name of the applet entry point class
+     * @param  jarURLArray URLs of JAR archives with the applet classes
+     * @return             a {@link BytecodeCountingClassLoader} instance
+     *
+     * @throws RuntimeException if the file with weights of API calls could not be loaded
+     */
+    private static BytecodeCountingClassLoader createBytecodeCountingClassLoader(
+            final Args args, final String entryPoint, final URL[] jarURLArray) {
+        final String packagePrefix = JCProfilerUtil.getPackageName(entryPoint) + '.';
+        final Set<String> excludedClasses = new HashSet<>(Arrays.asList(packagePrefix + "PM", packagePrefix + "PMC"));
+
+        final Map<String, Integer> apiWeights = new HashMap<>();
+        if (args.costWeights != null) {
+            log.info("Loading weights of API calls from {}.", args.costWeights);
+            final Properties props = new Properties();
+            try (final Reader reader = Files.newBufferedReader(args.costWeights)) {
+                props.load(reader);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            for (final String method : props.stringPropertyNames()) {
+                final String value = props.getProperty(method).trim();
+                try {
+                    final int weight = Integer.parseInt(value);
+                    if (weight < 0)
+                        throw new NumberFormatException();
+                    apiWeights.put(method, weight);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException(String.format("Invalid weight of %s: %s", method, value), e);
+                }
+            }
+        }
+
+        return new BytecodeCountingClassLoader(jarURLArray, excludedClasses, apiWeights);
+    }
+
+    /**
+     * Creates a new {@link CardManager} instance that records the card session to a {@link CardJournal}
+     * in the working directory if {@link Args#recordJournal} is set.
+     *
+     * @param  args object with commandline arguments
+     * @return      {@link CardManager} instance
+     */
+    private static CardManager createCardManager(final Args args) {
+        if (!args.recordJournal)
+            return new CardManager(/* logging */ true, APPLET_AID);
+        return new JournalingCardManager(/* logging */ true, APPLET_AID, args.workDir.resolve(CardJournal.FILE_NAME));
+    }
+
     /**
      * Connects to a physical card.
      *
+     * @param  args   object with commandline arguments
      * @param  select decides whether the profiled applet should be selected
      * @return        {@link CardManager} connection instance
      *
      * @throws RuntimeException if the card connection failed or the applet
      *                          could not be selected successfully
      */
-    private static CardManager connectToCard(boolean select) {
+    private static CardManager connectToCard(final Args args, boolean select) {
         log.info("Connecting to a physical card reader.");
-        final CardManager cardManager = new CardManager(/* logging */ true, APPLET_AID);
+        final CardManager cardManager = createCardManager(args);
 
         // for better portability across different platforms
         TerminalManager.fixPlatformPaths();
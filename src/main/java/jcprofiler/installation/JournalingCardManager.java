@@ -0,0 +1,92 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import cz.muni.fi.crocs.rcard.client.CardManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * {@link CardManager} that records every transmitted command and response APDU to a {@link CardJournal}.
+ * Every APDU is written to the journal right after its transmission and the journal is closed
+ * once the card is disconnected.
+ */
+public class JournalingCardManager extends CardManager {
+    private final Path journalPath;
+    private final CardJournal journal;
+
+    private static final Logger log = LoggerFactory.getLogger(JournalingCardManager.class);
+
+    /**
+     * Constructs the {@link JournalingCardManager} class.
+     *
+     * @param  bDebug      enables logging of transmitted APDUs
+     * @param  appletAID   AID of the applet
+     * @param  journalPath path to the journal
+     *
+     * @throws RuntimeException if the journal could not be created
+     */
+    public JournalingCardManager(final boolean bDebug, final byte[] appletAID, final Path journalPath) {
+        super(bDebug, appletAID);
+        this.journalPath = journalPath;
+
+        try {
+            journal = new CardJournal(journalPath);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        log.info("Recording the card session to {}.", journalPath);
+    }
+
+    /**
+     * Transmits the given APDU and records it together with the response.
+     *
+     * @param  cmd command APDU
+     * @return     response APDU
+     *
+     * @throws CardException if the card connection failed or the journal could not be written
+     */
+    @Override
+    public ResponseAPDU transmit(final CommandAPDU cmd) throws CardException {
+        final long timestamp = System.nanoTime();
+        final ResponseAPDU response = super.transmit(cmd);
+
+        try {
+            journal.record(timestamp, getLastTransmitTimeNano(), cmd, response);
+        } catch (IOException e) {
+            throw new CardException("Recording to the card journal failed", e);
+        }
+        return response;
+    }
+
+    /**
+     * Disconnects from the card and closes the journal.
+     *
+     * @param  bReset decides whether the card should be reset
+     *
+     * @throws CardException if the card connection failed or the journal could not be closed
+     */
+    @Override
+    public void disconnect(final boolean bReset) throws CardException {
+        try {
+            super.disconnect(bReset);
+        } finally {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                throw new CardException("Closing the card journal failed", e);
+            }
+        }
+
+        log.info("Recorded {} APDUs to {}.", journal.getEntryCount(), journalPath);
+    }
+}
@@ -0,0 +1,56 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Per-thread accumulator of the CPU time spent in the {@code process} method of applets loaded
+ * with {@link ProcessTimingClassLoader}.
+ * <br><br>
+ * Nested calls, e.g. {@code super.process(apdu)}, are measured only once.  The accumulator is thread-local,
+ * so parallel simulator instances driven by different threads do not influence each other.
+ */
+public class ProcessCpuTimer {
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    // nesting depth, CPU time at the outermost entry and accumulated CPU time of the current thread
+    private static final ThreadLocal<long[]> state = ThreadLocal.withInitial(() -> new long[3]);
+
+    static {
+        if (threadMXBean.isCurrentThreadCpuTimeSupported() && !threadMXBean.isThreadCpuTimeEnabled())
+            threadMXBean.setThreadCpuTimeEnabled(true);
+    }
+
+    // static class
+    private ProcessCpuTimer() {}
+
+    /**
+     * Marks the entry to the {@code process} method.  Called from the instrumented bytecode.
+     */
+    public static void enter() {
+        final long[] s = state.get();
+        if (s[0]++ == 0)
+            s[1] = threadMXBean.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * Marks the exit from the {@code process} method, either by a return or by an exception.
+     * Called from the instrumented bytecode.
+     */
+    public static void exit() {
+        final long[] s = state.get();
+        if (--s[0] == 0)
+            s[2] += threadMXBean.getCurrentThreadCpuTime() - s[1];
+    }
+
+    /**
+     * Returns the CPU time the current thread spent in the {@code process} method.
+     *
+     * @return accumulated CPU time in nanoseconds
+     */
+    public static long get() {
+        return state.get()[2];
+    }
+}
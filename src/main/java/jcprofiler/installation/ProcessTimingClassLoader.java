@@ -0,0 +1,162 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import org.apache.commons.io.IOUtils;
+
+import org.objectweb.asm.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Class loader that instruments loaded classes to measure the CPU time spent in {@code Applet.process}
+ * using {@link ProcessCpuTimer}.
+ * <br><br>
+ * Every non-abstract {@code process(APDU)} method is renamed to a private method and replaced with a wrapper
+ * that calls {@link ProcessCpuTimer#enter()}, the original method and {@link ProcessCpuTimer#exit()},
+ * the last one also if the original method throws, e.g. when {@code PM.check} stops the execution.
+ * Therefore, the measured time does not contain the APDU encoding, logging and dispatch done by the
+ * card manager and the simulator.
+ */
+public class ProcessTimingClassLoader extends URLClassLoader {
+    private static final String TIMER_CLASS = Type.getInternalName(ProcessCpuTimer.class);
+    private static final String PROCESS_NAME = "process";
+    private static final String PROCESS_DESCRIPTOR = "(Ljavacard/framework/APDU;)V";
+    private static final String RENAMED_PROCESS_NAME = "process$jcprofiler";
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessTimingClassLoader.class);
+
+    /**
+     * Constructs the {@link ProcessTimingClassLoader} class.
+     *
+     * @param urls URLs of JAR archives to load the classes from
+     */
+    public ProcessTimingClassLoader(final URL[] urls) {
+        super(urls);
+    }
+
+    /**
+     * Loads the class from the given JAR archives and instruments its {@code process(APDU)} method, if any.
+     *
+     * @param  name fully qualified name of the class
+     * @return      loaded class
+     *
+     * @throws ClassNotFoundException if the class could not be found or read
+     */
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final URL url = findResource(name.replace('.', '/') + ".class");
+        if (url == null)
+            throw new ClassNotFoundException(name);
+
+        byte[] bytecode;
+        try (final InputStream is = url.openStream()) {
+            bytecode = IOUtils.toByteArray(is);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+
+        final ClassReader reader = new ClassReader(bytecode);
+        final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        final TimingClassVisitor visitor = new TimingClassVisitor(writer);
+        reader.accept(visitor, /* parsingOptions */ 0);
+        if (visitor.processAccess != -1) {
+            log.debug("Instrumenting {}.process to measure its CPU time.", name);
+            bytecode = writer.toByteArray();
+        }
+
+        return defineClass(name, bytecode, 0, bytecode.length);
+    }
+
+    /**
+     * Class visitor that renames the {@code process(APDU)} method and generates its timing wrapper
+     */
+    private static class TimingClassVisitor extends ClassVisitor {
+        private int version;
+        private String className;
+        // access flags and exceptions of the original process method, -1 if the class does not declare it
+        private int processAccess = -1;
+        private String[] processExceptions;
+
+        /**
+         * Constructs the {@link TimingClassVisitor} class.
+         *
+         * @param cv delegated class visitor
+         */
+        private TimingClassVisitor(final ClassVisitor cv) {
+            super(Opcodes.ASM9, cv);
+        }
+
+        @Override
+        public void visit(final int version, final int access, final String name, final String signature,
+                          final String superName, final String[] interfaces) {
+            this.version = version;
+            className = name;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
+                                         final String signature, final String[] exceptions) {
+            if (!name.equals(PROCESS_NAME) || !descriptor.equals(PROCESS_DESCRIPTOR) ||
+                    (access & (Opcodes.ACC_STATIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0)
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+
+            processAccess = access;
+            processExceptions = exceptions;
+            final int renamedAccess = (access & ~(Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) |
+                    Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC;
+            return super.visitMethod(renamedAccess, RENAMED_PROCESS_NAME, descriptor, signature, exceptions);
+        }
+
+        @Override
+        public void visitEnd() {
+            if (processAccess != -1)
+                generateWrapper();
+            super.visitEnd();
+        }
+
+        /**
+         * Generates the {@code process(APDU)} method that measures the CPU time of the renamed original.
+         */
+        private void generateWrapper() {
+            final MethodVisitor mv = super.visitMethod(processAccess, PROCESS_NAME, PROCESS_DESCRIPTOR,
+                    /* signature */ null, processExceptions);
+            final Label tryStart = new Label();
+            final Label tryEnd = new Label();
+            final Label handler = new Label();
+
+            mv.visitCode();
+            mv.visitTryCatchBlock(tryStart, tryEnd, handler, /* type */ null);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, TIMER_CLASS, "enter", "()V", /* isInterface */ false);
+
+            // this.process$jcprofiler(apdu)
+            mv.visitLabel(tryStart);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, className, RENAMED_PROCESS_NAME, PROCESS_DESCRIPTOR,
+                    /* isInterface */ false);
+            mv.visitLabel(tryEnd);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, TIMER_CLASS, "exit", "()V", /* isInterface */ false);
+            mv.visitInsn(Opcodes.RETURN);
+
+            // the thrown exception stays on the operand stack and is rethrown
+            mv.visitLabel(handler);
+            if ((version & 0xFFFF) >= Opcodes.V1_6)
+                mv.visitFrame(Opcodes.F_FULL, 2, new Object[]{className, "javacard/framework/APDU"},
+                        1, new Object[]{"java/lang/Throwable"});
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, TIMER_CLASS, "exit", "()V", /* isInterface */ false);
+            mv.visitInsn(Opcodes.ATHROW);
+
+            mv.visitMaxs(/* maxStack */ 0, /* maxLocals */ 0);
+            mv.visitEnd();
+        }
+    }
+}
@@ -5,9 +5,12 @@ package jcprofiler.instrumentation;
 
 import jcprofiler.args.Args;
 import jcprofiler.instrumentation.processors.*;
+import jcprofiler.util.InstrumentationManifest;
 import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.SpoonModelCache;
 
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.Triple;
 
 import org.slf4j.Logger;
@@ -23,12 +26,18 @@ import spoon.reflect.code.*;
 import spoon.reflect.declaration.*;
 import spoon.reflect.reference.CtFieldReference;
 import spoon.support.compiler.VirtualFile;
+import spoon.support.modelobs.ChangeCollector;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 // TODO: support already instrumented stuff
 
@@ -38,6 +47,11 @@ import java.util.stream.Collectors;
 public class Instrumenter {
     private final Args args;
 
+    // sources of the generated classes, part of the instrumentation inputs
+    private final List<String> generatedSources = new ArrayList<>();
+
+    private static final String KEY_FILENAME = "instrumentation.sha256";
+    private static final String PRINTED_DIRNAME = "sources_printed";
     private static final List<String> generatedClasses = Arrays.asList("PM", "PMC");
     private static final Logger log = LoggerFactory.getLogger(Instrumenter.class);
 
@@ -52,18 +66,39 @@ public class Instrumenter {
 
     /**
      * Instruments the input source code and stores the results into
-     * the {@link JCProfilerUtil#INSTR_OUT_DIRNAME} directory.
+     * the {@link JCProfilerUtil#INSTR_OUT_DIRNAME} directory and
+     * the {@link InstrumentationManifest} next to it.
+     * <br><br>
+     * The instrumentation is skipped if neither the inputs, i.e. the original sources, the class path,
+     * the generated classes and the relevant commandline arguments, nor the instrumented sources changed
+     * since the last instrumentation.  Otherwise, only the instrumented files whose contents changed are
+     * rewritten and the unmodified compilation units are copied from the original sources byte-for-byte.
      */
     public void process() {
-        // always recreate the output directory
         final Path outputDir = JCProfilerUtil.getInstrOutputDirectory(args.workDir);
-        JCProfilerUtil.recreateDirectory(outputDir);
+        final Path keyFile = JCProfilerUtil.getCacheDirectory(args.workDir).resolve(KEY_FILENAME);
 
         // prepare and check the model
         final Launcher spoon = new Launcher();
-        addMissingClasses(spoon);
+        checkArguments(addMissingClasses(spoon));
+
+        final String inputKey = getInputKey();
+        if (isUpToDate(keyFile, inputKey, outputDir)) {
+            log.info("Instrumented sources are up-to-date.");
+            return;
+        }
+
+        // invalidate the key first so that a failed instrumentation cannot leave a stale key behind
+        try {
+            Files.deleteIfExists(keyFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
         final CtModel model = buildModel(spoon);
-        checkArguments(model);
+
+        // track the modified compilation units
+        final ChangeCollector changes = new ChangeCollector().attachTo(spoon.getEnvironment());
 
         // Instrument the model
 
@@ -73,12 +108,19 @@ public class Instrumenter {
         switch (args.mode) {
             case memory:
                 spoon.addProcessor(new InsertMemoryTrapProcessor(args));
+                if (args.allocationSites)
+                    spoon.addProcessor(new InsertAllocationSitesProcessor(args));
                 spoon.addProcessor(new ModifyMemoryEntryPointProcessor(args));
                 break;
             case time:
                 spoon.addProcessor(new InsertTimeTrapProcessor(args));
                 spoon.addProcessor(new ModifyTimeEntryPointProcessor(args));
                 break;
+            case writes:
+                spoon.addProcessor(new InsertWritesTrapProcessor(args));
+                spoon.addProcessor(new InsertWriteCountersProcessor(args));
+                spoon.addProcessor(new ModifyWritesEntryPointProcessor(args));
+                break;
             case custom:
                 spoon.addProcessor(new InsertCustomTrapProcessor(args));
                 spoon.addProcessor(new ModifyCustomEntryPointProcessor(args));
@@ -96,14 +138,174 @@ public class Instrumenter {
         spoon.process();
 
         // save the result
+        final Path printedDir = JCProfilerUtil.getCacheDirectory(args.workDir).resolve(PRINTED_DIRNAME);
+        JCProfilerUtil.recreateDirectory(printedDir);
         spoon.getEnvironment().setOutputType(OutputType.CLASSES);
-        spoon.setSourceOutputDirectory(outputDir.toFile());
+        spoon.setSourceOutputDirectory(printedDir.toFile());
 
         log.info("Saving instrumented classes.");
         spoon.prettyprint();
+        updateOutputDirectory(model, changes, printedDir, outputDir);
+        FileUtils.deleteQuietly(printedDir.toFile());
 
         // check that all PMC members are unique
         checkPMC(model);
+
+        // check that the generated sources are compilable by rebuilding the model after instrumentation
+        // and store the metadata needed by the following stages
+        log.info("Generating instrumentation manifest.");
+        InstrumentationManifest.create(args, JCProfilerUtil.getInstrumentedModel(args))
+                .store(args.workDir.resolve(InstrumentationManifest.FILE_NAME));
+
+        try {
+            Files.write(keyFile, Arrays.asList(inputKey, getOutputKey(outputDir)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the digest of all inputs of the instrumentation, i.e. the original sources, the class path,
+     * the generated classes and the commandline arguments that affect the instrumentation.
+     *
+     * @return hexadecimal digest
+     *
+     * @throws RuntimeException if the original sources could not be read
+     */
+    private String getInputKey() {
+        final List<String> inputs = new ArrayList<>();
+        try {
+            inputs.add(SpoonModelCache.computeKey(JCProfilerUtil.getSourceInputDirectory(args.workDir),
+                    JCProfilerUtil.getSpoonClasspath(args)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        inputs.addAll(Arrays.asList(String.valueOf(args.mode), args.entryPoint, args.executable,
+                String.valueOf(args.jcSDK.getVersion()), String.valueOf(args.useSimulator),
+                String.valueOf(args.trapCursor), String.valueOf(args.checkReachability),
+                String.valueOf(args.transitive), String.valueOf(args.memoryBudget),
+                String.valueOf(args.leakDetection), String.valueOf(args.allocationSites),
+                String.valueOf(args.commitCapacity), String.valueOf(args.customHandler)));
+        inputs.addAll(generatedSources);
+        return JCProfilerUtil.getDigest(String.join("\0", inputs));
+    }
+
+    /**
+     * Returns the digest of the instrumented sources.
+     *
+     * @param  outputDir path to the directory with instrumented sources
+     * @return           hexadecimal digest
+     *
+     * @throws RuntimeException if the instrumented sources could not be read
+     */
+    private static String getOutputKey(final Path outputDir) {
+        try {
+            return SpoonModelCache.computeKey(outputDir, Collections.emptyList());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Checks that the instrumented sources and the {@link InstrumentationManifest} exist, the instrumented sources
+     * were not modified and the inputs of the instrumentation correspond to the stored key.
+     *
+     * @param  keyFile   path to the file with stored keys
+     * @param  inputKey  digest of the current inputs of the instrumentation
+     * @param  outputDir path to the directory with instrumented sources
+     * @return           true if the instrumented sources are up-to-date, otherwise false
+     *
+     * @throws RuntimeException if the key file could not be read
+     */
+    private boolean isUpToDate(final Path keyFile, final String inputKey, final Path outputDir) {
+        if (!Files.exists(keyFile) || !Files.isDirectory(outputDir) ||
+                !Files.exists(args.workDir.resolve(InstrumentationManifest.FILE_NAME)))
+            return false;
+
+        try {
+            final List<String> keys = Files.readAllLines(keyFile);
+            return keys.size() == 2 && keys.get(0).equals(inputKey) && keys.get(1).equals(getOutputKey(outputDir));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Updates the output directory with the instrumented sources.  Files of unmodified compilation units
+     * of the original sources are copied byte-for-byte, the others are taken from the pretty-printed sources.
+     * Files whose contents did not change are left untouched and stale files are removed.
+     *
+     * @param  model      instrumented Spoon model
+     * @param  changes    {@link ChangeCollector} instance attached before the instrumentation
+     * @param  printedDir path to the directory with pretty-printed sources
+     * @param  outputDir  path to the directory with instrumented sources
+     *
+     * @throws RuntimeException if the files could not be read or written
+     */
+    private void updateOutputDirectory(final CtModel model, final ChangeCollector changes, final Path printedDir,
+                                       final Path outputDir) {
+        final Path sourceDir = JCProfilerUtil.getSourceInputDirectory(args.workDir).toAbsolutePath();
+
+        // group the top-level types by the original source files, the generated classes have no such file
+        final Map<Path, List<CtType<?>>> typesByFile = new LinkedHashMap<>();
+        for (final CtType<?> type : model.getAllTypes()) {
+            final File file = type.getPosition().getFile();
+            if (file != null && file.toPath().toAbsolutePath().startsWith(sourceDir))
+                typesByFile.computeIfAbsent(file.toPath().toAbsolutePath(), k -> new ArrayList<>()).add(type);
+        }
+
+        try {
+            // map between relative paths in the output directory and files with their contents
+            final Map<Path, Path> outputFiles = new LinkedHashMap<>();
+            try (final Stream<Path> printed = Files.walk(printedDir)) {
+                printed.filter(Files::isRegularFile).sorted()
+                        .forEach(f -> outputFiles.put(printedDir.relativize(f), f));
+            }
+
+            int unmodified = 0;
+            for (final Map.Entry<Path, List<CtType<?>>> entry : typesByFile.entrySet()) {
+                if (entry.getValue().stream().anyMatch(t -> !changes.getChanges(t).isEmpty()))
+                    continue;
+
+                // Spoon prints every top-level type to its own file
+                for (final CtType<?> type : entry.getValue())
+                    outputFiles.remove(Paths.get(type.getPackage().getQualifiedName().replace('.', '/'),
+                            type.getSimpleName() + ".java"));
+                outputFiles.put(sourceDir.relativize(entry.getKey()), entry.getKey());
+                unmodified++;
+            }
+
+            // remove stale files
+            Files.createDirectories(outputDir);
+            try (final Stream<Path> existing = Files.walk(outputDir)) {
+                for (final Path f : existing.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    if (outputFiles.containsKey(outputDir.relativize(f)))
+                        continue;
+
+                    log.debug("Removing stale {}.", f);
+                    Files.delete(f);
+                }
+            }
+
+            int written = 0;
+            for (final Map.Entry<Path, Path> entry : outputFiles.entrySet()) {
+                final Path target = outputDir.resolve(entry.getKey());
+                final byte[] contents = Files.readAllBytes(entry.getValue());
+                if (Files.exists(target) && Arrays.equals(Files.readAllBytes(target), contents))
+                    continue;
+
+                log.debug("Writing {}.", target);
+                Files.createDirectories(target.getParent());
+                Files.write(target, contents);
+                written++;
+            }
+
+            log.info("Copied {} unmodified compilation units, {} of {} instrumented files changed.",
+                    unmodified, written, outputFiles.size());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -120,8 +322,21 @@ public class Instrumenter {
         spoon.addInputResource(JCProfilerUtil.getSourceInputDirectory(args.workDir).toString());
 
         log.debug("Building Spoon model.");
+        return checkImports(spoon::buildModel);
+    }
+
+    /**
+     * Builds a Spoon model with the given builder and reports unresolved imports in a user-friendly way.
+     *
+     * @param  builder model builder
+     * @return         a {@link CtModel} Spoon model
+     *
+     * @throws ModelBuildingException if the model could not be successfully built
+     * @throws RuntimeException       if the import resolution failed
+     */
+    private CtModel checkImports(final Supplier<CtModel> builder) {
         try {
-            return spoon.buildModel();
+            return builder.get();
         } catch (ModelBuildingException e) {
             if (!e.getMessage().matches(".* cannot be resolved (to a type )?at .*"))
                 throw e;
@@ -151,6 +366,7 @@ public class Instrumenter {
                 executable = JCProfilerUtil.getProfiledExecutable(model, args.entryPoint, args.executable);
                 break;
             case time:
+            case writes:
                 executable = JCProfilerUtil.getProfiledMethod(model, args.executable);
                 break;
             default:
@@ -163,18 +379,20 @@ public class Instrumenter {
      * Generates the {@link Instrumenter#generatedClasses} classes
      * and adds them to the given Spoon instance.
      *
-     * @param spoon Spoon instance
+     * @param  spoon Spoon instance
+     * @return       Spoon model of the original sources
      *
      * @throws UnsupportedOperationException for multipackage projects, for projects using the default package
      */
-    private void addMissingClasses(final Launcher spoon) {
+    private CtModel addMissingClasses(final Launcher spoon) {
+        generatedSources.clear();
         log.info("Generating additional classes.");
 
-        // this atrocity seems to be required as Spoon does not allow a module rebuild :(
-        final Launcher tmpSpoon = new Launcher();
-        buildModel(tmpSpoon);
+        // Spoon does not allow a module rebuild, so inspect a cached model of the original sources
+        final CtModel sourceModel = checkImports(() -> SpoonModelCache.getModel(
+                args, JCProfilerUtil.getSourceInputDirectory(args.workDir)));
 
-        final List<CtType<?>> types = tmpSpoon.getModel().getElements(CtType.class::isInstance);
+        final List<CtType<?>> types = sourceModel.getElements(CtType.class::isInstance);
         final Set<CtPackage> pkgs = types.stream().map(CtType::getPackage)
                 .filter(Objects::nonNull).collect(Collectors.toSet());
         log.debug("Found following packages in sources: {}", pkgs);
@@ -215,6 +433,7 @@ public class Instrumenter {
                     case custom:
                         log.info("Using custom PM class from {}.", args.customPM);
                         spoon.addInputResource(args.customPM.toString());
+                        generatedSources.add(new String(Files.readAllBytes(args.customPM), StandardCharsets.UTF_8));
                         continue;
                     case memory:
                         actualFilename = args.mode + "/" + className;
@@ -230,9 +449,22 @@ public class Instrumenter {
                         final boolean useNewerAPI = hasNewerAPI && !args.useSimulator;
                         log.info("Using JCSystem.getAvailableMemory with {} B limit.",
                                 useNewerAPI ? Integer.MAX_VALUE : Short.MAX_VALUE);
-                        actualFilename += (useNewerAPI ? "-new" : "-old") + ".java";
+
+                        // store only the reached traps
+                        if (args.memoryBudget != null)
+                            log.info("Using compact PM class with {} B budget.", args.memoryBudget);
+                        actualFilename += (args.memoryBudget != null ? "-compact" : "") +
+                                          (useNewerAPI ? "-new" : "-old") + ".java";
                         break;
                     case time:
+                        actualFilename = args.mode + "/" + className;
+
+                        // advance the fatal trap on the card to save APDUs
+                        if (args.trapCursor)
+                            log.info("Using PM class with an on-card trap cursor.");
+                        actualFilename += (args.trapCursor ? "-cursor" : "") + ".java";
+                        break;
+                    case writes:
                         actualFilename = args.mode + "/" + className + ".java";
                         break;
                     default:
@@ -251,12 +483,15 @@ public class Instrumenter {
                             // set package name
                             .replace("jcprofiler", packageName);
                     spoon.addInputResource(new VirtualFile(src, filename));
+                    generatedSources.add(src);
                 }
                 log.debug("Successfully generated new {} class.", filename);
             } catch (final IOException e) {
                 throw new RuntimeException(e);
             }
         }
+
+        return sourceModel;
     }
 
     /**
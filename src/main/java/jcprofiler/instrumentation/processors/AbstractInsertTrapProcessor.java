@@ -394,6 +394,17 @@ public abstract class AbstractInsertTrapProcessor<T extends CtExecutable<?>> ext
         return trapField;
     }
 
+    /**
+     * Sets the value of {@code PM#ARRAY_LENGTH} to the given number of bytes.
+     *
+     * @param  arrayLength length of the PM arrays in bytes
+     *
+     * @throws RuntimeException when the PM does not contain the {@code PM#ARRAY_LENGTH} field.
+     */
+    protected void setPMArrayLength(final int arrayLength) {
+        setPMConstant("ARRAY_LENGTH", arrayLength);
+    }
+
     /**
      * Direction of statement insertion
      */
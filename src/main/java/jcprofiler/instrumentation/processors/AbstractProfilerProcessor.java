@@ -8,8 +8,11 @@ import jcprofiler.util.JCProfilerUtil;
 
 import spoon.processing.AbstractProcessor;
 import spoon.reflect.CtModel;
+import spoon.reflect.code.CtLiteral;
 import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtField;
 import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtTypeReference;
 
 /**
  * Base class for modification of the source code
@@ -53,4 +56,35 @@ public abstract class AbstractProfilerProcessor<T extends CtElement> extends Abs
         PM = JCProfilerUtil.getToplevelType(model, "PM");
         PMC = JCProfilerUtil.getToplevelType(model, "PMC");
     }
+
+    /**
+     * Sets the value of the given short constant of the PM class.
+     *
+     * @param  fieldName name of the constant
+     * @param  value     new value
+     *
+     * @throws RuntimeException when the PM does not contain such short field.
+     */
+    protected void setPMConstant(final String fieldName, final int value) {
+        final CtTypeReference<Short> shortRef = getFactory().Type().shortPrimitiveType();
+        final CtLiteral<Integer> valueLiteral = getFactory().createLiteral(value);
+        valueLiteral.addTypeCast(shortRef);
+
+        // get PM.${fieldName} field
+        final CtField<?> field = PM.getField(fieldName);
+
+        if (field == null)
+            throw new RuntimeException("PM does not contain the " + fieldName + " field.");
+        if (!field.getType().equals(shortRef))
+            throw new RuntimeException(
+                    "PM." + fieldName + " field is of type " + field.getType() + "! Expected short.");
+
+        @SuppressWarnings("unchecked") // the runtime check is above
+        final CtField<Short> fieldCasted = (CtField<Short>) field;
+
+        @SuppressWarnings("unchecked")
+        // Unfortunately, this is the best solution we have since Spoon does not reflect type casts in type parameters.
+        final CtLiteral<Short> valueLiteralCasted = (CtLiteral<Short>) (Object) valueLiteral;
+        fieldCasted.setAssignment(valueLiteralCasted);
+    }
 }
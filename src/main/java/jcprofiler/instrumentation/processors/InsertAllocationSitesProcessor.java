@@ -0,0 +1,216 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.instrumentation.processors;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.JCProfilerUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spoon.reflect.code.*;
+import spoon.reflect.declaration.*;
+import spoon.reflect.path.CtRole;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtTypeReference;
+
+import java.util.*;
+
+/**
+ * Class for insertion of allocation site measurements in memory mode
+ * <br><br>
+ * Every allocation reachable from the profiled executable, i.e. a {@code new} expression or a call of
+ * {@link javacard.framework.JCSystem} {@code makeTransient*Array}, {@link javacard.security.KeyBuilder}
+ * {@code buildKey} or a {@code getInstance} factory method of a cryptographic class, is wrapped into
+ * a {@code PM.allocated(siteID, PM.mark(), allocation)} call.  The arguments are evaluated from left to right,
+ * so the PM measures free memory right before and after the allocation.  The reachable code is approximated
+ * by a transitive closure of calls of executables with sources, their overriding methods and instance field
+ * initializers of instantiated classes.
+ * <br>
+ * Applicable to the profiled instance of {@link CtExecutable}.
+ */
+public class InsertAllocationSitesProcessor extends AbstractProfilerProcessor<CtExecutable<?>> {
+    private int siteCount;
+
+    private static final Logger log = LoggerFactory.getLogger(InsertAllocationSitesProcessor.class);
+
+    /**
+     * Constructs the {@link InsertAllocationSitesProcessor} class.
+     *
+     * @param args object with commandline arguments
+     */
+    public InsertAllocationSitesProcessor(final Args args) {
+        super(args);
+    }
+
+    /**
+     * Decides whether the input {@link CtExecutable} should be processed.
+     *
+     * @param  executable the candidate {@link CtExecutable}
+     * @return            true if it is the profiled executable, otherwise false
+     */
+    @Override
+    public boolean isToBeProcessed(final CtExecutable<?> executable) {
+        return JCProfilerUtil.getFullSignature(executable).equals(args.executable);
+    }
+
+    /**
+     * Wraps all allocations reachable from the given {@link CtExecutable} instance and sets
+     * the value of {@code PM#SITE_COUNT} to the number of allocation sites.
+     *
+     * @param executable the profiled executable
+     */
+    @Override
+    public void process(final CtExecutable<?> executable) {
+        siteCount = 0;
+
+        // collect first as the model is modified afterwards, nested code may be reachable more than once
+        final Set<CtExpression<?>> allocations = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<CtExpression<?>> orderedAllocations = new ArrayList<>();
+        for (final CtElement code : getReachableCode(executable))
+            for (final CtExpression<?> allocation : code.getElements((CtExpression<?> e) -> isAllocation(e)))
+                if (allocations.add(allocation))
+                    orderedAllocations.add(allocation);
+
+        orderedAllocations.forEach(this::wrapAllocation);
+        setPMConstant("SITE_COUNT", siteCount);
+
+        log.info("Inserted {} allocation sites reachable from {}.", siteCount,
+                JCProfilerUtil.getFullSignature(executable));
+    }
+
+    /**
+     * Collects the bodies of executables reachable from the given executable and instance
+     * field initializers of the classes whose constructors are reachable.
+     *
+     * @param  executable the profiled executable
+     * @return            list of reachable code elements
+     */
+    private List<CtElement> getReachableCode(final CtExecutable<?> executable) {
+        final List<CtMethod<?>> methods = getFactory().getModel().getElements(
+                (CtMethod<?> m) -> m.getBody() != null && !isGenerated(m));
+
+        final List<CtElement> code = new ArrayList<>();
+        final Set<CtExecutable<?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<CtType<?>> instantiated = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<CtExecutable<?>> queue = new ArrayDeque<>(Collections.singletonList(executable));
+        while (!queue.isEmpty()) {
+            final CtExecutable<?> current = queue.poll();
+            if (!visited.add(current) || current.getBody() == null || isGenerated(current))
+                continue;
+
+            code.add(current.getBody());
+
+            // instance field initializers are executed by every constructor
+            if (current instanceof CtConstructor) {
+                final CtType<?> type = ((CtConstructor<?>) current).getDeclaringType();
+                if (instantiated.add(type))
+                    type.getFields().stream().filter(f -> !f.isStatic() && f.getDefaultExpression() != null)
+                            .forEach(f -> code.add(f.getDefaultExpression()));
+            }
+
+            for (final CtAbstractInvocation<?> call : current.getBody().getElements(
+                    (CtAbstractInvocation<?> i) -> true)) {
+                final CtExecutable<?> callee = call.getExecutable().getExecutableDeclaration();
+                if (callee == null)
+                    continue;
+
+                queue.add(callee);
+                if (callee instanceof CtMethod)
+                    methods.stream().filter(m -> m != callee && m.isOverriding((CtMethod<?>) callee))
+                            .forEach(queue::add);
+            }
+        }
+
+        return code;
+    }
+
+    /**
+     * Checks whether the given executable belongs to the generated PM or PMC classes.
+     *
+     * @param  executable an executable
+     * @return            true if the executable is declared in PM or PMC, otherwise false
+     */
+    private boolean isGenerated(final CtExecutable<?> executable) {
+        final CtType<?> type = executable.getParent(CtType.class);
+        if (type == null)
+            return false;
+
+        final CtType<?> topLevel = type.getTopLevelType();
+        return topLevel.getQualifiedName().equals(PM.getQualifiedName()) ||
+               topLevel.getQualifiedName().equals(PMC.getQualifiedName());
+    }
+
+    /**
+     * Decides whether the given expression allocates memory.
+     *
+     * @param  expression an expression
+     * @return            true if it is an allocation that can be wrapped, otherwise false
+     */
+    private boolean isAllocation(final CtExpression<?> expression) {
+        if (expression.getType() == null || expression.getParent(CtAnonymousExecutable.class) != null)
+            return false;
+
+        // anonymous classes cannot be referenced in a type cast
+        if (expression instanceof CtNewArray || (expression instanceof CtConstructorCall &&
+                !(expression instanceof CtNewClass)))
+            return true;
+        if (!(expression instanceof CtInvocation))
+            return false;
+
+        final CtExecutableReference<?> method = ((CtInvocation<?>) expression).getExecutable();
+        if (method.getDeclaringType() == null)
+            return false;
+
+        final String className = method.getDeclaringType().getQualifiedName();
+        final String name = method.getSimpleName();
+        switch (className) {
+            case "javacard.framework.JCSystem":
+                return name.startsWith("makeTransient") || name.equals("makeGlobalArray");
+            case "javacard.security.KeyBuilder":
+                return name.startsWith("buildKey");
+            default:
+                return name.equals("getInstance") &&
+                       (className.startsWith("javacard.security.") || className.startsWith("javacardx.crypto."));
+        }
+    }
+
+    /**
+     * Wraps the given allocation into the {@code PM.allocated} call with a new allocation site ID.
+     *
+     * @param allocation an allocation
+     */
+    private void wrapAllocation(final CtExpression<?> allocation) {
+        final CtTypeReference<Short> shortRef = getFactory().Type().shortPrimitiveType();
+        final CtTypeReference<Boolean> booleanRef = getFactory().Type().booleanPrimitiveType();
+
+        // PM.mark()
+        final CtInvocation<?> markCall = getFactory().createInvocation(
+                getFactory().createTypeAccess(PM.getReference()), PM.getMethod("mark").getReference());
+
+        // PM.allocated((short) ${siteID}, PM.mark(), ${allocation})
+        final CtLiteral<Integer> siteID = getFactory().createLiteral(siteCount++);
+        siteID.addTypeCast(shortRef);
+        final CtInvocation<?> allocatedCall = getFactory().createInvocation(
+                getFactory().createTypeAccess(PM.getReference()),
+                PM.getMethod("allocated", shortRef, booleanRef, getFactory().Type().objectType()).getReference(),
+                siteID, markCall);
+
+        // the returned object has to be cast back unless the result is discarded
+        final CtRole role = allocation.getRoleInParent();
+        if (!(allocation.getParent() instanceof CtStatementList) && role != CtRole.FOR_INIT &&
+                role != CtRole.FOR_UPDATE) {
+            final List<CtTypeReference<?>> casts = new ArrayList<>();
+            allocation.getTypeCasts().forEach(c -> casts.add(c.clone()));
+            if (casts.isEmpty())
+                casts.add(allocation.getType().clone());
+
+            allocation.setTypeCasts(new ArrayList<>());
+            allocatedCall.setTypeCasts(casts);
+        }
+
+        allocation.replace(allocatedCall);
+        allocatedCall.addArgument(allocation);
+    }
+}
@@ -7,10 +7,7 @@ import jcprofiler.args.Args;
 
 import pro.javacard.JavaCardSDK;
 
-import spoon.reflect.code.CtLiteral;
 import spoon.reflect.declaration.CtExecutable;
-import spoon.reflect.declaration.CtField;
-import spoon.reflect.reference.CtTypeReference;
 
 /**
  * Class for performance trap insertion in memory mode
@@ -18,6 +15,9 @@ import spoon.reflect.reference.CtTypeReference;
  * Applicable to instances of {@link CtExecutable}.
  */
 public class InsertMemoryTrapProcessor extends AbstractInsertTrapProcessor<CtExecutable<?>> {
+    // number of executions stored in the history before it has to be read
+    private static final int HISTORY_ROWS = 10;
+
     /**
      * Constructs the {@link InsertMemoryTrapProcessor} class.
      *
@@ -36,40 +36,36 @@ public class InsertMemoryTrapProcessor extends AbstractInsertTrapProcessor<CtExe
     public void process(final CtExecutable<?> executable) {
         super.process(executable);
         fixPMArrayLength();
+        if (args.memoryBudget == null)
+            fixPMHistoryRows();
     }
 
     /**
      * Sets the value of {@code PM#ARRAY_LENGTH} to the expected number of bytes
-     * needed for memory profiling of given executable.
-     *
-     * @throws RuntimeException when the PM does not contain the {@code PM#ARRAY_LENGTH} field.
+     * needed for memory profiling of given executable or to {@link Args#memoryBudget}
+     * if the compact PM is used.  The value of {@code PM#COMMIT_CAPACITY_LENGTH} is set
+     * to the same number of bytes if {@link Args#commitCapacity} is set and to zero otherwise.
      */
     private void fixPMArrayLength() {
+        if (args.memoryBudget != null) {
+            setPMArrayLength(args.memoryBudget);
+            return;
+        }
+
         // handle support for 16bit and 32bit values
         final int arrayLength = trapCount *
                 (!args.useSimulator && args.jcSDK.getVersion().ordinal() >= JavaCardSDK.Version.V304.ordinal()
                     ? Integer.BYTES
                     : Short.BYTES);
+        setPMArrayLength(arrayLength);
+        setPMConstant("COMMIT_CAPACITY_LENGTH", args.commitCapacity ? arrayLength : 0);
+    }
 
-        final CtTypeReference<Short> shortRef = getFactory().Type().shortPrimitiveType();
-        final CtLiteral<Integer> arrayLengthLiteral = getFactory().createLiteral(arrayLength);
-        arrayLengthLiteral.addTypeCast(shortRef);
-
-        // get PM.ARRAY_LENGTH field
-        final CtField<?> arrayLengthField = PM.getField("ARRAY_LENGTH");
-
-        if (arrayLengthField == null)
-            throw new RuntimeException("PM does not contain an ARRAY_LENGTH field.");
-        if (!arrayLengthField.getType().equals(shortRef))
-            throw new RuntimeException(
-                    "PM.ARRAY_LENGTH field is of type " + arrayLengthField.getType() + "! Expected short.");
-
-        @SuppressWarnings("unchecked") // the runtime check is above
-        final CtField<Short> arrayLengthFieldCasted = (CtField<Short>) arrayLengthField;
-
-        @SuppressWarnings("unchecked")
-        // Unfortunately, this is the best solution we have since Spoon does not reflect type casts in type parameters.
-        final CtLiteral<Short> arrayLengthLiteralCasted = (CtLiteral<Short>) (Object) arrayLengthLiteral;
-        arrayLengthFieldCasted.setAssignment(arrayLengthLiteralCasted);
+    /**
+     * Sets the value of {@code PM#HISTORY_ROWS} to the number of executions stored in the history
+     * if {@link Args#leakDetection} is set and to zero otherwise, so that the history takes no memory.
+     */
+    private void fixPMHistoryRows() {
+        setPMConstant("HISTORY_ROWS", args.leakDetection ? HISTORY_ROWS : 0);
     }
 }
@@ -4,16 +4,32 @@
 package jcprofiler.instrumentation.processors;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.JCProfilerUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import spoon.reflect.declaration.CtMethod;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Class for performance trap insertion in time mode
  * <br>
- * Applicable to instances of {@link CtMethod}.
+ * Applicable to instances of {@link CtMethod}.  With {@link Args#transitive} set, the traps are inserted
+ * into all methods with sources transitively called by the profiled method as well.
  *
  */
 public class InsertTimeTrapProcessor extends AbstractInsertTrapProcessor<CtMethod<?>> {
+    // full signatures of the instrumented methods
+    private Set<String> instrumentedMethods;
+    private int totalTrapCount;
+
+    private static final Logger log = LoggerFactory.getLogger(InsertTimeTrapProcessor.class);
+
     /**
      * Constructs the {@link InsertTimeTrapProcessor} class.
      *
@@ -22,4 +38,56 @@ public class InsertTimeTrapProcessor extends AbstractInsertTrapProcessor<CtMetho
     public InsertTimeTrapProcessor(final Args args) {
         super(args);
     }
+
+    /**
+     * Initializes the processor and collects the methods to be instrumented.
+     */
+    @Override
+    public void init() {
+        super.init();
+        totalTrapCount = 0;
+
+        if (!args.transitive) {
+            instrumentedMethods = Collections.singleton(args.executable);
+            return;
+        }
+
+        final CtMethod<?> profiledMethod = JCProfilerUtil.getProfiledMethod(getFactory().getModel(), args.executable);
+        instrumentedMethods = new HashSet<>(JCProfilerUtil.getCallGraph(profiledMethod, new HashSet<>(
+                Arrays.asList(PM.getQualifiedName(), PMC.getQualifiedName()))).keySet());
+        log.info("Found {} methods transitively called by {}.", instrumentedMethods.size() - 1, args.executable);
+    }
+
+    /**
+     * Decides whether the input {@link CtMethod} should be processed.
+     *
+     * @param  method the candidate {@link CtMethod}
+     * @return        true if it is the profiled method or its transitive callee with {@link Args#transitive} set,
+     *                otherwise false
+     */
+    @Override
+    public boolean isToBeProcessed(final CtMethod<?> method) {
+        return instrumentedMethods.contains(JCProfilerUtil.getFullSignature(method));
+    }
+
+    /**
+     * Inserts traps into the given {@link CtMethod} instance.
+     *
+     * @param method a method instance
+     */
+    @Override
+    public void process(final CtMethod<?> method) {
+        super.process(method);
+        totalTrapCount += trapCount;
+        fixPMArrayLength();
+    }
+
+    /**
+     * Sets the value of {@code PM#ARRAY_LENGTH} to the number of bytes needed for the bitmap
+     * of reached traps if {@link Args#checkReachability} is set and to zero otherwise,
+     * so that the recording is compiled out of the PM class.
+     */
+    private void fixPMArrayLength() {
+        setPMArrayLength(args.checkReachability ? (totalTrapCount + Byte.SIZE - 1) / Byte.SIZE : 0);
+    }
 }
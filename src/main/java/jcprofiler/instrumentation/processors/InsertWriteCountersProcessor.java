@@ -0,0 +1,244 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.instrumentation.processors;
+
+import jcprofiler.args.Args;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spoon.reflect.code.*;
+import spoon.reflect.declaration.CtAnonymousExecutable;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtArrayTypeReference;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtTypeReference;
+
+import java.util.List;
+
+/**
+ * Class for insertion of persistent memory write counters in writes mode
+ * <br><br>
+ * A {@code PM.write} call is inserted before every statement that stores to a field, to an array
+ * or calls one of the {@link javacard.framework.Util} methods writing to arrays.  Fields are always
+ * persistent in JavaCard, arrays are checked on the card at runtime.  Writes in loop headers, conditions,
+ * conditional expressions or static initializers and writes to arrays given by expressions with side effects
+ * are skipped as the call cannot be inserted without changing the semantics of the code.
+ * <br>
+ * Applicable to top-level instances of {@link CtType} except for the generated classes.
+ */
+public class InsertWriteCountersProcessor extends AbstractProfilerProcessor<CtType<?>> {
+    private int insertedCount;
+    private int skippedCount;
+
+    private static final Logger log = LoggerFactory.getLogger(InsertWriteCountersProcessor.class);
+
+    /**
+     * Constructs the {@link InsertWriteCountersProcessor} class.
+     *
+     * @param args object with commandline arguments
+     */
+    public InsertWriteCountersProcessor(final Args args) {
+        super(args);
+    }
+
+    /**
+     * Decides whether the input {@link CtType} should be processed.
+     *
+     * @param  type the candidate type
+     * @return      true if the type is a top-level type other than PM and PMC, otherwise false
+     */
+    @Override
+    public boolean isToBeProcessed(final CtType<?> type) {
+        return type.isTopLevel() && !type.getQualifiedName().equals(PM.getQualifiedName()) &&
+               !type.getQualifiedName().equals(PMC.getQualifiedName());
+    }
+
+    /**
+     * Inserts write counters into the given {@link CtType} instance.
+     *
+     * @param type a type instance
+     */
+    @Override
+    public void process(final CtType<?> type) {
+        insertedCount = skippedCount = 0;
+
+        // collect first as the model is modified afterwards
+        final List<CtElement> writes = type.getElements(e -> e instanceof CtAssignment ||
+                e instanceof CtUnaryOperator || e instanceof CtInvocation);
+        writes.forEach(this::processWrite);
+
+        if (insertedCount != 0)
+            log.info("Inserted {} write counters into {}.", insertedCount, type.getQualifiedName());
+        if (skippedCount != 0)
+            log.warn("Skipped {} writes in {} that cannot be counted, e.g. in loop headers or conditions.",
+                    skippedCount, type.getQualifiedName());
+    }
+
+    /**
+     * Inserts a write counter for the given element if it writes to persistent memory.
+     *
+     * @param element assignment, unary operator or invocation
+     */
+    private void processWrite(final CtElement element) {
+        CtExpression<?> written = null;
+        CtExpression<?> array = null;
+        CtExpression<?> bytes = null;
+
+        if (element instanceof CtAssignment) {
+            written = ((CtAssignment<?, ?>) element).getAssigned();
+        } else if (element instanceof CtUnaryOperator) {
+            final CtUnaryOperator<?> op = (CtUnaryOperator<?>) element;
+            switch (op.getKind()) {
+                case PREINC:
+                case PREDEC:
+                case POSTINC:
+                case POSTDEC:
+                    written = op.getOperand();
+                    break;
+                default:
+                    return;
+            }
+        } else {
+            final CtInvocation<?> call = (CtInvocation<?>) element;
+            final CtExecutableReference<?> method = call.getExecutable();
+            if (method.getDeclaringType() == null ||
+                    !method.getDeclaringType().getQualifiedName().equals("javacard.framework.Util"))
+                return;
+
+            final List<CtExpression<?>> arguments = call.getArguments();
+            final String name = method.getSimpleName();
+            if (name.startsWith("arrayCopy") && arguments.size() == 5) {
+                // arrayCopy(src, srcOff, dest, destOff, length)
+                array = arguments.get(2);
+                bytes = arguments.get(4);
+            } else if (name.startsWith("arrayFill") && arguments.size() == 4) {
+                // arrayFill(bArray, bOff, bLen, bValue)
+                array = arguments.get(0);
+                bytes = arguments.get(2);
+            } else if (name.equals("setShort") && arguments.size() == 3) {
+                array = arguments.get(0);
+                bytes = createShortLiteral(Short.BYTES);
+            } else {
+                return;
+            }
+        }
+
+        if (written instanceof CtFieldWrite) {
+            bytes = createShortLiteral(getSize(written.getType()));
+        } else if (written instanceof CtArrayWrite) {
+            final CtArrayWrite<?> arrayWrite = (CtArrayWrite<?>) written;
+            array = arrayWrite.getTarget();
+            bytes = createShortLiteral(getSize(arrayWrite.getType()));
+        } else if (written != null) {
+            // local variables are not persistent
+            return;
+        }
+
+        final CtStatement statement = getInsertionPoint(element);
+        if (statement == null || (array != null && hasSideEffects(array)) || hasSideEffects(bytes)) {
+            log.debug("Skipping write at {}.", element.getPosition());
+            skippedCount++;
+            return;
+        }
+
+        // PM.write(${bytes}) or PM.write(${array}, ${bytes})
+        final CtTypeReference<Short> shortRef = getFactory().Type().shortPrimitiveType();
+        final CtInvocation<?> pmCall = array == null
+                ? getFactory().createInvocation(getFactory().createTypeAccess(PM.getReference()),
+                        PM.getMethod("write", shortRef).getReference(), bytes.clone())
+                : getFactory().createInvocation(getFactory().createTypeAccess(PM.getReference()),
+                        PM.getMethod("write", getFactory().Type().objectType(), shortRef).getReference(),
+                        array.clone(), bytes.clone());
+
+        statement.insertBefore(pmCall);
+        insertedCount++;
+    }
+
+    /**
+     * Returns the statement before which the write counter of the given element can be inserted.
+     *
+     * @param  element write to persistent memory
+     * @return         the statement or null if the write is not executed unconditionally
+     *                 with the statement
+     */
+    private CtStatement getInsertionPoint(final CtElement element) {
+        if (element.getParent(CtAnonymousExecutable.class) != null)
+            return null;
+
+        CtElement current = element;
+        while (!(current instanceof CtStatement && current.getParent() instanceof CtStatementList)) {
+            // conditionally evaluated expression
+            if (current instanceof CtConditional)
+                return null;
+            if (current instanceof CtBinaryOperator) {
+                final BinaryOperatorKind kind = ((CtBinaryOperator<?>) current).getKind();
+                if (kind == BinaryOperatorKind.AND || kind == BinaryOperatorKind.OR)
+                    return null;
+            }
+
+            current = current.getParent();
+            if (current == null || !(current instanceof CtCodeElement))
+                return null;
+        }
+
+        // writes in headers of control-flow statements
+        if (current != element && (current instanceof CtLoop || current instanceof CtIf ||
+                current instanceof CtSwitch || current instanceof CtTry || current instanceof CtSynchronized))
+            return null;
+
+        // nothing can be inserted before this(...) or super(...) calls
+        if (current instanceof CtInvocation && ((CtInvocation<?>) current).getExecutable().isConstructor())
+            return null;
+
+        return (CtStatement) current;
+    }
+
+    /**
+     * Checks whether the evaluation of the given expression may have side effects.
+     *
+     * @param  expression an expression
+     * @return            true if it contains a call, an assignment, an increment or an allocation,
+     *                    otherwise false
+     */
+    private boolean hasSideEffects(final CtExpression<?> expression) {
+        return !expression.getElements(e -> e instanceof CtAbstractInvocation || e instanceof CtAssignment ||
+                e instanceof CtNewArray || (e instanceof CtUnaryOperator &&
+                        ((CtUnaryOperator<?>) e).getKind().name().matches("(PRE|POST)(INC|DEC)"))).isEmpty();
+    }
+
+    /**
+     * Returns the size of a value of the given type in bytes.  References are expected to take two bytes.
+     *
+     * @param  type type of the written value
+     * @return      size of the value in bytes
+     */
+    private static int getSize(final CtTypeReference<?> type) {
+        if (type == null || type instanceof CtArrayTypeReference)
+            return Short.BYTES;
+
+        switch (type.getSimpleName()) {
+            case "boolean":
+            case "byte":
+                return Byte.BYTES;
+            case "int":
+                return Integer.BYTES;
+            default:
+                return Short.BYTES;
+        }
+    }
+
+    /**
+     * Creates a short literal with the given value.
+     *
+     * @param  value value of the literal
+     * @return       a {@link CtLiteral} instance
+     */
+    private CtExpression<?> createShortLiteral(final int value) {
+        final CtLiteral<Integer> literal = getFactory().createLiteral(value);
+        literal.addTypeCast(getFactory().Type().shortPrimitiveType());
+        return literal;
+    }
+}
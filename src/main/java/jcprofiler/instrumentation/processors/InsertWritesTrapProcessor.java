@@ -0,0 +1,37 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.instrumentation.processors;
+
+import jcprofiler.args.Args;
+
+import spoon.reflect.declaration.CtExecutable;
+
+/**
+ * Class for performance trap insertion in writes mode
+ * <br>
+ * Applicable to instances of {@link CtExecutable}.
+ */
+public class InsertWritesTrapProcessor extends AbstractInsertTrapProcessor<CtExecutable<?>> {
+    /**
+     * Constructs the {@link InsertWritesTrapProcessor} class.
+     *
+     * @param args object with commandline arguments
+     */
+    public InsertWritesTrapProcessor(final Args args) {
+        super(args);
+    }
+
+    /**
+     * Inserts traps into the given {@link CtExecutable} instance.
+     *
+     * @param executable an executable instance
+     */
+    @Override
+    public void process(final CtExecutable<?> executable) {
+        super.process(executable);
+
+        // the number of writes and written bytes for each trap
+        setPMArrayLength(trapCount * 2 * Short.BYTES);
+    }
+}
@@ -0,0 +1,68 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.CardManager;
+
+import jcprofiler.util.enums.ClockSource;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+/**
+ * This class represents a source of durations of APDU transmissions used in time mode.
+ */
+public abstract class AbstractClock {
+    /**
+     * A card connection instance
+     */
+    protected final CardManager cardManager;
+
+    /**
+     * Constructs the {@link AbstractClock} class.
+     *
+     * @param cardManager a card connection instance
+     */
+    protected AbstractClock(final CardManager cardManager) {
+        this.cardManager = cardManager;
+    }
+
+    /**
+     * Factory method
+     *
+     * @param  clockSource selected clock source
+     * @param  cardManager a card connection instance
+     * @return             constructed {@link AbstractClock} object
+     */
+    public static AbstractClock create(final ClockSource clockSource, final CardManager cardManager) {
+        switch (clockSource) {
+            case wall:
+                return new WallClock(cardManager);
+            case threadCpu:
+                return new ThreadCpuClock(cardManager);
+            case bytecode:
+                return new BytecodeClock(cardManager);
+            default:
+                throw new RuntimeException("Unreachable statement reached!");
+        }
+    }
+
+    /**
+     * Transmits the given APDU and measures its duration.
+     *
+     * @param  apdu APDU to be transmitted
+     * @return      response APDU
+     *
+     * @throws CardException if the card connection failed
+     */
+    public abstract ResponseAPDU transmit(final CommandAPDU apdu) throws CardException;
+
+    /**
+     * Returns the duration of the last APDU transmitted by {@link #transmit(CommandAPDU)}.
+     *
+     * @return duration in nanoseconds or the cost in other units specific to the clock
+     */
+    public abstract long getLastTransmitTimeNano();
+}
@@ -4,25 +4,22 @@
 
 package jcprofiler.profiling;
 
-import com.github.curiousoddman.rgxgen.RgxGen;
-
 import cz.muni.fi.crocs.rcard.client.CardManager;
 import cz.muni.fi.crocs.rcard.client.Util;
 
 import jcprofiler.args.Args;
 import jcprofiler.util.enums.InputDivision;
+import jcprofiler.util.InstrumentationManifest;
 import jcprofiler.util.JCProfilerUtil;
 import jcprofiler.util.enums.Mode;
 
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.lang3.time.DurationFormatUtils;
-import org.apache.commons.math3.util.Pair;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import spoon.reflect.CtModel;
-import spoon.reflect.code.CtFieldAccess;
 import spoon.reflect.code.CtLiteral;
 import spoon.reflect.declaration.*;
 
@@ -31,11 +28,9 @@ import javax.smartcardio.CommandAPDU;
 import javax.smartcardio.ResponseAPDU;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * This class represents the profiling stage.
@@ -149,6 +144,8 @@ public abstract class AbstractProfiler {
                 return new MemoryProfiler(args, cardManager, model);
             case time:
                 return new TimeProfiler(args, cardManager, model);
+            case writes:
+                return new WritesProfiler(args, cardManager, model);
             default:
                 throw new RuntimeException("Unreachable statement reached!");
         }
@@ -164,46 +161,46 @@ public abstract class AbstractProfiler {
         return trapID == PERF_START ? "PERF_START" : trapNameMap.get(trapID);
     }
 
+    /**
+     * Returns the value of the given constant set in the PM class during instrumentation.
+     *
+     * @param  fieldName    name of the constant
+     * @param  defaultValue value returned if the PM class does not contain the constant
+     * @return              value of the constant or the default value
+     */
+    protected int getPMConstant(final String fieldName, final int defaultValue) {
+        final CtField<?> field = PM.getField(fieldName);
+        if (field == null)
+            return defaultValue;
+
+        final CtLiteral<Number> evaluated = field.getDefaultExpression().partiallyEvaluate();
+        return evaluated.getValue().intValue();
+    }
+
     /**
      * Populates the {@link #trapNameMap} map.
      *
      * @throws RuntimeException if the extraction of traps from profiled executable failed
      */
     private void buildPerfMapping() {
-        log.info("Looking for traps in the {}.", profiledExecutableSignature);
-        final String trapNamePrefix = JCProfilerUtil.getTrapNamePrefix(profiledExecutable);
-
-        // get traps form profiledExecutable
-        final List<CtField<Short>> traps = profiledExecutable.filterChildren(CtFieldAccess.class::isInstance)
-                .map((CtFieldAccess<Short> fa) -> fa.getVariable().getFieldDeclaration())
-                .filterChildren((CtField<Short> f) -> f.getSimpleName().startsWith(trapNamePrefix)).list();
-        if (traps.isEmpty())
-            throw new RuntimeException(String.format(
-                    "Extraction of traps from %s failed!", profiledExecutableSignature));
-
-        // get given traps from PMC
-        final List<CtField<Short>> pmTraps = PMC.getElements(
-                (CtField<Short> f) -> f.getSimpleName().startsWith(trapNamePrefix));
-        if (pmTraps.isEmpty())
-            throw new RuntimeException("Extraction of traps from PMC failed!");
-
-        // check that the trap lists are the same
-        if (traps.size() != pmTraps.size() || !new HashSet<>(traps).containsAll(pmTraps))
-            throw new RuntimeException(String.format(
-                    "The profiled method and the PMC class contain different traps!%n" +
-                    "Please, reinstrument the given sources!"));
-
-        // populate the map
-        for (final CtField<Short> f : traps) {
-            final CtLiteral<Number> evaluated = f.getDefaultExpression().partiallyEvaluate();
-            trapNameMap.put(evaluated.getValue().shortValue(), f.getSimpleName());
-            log.info("Found {}.", f.getSimpleName());
+        // the traps were already extracted during instrumentation
+        final InstrumentationManifest manifest = InstrumentationManifest.get(args);
+        if (manifest.getExecutable().equals(profiledExecutableSignature)) {
+            trapNameMap.putAll(manifest.getTraps());
+            return;
         }
+
+        log.info("Looking for traps in the {}.", profiledExecutableSignature);
+        trapNameMap.putAll(JCProfilerUtil.getTraps(profiledExecutable, PMC));
     }
 
     /**
      * Generates the vector of inputs, either from a regular expression or from given text file.
      * Optionally, divides the input according to selected {@link InputDivision}.
+     * See {@link InputGenerator} for details.
+     * <br><br>
+     * The inputs are stored to the {@link InputCorpus} in the working directory and reused by later runs
+     * with the same input source, division, size and {@link Args#seed}, if given.
      *
      * @param  size             number of inputs to be generated
      *
@@ -213,72 +210,21 @@ public abstract class AbstractProfiler {
         if (measuredDuringInstallation)
             throw new RuntimeException("Already measured constructors do not support inputs!");
 
-        final Random rdn = new Random();
-        final List<String> undividedInputs = new ArrayList<>();
-
-        // regex
-        if (args.dataRegex != null) {
-            log.info("Generating inputs from regular expression {}.", args.dataRegex);
-            final RgxGen rgxGen = RgxGen.parse(args.dataRegex);
-
-            for (int i = 0; i < size * 100; i++) {
-                final String input = rgxGen.generate(rdn);
-                if (!JCProfilerUtil.isHexString(input))
-                    throw new RuntimeException(String.format(
-                            "Input %s generated from the %s regular expression not a valid hexstring!",
-                            input, args.dataRegex));
-                undividedInputs.add(input);
-            }
-        } else {
-            // file
-            log.info("Choosing inputs from text file {}.", args.dataFile);
-
-            try {
-                final List<String> lines = Files.readAllLines(args.dataFile);
-                for (int i = 1; i <= lines.size(); i++) {
-                    final String line = lines.get(i - 1);
-                    if (!JCProfilerUtil.isHexString(line))
-                        throw new RuntimeException(String.format(
-                                "Input %s on line %d in file %s is not a valid hexstring!", line, i, args.dataFile));
-                }
-
-                for (int i = 0; i < size * 100; i++)
-                    undividedInputs.add(lines.get(rdn.nextInt(lines.size())));
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        // reuse the inputs from the previous run if possible
+        final Path corpusPath = args.workDir.resolve(InputCorpus.FILE_NAME);
+        final InputCorpus corpus = new InputCorpus(args, size);
+        final List<String> corpusInputs = corpus.load(corpusPath, args.seed);
+        if (corpusInputs != null) {
+            inputs.addAll(corpusInputs);
+            return;
         }
 
-        // divide the input
-        int oddSize = size & 0x1;
-        switch (args.inputDivision) {
-            case effectiveBitLength:
-                // strings with more leading zero bits will be sorted first
-                undividedInputs.sort(String::compareTo);
-
-                int mid = size / 2;
-                inputs.addAll(undividedInputs.subList(0, mid));
-                inputs.addAll(undividedInputs.subList(undividedInputs.size() - mid - oddSize, undividedInputs.size()));
-                break;
-
-            case hammingWeight:
-                final List<String> hwsorted = undividedInputs.stream()
-                        .map(s -> new Pair<>(JCProfilerUtil.getHexStringBitCount(s), s))
-                        .sorted(Comparator.comparing(Pair::getKey))
-                        .map(Pair::getValue).collect(Collectors.toList());
-                inputs.addAll(hwsorted.subList(0, size / 2));
-                inputs.addAll(hwsorted.subList(hwsorted.size() - size / 2 - oddSize, hwsorted.size()));
-                break;
-
-            case none:
-                inputs.addAll(undividedInputs.subList(0, size));
-                break;
-            default:
-                throw new RuntimeException("Unreachable statement reached!");
-        }
+        final long seed = args.seed != null ? args.seed : new Random().nextLong();
+        log.info("Generating inputs with seed {}.", seed);
 
-        if (args.inputDivision != InputDivision.none)
-            log.info("Inputs divided according to the {}.", args.inputDivision.prettyPrint());
+        final List<String> generatedInputs = new InputGenerator(args).generate(size, new Random(seed));
+        corpus.store(corpusPath, seed, generatedInputs);
+        inputs.addAll(generatedInputs);
     }
 
     /**
@@ -305,6 +251,18 @@ public abstract class AbstractProfiler {
      * @throws RuntimeException if the applet reset failed
      */
     protected void resetApplet() throws CardException {
+        resetApplet(cardManager);
+    }
+
+    /**
+     * Resets the applet using the given card connection if {@link Args#resetIns} is defined.
+     *
+     * @param  cardManager applet connection instance
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the applet reset failed
+     */
+    protected void resetApplet(final CardManager cardManager) throws CardException {
         if (args.resetIns == null)
             return;
 
@@ -381,9 +339,10 @@ public abstract class AbstractProfiler {
         // store the measurements
         final Path csv = args.workDir.resolve("measurements.csv");
         try (final CSVPrinter printer = new CSVPrinter(new FileWriter(csv.toFile()), JCProfilerUtil.getCSVFormat())) {
-            printer.printComment("mode,type#signature,ATR,elapsedTime,APDUHeader,inputType:value,inputDivision");
+            printer.printComment(
+                    "mode,type#signature,ATR,elapsedTime,APDUHeader,inputType:value,inputDivision,clockSource");
             printer.printRecord(args.mode, profiledExecutableSignature, atr, elapsedTime, apduHeader, dataSource,
-                    args.inputDivision);
+                    args.inputDivision, args.clockSource);
 
             printer.printComment("input1,input2,input3,...");
             printer.printRecord(inputs);
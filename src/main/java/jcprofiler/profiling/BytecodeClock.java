@@ -0,0 +1,51 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.CardManager;
+
+import jcprofiler.installation.BytecodeCounter;
+import jcprofiler.installation.BytecodeCountingClassLoader;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+/**
+ * Clock measuring the number of bytecodes executed by the simulated applet during APDU transmissions.
+ * <br><br>
+ * The applet must be loaded by the {@link BytecodeCountingClassLoader} and simulated in the measuring thread.
+ * The resulting costs are deterministic and do not depend on the load of the machine.
+ */
+public class BytecodeClock extends AbstractClock {
+    private long lastTransmitCost;
+
+    /**
+     * Constructs the {@link BytecodeClock} class.
+     *
+     * @param cardManager a card connection instance
+     */
+    public BytecodeClock(final CardManager cardManager) {
+        super(cardManager);
+    }
+
+    @Override
+    public ResponseAPDU transmit(final CommandAPDU apdu) throws CardException {
+        final long start = BytecodeCounter.get();
+        final ResponseAPDU response = cardManager.transmit(apdu);
+        lastTransmitCost = BytecodeCounter.get() - start;
+        return response;
+    }
+
+    /**
+     * Returns the number of bytecodes executed during the last APDU transmitted by
+     * {@link #transmit(CommandAPDU)}.
+     *
+     * @return number of executed bytecodes
+     */
+    @Override
+    public long getLastTransmitTimeNano() {
+        return lastTransmitCost;
+    }
+}
@@ -0,0 +1,236 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import jcprofiler.util.JCProfilerUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped input file with an index of line offsets that allows random access to its lines
+ * without loading the file into memory.
+ * <br><br>
+ * The index is built once and cached next to the input file in a file with the {@link #INDEX_SUFFIX} suffix.
+ * It is rebuilt whenever the size or the modification time of the input file changes.  Lines are validated
+ * lazily when they are read.
+ */
+public class DataFileIndex {
+    /**
+     * Suffix of the cached index file
+     */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4A435058; // JCPX
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + 3 * Long.BYTES;
+
+    // default size of a single mapped segment of the input file
+    private static final int SEGMENT_BITS = 30;
+
+    private final Path dataFile;
+    private final int segmentBits;
+    private final long segmentMask;
+    private final long fileSize;
+    private final MappedByteBuffer[] segments;
+    private final LongBuffer offsets;
+    private final int lineCount;
+
+    private static final Logger log = LoggerFactory.getLogger(DataFileIndex.class);
+
+    /**
+     * Constructs the {@link DataFileIndex} class.
+     *
+     * @param  dataFile path to the input file
+     *
+     * @throws RuntimeException if the input file or its index could not be read or written
+     */
+    public DataFileIndex(final Path dataFile) {
+        this(dataFile, SEGMENT_BITS);
+    }
+
+    /**
+     * Constructs the {@link DataFileIndex} class that maps the input file in segments of the given size.
+     *
+     * @param  dataFile    path to the input file
+     * @param  segmentBits base-2 logarithm of the size of a single mapped segment in bytes
+     *
+     * @throws RuntimeException if the input file or its index could not be read or written
+     */
+    DataFileIndex(final Path dataFile, final int segmentBits) {
+        this.dataFile = dataFile;
+        this.segmentBits = segmentBits;
+        segmentMask = (1L << segmentBits) - 1;
+
+        try {
+            fileSize = Files.size(dataFile);
+            final long lastModified = Files.getLastModifiedTime(dataFile).toMillis();
+
+            // map the input file
+            segments = new MappedByteBuffer[(int) ((fileSize + segmentMask) >>> segmentBits)];
+            try (final FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+                for (int i = 0; i < segments.length; i++) {
+                    final long position = (long) i << segmentBits;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(segmentMask + 1, fileSize - position));
+                }
+            }
+
+            // load or build the index
+            Path indexFile = dataFile.resolveSibling(dataFile.getFileName() + INDEX_SUFFIX);
+            if (!isIndexValid(indexFile, lastModified)) {
+                try {
+                    buildIndex(indexFile, lastModified);
+                } catch (IOException e) {
+                    log.warn("Cannot store the index next to {}, using a temporary file instead.", dataFile);
+                    indexFile = Files.createTempFile("jcprofiler", INDEX_SUFFIX);
+                    indexFile.toFile().deleteOnExit();
+                    buildIndex(indexFile, lastModified);
+                }
+            }
+
+            try (final FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                final long indexSize = channel.size() - HEADER_SIZE;
+                if (indexSize > Integer.MAX_VALUE)
+                    throw new UnsupportedOperationException("The input file has too many lines: " + dataFile);
+
+                offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexSize).asLongBuffer();
+                lineCount = offsets.capacity();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (lineCount == 0)
+            throw new RuntimeException(String.format("The input file %s is empty!", dataFile));
+        log.info("Indexed {} lines of {}.", lineCount, dataFile);
+    }
+
+    /**
+     * Returns the number of lines of the input file.
+     *
+     * @return number of lines
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the given line of the input file.  This method is thread-safe.
+     *
+     * @param  idx index of the line starting from zero
+     * @return     contents of the line without the line terminator
+     *
+     * @throws RuntimeException if the line is not a valid hexstring
+     */
+    public String getLine(final int idx) {
+        if (idx < 0 || idx >= lineCount)
+            throw new IndexOutOfBoundsException("Unexpected line index: " + idx);
+
+        final long start = offsets.get(idx);
+        long end = idx + 1 < lineCount ? offsets.get(idx + 1) - 1 : fileSize;
+
+        // strip the line terminator
+        if (end > start && end == fileSize && getByte(end - 1) == '\n')
+            end--;
+        if (end > start && getByte(end - 1) == '\r')
+            end--;
+
+        if (end - start > Integer.MAX_VALUE)
+            throw new RuntimeException(String.format("Line %d in file %s is too long!", idx + 1, dataFile));
+
+        final byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = getByte(start + i);
+
+        final String line = new String(bytes, StandardCharsets.US_ASCII);
+        if (!JCProfilerUtil.isHexString(line))
+            throw new RuntimeException(String.format(
+                    "Input %s on line %d in file %s is not a valid hexstring!", line, idx + 1, dataFile));
+        return line;
+    }
+
+    /**
+     * Returns a byte of the input file at the given position.
+     *
+     * @param  position position in the input file
+     * @return          byte at the given position
+     */
+    private byte getByte(final long position) {
+        return segments[(int) (position >>> segmentBits)].get((int) (position & segmentMask));
+    }
+
+    /**
+     * Checks that the given index exists and corresponds to the current version of the input file.
+     *
+     * @param  indexFile    path to the index
+     * @param  lastModified modification time of the input file
+     * @return              true if yes, otherwise false
+     *
+     * @throws IOException if the index could not be read
+     */
+    private boolean isIndexValid(final Path indexFile, final long lastModified) throws IOException {
+        if (!Files.isRegularFile(indexFile) || Files.size(indexFile) < HEADER_SIZE)
+            return false;
+
+        try (final DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            return dis.readInt() == MAGIC && dis.readShort() == VERSION && dis.readLong() == fileSize &&
+                   dis.readLong() == lastModified &&
+                   dis.readLong() == (Files.size(indexFile) - HEADER_SIZE) / Long.BYTES;
+        }
+    }
+
+    /**
+     * Scans the input file and stores offsets of all lines to the given index.
+     *
+     * @param  indexFile    path to the index
+     * @param  lastModified modification time of the input file
+     *
+     * @throws IOException if the index could not be written
+     */
+    private void buildIndex(final Path indexFile, final long lastModified) throws IOException {
+        log.info("Building index of {}.", dataFile);
+
+        final Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        long lineCount = 0;
+        try (final DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            // the line count is filled in later
+            dos.writeInt(MAGIC);
+            dos.writeShort(VERSION);
+            dos.writeLong(fileSize);
+            dos.writeLong(lastModified);
+            dos.writeLong(0);
+
+            boolean lineStart = true;
+            for (long position = 0; position < fileSize; position++) {
+                if (lineStart) {
+                    dos.writeLong(position);
+                    lineCount++;
+                }
+                lineStart = getByte(position) == '\n';
+            }
+        }
+
+        try (final FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+            final ByteBuffer count = ByteBuffer.allocate(Long.BYTES).putLong(lineCount);
+            count.flip();
+            channel.write(count, HEADER_SIZE - Long.BYTES);
+        }
+
+        Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
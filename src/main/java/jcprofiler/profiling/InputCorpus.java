@@ -0,0 +1,212 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.Util;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.enums.InputDivision;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary corpus of generated inputs stored in the working directory so that repeated profiling runs
+ * can reuse exactly the same inputs without generating them again.
+ * <br><br>
+ * The corpus is keyed by the input source (regular expression or path, size and modification time
+ * of the input file),
+ * the {@link InputDivision}, the number of inputs and the seed.  It starts with a header containing the key
+ * followed by the inputs, each stored as a length-prefixed byte array.
+ */
+public class InputCorpus {
+    /**
+     * Default file name of the corpus
+     */
+    public static final String FILE_NAME = "inputs.corpus";
+
+    private static final int MAGIC = 0x4A435049; // JCPI
+    private static final short VERSION = 1;
+
+    private final String source;
+    private final String fingerprint;
+    private final InputDivision inputDivision;
+    private final int size;
+
+    private static final Logger log = LoggerFactory.getLogger(InputCorpus.class);
+
+    /**
+     * Constructs the {@link InputCorpus} class.
+     *
+     * @param  args object with commandline arguments
+     * @param  size number of inputs
+     *
+     * @throws RuntimeException if the input file could not be read
+     */
+    public InputCorpus(final Args args, final int size) {
+        this.inputDivision = args.inputDivision;
+        this.size = size;
+
+        if (args.dataRegex != null) {
+            source = "regex:" + args.dataRegex;
+            fingerprint = "";
+            return;
+        }
+
+        // the input file may be too large to be hashed on every run
+        source = "file:" + args.dataFile.toAbsolutePath();
+        try {
+            fingerprint = Files.size(args.dataFile) + ":" + Files.getLastModifiedTime(args.dataFile).toMillis();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the input source, i.e. the regular expression or the path to the input file.
+     *
+     * @return input source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the fingerprint of the input file, i.e. its size and modification time.
+     *
+     * @return fingerprint or an empty string if the inputs are generated from a regular expression
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Loads the inputs from the corpus if it exists and matches the current key.
+     *
+     * @param  path path to the corpus
+     * @param  seed required seed or {@code null} if any seed is acceptable
+     * @return      list of inputs or {@code null} if the corpus does not exist or does not match
+     *
+     * @throws RuntimeException if the corpus could not be read
+     */
+    public List<String> load(final Path path, final Long seed) {
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                log.warn("{} is not a valid input corpus, it will be overwritten.", path);
+                return null;
+            }
+
+            final String corpusSource = getString(buffer);
+            final String corpusFingerprint = getString(buffer);
+            final String corpusDivision = getString(buffer);
+            final int corpusSize = buffer.getInt();
+            final long corpusSeed = buffer.getLong();
+            if (!source.equals(corpusSource) || !fingerprint.equals(corpusFingerprint) ||
+                    !inputDivision.name().equals(corpusDivision) || size != corpusSize ||
+                    (seed != null && seed != corpusSeed)) {
+                log.info("Input corpus {} was generated for different inputs, it will be regenerated.", path);
+                return null;
+            }
+
+            final List<String> inputs = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final byte[] input = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(input);
+                inputs.add(Util.bytesToHex(input));
+            }
+
+            log.info("Loaded {} inputs with seed {} from {}.", size, corpusSeed, path);
+            return inputs;
+        } catch (BufferUnderflowException e) {
+            log.warn("Input corpus {} is truncated, it will be regenerated.", path);
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stores the given inputs to the corpus.  Any existing corpus is overwritten.
+     *
+     * @param  path   path to the corpus
+     * @param  seed   seed the inputs were generated with
+     * @param  inputs list of inputs
+     *
+     * @throws RuntimeException if the corpus could not be written
+     */
+    public void store(final Path path, final long seed, final List<String> inputs) {
+        if (inputs.size() != size)
+            throw new RuntimeException(String.format(
+                    "Unexpected number of inputs! Expected: %d Actual: %d", size, inputs.size()));
+
+        try (final DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            dos.writeInt(MAGIC);
+            dos.writeShort(VERSION);
+            putString(dos, source);
+            putString(dos, fingerprint);
+            putString(dos, inputDivision.name());
+            dos.writeInt(size);
+            dos.writeLong(seed);
+
+            for (final String input : inputs) {
+                final byte[] bytes = Util.hexStringToByteArray(input);
+                if (bytes.length > 0xFFFF)
+                    throw new RuntimeException("Input is too long to be stored: " + input);
+                dos.writeShort(bytes.length);
+                dos.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        log.info("Inputs stored to {}.", path);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     *
+     * @param  buffer input buffer
+     * @return        read string
+     */
+    private static String getString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     *
+     * @param  dos output stream
+     * @param  str string to be written
+     *
+     * @throws IOException if the string could not be written
+     */
+    private static void putString(final DataOutputStream dos, final String str) throws IOException {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+}
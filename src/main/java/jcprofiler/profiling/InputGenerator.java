@@ -0,0 +1,252 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import com.github.curiousoddman.rgxgen.RgxGen;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.enums.InputDivision;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Streaming generator of profiling inputs, either from a regular expression or from given text file.
+ * <br><br>
+ * Candidates are generated in independent chunks, possibly in parallel, each with its own {@link Random}
+ * seeded from the given one.  When the inputs are divided according to {@link InputDivision}, only the smallest
+ * and the largest candidates are kept in bounded heaps instead of sorting all of them.
+ */
+public class InputGenerator {
+    /**
+     * Number of candidates generated for every input when the inputs are divided
+     */
+    public static final int CANDIDATE_FACTOR = 100;
+
+    // number of candidates generated by a single task
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final Args args;
+    private final DataFileIndex dataFileIndex;
+
+    private static final Logger log = LoggerFactory.getLogger(InputGenerator.class);
+
+    /**
+     * Constructs the {@link InputGenerator} class.
+     *
+     * @param  args object with commandline arguments
+     *
+     * @throws RuntimeException if the input file could not be read
+     */
+    public InputGenerator(final Args args) {
+        this.args = args;
+
+        // regex
+        if (args.dataRegex != null) {
+            log.info("Generating inputs from regular expression {}.", args.dataRegex);
+            dataFileIndex = null;
+            return;
+        }
+
+        // file
+        log.info("Choosing inputs from text file {}.", args.dataFile);
+        dataFileIndex = new DataFileIndex(args.dataFile);
+    }
+
+    /**
+     * Generates the given number of inputs.  Optionally, divides them according to selected {@link InputDivision}
+     * so that the first half contains the smallest and the second half the largest candidates.
+     *
+     * @param  size   number of inputs to be generated
+     * @param  random source of seeds for the generation
+     * @return        list of generated inputs
+     *
+     * @throws RuntimeException if the generated inputs are not valid
+     */
+    public List<String> generate(final int size, final Random random) {
+        final Comparator<String> comparator = getComparator();
+        final long candidateCount = comparator == null ? size : (long) size * CANDIDATE_FACTOR;
+        final int chunkCount = (int) ((candidateCount + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final long[] seeds = random.longs(chunkCount).toArray();
+
+        final IntStream chunks = IntStream.range(0, chunkCount).parallel();
+        final List<String> result;
+        if (comparator == null) {
+            // the order of chunks is preserved
+            result = chunks.mapToObj(i -> generateChunk(getChunkSize(i, candidateCount), seeds[i]))
+                    .flatMap(List::stream).collect(Collectors.toList());
+        } else {
+            result = chunks.mapToObj(i -> {
+                final Selection selection = new Selection(size / 2, size / 2 + (size & 0x1), comparator);
+                generateChunk(getChunkSize(i, candidateCount), seeds[i]).forEach(selection::offer);
+                return selection;
+            }).reduce(Selection::merge).orElseThrow(() -> new RuntimeException("No inputs were generated!"))
+                    .toList();
+
+            log.info("Inputs divided according to the {}.", args.inputDivision.prettyPrint());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the comparator used for the selected {@link InputDivision}.
+     *
+     * @return comparator or {@code null} if the inputs are not divided
+     */
+    Comparator<String> getComparator() {
+        switch (args.inputDivision) {
+            case effectiveBitLength:
+                // strings with more leading zero bits will be sorted first
+                return String::compareTo;
+            case hammingWeight:
+                // ties are broken by the input itself, so the selection does not depend on the order of chunks
+                return Comparator.comparingInt(JCProfilerUtil::getHexStringBitCount)
+                        .thenComparing(Comparator.naturalOrder());
+            case none:
+                return null;
+            default:
+                throw new RuntimeException("Unreachable statement reached!");
+        }
+    }
+
+    /**
+     * Returns the number of candidates generated in the given chunk.
+     *
+     * @param  chunk          index of the chunk
+     * @param  candidateCount number of all candidates
+     * @return                number of candidates in the chunk
+     */
+    private static int getChunkSize(final int chunk, final long candidateCount) {
+        return (int) Math.min(CHUNK_SIZE, candidateCount - (long) chunk * CHUNK_SIZE);
+    }
+
+    /**
+     * Generates a single chunk of candidates.
+     *
+     * @param  count number of candidates
+     * @param  seed  seed of the {@link Random} instance used by this chunk
+     * @return       list of candidates
+     *
+     * @throws RuntimeException if a generated input is not valid
+     */
+    private List<String> generateChunk(final int count, final long seed) {
+        final Random rdn = new Random(seed);
+        final List<String> candidates = new ArrayList<>(count);
+
+        // file, lines are validated when they are read
+        if (dataFileIndex != null) {
+            for (int i = 0; i < count; i++)
+                candidates.add(dataFileIndex.getLine(rdn.nextInt(dataFileIndex.getLineCount())));
+            return candidates;
+        }
+
+        // regex, each chunk uses its own instance so that they can run in parallel
+        final RgxGen rgxGen = RgxGen.parse(args.dataRegex);
+        for (int i = 0; i < count; i++) {
+            final String input = rgxGen.generate(rdn);
+            if (!JCProfilerUtil.isHexString(input))
+                throw new RuntimeException(String.format(
+                        "Input %s generated from the %s regular expression not a valid hexstring!",
+                        input, args.dataRegex));
+            candidates.add(input);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Bounded selection of the smallest and the largest candidates
+     */
+    static class Selection {
+        private final int lowCapacity;
+        private final int highCapacity;
+        private final Comparator<String> comparator;
+        private final Comparator<String> reversedComparator;
+
+        // the largest of the smallest candidates is on the top
+        private final PriorityQueue<String> low;
+        // the smallest of the largest candidates is on the top
+        private final PriorityQueue<String> high;
+
+        /**
+         * Constructs the {@link Selection} class.
+         *
+         * @param lowCapacity  number of the smallest candidates to be kept
+         * @param highCapacity number of the largest candidates to be kept
+         * @param comparator   comparator of candidates
+         */
+        Selection(final int lowCapacity, final int highCapacity, final Comparator<String> comparator) {
+            this.lowCapacity = lowCapacity;
+            this.highCapacity = highCapacity;
+            this.comparator = comparator;
+            reversedComparator = comparator.reversed();
+            low = new PriorityQueue<>(lowCapacity + 1, reversedComparator);
+            high = new PriorityQueue<>(highCapacity + 1, comparator);
+        }
+
+        /**
+         * Keeps the given candidate if it is one of the smallest or the largest candidates seen so far.
+         *
+         * @param candidate input candidate
+         */
+        void offer(final String candidate) {
+            offer(low, lowCapacity, candidate, reversedComparator);
+            offer(high, highCapacity, candidate, comparator);
+        }
+
+        /**
+         * Adds the candidate to the given heap if it is not full or the candidate is better than its top.
+         *
+         * @param heap      bounded heap
+         * @param capacity  capacity of the heap
+         * @param candidate input candidate
+         * @param heapOrder order of the heap
+         */
+        private static void offer(final PriorityQueue<String> heap, final int capacity, final String candidate,
+                                  final Comparator<String> heapOrder) {
+            if (capacity == 0)
+                return;
+
+            if (heap.size() < capacity) {
+                heap.add(candidate);
+            } else if (heapOrder.compare(candidate, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        /**
+         * Merges the other selection into this one.
+         *
+         * @param  other selection to be merged
+         * @return       this selection
+         */
+        Selection merge(final Selection other) {
+            other.low.forEach(c -> offer(low, lowCapacity, c, reversedComparator));
+            other.high.forEach(c -> offer(high, highCapacity, c, comparator));
+            return this;
+        }
+
+        /**
+         * Returns the sorted smallest candidates followed by the sorted largest candidates.
+         *
+         * @return list of selected inputs
+         */
+        List<String> toList() {
+            final List<String> lowList = new ArrayList<>(low);
+            final List<String> highList = new ArrayList<>(high);
+            lowList.sort(comparator);
+            highList.sort(comparator);
+
+            lowList.addAll(highList);
+            return lowList;
+        }
+    }
+}
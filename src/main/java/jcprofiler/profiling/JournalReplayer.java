@@ -0,0 +1,92 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.CardManager;
+import cz.muni.fi.crocs.rcard.client.Util;
+
+import jcprofiler.args.Args;
+import jcprofiler.installation.CardJournal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.ResponseAPDU;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recorded {@link CardJournal} against the given card connection, usually a jCardSim simulator,
+ * and checks that every command still returns the recorded status word.  As the performance traps are reported
+ * as status words, this detects control-flow changes of new applet builds without a physical card.
+ */
+public class JournalReplayer {
+    // number of mismatches that are reported in detail
+    private static final int REPORTED_MISMATCHES = 10;
+
+    private final Args args;
+    private final CardManager cardManager;
+
+    private static final Logger log = LoggerFactory.getLogger(JournalReplayer.class);
+
+    /**
+     * Constructs the {@link JournalReplayer} class.
+     *
+     * @param args        object with commandline arguments
+     * @param cardManager applet connection instance
+     */
+    public JournalReplayer(final Args args, final CardManager cardManager) {
+        this.args = args;
+        this.cardManager = cardManager;
+    }
+
+    /**
+     * Replays the {@link Args#replayJournal} journal.
+     *
+     * @throws RuntimeException if the journal could not be read, the card connection failed
+     *                          or some status words do not match
+     */
+    public void replay() {
+        long entryCount = 0;
+        long mismatchCount = 0;
+        long recordedTimeNano = 0;
+        long replayedTimeNano = 0;
+
+        try (final CardJournal.Reader reader = new CardJournal.Reader(args.replayJournal)) {
+            log.info("Replaying card journal {} recorded on {}.", args.replayJournal,
+                    new Date(reader.getStartTimeMillis()));
+
+            CardJournal.Entry entry;
+            while ((entry = reader.next()) != null) {
+                entryCount++;
+                final ResponseAPDU response = cardManager.transmit(entry.command);
+                recordedTimeNano += entry.durationNano;
+                replayedTimeNano += cardManager.getLastTransmitTimeNano();
+
+                final int recordedSW = entry.response.getSW();
+                if (response.getSW() == recordedSW)
+                    continue;
+
+                if (++mismatchCount <= REPORTED_MISMATCHES)
+                    log.warn("APDU #{} {} returned SW {} instead of the recorded SW {}.", entryCount,
+                            Util.bytesToHex(entry.command.getBytes()), Integer.toHexString(response.getSW()),
+                            Integer.toHexString(recordedSW));
+            }
+
+            cardManager.disconnect(true);
+        } catch (CardException | IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        log.info("Replayed {} APDUs, recorded transmission time {} ms, replayed transmission time {} ms.",
+                entryCount, TimeUnit.NANOSECONDS.toMillis(recordedTimeNano),
+                TimeUnit.NANOSECONDS.toMillis(replayedTimeNano));
+        if (mismatchCount != 0)
+            throw new RuntimeException(String.format(
+                    "%d/%d replayed APDUs returned a different SW than recorded!", mismatchCount, entryCount));
+        log.info("All status words match the card journal.");
+    }
+}
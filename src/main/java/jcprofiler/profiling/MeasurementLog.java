@@ -0,0 +1,352 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.MeasurementStore;
+import jcprofiler.util.enums.Stage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Append-only binary log of measured time profiling rounds that makes it possible to resume
+ * an interrupted profiling session.
+ * <br><br>
+ * The log starts with a header containing the profiled executable signature, the number of rounds,
+ * trap names and inputs.  It is followed by fixed-size records, each consisting of the round number,
+ * a bitmap of unreachable traps, a bitmap of traps that were not sampled and a measurement for every trap.
+ * The inputs are stored as length-prefixed UTF-8 byte arrays as they may exceed the 64 KiB limit
+ * of {@link DataOutputStream#writeUTF(String)}.
+ */
+public class MeasurementLog implements Closeable {
+    /**
+     * Default file name of the measurement log
+     */
+    public static final String FILE_NAME = "measurements.log";
+
+    /**
+     * Number of rounds between two synchronisations of the log with the storage device
+     */
+    private static final int CHECKPOINT_INTERVAL = 100;
+
+    private static final int MAGIC = 0x4A43504C; // JCPL
+    private static final short VERSION = 3;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int trapCount;
+    private final int recordSize;
+    private int uncheckedRounds = 0;
+
+    private static final Logger log = LoggerFactory.getLogger(MeasurementLog.class);
+
+    /**
+     * Constructs the {@link MeasurementLog} class.
+     *
+     * @param path      path to the log
+     * @param channel   channel opened for appending to the log
+     * @param trapCount number of traps in each record
+     */
+    private MeasurementLog(final Path path, final FileChannel channel, final int trapCount) {
+        this.path = path;
+        this.channel = channel;
+        this.trapCount = trapCount;
+        recordSize = Integer.BYTES + 2 * getBitmapLength(trapCount) + trapCount * Long.BYTES;
+    }
+
+    /**
+     * Creates a new log and writes its header.  Any existing log is overwritten.
+     *
+     * @param  path        path to the log
+     * @param  signature   signature of the profiled executable
+     * @param  repeatCount number of profiling rounds
+     * @param  trapNames   names of the performance traps in the order of the measurements
+     * @param  inputs      list of inputs
+     * @return             a {@link MeasurementLog} instance opened for appending
+     *
+     * @throws IOException if the log could not be written
+     */
+    public static MeasurementLog create(final Path path, final String signature, final int repeatCount,
+                                        final List<String> trapNames, final List<String> inputs)
+            throws IOException {
+        log.info("Creating measurement log {}.", path);
+
+        try (final DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            dos.writeInt(MAGIC);
+            dos.writeShort(VERSION);
+            dos.writeUTF(signature);
+            dos.writeInt(repeatCount);
+
+            dos.writeInt(trapNames.size());
+            for (final String trapName : trapNames)
+                dos.writeUTF(trapName);
+
+            dos.writeInt(inputs.size());
+            for (final String input : inputs)
+                putString(dos, input);
+        }
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channel.force(/* metadata */ true);
+        return new MeasurementLog(path, channel, trapNames.size());
+    }
+
+    /**
+     * Loads an existing log, restores the inputs and the measurements of already completed rounds
+     * and opens the log for appending.  An incomplete record at the end of the log is discarded.
+     *
+     * @param  path        path to the log
+     * @param  signature   signature of the profiled executable
+     * @param  repeatCount number of profiling rounds
+     * @param  trapNames   names of the performance traps in the order of the measurements
+     * @param  inputs      list the restored inputs are added to
+     * @param  store       store the measurements of restored rounds are stored to
+     * @param  completed   set of completed rounds (indexed from zero) the restored rounds are added to
+     * @return             a {@link MeasurementLog} instance opened for appending
+     *
+     * @throws IOException      if the log could not be read
+     * @throws RuntimeException if the log does not correspond to the current profiling session
+     */
+    public static MeasurementLog resume(final Path path, final String signature, final int repeatCount,
+                                        final List<String> trapNames, final List<String> inputs,
+                                        final MeasurementStore store, final BitSet completed)
+            throws IOException {
+        JCProfilerUtil.checkFile(path, Stage.profiling);
+        log.info("Resuming from measurement log {}.", path);
+
+        long validLength;
+        int restoredRounds = 0;
+        try (final CountingInputStream cis = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(path)));
+             final DataInputStream dis = new DataInputStream(cis)) {
+            // parse and validate the header
+            if (dis.readInt() != MAGIC || dis.readShort() != VERSION)
+                throw new RuntimeException(path + " is not a valid measurement log!");
+
+            final String logSignature = dis.readUTF();
+            if (!logSignature.equals(signature))
+                throw new RuntimeException(String.format(
+                        "The measurement log was created for %s but %s is profiled!", logSignature, signature));
+
+            final int logRepeatCount = dis.readInt();
+            if (logRepeatCount != repeatCount)
+                throw new RuntimeException(String.format(
+                        "The measurement log was created for %d rounds but %d rounds were requested!",
+                        logRepeatCount, repeatCount));
+
+            final List<String> logTrapNames = new ArrayList<>();
+            for (int i = dis.readInt(); i > 0; i--)
+                logTrapNames.add(dis.readUTF());
+            if (!logTrapNames.equals(trapNames))
+                throw new RuntimeException(String.format(
+                        "The measurement log contains different traps!%nPlease, start the profiling from scratch."));
+
+            for (int i = dis.readInt(); i > 0; i--)
+                inputs.add(getString(dis));
+
+            // parse the records
+            final int trapCount = trapNames.size();
+            final byte[] bitmap = new byte[getBitmapLength(trapCount)];
+            final byte[] notSampledBitmap = new byte[getBitmapLength(trapCount)];
+            final long[] values = new long[trapCount];
+            validLength = cis.getCount();
+            while (true) {
+                final int round;
+                try {
+                    round = dis.readInt();
+                    dis.readFully(bitmap);
+                    dis.readFully(notSampledBitmap);
+                    for (int i = 0; i < trapCount; i++)
+                        values[i] = dis.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (round < 1 || repeatCount < round)
+                    throw new RuntimeException("The measurement log contains an invalid round: " + round);
+
+                for (int i = 0; i < trapCount; i++) {
+                    if ((bitmap[i / Byte.SIZE] & (1 << (i % Byte.SIZE))) != 0)
+                        store.setUnreachable(i, round - 1);
+                    else if ((notSampledBitmap[i / Byte.SIZE] & (1 << (i % Byte.SIZE))) != 0)
+                        store.setNotSampled(i, round - 1);
+                    else
+                        store.set(i, round - 1, values[i]);
+                }
+
+                if (!completed.get(round - 1))
+                    restoredRounds++;
+                completed.set(round - 1);
+                validLength = cis.getCount();
+            }
+        }
+
+        log.info("Restored {}/{} rounds.", restoredRounds, repeatCount);
+
+        // drop the incomplete record, if any
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        if (channel.size() != validLength)
+            log.warn("Discarding an incomplete record at the end of {}.", path);
+        channel.truncate(validLength);
+        channel.position(validLength);
+
+        return new MeasurementLog(path, channel, trapNames.size());
+    }
+
+    /**
+     * Appends measurements of a single round to the log.  The log is synchronised with the storage device
+     * every {@link #CHECKPOINT_INTERVAL} rounds.
+     *
+     * @param  round profiling round
+     * @param  store store with the measurements of the given round
+     *
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void append(final int round, final MeasurementStore store) throws IOException {
+        if (store.getTrapCount() != trapCount)
+            throw new RuntimeException(String.format(
+                    "Unexpected number of traps! Expected: %d Actual: %d", trapCount, store.getTrapCount()));
+
+        final ByteBuffer record = ByteBuffer.allocate(recordSize);
+        final byte[] bitmap = new byte[getBitmapLength(trapCount)];
+        final byte[] notSampledBitmap = new byte[getBitmapLength(trapCount)];
+        for (int i = 0; i < trapCount; i++) {
+            if (store.isUnreachable(i, round - 1))
+                bitmap[i / Byte.SIZE] |= (byte) (1 << (i % Byte.SIZE));
+            if (store.isNotSampled(i, round - 1))
+                notSampledBitmap[i / Byte.SIZE] |= (byte) (1 << (i % Byte.SIZE));
+        }
+
+        record.putInt(round).put(bitmap).put(notSampledBitmap);
+        for (int i = 0; i < trapCount; i++)
+            record.putLong(store.get(i, round - 1));
+
+        record.flip();
+        while (record.hasRemaining())
+            channel.write(record);
+
+        if (++uncheckedRounds >= CHECKPOINT_INTERVAL) {
+            channel.force(/* metadata */ false);
+            uncheckedRounds = 0;
+            log.debug("Checkpoint of {} created.", path);
+        }
+    }
+
+    /**
+     * Synchronises the log with the storage device and closes it.
+     *
+     * @throws IOException if the log could not be synchronised or closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.force(/* metadata */ true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the given string as a length-prefixed UTF-8 byte array.
+     *
+     * @param  dos    output stream
+     * @param  string string to be written
+     *
+     * @throws IOException if the string could not be written
+     */
+    private static void putString(final DataOutputStream dos, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    /**
+     * Reads a string stored as a length-prefixed UTF-8 byte array.
+     *
+     * @param  dis input stream
+     * @return     read string
+     *
+     * @throws IOException if the string could not be read or its length is corrupted
+     */
+    private static String getString(final DataInputStream dis) throws IOException {
+        final int length = dis.readInt();
+        if (length < 0)
+            throw new IOException("Corrupted string length in the measurement log: " + length);
+
+        final byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the size of a bitmap of traps in bytes.
+     *
+     * @param  trapCount number of traps
+     * @return           size of the bitmap in bytes
+     */
+    private static int getBitmapLength(final int trapCount) {
+        return (trapCount + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /**
+     * Input stream that counts the number of consumed bytes
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        /**
+         * Constructs the {@link CountingInputStream} class.
+         *
+         * @param in underlying input stream
+         */
+        private CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        /**
+         * Returns the number of consumed bytes.
+         *
+         * @return number of consumed bytes
+         */
+        private long getCount() {
+            return count;
+        }
+    }
+}
@@ -9,7 +9,9 @@ import cz.muni.fi.crocs.rcard.client.Util;
 import javacard.framework.JCSystem;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.AllocationSites;
 import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.LeakHistory;
 
 import org.apache.commons.csv.CSVPrinter;
 
@@ -17,6 +19,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import spoon.reflect.CtModel;
+import spoon.reflect.code.CtExpression;
+import spoon.reflect.code.CtInvocation;
+import spoon.reflect.code.CtLiteral;
+import spoon.reflect.code.CtTypeAccess;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtField;
 import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.reference.CtExecutableReference;
 import spoon.reflect.reference.CtTypeReference;
@@ -25,6 +33,8 @@ import javax.smartcardio.CardException;
 import javax.smartcardio.CommandAPDU;
 import javax.smartcardio.ResponseAPDU;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -32,12 +42,43 @@ import java.util.stream.Collectors;
  * This class represents the specifics of profiling in memory mode.
  */
 public class MemoryProfiler extends AbstractProfiler {
+    // maximal response lengths of short and extended length APDUs supported by the PM
+    private static final int MAX_SHORT_LENGTH = 256;
+    private static final int MAX_EXTENDED_LENGTH = Short.MAX_VALUE;
+    // selects all memory types at once, must match PM.MEMORY_TYPE_ALL
+    private static final byte MEMORY_TYPE_ALL = 0x7F;
+    // selects the history of executions, must match PM.MEMORY_HISTORY
+    private static final byte MEMORY_HISTORY = 0x7E;
+    // selects the unused commit capacity, must match PM.MEMORY_COMMIT_CAPACITY
+    private static final byte MEMORY_COMMIT_CAPACITY = 0x7D;
+    // selects the allocation sites, must match PM.MEMORY_ALLOCATION_SITES
+    private static final byte MEMORY_ALLOCATION_SITES = 0x7C;
+    // drift of free persistent memory in bytes per execution that is reported as a leak
+    private static final double LEAK_THRESHOLD = .5;
+    // layout of the array in the compact PM, must match PM.OFFSET_BASE and PM.WIDE_ENTRY
+    private static final int COMPACT_OFFSET_BASE = 3;
+    private static final short COMPACT_WIDE_ENTRY = (short) 0x8000;
+    // number of values per trap in the compact PM, it always stores the unused commit capacity
+    private static final int COMPACT_CHANNEL_COUNT = 4;
+
     // use LinkedHashX to preserve insertion order
     private final Map<String, Integer> memoryUsageTransientDeselect = new LinkedHashMap<>();
     private final Map<String, Integer> memoryUsageTransientReset = new LinkedHashMap<>();
     private final Map<String, Integer> memoryUsagePersistent = new LinkedHashMap<>();
+    private final Map<String, Integer> memoryUsageCommitCapacity = new LinkedHashMap<>();
 
     private final int valueBytes;
+    // indicates that the PM class stores only the reached traps
+    private final boolean compact;
+    // indicates that the PM class also stores the unused commit capacity
+    private final boolean commitCapacity;
+    // number of executions stored in the history on the card, zero if instrumented without --leak-detection
+    private final int historyRows;
+
+    // history of free memory in executions, only used with --leak-detection
+    private final LeakHistory leakHistory = new LeakHistory();
+    // memory allocated at allocation sites, only used with --allocation-sites
+    private final AllocationSites allocationSites = new AllocationSites();
 
     private static final Logger log = LoggerFactory.getLogger(MemoryProfiler.class);
 
@@ -50,7 +91,11 @@ public class MemoryProfiler extends AbstractProfiler {
      *
      * @throws UnsupportedOperationException if jCardSim is used in combination with
      *                                       {@link javacard.framework.JCSystem#getAvailableMemory(short[], short, byte)}
-     *
+     *                                       or {@link Args#multiInput} or {@link Args#leakDetection} is used
+     *                                       with an already measured constructor or {@link Args#leakDetection}
+     *                                       is used with the compact PM class
+     * @throws RuntimeException              if {@link Args#allocationSites} or {@link Args#leakDetection}
+     *                                       is used but the sources were instrumented without it
      */
     public MemoryProfiler(final Args args, final CardManager cardManager, final CtModel model) {
         super(args, cardManager, JCProfilerUtil.getProfiledExecutable(model, args.entryPoint, args.executable),
@@ -58,9 +103,27 @@ public class MemoryProfiler extends AbstractProfiler {
 
         // get size of measurements
         valueBytes = getValueBytes();
+        compact = PM.getField("compactMemoryUsage") != null;
+        commitCapacity = tracksCommitCapacity();
+        historyRows = getPMConstant("HISTORY_ROWS", 0);
         if (valueBytes == Integer.BYTES && args.useSimulator)
             throw new UnsupportedOperationException(
                     "jCardSim does not support the 3.0.4+ JCSystem.getAvailableMemory(short[],short,byte) overload!");
+
+        if (args.multiInput && measuredDuringInstallation)
+            throw new UnsupportedOperationException(
+                    "Option --multi-input is not supported for constructors measured during installation!");
+        if (args.leakDetection && measuredDuringInstallation)
+            throw new UnsupportedOperationException(
+                    "Option --leak-detection is not supported for constructors measured during installation!");
+        if (args.leakDetection && compact)
+            throw new UnsupportedOperationException("The compact PM class does not support --leak-detection!");
+        if (args.leakDetection && historyRows == 0)
+            throw new RuntimeException(
+                    "Profiling with --leak-detection but the sources were instrumented without it!");
+        if (args.allocationSites && getAllocatedCalls().isEmpty())
+            throw new RuntimeException(
+                    "Profiling with --allocation-sites but the sources do not contain any instrumented allocation!");
     }
 
     /**
@@ -92,18 +155,240 @@ public class MemoryProfiler extends AbstractProfiler {
     }
 
     /**
-     * Retrieves measurements for given memory type
+     * Checks whether the {@link jcprofiler.PM#check(short)} method also measures the unused commit capacity.
+     * The PM class stores it only if the sources were instrumented with {@link Args#commitCapacity}
+     * or if the compact PM class is used.  Sources instrumented by older versions do not.
+     *
+     * @return true if the {@code PM#COMMIT_CAPACITY_LENGTH} field is non-zero or, if it does not exist,
+     *         if {@link javacard.framework.JCSystem#getUnusedCommitCapacity()} is called, otherwise false
+     */
+    private boolean tracksCommitCapacity() {
+        final int length = getPMConstant("COMMIT_CAPACITY_LENGTH", -1);
+        if (length >= 0)
+            return length != 0;
+
+        final CtMethod<?> check = PM.getMethod("check", PM.getFactory().Type().shortPrimitiveType());
+        return !check.getElements(
+                (CtExecutableReference<?> e) -> e.getSimpleName().equals("getUnusedCommitCapacity") &&
+                        e.getDeclaringType().getQualifiedName().equals("javacard.framework.JCSystem")).isEmpty();
+    }
+
+    /**
+     * Returns the number of measured values per trap, i.e. free memory of all three types
+     * and optionally the unused commit capacity.
      *
-     * @param  map     map with measurements for given memory type
-     * @param  memType {@link javacard.framework.JCSystem} constant representing given memory type
+     * @return number of measured values per trap
+     */
+    private int getChannelCount() {
+        return commitCapacity ? 4 : 3;
+    }
+
+    /**
+     * Retrieves measurements for all memory types and the unused commit capacity.  All arrays are requested
+     * in a single response first, using an extended length APDU if needed.  If the card does not support it,
+     * the arrays are retrieved one by one, with extended length APDUs if possible and in short APDU sized parts
+     * otherwise.
      *
      * @throws CardException    if the card connection failed
      * @throws RuntimeException if the measurement retrieval failed or the measurement are in
      *                          an invalid format
      */
-    private void getMeasurements(final Map<String, Integer> map, final byte memType) throws CardException {
-        // init
+    private void getMeasurements() throws CardException {
+        if (compact) {
+            getCompactMeasurements();
+            return;
+        }
+
         final int arrayLength = trapNameMap.size() * valueBytes;
+        final int totalLength = getChannelCount() * arrayLength;
+
+        // try to get everything at once
+        if (totalLength <= MAX_EXTENDED_LENGTH) {
+            final byte[] data = getPart(MEMORY_TYPE_ALL, 0, totalLength);
+            if (data != null) {
+                checkLength(data, totalLength);
+                log.debug("Retrieved all measurements in a single response.");
+
+                storeMeasurements(memoryUsageTransientDeselect, data, 0);
+                storeMeasurements(memoryUsageTransientReset, data, arrayLength);
+                storeMeasurements(memoryUsagePersistent, data, 2 * arrayLength);
+                if (commitCapacity)
+                    storeMeasurements(memoryUsageCommitCapacity, data, 3 * arrayLength);
+                return;
+            }
+
+            log.info("Retrieving measurements in a single response is not supported, using separate requests.");
+        }
+
+        // the bulk request above would have succeeded if extended length APDUs worked
+        int partLength = totalLength <= MAX_EXTENDED_LENGTH ? MAX_SHORT_LENGTH
+                                                            : Math.min(arrayLength, MAX_EXTENDED_LENGTH);
+        byte[] buffer = getMeasurements(JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT, arrayLength, partLength);
+        if (buffer == null && partLength > MAX_SHORT_LENGTH) {
+            log.info("Extended length APDUs are not supported, falling back to short APDUs.");
+            partLength = MAX_SHORT_LENGTH;
+            buffer = getMeasurements(JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT, arrayLength, partLength);
+        }
+        if (buffer == null)
+            throw new RuntimeException("Getting memory measurements failed!");
+
+        storeMeasurements(memoryUsageTransientDeselect, buffer, 0);
+        storeMeasurements(memoryUsageTransientReset,
+                getMeasurements(JCSystem.MEMORY_TYPE_TRANSIENT_RESET, arrayLength, partLength), 0);
+        storeMeasurements(memoryUsagePersistent,
+                getMeasurements(JCSystem.MEMORY_TYPE_PERSISTENT, arrayLength, partLength), 0);
+        if (commitCapacity)
+            storeMeasurements(memoryUsageCommitCapacity,
+                    getMeasurements(MEMORY_COMMIT_CAPACITY, arrayLength, partLength), 0);
+    }
+
+    /**
+     * Retrieves the measurements of reached traps from the compact PM class.  The used part of its array
+     * is requested at once with an extended length APDU if possible and in short APDU sized parts otherwise.
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the measurement retrieval failed, the measurements are in an invalid format
+     *                          or the memory budget was exhausted
+     */
+    private void getCompactMeasurements() throws CardException {
+        int partLength = MAX_EXTENDED_LENGTH;
+        byte[] data = getPart(MEMORY_TYPE_ALL, 0, partLength);
+        if (data == null) {
+            log.info("Extended length APDUs are not supported, falling back to short APDUs.");
+            partLength = MAX_SHORT_LENGTH;
+            data = getPart(MEMORY_TYPE_ALL, 0, partLength);
+        }
+        if (data == null)
+            throw new RuntimeException("Getting memory measurements failed!");
+        if (data.length < COMPACT_OFFSET_BASE)
+            throw new RuntimeException("The incoming measurement data are too short!");
+
+        // the header contains the number of used bytes, zero if no trap was reached
+        final int usedLength = Short.toUnsignedInt(Util.getShort(data, 1));
+        final int totalLength = Math.max(usedLength, COMPACT_OFFSET_BASE);
+        final byte[] buffer = new byte[totalLength];
+
+        int part = 0;
+        int offset = 0;
+        while (true) {
+            checkLength(data, Math.min(totalLength - offset, partLength));
+            System.arraycopy(data, 0, buffer, offset, data.length);
+            offset += data.length;
+            if (offset == totalLength)
+                break;
+
+            data = getPart(MEMORY_TYPE_ALL, ++part, partLength);
+            if (data == null)
+                throw new RuntimeException("Getting memory measurements failed!");
+        }
+
+        if (buffer[0] != 0)
+            throw new RuntimeException(
+                    "Some traps were not stored because the memory budget was exhausted! Increase --memory-budget.");
+        log.info("The compact PM used {} B of its memory budget.", usedLength);
+
+        final Map<Short, int[]> minima = usedLength != 0
+                ? decodeCompactEntries(buffer, valueBytes, getChannelCount(), trapNameMap.keySet())
+                : new HashMap<>();
+        trapNameMap.forEach((trapID, trapName) -> {
+            final int[] values = minima.get(trapID);
+            if (values == null)
+                unreachedTraps.add(trapName);
+
+            memoryUsageTransientDeselect.put(trapName, values != null ? values[0] : null);
+            memoryUsageTransientReset.put(trapName, values != null ? values[1] : null);
+            memoryUsagePersistent.put(trapName, values != null ? values[2] : null);
+            if (commitCapacity)
+                memoryUsageCommitCapacity.put(trapName, values != null ? values[3] : null);
+        });
+    }
+
+    /**
+     * Returns the minimal memory budget of the compact PM class, i.e. the length of the header
+     * and a single entry of the largest kind.  Entries with values as integers are only used
+     * with JCSDK 3.0.4+.
+     *
+     * @param  valueBytes size of the {@link JCSystem#getAvailableMemory} measurement in bytes
+     * @return            minimal memory budget in bytes
+     */
+    public static int getMinimalMemoryBudget(final int valueBytes) {
+        final int headerLength = COMPACT_OFFSET_BASE + COMPACT_CHANNEL_COUNT * valueBytes;
+        final int entryLength = Short.BYTES + COMPACT_CHANNEL_COUNT * valueBytes;
+        return headerLength + entryLength;
+    }
+
+    /**
+     * Decodes the entries of the compact PM array.  Entries of the same trap are merged
+     * into the minimal amount of free memory and unused commit capacity.
+     *
+     * @param  buffer       used part of the compact PM array
+     * @param  valueBytes   size of the values in the header and in wide entries in bytes
+     * @param  channelCount number of values per trap
+     * @param  trapIDs      IDs of all traps
+     * @return              map from trap IDs to free transient deselect, transient reset and persistent memory
+     *                      optionally followed by the unused commit capacity
+     *
+     * @throws RuntimeException if the array is in an invalid format
+     */
+    static Map<Short, int[]> decodeCompactEntries(final byte[] buffer, final int valueBytes, final int channelCount,
+                                                  final Set<Short> trapIDs) {
+        final int headerLength = COMPACT_OFFSET_BASE + channelCount * valueBytes;
+        if (buffer.length < headerLength)
+            throw new RuntimeException("The incoming measurement data are too short!");
+
+        final int[] base = new int[channelCount];
+        for (int i = 0; i < base.length; i++)
+            base[i] = getValue(buffer, COMPACT_OFFSET_BASE + i * valueBytes, valueBytes);
+
+        final Map<Short, int[]> minima = new HashMap<>();
+        int idx = headerLength;
+        while (idx < buffer.length) {
+            short trapID = Util.getShort(buffer, idx);
+            final boolean wide = (trapID & COMPACT_WIDE_ENTRY) != 0;
+            trapID &= ~COMPACT_WIDE_ENTRY;
+
+            if (!trapIDs.contains(trapID))
+                throw new RuntimeException("The incoming measurement data contain an unknown trap ID " + trapID);
+            if (wide && valueBytes != Integer.BYTES)
+                throw new RuntimeException("The incoming measurement data contain an unexpected wide entry!");
+
+            // narrow entries contain differences from the header, wide ones the free memory
+            final int entryBytes = wide ? Integer.BYTES : Short.BYTES;
+            if (idx + Short.BYTES + channelCount * entryBytes > buffer.length)
+                throw new RuntimeException("The incoming measurement data are truncated!");
+
+            final int[] values = new int[channelCount];
+            for (int i = 0; i < values.length; i++) {
+                final int valueIdx = idx + Short.BYTES + i * entryBytes;
+                values[i] = wide ? getValue(buffer, valueIdx, valueBytes) : base[i] - Util.getShort(buffer, valueIdx);
+            }
+
+            minima.merge(trapID, values, (a, b) -> {
+                for (int i = 0; i < a.length; i++)
+                    a[i] = Math.min(a[i], b[i]);
+                return a;
+            });
+            idx += Short.BYTES + channelCount * entryBytes;
+        }
+
+        return minima;
+    }
+
+    /**
+     * Retrieves the measurement array for given memory type in parts of the given length.
+     *
+     * @param  memType     {@link javacard.framework.JCSystem} constant representing given memory type,
+     *                     {@link #MEMORY_COMMIT_CAPACITY} or {@link #MEMORY_ALLOCATION_SITES}
+     * @param  arrayLength length of the array in bytes
+     * @param  partLength  maximal length of a single part in bytes
+     * @return             retrieved array or {@code null} if the card rejected the first part
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the measurement retrieval failed or the measurement are in
+     *                          an invalid format
+     */
+    private byte[] getMeasurements(final byte memType, final int arrayLength, final int partLength)
+            throws CardException {
         final byte[] buffer = new byte[arrayLength];
 
         int part = 0;
@@ -111,43 +396,109 @@ public class MemoryProfiler extends AbstractProfiler {
 
         // go through the whole array
         while (remainingLength > 0) {
-            final int nextLength = Math.min(remainingLength, 256);
+            final int nextLength = Math.min(remainingLength, partLength);
 
             // get the given part
-            final CommandAPDU getMeasurements = new CommandAPDU(
-                    args.cla, JCProfilerUtil.INS_PERF_HANDLER, memType, part++);
-            final ResponseAPDU response = cardManager.transmit(getMeasurements);
-            if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
-                throw new RuntimeException(
-                        "Getting memory measurements failed with SW " + Integer.toHexString(response.getSW()));
-
-            final byte[] responseData = response.getData();
-            if (responseData.length != nextLength)
-                throw new RuntimeException(String.format(
-                        "The incoming measurement data have incorrect length! Expected: %d Actual: %d",
-                        arrayLength, responseData.length));
-
+            final byte[] responseData = getPart(memType, part, partLength);
+            if (responseData == null) {
+                if (part == 0)
+                    return null;
+                throw new RuntimeException("Getting memory measurements failed!");
+            }
+            checkLength(responseData, nextLength);
 
             System.arraycopy(responseData, 0, buffer, arrayLength - remainingLength, responseData.length);
             remainingLength -= nextLength;
+            part++;
         }
 
-        // convert and store the retrieved byte array
+        return buffer;
+    }
+
+    /**
+     * Retrieves a single part of the measurements.
+     *
+     * @param  memType    {@link javacard.framework.JCSystem} constant representing given memory type
+     *                    or any other value supported by {@link jcprofiler.PM#send(javacard.framework.APDU)}
+     * @param  part       index of the part
+     * @param  partLength maximal length of the part in bytes
+     * @return            response data or {@code null} if the request failed
+     *
+     * @throws CardException if the card connection failed
+     */
+    private byte[] getPart(final byte memType, final int part, final int partLength) throws CardException {
+        final CommandAPDU getMeasurements = new CommandAPDU(
+                args.cla, JCProfilerUtil.INS_PERF_HANDLER, memType, part, partLength);
+        final ResponseAPDU response = cardManager.transmit(getMeasurements);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR) {
+            log.debug("Getting memory measurements failed with SW {}", Integer.toHexString(response.getSW()));
+            return null;
+        }
+
+        return response.getData();
+    }
+
+    /**
+     * Checks the length of the retrieved measurements.
+     *
+     * @param  data           retrieved data
+     * @param  expectedLength expected length in bytes
+     *
+     * @throws RuntimeException if the length does not match
+     */
+    private static void checkLength(final byte[] data, final int expectedLength) {
+        if (data.length != expectedLength)
+            throw new RuntimeException(String.format(
+                    "The incoming measurement data have incorrect length! Expected: %d Actual: %d",
+                    expectedLength, data.length));
+    }
+
+    /**
+     * Converts a single retrieved value.
+     *
+     * @param  buffer retrieved data
+     * @param  idx    offset of the value in the buffer
+     * @return        converted value
+     */
+    private int getValue(final byte[] buffer, final int idx) {
+        return getValue(buffer, idx, valueBytes);
+    }
+
+    /**
+     * Converts a single retrieved value of the given size.
+     *
+     * @param  buffer     retrieved data
+     * @param  idx        offset of the value in the buffer
+     * @param  valueBytes size of the value in bytes
+     * @return            converted value
+     */
+    private static int getValue(final byte[] buffer, final int idx, final int valueBytes) {
+        if (valueBytes == Short.BYTES)
+            return Util.getShort(buffer, idx);
+
+        return Short.toUnsignedInt(Util.getShort(buffer, idx)) << Short.SIZE |
+               Short.toUnsignedInt(Util.readShort(buffer, idx + Short.BYTES));
+    }
+
+    /**
+     * Converts and stores the retrieved measurements.
+     *
+     * @param  map    map with measurements for given memory type or the unused commit capacity
+     * @param  buffer retrieved measurements
+     * @param  offset offset of the measurements of given memory type in the buffer
+     *
+     * @throws RuntimeException if the measurements are in an invalid format
+     */
+    private void storeMeasurements(final Map<String, Integer> map, final byte[] buffer, final int offset) {
         trapNameMap.forEach((trapID, trapName) -> {
-            int idx = (Short.toUnsignedInt(trapID) - /* PERF_START */ 2) * valueBytes;
-
-            Integer val;
-            if (valueBytes == Short.BYTES) {
-                val = (int) Util.getShort(buffer, idx);
-            } else {
-                val = Short.toUnsignedInt(Util.getShort(buffer, idx)) << Short.SIZE;
-                val |= Short.toUnsignedInt(Util.readShort(buffer, idx + Short.BYTES));
-            }
+            int idx = offset + (Short.toUnsignedInt(trapID) - /* PERF_START */ 2) * valueBytes;
+
+            Integer val = getValue(buffer, idx);
 
             // -1 corresponds to an unreachable trap
             if (val < 0) {
                 if (val != -1)
-                    throw new RuntimeException("The value of free memory measurement must be greater or equal -1");
+                    throw new RuntimeException("The value of memory measurement must be greater or equal -1");
 
                 unreachedTraps.add(trapName);
                 val = null;
@@ -157,6 +508,145 @@ public class MemoryProfiler extends AbstractProfiler {
         });
     }
 
+    /**
+     * Returns the calls of {@link jcprofiler.PM#allocated(short, boolean, Object)} ordered by the allocation site ID.
+     *
+     * @return list of {@code PM.allocated} calls
+     */
+    private List<CtInvocation<?>> getAllocatedCalls() {
+        final List<CtInvocation<?>> calls = PM.getFactory().getModel().getElements((CtInvocation<?> i) ->
+                i.getTarget() instanceof CtTypeAccess &&
+                PM.equals(((CtTypeAccess<?>) i.getTarget()).getAccessedType().getDeclaration()) &&
+                i.getExecutable().getSimpleName().equals("allocated"));
+        calls.sort(Comparator.comparingInt(MemoryProfiler::getSiteID));
+        return calls;
+    }
+
+    /**
+     * Returns the allocation site ID of the given {@code PM.allocated} call.
+     *
+     * @param  call {@code PM.allocated} call
+     * @return      allocation site ID
+     */
+    private static int getSiteID(final CtInvocation<?> call) {
+        final CtLiteral<Number> evaluated = call.getArguments().get(0).partiallyEvaluate();
+        return evaluated.getValue().intValue();
+    }
+
+    /**
+     * Returns the executable or the field containing the given {@code PM.allocated} call.
+     *
+     * @param  call {@code PM.allocated} call
+     * @return      full signature of the executable or qualified name of the field
+     */
+    private static String getSiteLocation(final CtInvocation<?> call) {
+        final CtExecutable<?> executable = call.getParent(CtExecutable.class);
+        if (executable != null)
+            return JCProfilerUtil.getFullSignature(executable);
+
+        final CtField<?> field = call.getParent(CtField.class);
+        return field.getDeclaringType().getQualifiedName() + "#" + field.getSimpleName();
+    }
+
+    /**
+     * Retrieves the memory allocated at every allocation site from the card, at once with an extended
+     * length APDU if possible and in short APDU sized parts otherwise.
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the retrieval failed or the allocation sites are in an invalid format
+     */
+    private void getAllocationSites() throws CardException {
+        final List<CtInvocation<?>> calls = getAllocatedCalls();
+        for (int i = 0; i < calls.size(); i++)
+            if (getSiteID(calls.get(i)) != i)
+                throw new RuntimeException("The sources are broken! The allocation site IDs are not consecutive!");
+
+        // number of allocations followed by the allocated bytes of all three types
+        final int siteLength = Short.BYTES + 3 * valueBytes;
+        final int arrayLength = calls.size() * siteLength;
+
+        int partLength = Math.min(arrayLength, MAX_EXTENDED_LENGTH);
+        byte[] buffer = getMeasurements(MEMORY_ALLOCATION_SITES, arrayLength, partLength);
+        if (buffer == null && partLength > MAX_SHORT_LENGTH) {
+            log.info("Extended length APDUs are not supported, falling back to short APDUs.");
+            partLength = MAX_SHORT_LENGTH;
+            buffer = getMeasurements(MEMORY_ALLOCATION_SITES, arrayLength, partLength);
+        }
+        if (buffer == null)
+            throw new RuntimeException("Getting allocation sites failed!");
+
+        for (int site = 0; site < calls.size(); site++) {
+            final int idx = site * siteLength;
+            final long[] row = new long[AllocationSites.COLUMNS.size()];
+            row[0] = Util.getShort(buffer, idx);
+            for (int type = 0; type < 3; type++)
+                row[type + 1] = getValue(buffer, idx + Short.BYTES + type * valueBytes);
+
+            final CtExpression<?> allocation = calls.get(site).getArguments().get(2);
+            allocationSites.add(getSiteLocation(calls.get(site)), allocation.toString(), row);
+            if (row[0] == Short.MAX_VALUE)
+                log.warn("The allocation count of {} reached its maximum value {}!", allocation, Short.MAX_VALUE);
+            log.info("Allocation site {} in {}: {} allocations, {} B transient deselect, {} B transient reset, " +
+                    "{} B persistent", site, getSiteLocation(calls.get(site)), row[0], row[1], row[2], row[3]);
+        }
+    }
+
+    /**
+     * Retrieves the history of free memory in the last executions from the card and clears it.
+     *
+     * @param  executionCount number of executions since the history was last retrieved
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the history retrieval failed or the history is in an invalid format
+     */
+    private void getHistory(final int executionCount) throws CardException {
+        final CommandAPDU getHistory = new CommandAPDU(
+                args.cla, JCProfilerUtil.INS_PERF_HANDLER, MEMORY_HISTORY, 0, MAX_SHORT_LENGTH);
+        final ResponseAPDU response = cardManager.transmit(getHistory);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+            throw new RuntimeException(
+                    "Getting the history of free memory failed with SW " + Integer.toHexString(response.getSW()));
+
+        final byte[] data = response.getData();
+        if (data.length < 2)
+            throw new RuntimeException("The incoming history of free memory is too short!");
+        if (data[0] != 0)
+            throw new RuntimeException("The history of free memory on the card overflowed!");
+
+        final int rowCount = Byte.toUnsignedInt(data[1]);
+        final int rowLength = LeakHistory.COLUMNS.size() * valueBytes;
+        checkLength(data, 2 + rowCount * rowLength);
+        if (rowCount != executionCount)
+            log.warn("Only {}/{} executions reached the first trap.", rowCount, executionCount);
+
+        for (int row = 0; row < rowCount; row++) {
+            final long[] values = new long[LeakHistory.COLUMNS.size()];
+            for (int column = 0; column < values.length; column++)
+                values[column] = getValue(data, 2 + row * rowLength + column * valueBytes);
+            leakHistory.add(values);
+        }
+    }
+
+    /**
+     * Logs the drift of free memory across executions and warns about a possible leak
+     * of persistent memory.
+     */
+    private void reportLeaks() {
+        if (leakHistory.size() < 2) {
+            log.warn("At least two executions are needed to detect memory leaks!");
+            return;
+        }
+
+        for (int column = 0; column < LeakHistory.COLUMNS.size(); column++)
+            log.info("Drift of {}: {} B per execution", LeakHistory.COLUMNS.get(column),
+                    String.format("%.2f", leakHistory.getDrift(column)));
+
+        final double drift = leakHistory.getDrift(LeakHistory.COLUMNS.indexOf("exitPersistent"));
+        if (drift <= -LEAK_THRESHOLD)
+            log.warn("Free persistent memory decreases by {} B per execution, {} may leak memory!",
+                    String.format("%.2f", -drift), profiledExecutableSignature);
+    }
+
     /**
      * Measures the memory usage and retrieves the measurements from the card.
      * Only does the latter, if the applet was already measured during installation.
@@ -168,31 +658,79 @@ public class MemoryProfiler extends AbstractProfiler {
     protected void profileImpl() throws CardException {
         // measure the usage unless already done during installation
         if (!measuredDuringInstallation) {
-            resetApplet();
-            generateInputs(/* size */ 1);
-
-            // get the input
-            final CommandAPDU triggerAPDU = getInputAPDU(/* round */ 1);
-            final String input = Util.bytesToHex(triggerAPDU.getBytes());
-            log.info("APDU: {}", input);
-
-            // measure!
-            final ResponseAPDU response = cardManager.transmit(triggerAPDU);
-            if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
-                throw new RuntimeException(
-                        "Executing the applet failed with SW " + Integer.toHexString(response.getSW()));
+            // the card keeps the minimum of free memory across all executions
+            final int roundCount = args.multiInput || args.leakDetection ? args.repeatCount : 1;
+            generateInputs(roundCount);
+
+            for (int round = 1; round <= roundCount; round++) {
+                resetApplet();
+
+                // get the input
+                final CommandAPDU triggerAPDU = getInputAPDU(round);
+                final String input = Util.bytesToHex(triggerAPDU.getBytes());
+                log.info("Round: {}/{} APDU: {}", round, roundCount, input);
+
+                // measure!
+                final ResponseAPDU response = cardManager.transmit(triggerAPDU);
+                if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+                    throw new RuntimeException(
+                            "Executing the applet failed with SW " + Integer.toHexString(response.getSW()));
+
+                // read the history before it overflows
+                if (args.leakDetection && (round % historyRows == 0 || round == roundCount))
+                    getHistory((round - 1) % historyRows + 1);
+            }
 
             log.info("Measuring {} complete.", profiledExecutableSignature);
+            if (args.leakDetection)
+                reportLeaks();
         }
 
         final int limit = valueBytes == Integer.BYTES ? Integer.MAX_VALUE : Short.MAX_VALUE;
         log.info("Using JCSystem.getAvailableMemory with {} B limit.", limit);
 
         log.info("Retrieving measurements from the card.");
-        getMeasurements(memoryUsageTransientDeselect, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
-        getMeasurements(memoryUsageTransientReset, JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
-        getMeasurements(memoryUsagePersistent, JCSystem.MEMORY_TYPE_PERSISTENT);
+        getMeasurements();
         log.info("Measurements retrieved successfully.");
+
+        if (args.allocationSites) {
+            log.info("Retrieving allocation sites from the card.");
+            getAllocationSites();
+            log.info("Allocation sites retrieved successfully.");
+        }
+    }
+
+    /**
+     * Stores the measurements to a CSV file, the history of free memory in executions
+     * to the {@link LeakHistory#FILE_NAME} file if {@link Args#leakDetection} is set
+     * and the allocation sites to the {@link AllocationSites#FILE_NAME} file
+     * if {@link Args#allocationSites} is set.
+     */
+    @Override
+    public void generateCSV() {
+        super.generateCSV();
+
+        final Path leaksCSV = args.workDir.resolve(LeakHistory.FILE_NAME);
+        final Path sitesCSV = args.workDir.resolve(AllocationSites.FILE_NAME);
+        try {
+            // do not leave stale files for the visualisation
+            if (!args.leakDetection || leakHistory.size() == 0)
+                Files.deleteIfExists(leaksCSV);
+            if (!args.allocationSites)
+                Files.deleteIfExists(sitesCSV);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (args.leakDetection && leakHistory.size() != 0) {
+            leakHistory.store(leaksCSV);
+            log.info("History of free memory saved to {}.", leaksCSV);
+        }
+
+        if (args.allocationSites) {
+            allocationSites.store(sitesCSV);
+            log.info("Allocation sites saved to {}.", sitesCSV);
+        }
     }
 
     /**
@@ -204,10 +742,16 @@ public class MemoryProfiler extends AbstractProfiler {
      */
     @Override
     protected void saveMeasurements(final CSVPrinter printer) throws IOException {
-        printer.printComment("trapName,freeTransientDeselect,freeTransientReset,freePersistent");
+        printer.printComment("trapName,freeTransientDeselect,freeTransientReset,freePersistent" +
+                (commitCapacity ? ",unusedCommitCapacity" : ""));
         for (final String k : memoryUsagePersistent.keySet()) {
-            printer.printRecord(k, memoryUsageTransientDeselect.get(k), memoryUsageTransientReset.get(k),
-                    memoryUsagePersistent.get(k));
+            final List<Integer> values = new ArrayList<>(Arrays.asList(memoryUsageTransientDeselect.get(k),
+                    memoryUsageTransientReset.get(k), memoryUsagePersistent.get(k)));
+            if (commitCapacity)
+                values.add(memoryUsageCommitCapacity.get(k));
+
+            printer.print(k);
+            printer.printRecord(values);
         }
     }
 }
@@ -0,0 +1,311 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.Util;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.JCProfilerUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.smartcardio.CommandAPDU;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precompiled time profiling session stored as a binary script in the working directory.
+ * <br><br>
+ * The script starts with a header containing the signature of the profiled executable, the number of rounds,
+ * the input source with the fingerprint of the input file, the {@link jcprofiler.util.enums.InputDivision},
+ * the seed, the header of the trigger APDU and pre-encoded control APDUs, i.e. the applet reset,
+ * the {@code PERF_START} trap and one set-trap APDU for every performance trap.  The header is followed
+ * by the pre-encoded trigger APDU of every round, each stored as a length-prefixed byte array.  Every round
+ * consists of the set-trap, trigger and reset APDUs for all traps, so the script can be replayed on several
+ * cards without generating the inputs again.
+ */
+public class SessionScript {
+    /**
+     * Default file name of the script
+     */
+    public static final String FILE_NAME = "session.script";
+
+    private static final int MAGIC = 0x4A435053; // JCPS
+    private static final short VERSION = 2;
+
+    private final Args args;
+    private final int roundCount;
+    private final short[] trapIDs;
+    private final CommandAPDU resetAPDU;
+    private final CommandAPDU startAPDU;
+    private final CommandAPDU[] setTrapAPDUs;
+    private final byte[] header;
+
+    private static final Logger log = LoggerFactory.getLogger(SessionScript.class);
+
+    /**
+     * Constructs the {@link SessionScript} class.
+     *
+     * @param  args        object with commandline arguments
+     * @param  signature   signature of the profiled executable
+     * @param  trapNameMap map between performance trap IDs and their names
+     * @param  roundCount  number of profiling rounds
+     *
+     * @throws RuntimeException if the header could not be encoded or the input file could not be read
+     */
+    public SessionScript(final Args args, final String signature, final Map<Short, String> trapNameMap,
+                         final int roundCount) {
+        this.args = args;
+        this.roundCount = roundCount;
+
+        resetAPDU = args.resetIns != null ? new CommandAPDU(args.cla, args.resetIns, 0, 0) : null;
+        startAPDU = getSetTrapAPDU(AbstractProfiler.PERF_START);
+
+        trapIDs = new short[trapNameMap.size()];
+        setTrapAPDUs = new CommandAPDU[trapNameMap.size()];
+        int trapIdx = 0;
+        for (final short trapID : trapNameMap.keySet()) {
+            trapIDs[trapIdx] = trapID;
+            setTrapAPDUs[trapIdx++] = getSetTrapAPDU(trapID);
+        }
+
+        try (final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+             final DataOutputStream dos = new DataOutputStream(bos)) {
+            dos.writeInt(MAGIC);
+            dos.writeShort(VERSION);
+            putBytes(dos, signature.getBytes(StandardCharsets.UTF_8));
+            dos.writeInt(roundCount);
+
+            // the inputs and the trigger APDUs
+            final InputCorpus corpus = new InputCorpus(args, roundCount);
+            putBytes(dos, corpus.getSource().getBytes(StandardCharsets.UTF_8));
+            putBytes(dos, corpus.getFingerprint().getBytes(StandardCharsets.UTF_8));
+            putBytes(dos, args.inputDivision.name().getBytes(StandardCharsets.UTF_8));
+            dos.writeBoolean(args.seed != null);
+            dos.writeLong(args.seed != null ? args.seed : 0);
+            dos.write(new byte[]{args.cla, args.ins, args.p1, args.p2});
+
+            putBytes(dos, resetAPDU != null ? resetAPDU.getBytes() : new byte[0]);
+            putBytes(dos, startAPDU.getBytes());
+
+            dos.writeInt(trapIDs.length);
+            trapIdx = 0;
+            for (final Map.Entry<Short, String> e : trapNameMap.entrySet()) {
+                dos.writeShort(e.getKey());
+                putBytes(dos, e.getValue().getBytes(StandardCharsets.UTF_8));
+                putBytes(dos, setTrapAPDUs[trapIdx++].getBytes());
+            }
+
+            dos.flush();
+            header = bos.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Checks that the given script exists and was compiled for the same session, i.e. for the same executable,
+     * traps, control APDUs, number of rounds, inputs and trigger APDU header.
+     *
+     * @param  path path to the script
+     * @return      true if yes, otherwise false
+     *
+     * @throws RuntimeException if the script could not be read
+     */
+    public boolean matches(final Path path) {
+        if (!Files.isRegularFile(path))
+            return false;
+
+        try (final InputStream is = Files.newInputStream(path)) {
+            final byte[] actual = new byte[header.length];
+            int read = 0;
+            for (int n; read < actual.length && (n = is.read(actual, read, actual.length - read)) != -1; )
+                read += n;
+            return read == actual.length && Arrays.equals(header, actual);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Compiles the session with the given inputs and stores it to the given path.
+     * Any existing script is overwritten.
+     *
+     * @param  path   path to the script
+     * @param  inputs list of inputs, one for every round
+     *
+     * @throws RuntimeException if the script could not be written
+     */
+    public void compile(final Path path, final List<String> inputs) {
+        if (inputs.size() != roundCount)
+            throw new RuntimeException(String.format(
+                    "Unexpected number of inputs! Expected: %d Actual: %d", roundCount, inputs.size()));
+
+        try (final DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            dos.write(header);
+            for (final String input : inputs) {
+                final byte[] data = Util.hexStringToByteArray(input);
+                putBytes(dos, new CommandAPDU(args.cla, args.ins, args.p1, args.p2, data).getBytes());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        log.info("Session with {} rounds compiled to {}.", roundCount, path);
+    }
+
+    /**
+     * Reads the inputs of all rounds from the given script.
+     *
+     * @param  path path to the script
+     * @return      list of inputs
+     *
+     * @throws RuntimeException if the script could not be read
+     */
+    public List<String> readInputs(final Path path) {
+        final List<String> inputs = new ArrayList<>(roundCount);
+        try (final TriggerReader reader = openTriggers(path)) {
+            for (int round = 1; round <= roundCount; round++)
+                inputs.add(Util.bytesToHex(reader.next().getData()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        log.info("Loaded {} inputs from {}.", roundCount, path);
+        return inputs;
+    }
+
+    /**
+     * Opens the trigger APDUs of the given script for sequential reading.
+     *
+     * @param  path path to the script
+     * @return      a {@link TriggerReader} instance positioned at the trigger APDU of the first round
+     *
+     * @throws IOException if the script could not be read
+     */
+    public TriggerReader openTriggers(final Path path) throws IOException {
+        final DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+        try {
+            dis.readFully(new byte[header.length]);
+        } catch (IOException e) {
+            dis.close();
+            throw e;
+        }
+        return new TriggerReader(dis);
+    }
+
+    /**
+     * Returns the number of profiling rounds.
+     *
+     * @return number of rounds
+     */
+    public int getRoundCount() {
+        return roundCount;
+    }
+
+    /**
+     * Returns the IDs of all performance traps in the order of their set-trap APDUs.
+     *
+     * @return array of performance trap IDs
+     */
+    public short[] getTrapIDs() {
+        return trapIDs.clone();
+    }
+
+    /**
+     * Returns the APDU resetting the applet.
+     *
+     * @return a {@link CommandAPDU} instance or {@code null} if {@link Args#resetIns} is not defined
+     */
+    public CommandAPDU getResetAPDU() {
+        return resetAPDU;
+    }
+
+    /**
+     * Returns the APDU erasing any previous performance stop.
+     *
+     * @return a {@link CommandAPDU} instance
+     */
+    public CommandAPDU getStartAPDU() {
+        return startAPDU;
+    }
+
+    /**
+     * Returns the set-trap APDUs of all performance traps.
+     *
+     * @return array of {@link CommandAPDU} instances in the order of {@link #getTrapIDs()}
+     */
+    public CommandAPDU[] getSetTrapAPDUs() {
+        return setTrapAPDUs.clone();
+    }
+
+    /**
+     * Constructs the APDU setting {@code jcprofiler.PM#nextPerfStop} to the given performance trap ID.
+     *
+     * @param  trapID performance trap ID
+     * @return        a {@link CommandAPDU} instance
+     */
+    private CommandAPDU getSetTrapAPDU(final short trapID) {
+        return new CommandAPDU(args.cla, JCProfilerUtil.INS_PERF_HANDLER, 0, 0, Util.shortToByteArray(trapID));
+    }
+
+    /**
+     * Writes a length-prefixed byte array.
+     *
+     * @param  dos   output stream
+     * @param  bytes array to be written
+     *
+     * @throws IOException if the array could not be written
+     */
+    private static void putBytes(final DataOutputStream dos, final byte[] bytes) throws IOException {
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    /**
+     * Sequential reader of the trigger APDUs
+     */
+    public static class TriggerReader implements Closeable {
+        private final DataInputStream dis;
+
+        /**
+         * Constructs the {@link TriggerReader} class.
+         *
+         * @param dis input stream positioned at the trigger APDU of the first round
+         */
+        private TriggerReader(final DataInputStream dis) {
+            this.dis = dis;
+        }
+
+        /**
+         * Reads the trigger APDU of the next round.
+         *
+         * @return a {@link CommandAPDU} instance
+         *
+         * @throws IOException if the script is truncated or could not be read
+         */
+        public CommandAPDU next() throws IOException {
+            final int length = dis.readInt();
+            if (length < 0)
+                throw new IOException("Corrupted trigger APDU length: " + length);
+
+            final byte[] apdu = new byte[length];
+            dis.readFully(apdu);
+            return new CommandAPDU(apdu);
+        }
+
+        @Override
+        public void close() throws IOException {
+            dis.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.CardManager;
+
+import jcprofiler.installation.ProcessCpuTimer;
+import jcprofiler.installation.ProcessTimingClassLoader;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Clock measuring the CPU time the simulated applet spends in its {@code process} method during
+ * APDU transmissions.
+ * <br><br>
+ * The applet must be loaded by the {@link ProcessTimingClassLoader}, which takes the CPU time samples
+ * of the current thread around every {@code process} call.  The local jCardSim simulator executes the applet
+ * synchronously in the thread that transmits the APDU, so the measured time contains neither the APDU encoding,
+ * logging and dispatch done by the card manager and the simulator, nor the time the thread was not running,
+ * e.g. during stop-the-world GC pauses, or any work done by other threads.
+ * Therefore, this clock must only be used with the simulator created by the measuring thread.
+ */
+public class ThreadCpuClock extends AbstractClock {
+    private long lastTransmitTime;
+
+    /**
+     * Constructs the {@link ThreadCpuClock} class.
+     *
+     * @param  cardManager a card connection instance
+     *
+     * @throws UnsupportedOperationException if the JVM does not support measurement of thread CPU time
+     */
+    public ThreadCpuClock(final CardManager cardManager) {
+        super(cardManager);
+
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isCurrentThreadCpuTimeSupported())
+            throw new UnsupportedOperationException("This JVM does not support measurement of thread CPU time!");
+        if (!threadMXBean.isThreadCpuTimeEnabled())
+            threadMXBean.setThreadCpuTimeEnabled(true);
+    }
+
+    @Override
+    public ResponseAPDU transmit(final CommandAPDU apdu) throws CardException {
+        final long start = ProcessCpuTimer.get();
+        final ResponseAPDU response = cardManager.transmit(apdu);
+        lastTransmitTime = ProcessCpuTimer.get() - start;
+        return response;
+    }
+
+    @Override
+    public long getLastTransmitTimeNano() {
+        return lastTransmitTime;
+    }
+}
@@ -8,9 +8,13 @@ import cz.muni.fi.crocs.rcard.client.CardManager;
 import cz.muni.fi.crocs.rcard.client.Util;
 
 import jcprofiler.args.Args;
+import jcprofiler.installation.Installer;
 import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.MeasurementStore;
 
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,7 +25,13 @@ import javax.smartcardio.CardException;
 import javax.smartcardio.CommandAPDU;
 import javax.smartcardio.ResponseAPDU;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class represents the specifics of profiling in time mode.
@@ -29,8 +39,34 @@ import java.util.*;
  * @author Lukáš Zaoral and Petr Švenda
  */
 public class TimeProfiler extends AbstractProfiler {
-    // use LinkedHashX to preserve insertion order
-    private final Map<String, List<Long>> measurements = new LinkedHashMap<>();
+    /**
+     * Minimal number of rounds before a trap may converge with {@link Args#precision} set
+     */
+    public static final int MIN_ADAPTIVE_ROUNDS = 10;
+    /**
+     * Confidence level of the interval used to decide the convergence of a trap
+     */
+    public static final double CONFIDENCE_LEVEL = .95;
+
+    // measurements indexed by the position of the trap in trapNameMap
+    private final MeasurementStore measurements;
+
+    // rounds (indexed from zero) that were already measured
+    private final BitSet completedRounds = new BitSet();
+    private int roundCount;
+
+    // running statistics of traps that have not converged yet, only used with --precision
+    private final SummaryStatistics[] trapStatistics;
+    private final BitSet convergedTraps = new BitSet();
+
+    // indicates that the PM class advances the fatal trap on its own
+    private final boolean trapCursor;
+
+    // indices of the first traps of every instrumented executable, e.g. of callees with --transitive
+    private final BitSet executableStarts = new BitSet();
+
+    // log of measured rounds
+    private MeasurementLog measurementLog;
 
     private static final Logger log = LoggerFactory.getLogger(TimeProfiler.class);
 
@@ -44,6 +80,32 @@ public class TimeProfiler extends AbstractProfiler {
     public TimeProfiler(final Args args, final CardManager cardManager, final CtModel model) {
         super(args, cardManager, JCProfilerUtil.getProfiledMethod(model, args.executable),
               /* customInsField */ "INS_PERF_SETSTOP");
+        trapCursor = PM.getField("lastPerfStop") != null;
+
+        measurements = new MeasurementStore(args.repeatCount);
+        trapNameMap.values().forEach(measurements::addTrap);
+
+        // the traps of every executable are measured from the start of the trigger APDU
+        String previousPrefix = null;
+        for (final String trapName : trapNameMap.values()) {
+            final String prefix = JCProfilerUtil.getTrapNamePrefix(trapName);
+            if (!prefix.equals(previousPrefix))
+                executableStarts.set(measurements.getTrapIndex(trapName));
+            previousPrefix = prefix;
+        }
+
+        trapStatistics = new SummaryStatistics[trapNameMap.size()];
+        for (int i = 0; i < trapStatistics.length; i++)
+            trapStatistics[i] = new SummaryStatistics();
+
+        if (args.checkReachability &&
+                (PM.getField("reachedTraps") == null || getPMConstant("ARRAY_LENGTH", 0) == 0))
+            throw new RuntimeException(
+                    "The PM class does not support recording of reached traps! Please, reinstrument the sources " +
+                    "with --check-reachability.");
+        if (args.checkReachability && trapNameMap.size() > 256 * Byte.SIZE)
+            throw new UnsupportedOperationException(String.format(
+                    "Recording of reached traps supports at most %d traps!", 256 * Byte.SIZE));
     }
 
     /**
@@ -53,107 +115,613 @@ public class TimeProfiler extends AbstractProfiler {
      */
     @Override
     protected void profileImpl() {
+        if (trapCursor)
+            log.info("Using the on-card trap cursor.");
+        log.info("Measuring {}.", args.clockSource.prettyPrint());
+        if (args.precision != null)
+            log.info("Measuring until the relative precision {} is reached in at most {} rounds.",
+                    args.precision, args.repeatCount);
+
+        final Path logPath = args.workDir.resolve(MeasurementLog.FILE_NAME);
+        final Path scriptPath = args.workDir.resolve(SessionScript.FILE_NAME);
+        final List<String> trapNames = measurements.getTrapNames();
+        final SessionScript script = args.sessionScript
+                ? new SessionScript(args, profiledExecutableSignature, trapNameMap, args.repeatCount) : null;
+
         try {
-            // reset if possible and erase any previous performance stop
-            resetApplet();
-            setTrap(PERF_START);
+            // restore the inputs and completed rounds or start from scratch
+            if (args.resume) {
+                measurementLog = MeasurementLog.resume(logPath, profiledExecutableSignature, args.repeatCount,
+                        trapNames, inputs, measurements, completedRounds);
+            } else {
+                if (script != null && script.matches(scriptPath)) {
+                    log.info("Replaying the existing session script {}.", scriptPath);
+                    inputs.addAll(script.readInputs(scriptPath));
+                } else {
+                    generateInputs(args.repeatCount);
+                    if (script != null)
+                        script.compile(scriptPath, inputs);
+                }
+
+                measurementLog = MeasurementLog.create(logPath, profiledExecutableSignature, args.repeatCount,
+                        trapNames, inputs);
+            }
 
             // main profiling loop
-            generateInputs(args.repeatCount);
-            for (int round = 1; round <= args.repeatCount; round++) {
-                final CommandAPDU triggerAPDU = getInputAPDU(round);
+            try {
+                if (script != null)
+                    replayScript(createSession(cardManager), script, scriptPath);
+                else if (args.simulatorWorkers > 1)
+                    profileInParallel();
+                else
+                    profileRounds(createSession(cardManager), 1, args.repeatCount);
+            } finally {
+                measurementLog.close();
+            }
+        } catch (CardException | IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // sanity check
+        log.debug("Checking that no measurements are missing.");
+        roundCount = completedRounds.cardinality();
+        if (completedRounds.nextClearBit(0) != roundCount ||
+                (args.precision == null && roundCount != args.repeatCount))
+            throw new RuntimeException(String.format(
+                    "Only %d/%d rounds were measured!", roundCount, args.repeatCount));
+        if (inputs.size() != args.repeatCount)
+            throw new RuntimeException("inputs.size() != " + args.repeatCount);
+
+        // drop inputs of rounds that were not needed
+        inputs.subList(roundCount, inputs.size()).clear();
 
-                final String input = Util.bytesToHex(triggerAPDU.getBytes());
-                log.info("Round: {}/{} APDU: {}", round, args.repeatCount, input);
-                profileSingleStep(triggerAPDU);
+        for (int trapIdx = 0; trapIdx < measurements.getTrapCount(); trapIdx++) {
+            if (measurements.getUnreachableCount(trapIdx, 0, roundCount) != 0)
+                unreachedTraps.add(trapNames.get(trapIdx));
+        }
+
+        log.info("Collecting measurements complete.");
+    }
+
+    /**
+     * Measures the given range of profiling rounds and appends them to the measurement log.
+     * Rounds that were already restored from the measurement log are skipped.
+     *
+     * @param  session    card session
+     * @param  firstRound first round to be measured
+     * @param  lastRound  last round to be measured
+     *
+     * @throws CardException if the card connection failed
+     * @throws IOException   if the measurement log could not be written
+     */
+    private void profileRounds(final CardSession session, final int firstRound, final int lastRound)
+            throws CardException, IOException {
+        // reset if possible and erase any previous performance stop
+        resetApplet(session.cardManager);
+        setTrap(session, PERF_START);
+
+        // upload the trap schedule and arm its first trap
+        if (trapCursor)
+            setTrapSchedule(session);
+
+        for (int round = firstRound; round <= lastRound; round++) {
+            if (isCompleted(round))
+                continue;
+
+            final CommandAPDU triggerAPDU = getInputAPDU(round);
+
+            final String input = Util.bytesToHex(triggerAPDU.getBytes());
+            log.info("Round: {}/{} APDU: {}", round, args.repeatCount, input);
+            final Set<Short> reachableTraps = args.checkReachability ? getReachedTraps(session, triggerAPDU)
+                                                                     : trapNameMap.keySet();
+            profileSingleStep(session, round, triggerAPDU, reachableTraps);
+            measurementLog.append(round, measurements);
+
+            synchronized (completedRounds) {
+                completedRounds.set(round - 1);
+            }
+
+            if (args.precision != null && updateConvergence(round)) {
+                log.info("All traps converged after {} rounds.", round);
+                break;
             }
+        }
+    }
+
+    /**
+     * Replays the given precompiled session script and appends the measured rounds to the measurement log.
+     * <br><br>
+     * All APDUs of a round are sent in a tight loop that only stores the status words and the elapsed times
+     * into preallocated arrays.  The responses are checked and the measurements are stored once the round
+     * is over.
+     *
+     * @param  session    card session
+     * @param  script     precompiled session script
+     * @param  scriptPath path to the script
+     *
+     * @throws CardException    if the card connection failed
+     * @throws IOException      if the script could not be read or the measurement log could not be written
+     * @throws RuntimeException if the card returned an unexpected status word
+     */
+    private void replayScript(final CardSession session, final SessionScript script, final Path scriptPath)
+            throws CardException, IOException {
+        final short[] trapIDs = script.getTrapIDs();
+        final CommandAPDU[] setTrapAPDUs = script.getSetTrapAPDUs();
+        final CommandAPDU resetAPDU = script.getResetAPDU();
+
+        final int[] setTrapSWs = new int[trapIDs.length];
+        final int[] triggerSWs = new int[trapIDs.length];
+        final int[] resetSWs = new int[trapIDs.length];
+        final long[] durations = new long[trapIDs.length];
+
+        // reset if possible and erase any previous performance stop
+        resetApplet(session.cardManager);
+        final ResponseAPDU response = session.cardManager.transmit(script.getStartAPDU());
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+            throw new RuntimeException(
+                    "Setting \"PERF_START\" trap failed with SW " + Integer.toHexString(response.getSW()));
+
+        try (final SessionScript.TriggerReader triggers = script.openTriggers(scriptPath)) {
+            for (int round = 1; round <= script.getRoundCount(); round++) {
+                final CommandAPDU triggerAPDU = triggers.next();
+                log.debug("Round: {}/{}", round, script.getRoundCount());
+
+                for (int trapIdx = 0; trapIdx < trapIDs.length; trapIdx++) {
+                    setTrapSWs[trapIdx] = session.cardManager.transmit(setTrapAPDUs[trapIdx]).getSW();
+                    triggerSWs[trapIdx] = session.clock.transmit(triggerAPDU).getSW();
+                    durations[trapIdx] = session.clock.getLastTransmitTimeNano();
+                    resetSWs[trapIdx] = resetAPDU != null ? session.cardManager.transmit(resetAPDU).getSW()
+                                                          : JCProfilerUtil.SW_NO_ERROR;
+                }
+
+                storeReplayedRound(round, trapIDs, setTrapSWs, triggerSWs, resetSWs, durations);
+                measurementLog.append(round, measurements);
+                synchronized (completedRounds) {
+                    completedRounds.set(round - 1);
+                }
+
+                if (round % 1000 == 0)
+                    log.info("Replayed {}/{} rounds.", round, script.getRoundCount());
+            }
+        }
+    }
+
+    /**
+     * Checks the status words of a replayed round and stores its elapsed times.
+     *
+     * @param  round      profiling round
+     * @param  trapIDs    performance trap IDs in the order of the store
+     * @param  setTrapSWs status words of the set-trap APDUs
+     * @param  triggerSWs status words of the trigger APDUs
+     * @param  resetSWs   status words of the reset APDUs
+     * @param  durations  elapsed times of the trigger APDUs
+     *
+     * @throws RuntimeException if the card returned an unexpected status word
+     */
+    private void storeReplayedRound(final int round, final short[] trapIDs, final int[] setTrapSWs,
+                                    final int[] triggerSWs, final int[] resetSWs, final long[] durations) {
+        long prevTransmitDuration = 0;
+        for (int trapIdx = 0; trapIdx < trapIDs.length; trapIdx++) {
+            final String trapName = getTrapName(trapIDs[trapIdx]);
+            if (executableStarts.get(trapIdx))
+                prevTransmitDuration = 0;
+
+            if (setTrapSWs[trapIdx] != JCProfilerUtil.SW_NO_ERROR)
+                throw new RuntimeException(String.format(
+                        "Setting \"%s\" trap failed with SW %s", trapName, Integer.toHexString(setTrapSWs[trapIdx])));
+            if (resetSWs[trapIdx] != JCProfilerUtil.SW_NO_ERROR)
+                throw new RuntimeException(
+                        "Resetting the applet failed with SW " + Integer.toHexString(resetSWs[trapIdx]));
+
+            // SW should be equal to the trap ID
+            final int SW = triggerSWs[trapIdx];
+            if (SW != Short.toUnsignedInt(trapIDs[trapIdx])) {
+                // unknown SW returned
+                if (SW != JCProfilerUtil.SW_NO_ERROR)
+                    throw new RuntimeException(String.format(
+                            "Unexpected SW received when profiling trap %s: %s", trapName, Integer.toHexString(SW)));
+
+                // we have not reached expected performance trap
+                measurements.setUnreachable(trapIdx, round - 1);
+                continue;
+            }
+
+            // compute and store the difference
+            final long diff = durations[trapIdx] - prevTransmitDuration;
+            prevTransmitDuration = durations[trapIdx];
+            measurements.set(trapIdx, round - 1, diff);
+        }
+    }
+
+    /**
+     * Adds the measurements of the given round to the running statistics of unconverged traps
+     * and checks whether they have converged.
+     * <br><br>
+     * A trap converges once the half-width of the {@link #CONFIDENCE_LEVEL} confidence interval of its mean
+     * is at most {@link Args#precision} times the mean.  Traps that were not reached in the first
+     * {@link #MIN_ADAPTIVE_ROUNDS} rounds at all are considered converged as well.
+     *
+     * @param  round profiling round
+     * @return       true if all traps have converged, otherwise false
+     */
+    private boolean updateConvergence(final int round) {
+        int trapIdx = 0;
+        for (final String trapName : trapNameMap.values()) {
+            final int currentTrapIdx = trapIdx++;
+            if (convergedTraps.get(currentTrapIdx))
+                continue;
+
+            final SummaryStatistics statistics = trapStatistics[currentTrapIdx];
+            if (!measurements.isUnreachable(currentTrapIdx, round - 1))
+                statistics.addValue(measurements.get(currentTrapIdx, round - 1));
+
+            if (round < MIN_ADAPTIVE_ROUNDS)
+                continue;
+
+            final long n = statistics.getN();
+            if (n == 0) {
+                log.info("{} was not reached in {} rounds, it will not be measured anymore.", trapName, round);
+            } else if (n > 1) {
+                final double t = new TDistribution(n - 1)
+                        .inverseCumulativeProbability(1 - (1 - CONFIDENCE_LEVEL) / 2);
+                final double halfWidth = t * statistics.getStandardDeviation() / Math.sqrt(n);
+                if (halfWidth > args.precision * Math.abs(statistics.getMean()))
+                    continue;
+
+                log.info("{} converged after {} rounds: mean {} +/- {} ns", trapName, round,
+                        String.format("%.2f", statistics.getMean()), String.format("%.2f", halfWidth));
+            } else {
+                continue;
+            }
+
+            convergedTraps.set(currentTrapIdx);
+        }
+
+        return convergedTraps.cardinality() == trapNameMap.size();
+    }
+
+    /**
+     * Checks whether the given round was already measured.
+     *
+     * @param  round profiling round
+     * @return       true if yes, otherwise false
+     */
+    private boolean isCompleted(final int round) {
+        synchronized (completedRounds) {
+            return completedRounds.get(round - 1);
+        }
+    }
 
-            // sanity check
-            log.debug("Checking that no measurements are missing.");
-            measurements.forEach((k, v) -> {
-                if (v.size() != args.repeatCount)
-                    throw new RuntimeException(k + ".size() != " + args.repeatCount);
-            });
-            if (inputs.size() != args.repeatCount)
-                throw new RuntimeException("inputs.size() != " + args.repeatCount);
+    /**
+     * Splits the profiling rounds between {@link Args#simulatorWorkers} isolated jCardSim instances and measures
+     * them in parallel.  Every worker loads the applet with its own class loader, so the static state of the
+     * {@code PM} class is not shared.
+     *
+     * @throws RuntimeException if any of the workers failed
+     */
+    private void profileInParallel() {
+        final int workerCount = Math.min(args.simulatorWorkers, args.repeatCount);
+        log.info("Profiling with {} simulator workers.", workerCount);
 
+        final String entryPoint = JCProfilerUtil.getEntryPoint(
+                profiledExecutable.getFactory().getModel(), args.entryPoint).getQualifiedName();
 
-        } catch (CardException e) {
+        final ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int worker = 0; worker < workerCount; worker++) {
+                final int firstRound = worker * args.repeatCount / workerCount + 1;
+                final int lastRound = (worker + 1) * args.repeatCount / workerCount;
+
+                futures.add(executor.submit(() -> {
+                    // the simulator must be created by the thread that uses it
+                    final CardManager workerCardManager = Installer.connect(args, entryPoint);
+                    try {
+                        profileRounds(createSession(workerCardManager), firstRound, lastRound);
+                        workerCardManager.disconnect(true);
+                    } catch (CardException | IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+
+            for (final Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        log.info("Collecting measurements complete.");
+    /**
+     * Creates a new card session measured with the {@link Args#clockSource} clock.  Must be called by the thread
+     * that performs the measurements.
+     *
+     * @param  cardManager applet connection instance
+     * @return             a {@link CardSession} instance
+     */
+    private CardSession createSession(final CardManager cardManager) {
+        return new CardSession(cardManager, AbstractClock.create(args.clockSource, cardManager));
     }
 
     /**
      * Sets {@code jcprofiler.PM#nextPerfStop} to given performance trap ID.
      *
-     * @param  trapID performance trap ID to be set
+     * @param  session card session
+     * @param  trapID  performance trap ID to be set
      *
      * @throws CardException    if the card connection failed
      * @throws RuntimeException if setting the next fatal performance trap failed
      */
-    private void setTrap(short trapID) throws CardException {
+    private void setTrap(final CardSession session, short trapID) throws CardException {
         log.debug("Setting next trap to {}.", getTrapName(trapID));
 
         CommandAPDU setTrap = new CommandAPDU(args.cla, JCProfilerUtil.INS_PERF_HANDLER, 0, 0,
                                               Util.shortToByteArray(trapID));
-        ResponseAPDU response = cardManager.transmit(setTrap);
+        ResponseAPDU response = session.cardManager.transmit(setTrap);
         if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
             throw new RuntimeException(String.format(
                     "Setting \"%s\" trap failed with SW %s",
                     getTrapName(trapID), Integer.toHexString(response.getSW())));
+
+        session.armedTrap = trapID;
+    }
+
+    /**
+     * Sets the bounds of the trap schedule of the on-card trap cursor and arms its first trap.
+     *
+     * @param  session card session
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if setting the trap schedule failed
+     */
+    private void setTrapSchedule(final CardSession session) throws CardException {
+        final short firstTrap = Collections.min(trapNameMap.keySet());
+        final short lastTrap = Collections.max(trapNameMap.keySet());
+        log.debug("Setting trap schedule from {} to {}.", getTrapName(firstTrap), getTrapName(lastTrap));
+
+        // next trap, first trap, last trap
+        final byte[] data = ByteBuffer.allocate(3 * Short.BYTES)
+                .putShort(firstTrap).putShort(firstTrap).putShort(lastTrap).array();
+
+        CommandAPDU setSchedule = new CommandAPDU(args.cla, JCProfilerUtil.INS_PERF_HANDLER, 0, 0, data);
+        ResponseAPDU response = session.cardManager.transmit(setSchedule);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+            throw new RuntimeException(
+                    "Setting trap schedule failed with SW " + Integer.toHexString(response.getSW()));
+
+        session.armedTrap = firstTrap;
+    }
+
+    /**
+     * Returns the trap the on-card cursor advances to after the given trap was reached.
+     *
+     * @param  trapID ID of the reached performance trap
+     * @return        ID of the next armed performance trap
+     */
+    private short getNextScheduledTrap(final short trapID) {
+        return trapID == Collections.max(trapNameMap.keySet()) ? Collections.min(trapNameMap.keySet())
+                                                               : (short) (trapID + 1);
     }
 
     /**
-     * Performs a single time profiling step.  Executes the given APDU and stores the elapsed time.
+     * Executes the given APDU once without any fatal trap and returns the set of traps reached
+     * during this execution.
      *
-     * @param  triggerAPDU APDU to reach the selected fatal trap
+     * @param  session     card session
+     * @param  triggerAPDU APDU to be executed
+     * @return             set of reached performance trap IDs
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the recording of reached traps or the execution failed
+     */
+    private Set<Short> getReachedTraps(final CardSession session, final CommandAPDU triggerAPDU)
+            throws CardException {
+        log.debug("Recording reached traps.");
+
+        // start recording
+        final CommandAPDU startRecording = new CommandAPDU(args.cla, JCProfilerUtil.INS_PERF_HANDLER, 1, 0);
+        ResponseAPDU response = session.cardManager.transmit(startRecording);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+            throw new RuntimeException(
+                    "Starting the recording of reached traps failed with SW " + Integer.toHexString(response.getSW()));
+
+        // execute target operation
+        response = session.cardManager.transmit(triggerAPDU);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+            throw new RuntimeException(
+                    "Executing the applet failed with SW " + Integer.toHexString(response.getSW()));
+
+        // free memory after command
+        resetApplet(session.cardManager);
+
+        // get the bitmap and stop recording
+        final CommandAPDU getReached = new CommandAPDU(args.cla, JCProfilerUtil.INS_PERF_HANDLER, 2, 0, 256);
+        response = session.cardManager.transmit(getReached);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+            throw new RuntimeException(
+                    "Getting reached traps failed with SW " + Integer.toHexString(response.getSW()));
+
+        final byte[] bitmap = response.getData();
+        final int expectedLength = (trapNameMap.size() + Byte.SIZE - 1) / Byte.SIZE;
+        if (bitmap.length != expectedLength)
+            throw new RuntimeException(String.format(
+                    "The incoming bitmap of reached traps has incorrect length! Expected: %d Actual: %d",
+                    expectedLength, bitmap.length));
+
+        final Set<Short> reachedTraps = new HashSet<>();
+        for (final short trapID : trapNameMap.keySet()) {
+            final int idx = Short.toUnsignedInt(trapID) - /* PERF_START */ 2;
+            if ((bitmap[idx / Byte.SIZE] & (1 << (idx % Byte.SIZE))) != 0)
+                reachedTraps.add(trapID);
+        }
+
+        log.debug("Reached {}/{} traps.", reachedTraps.size(), trapNameMap.size());
+        return reachedTraps;
+    }
+
+    /**
+     * Performs a single time profiling step.  Executes the given APDU and stores the elapsed times.
+     * <br><br>
+     * The fatal trap is only set if it is not already armed on the card, i.e. with the on-card
+     * trap cursor only the trigger APDU is sent unless the previous trap was unreachable.
+     *
+     * @param  session        card session
+     * @param  round          profiling round
+     * @param  triggerAPDU    APDU to reach the selected fatal trap
+     * @param  reachableTraps set of performance trap IDs that may be reached with the given APDU
      *
      * @throws CardException    if the card connection failed
      * @throws RuntimeException if setting the next fatal performance trap failed
      */
-    private void profileSingleStep(CommandAPDU triggerAPDU) throws CardException {
-        long prevTransmitDuration = 0;
-        long currentTransmitDuration;
+    private void profileSingleStep(final CardSession session, final int round, final CommandAPDU triggerAPDU,
+                                   final Set<Short> reachableTraps) throws CardException {
+        final List<Short> trapIDs = new ArrayList<>(trapNameMap.keySet());
+        final BitSet reachable = new BitSet();
+        for (int trapIdx = 0; trapIdx < trapIDs.size(); trapIdx++) {
+            if (reachableTraps.contains(trapIDs.get(trapIdx)))
+                reachable.set(trapIdx);
+        }
 
-        for (short trapID : trapNameMap.keySet()) {
-            // set performance trap
-            setTrap(trapID);
+        measureRound(measurements, round, executableStarts, convergedTraps, reachable, args.checkReachability,
+                trapIdx -> measureTrap(session, trapIDs.get(trapIdx), triggerAPDU));
+    }
 
-            // execute target operation
-            final String trapName = getTrapName(trapID);
-            log.debug("Measuring {}.", trapName);
-            final ResponseAPDU response = cardManager.transmit(triggerAPDU);
+    /**
+     * Measures a single round and stores the elapsed times between consecutive reached traps.
+     * <br><br>
+     * Traps that are not in the given set of reachable traps are considered unreachable without executing
+     * the APDU.  Traps that have already converged are not sampled anymore.  However, a converged trap is
+     * still reached if its elapsed time is the baseline of a following trap that has not converged yet,
+     * i.e. if it may be the last reached trap before it.  Otherwise, the time of the skipped trap would be
+     * added to the following one.
+     * <br><br>
+     * The elapsed time of the first trap of every instrumented executable is measured from the start
+     * of the APDU, i.e. the measurements of one executable do not depend on the traps of other ones.
+     *
+     * @param  store             store the measurements are stored to
+     * @param  round             profiling round
+     * @param  executableStarts  indices of the first traps of instrumented executables
+     * @param  convergedTraps    indices of traps that have already converged
+     * @param  reachableTraps    indices of traps that may be reached in this round
+     * @param  reachabilityKnown true if the traps that are not in reachableTraps are certainly unreachable,
+     *                           false if all traps may be reached
+     * @param  measurement       function reaching the given trap
+     *
+     * @throws CardException if the card connection failed
+     */
+    static void measureRound(final MeasurementStore store, final int round, final BitSet executableStarts,
+                             final BitSet convergedTraps, final BitSet reachableTraps,
+                             final boolean reachabilityKnown, final TrapMeasurement measurement)
+            throws CardException {
+        final int trapCount = store.getTrapCount();
 
-            // SW should be equal to the trap ID
-            final int SW = response.getSW();
-            if (SW != Short.toUnsignedInt(trapID)) {
-                // unknown SW returned
-                if (SW != JCProfilerUtil.SW_NO_ERROR)
-                    throw new RuntimeException(String.format(
-                            "Unexpected SW received when profiling trap %s: %s", trapName, Integer.toHexString(SW)));
+        // find converged traps that are the baseline of a following pending trap
+        final BitSet baselineTraps = new BitSet();
+        boolean isNextPending = false;
+        boolean isAnyPending = false;
+        for (int trapIdx = trapCount - 1; trapIdx >= 0; trapIdx--) {
+            final boolean isReachable = reachableTraps.get(trapIdx);
+            final boolean isConverged = convergedTraps.get(trapIdx);
+            if (isConverged && isReachable && (reachabilityKnown ? isNextPending : isAnyPending))
+                baselineTraps.set(trapIdx);
 
-                // we have not reached expected performance trap
-                unreachedTraps.add(trapName);
-                measurements.computeIfAbsent(trapName, k -> new ArrayList<>()).add(null);
-                log.debug("Duration: unreachable");
+            if (isReachable)
+                isNextPending = !isConverged;
+            isAnyPending |= isReachable && !isConverged;
+
+            if (executableStarts.get(trapIdx))
+                isNextPending = isAnyPending = false;
+        }
+
+        long prevTransmitDuration = 0;
+        for (int trapIdx = 0; trapIdx < trapCount; trapIdx++) {
+            if (executableStarts.get(trapIdx))
+                prevTransmitDuration = 0;
+
+            final boolean isConverged = convergedTraps.get(trapIdx);
+            if (!reachableTraps.get(trapIdx) || (isConverged && !baselineTraps.get(trapIdx))) {
+                log.debug("Skipping {} because it is {}.", store.getTrapNames().get(trapIdx),
+                        isConverged ? "converged" : "unreachable");
+                if (isConverged)
+                    store.setNotSampled(trapIdx, round - 1);
+                else
+                    store.setUnreachable(trapIdx, round - 1);
                 continue;
             }
 
-            // compute the difference
-            currentTransmitDuration = cardManager.getLastTransmitTimeNano();
-            final long diff = currentTransmitDuration - prevTransmitDuration;
-            prevTransmitDuration = currentTransmitDuration;
+            final long transmitDuration = measurement.measure(trapIdx);
+
+            // converged traps only move the baseline
+            if (isConverged) {
+                store.setNotSampled(trapIdx, round - 1);
+                if (transmitDuration != TrapMeasurement.UNREACHABLE)
+                    prevTransmitDuration = transmitDuration;
+                continue;
+            }
+
+            if (transmitDuration == TrapMeasurement.UNREACHABLE) {
+                store.setUnreachable(trapIdx, round - 1);
+                continue;
+            }
 
+            // compute and store the difference
+            final long diff = transmitDuration - prevTransmitDuration;
+            prevTransmitDuration = transmitDuration;
             log.debug("Duration: {} ns", diff);
+            store.set(trapIdx, round - 1, diff);
+        }
+    }
+
+    /**
+     * Executes the given APDU with the given fatal trap set and returns the elapsed time.
+     *
+     * @param  session     card session
+     * @param  trapID      performance trap ID
+     * @param  triggerAPDU APDU to reach the given fatal trap
+     * @return             elapsed time or {@link TrapMeasurement#UNREACHABLE} if the trap was not reached
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if setting the fatal performance trap failed or an unexpected SW was received
+     */
+    private long measureTrap(final CardSession session, final short trapID, final CommandAPDU triggerAPDU)
+            throws CardException {
+        final String trapName = getTrapName(trapID);
+
+        // set performance trap unless the card has already done it
+        if (session.armedTrap != trapID)
+            setTrap(session, trapID);
 
-            // store the difference
-            measurements.computeIfAbsent(getTrapName(trapID), k -> new ArrayList<>()).add(diff);
+        // execute target operation
+        log.debug("Measuring {}.", trapName);
+        final ResponseAPDU response = session.clock.transmit(triggerAPDU);
 
-            // free memory after command
-            resetApplet();
+        // SW should be equal to the trap ID
+        final int SW = response.getSW();
+        if (SW != Short.toUnsignedInt(trapID)) {
+            // unknown SW returned
+            if (SW != JCProfilerUtil.SW_NO_ERROR)
+                throw new RuntimeException(String.format(
+                        "Unexpected SW received when profiling trap %s: %s", trapName, Integer.toHexString(SW)));
+
+            // we have not reached expected performance trap
+            log.debug("Duration: unreachable");
+            return TrapMeasurement.UNREACHABLE;
         }
+
+        // the cursor has moved on its own
+        if (trapCursor)
+            session.armedTrap = getNextScheduledTrap(trapID);
+
+        final long transmitDuration = session.clock.getLastTransmitTimeNano();
+
+        // free memory after command
+        resetApplet(session.cardManager);
+        return transmitDuration;
     }
 
     /**
@@ -166,9 +734,63 @@ public class TimeProfiler extends AbstractProfiler {
     @Override
     protected void saveMeasurements(final CSVPrinter printer) throws IOException {
         printer.printComment("trapName,measurement1,measurement2,...");
-        for (final Map.Entry<String, List<Long>> e : measurements.entrySet()) {
-            printer.print(e.getKey());
-            printer.printRecord(e.getValue());
+        for (int trapIdx = 0; trapIdx < measurements.getTrapCount(); trapIdx++) {
+            printer.print(measurements.getTrapNames().get(trapIdx));
+            for (int round = 0; round < roundCount; round++)
+                printer.print(measurements.isUnreachable(trapIdx, round) ? null
+                              : measurements.isNotSampled(trapIdx, round) ? MeasurementStore.NOT_SAMPLED
+                              : measurements.get(trapIdx, round));
+            printer.println();
+        }
+    }
+
+    /**
+     * Function reaching a single performance trap
+     */
+    @FunctionalInterface
+    interface TrapMeasurement {
+        /**
+         * Elapsed time of a trap that was not reached
+         */
+        long UNREACHABLE = -1;
+
+        /**
+         * Executes the trigger APDU with the given fatal trap set.
+         *
+         * @param  trapIdx index of the performance trap
+         * @return         elapsed time or {@link #UNREACHABLE} if the trap was not reached
+         *
+         * @throws CardException if the card connection failed
+         */
+        long measure(int trapIdx) throws CardException;
+    }
+
+    /**
+     * Connection to a single card or simulator instance together with the state of its fatal trap
+     */
+    private static class CardSession {
+        /**
+         * A card connection instance
+         */
+        private final CardManager cardManager;
+        /**
+         * Clock measuring the trigger APDUs
+         */
+        private final AbstractClock clock;
+        /**
+         * Trap that is currently armed on the card
+         */
+        private short armedTrap = PERF_START;
+
+        /**
+         * Constructs the {@link CardSession} class.
+         *
+         * @param cardManager applet connection instance
+         * @param clock       clock measuring the trigger APDUs
+         */
+        private CardSession(final CardManager cardManager, final AbstractClock clock) {
+            this.cardManager = cardManager;
+            this.clock = clock;
         }
     }
 }
@@ -0,0 +1,34 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.CardManager;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+/**
+ * Clock measuring the wall-clock time of APDU transmissions as reported by the {@link CardManager}
+ */
+public class WallClock extends AbstractClock {
+    /**
+     * Constructs the {@link WallClock} class.
+     *
+     * @param cardManager a card connection instance
+     */
+    public WallClock(final CardManager cardManager) {
+        super(cardManager);
+    }
+
+    @Override
+    public ResponseAPDU transmit(final CommandAPDU apdu) throws CardException {
+        return cardManager.transmit(apdu);
+    }
+
+    @Override
+    public long getLastTransmitTimeNano() {
+        return cardManager.getLastTransmitTimeNano();
+    }
+}
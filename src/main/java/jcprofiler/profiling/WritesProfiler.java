@@ -0,0 +1,184 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import cz.muni.fi.crocs.rcard.client.CardManager;
+import cz.muni.fi.crocs.rcard.client.Util;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.JCProfilerUtil;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spoon.reflect.CtModel;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class represents the specifics of profiling in writes mode.
+ * <br><br>
+ * Writes to persistent memory are attributed to the last reached trap, i.e. the value of a trap
+ * corresponds to the writes executed after it and before the next reached trap.
+ */
+public class WritesProfiler extends AbstractProfiler {
+    // maximal response lengths of short and extended length APDUs supported by the PM
+    private static final int MAX_SHORT_LENGTH = 256;
+    private static final int MAX_EXTENDED_LENGTH = Short.MAX_VALUE;
+
+    // use LinkedHashX to preserve insertion order
+    private final Map<String, Integer> writeCounts = new LinkedHashMap<>();
+    private final Map<String, Integer> writtenBytes = new LinkedHashMap<>();
+
+    private static final Logger log = LoggerFactory.getLogger(WritesProfiler.class);
+
+    /**
+     * Constructs the {@link WritesProfiler} class.
+     *
+     * @param args        object with commandline arguments
+     * @param cardManager applet connection instance
+     * @param model       Spoon model
+     */
+    public WritesProfiler(final Args args, final CardManager cardManager, final CtModel model) {
+        super(args, cardManager, JCProfilerUtil.getProfiledMethod(model, args.executable),
+              /* customInsField */ "INS_PERF_GETWRITES");
+    }
+
+    /**
+     * Executes the profiled method once and retrieves the write counters from the card.
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the applet execution or the counter retrieval failed
+     */
+    @Override
+    protected void profileImpl() throws CardException {
+        generateInputs(1);
+        resetApplet();
+
+        // get the input
+        final CommandAPDU triggerAPDU = getInputAPDU(1);
+        log.info("Counting writes to persistent memory with APDU: {}", Util.bytesToHex(triggerAPDU.getBytes()));
+
+        final ResponseAPDU response = cardManager.transmit(triggerAPDU);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR)
+            throw new RuntimeException(
+                    "Executing the applet failed with SW " + Integer.toHexString(response.getSW()));
+        log.info("Measuring {} complete.", profiledExecutableSignature);
+
+        log.info("Retrieving write counters from the card.");
+        storeCounters(getCounters());
+        log.info("Write counters retrieved successfully.");
+    }
+
+    /**
+     * Retrieves the counters of all traps, at once with an extended length APDU if possible
+     * and in short APDU sized parts otherwise.
+     *
+     * @return retrieved counters
+     *
+     * @throws CardException    if the card connection failed
+     * @throws RuntimeException if the counter retrieval failed
+     */
+    private byte[] getCounters() throws CardException {
+        final int arrayLength = trapNameMap.size() * 2 * Short.BYTES;
+        final byte[] buffer = new byte[arrayLength];
+
+        int partLength = Math.min(arrayLength, MAX_EXTENDED_LENGTH);
+        byte[] data = getPart(0, partLength);
+        if (data == null && partLength > MAX_SHORT_LENGTH) {
+            log.info("Extended length APDUs are not supported, falling back to short APDUs.");
+            partLength = MAX_SHORT_LENGTH;
+            data = getPart(0, partLength);
+        }
+
+        int part = 0;
+        int offset = 0;
+        while (true) {
+            if (data == null)
+                throw new RuntimeException("Getting write counters failed!");
+            if (data.length != Math.min(arrayLength - offset, partLength))
+                throw new RuntimeException(String.format(
+                        "The incoming write counters have incorrect length! Expected: %d Actual: %d",
+                        Math.min(arrayLength - offset, partLength), data.length));
+
+            System.arraycopy(data, 0, buffer, offset, data.length);
+            offset += data.length;
+            if (offset == arrayLength)
+                return buffer;
+
+            data = getPart(++part, partLength);
+        }
+    }
+
+    /**
+     * Retrieves a single part of the counters.
+     *
+     * @param  part       index of the part
+     * @param  partLength maximal length of the part in bytes
+     * @return            response data or {@code null} if the request failed
+     *
+     * @throws CardException if the card connection failed
+     */
+    private byte[] getPart(final int part, final int partLength) throws CardException {
+        final CommandAPDU getCounters = new CommandAPDU(
+                args.cla, JCProfilerUtil.INS_PERF_HANDLER, 0, part, partLength);
+        final ResponseAPDU response = cardManager.transmit(getCounters);
+        if (response.getSW() != JCProfilerUtil.SW_NO_ERROR) {
+            log.debug("Getting write counters failed with SW {}", Integer.toHexString(response.getSW()));
+            return null;
+        }
+
+        return response.getData();
+    }
+
+    /**
+     * Converts and stores the retrieved counters.
+     *
+     * @param  buffer retrieved counters
+     *
+     * @throws RuntimeException if the counters are in an invalid format
+     */
+    private void storeCounters(final byte[] buffer) {
+        trapNameMap.forEach((trapID, trapName) -> {
+            final int idx = (Short.toUnsignedInt(trapID) - /* PERF_START */ 2) * 2 * Short.BYTES;
+            Integer count = (int) Util.getShort(buffer, idx);
+            Integer bytes = (int) Util.getShort(buffer, idx + Short.BYTES);
+
+            // -1 corresponds to an unreachable trap
+            if (count < 0 || bytes < 0) {
+                if (count != -1 || bytes != -1)
+                    throw new RuntimeException("The write counters must be greater or equal -1");
+
+                unreachedTraps.add(trapName);
+                count = bytes = null;
+            } else if (count == Short.MAX_VALUE || bytes == Short.MAX_VALUE) {
+                log.warn("Write counters of {} reached their maximum value {}!", trapName, Short.MAX_VALUE);
+            }
+
+            writeCounts.put(trapName, count);
+            writtenBytes.put(trapName, bytes);
+        });
+    }
+
+    /**
+     * Stores the write counters using given {@link CSVPrinter} instance.
+     *
+     * @param  printer instance of the CSV printer
+     *
+     * @throws IOException if the printing fails
+     */
+    @Override
+    protected void saveMeasurements(final CSVPrinter printer) throws IOException {
+        printer.printComment("trapName,writeCount,writtenBytes");
+        for (final String k : writeCounts.keySet())
+            printer.printRecord(k, writeCounts.get(k), writtenBytes.get(k));
+    }
+}
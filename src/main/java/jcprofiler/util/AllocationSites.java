@@ -0,0 +1,150 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Memory allocated at allocation sites reachable from the profiled executable.
+ * <br><br>
+ * Every row corresponds to a single allocation site and contains the executable or field containing it,
+ * the allocation expression, the number of executed allocations and the bytes allocated from transient deselect,
+ * transient reset and persistent memory in total.  The allocated bytes include nested allocations, e.g. those
+ * executed by the allocated object's constructor.
+ */
+public class AllocationSites {
+    /**
+     * Default file name of the allocation sites
+     */
+    public static final String FILE_NAME = "allocationSites.csv";
+
+    /**
+     * Names of the measured columns
+     */
+    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "allocationCount", "allocatedTransientDeselect", "allocatedTransientReset", "allocatedPersistent"));
+
+    private final List<String> locations = new ArrayList<>();
+    private final List<String> allocations = new ArrayList<>();
+    private final List<long[]> rows = new ArrayList<>();
+
+    /**
+     * Appends a single allocation site.
+     *
+     * @param location   executable or field containing the allocation
+     * @param allocation allocation expression
+     * @param row        measured values in the order of {@link #COLUMNS}
+     *
+     * @throws IllegalArgumentException if the row has incorrect length
+     */
+    public void add(final String location, final String allocation, final long[] row) {
+        if (row.length != COLUMNS.size())
+            throw new IllegalArgumentException(String.format(
+                    "Unexpected number of values! Expected: %d Actual: %d", COLUMNS.size(), row.length));
+
+        locations.add(location);
+        allocations.add(allocation);
+        rows.add(row.clone());
+    }
+
+    /**
+     * Returns the number of allocation sites.
+     *
+     * @return number of allocation sites
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the executable or field containing the given allocation site.
+     *
+     * @param  site index of the allocation site
+     * @return      location of the allocation site
+     */
+    public String getLocation(final int site) {
+        return locations.get(site);
+    }
+
+    /**
+     * Returns the allocation expression of the given allocation site.
+     *
+     * @param  site index of the allocation site
+     * @return      allocation expression
+     */
+    public String getAllocation(final int site) {
+        return allocations.get(site);
+    }
+
+    /**
+     * Returns the values of the given column.
+     *
+     * @param  column index of the column
+     * @return        list of values, one for every allocation site
+     */
+    public List<Long> getColumn(final int column) {
+        final List<Long> values = new ArrayList<>(rows.size());
+        rows.forEach(r -> values.add(r[column]));
+        return values;
+    }
+
+    /**
+     * Stores the allocation sites to the given CSV file.
+     *
+     * @param  path path to the CSV file
+     *
+     * @throws RuntimeException if the file could not be written
+     */
+    public void store(final Path path) {
+        try (final CSVPrinter printer = new CSVPrinter(new FileWriter(path.toFile()),
+                JCProfilerUtil.getCSVFormat())) {
+            printer.printComment("site,location,allocation," + String.join(",", COLUMNS));
+            for (int i = 0; i < rows.size(); i++) {
+                printer.print(i);
+                printer.print(locations.get(i));
+                printer.print(allocations.get(i));
+                for (final long value : rows.get(i))
+                    printer.print(value);
+                printer.println();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the allocation sites from the given CSV file.
+     *
+     * @param  path path to the CSV file
+     * @return      a {@link AllocationSites} instance
+     *
+     * @throws RuntimeException if the file could not be read or has invalid format
+     */
+    public static AllocationSites load(final Path path) {
+        final AllocationSites sites = new AllocationSites();
+        try (final CSVParser parser = CSVParser.parse(path, Charset.defaultCharset(), JCProfilerUtil.getCSVFormat())) {
+            for (final CSVRecord record : parser) {
+                if (record.size() != COLUMNS.size() + 3)
+                    throw new RuntimeException(String.format(
+                            "Unexpected number of values on line %d of %s!", record.getRecordNumber(), path));
+
+                final long[] row = new long[COLUMNS.size()];
+                for (int i = 0; i < row.length; i++)
+                    row[i] = Long.parseLong(record.get(i + 3));
+                sites.add(record.get(1), record.get(2), row);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return sites;
+    }
+}
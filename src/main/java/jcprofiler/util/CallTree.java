@@ -0,0 +1,260 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Inclusive and exclusive time of the profiled executable and its instrumented callees.
+ * <br><br>
+ * The time measurements of every executable are relative to the start of the trigger APDU, so the sum of the
+ * reached measurements of an executable up to some trap is the time the trap was first reached.  In every round,
+ * the executable is active from its first until its last reached trap and its caller is the statically calling
+ * executable that was entered last before it.  The end of the executable is extended to the ends of its callees,
+ * e.g. when the callee is called in the return statement.  The inclusive time is the duration of this interval
+ * and the exclusive time is the inclusive time without the inclusive time of the callees.
+ * <br><br>
+ * As every trap is measured only when it is reached for the first time, only the first execution of every callee
+ * is attributed to the callee, the following ones are included in the exclusive time of its caller.
+ */
+public class CallTree {
+    /**
+     * Default file name of the call tree
+     */
+    public static final String FILE_NAME = "callTree.csv";
+
+    private final List<String> executables = new ArrayList<>();
+    private final List<Integer> depths = new ArrayList<>();
+    private final List<Integer> reachedCounts = new ArrayList<>();
+    private final List<Double> inclusiveTimes = new ArrayList<>();
+    private final List<Double> exclusiveTimes = new ArrayList<>();
+
+    /**
+     * Computes the call tree from the given measurements.
+     *
+     * @param  measurements    store with time measurements of every trap
+     * @param  trapExecutables function returning the full signature of the executable containing the given trap
+     * @param  calls           map between full signatures of callers and full signatures of their callees
+     * @param  root            full signature of the profiled executable
+     * @return                 a {@link CallTree} instance with executables in the depth-first order
+     */
+    public static CallTree compute(final MeasurementStore measurements, final Function<String, String> trapExecutables,
+                                   final Map<String, Set<String>> calls, final String root) {
+        // use LinkedHashMap to preserve insertion order
+        final Map<String, List<Integer>> trapIndices = new LinkedHashMap<>();
+        trapIndices.put(root, new ArrayList<>());
+        for (int trapIdx = 0; trapIdx < measurements.getTrapCount(); trapIdx++)
+            trapIndices.computeIfAbsent(trapExecutables.apply(measurements.getTrapNames().get(trapIdx)),
+                    k -> new ArrayList<>()).add(trapIdx);
+
+        final List<String> names = new ArrayList<>(trapIndices.keySet());
+        final int count = names.size();
+        // recursive calls are ignored
+        final List<List<Integer>> callers = new ArrayList<>();
+        for (int callee = 0; callee < count; callee++) {
+            final List<Integer> calleeCallers = new ArrayList<>();
+            for (int caller = 0; caller < count; caller++) {
+                final Set<String> callees = calls.get(names.get(caller));
+                if (caller != callee && callees != null && callees.contains(names.get(callee)))
+                    calleeCallers.add(caller);
+            }
+            callers.add(calleeCallers);
+        }
+
+        final long[] reached = new long[count];
+        final double[] inclusiveSum = new double[count];
+        final double[] exclusiveSum = new double[count];
+        final int[][] parentCounts = new int[count][count];
+
+        final long[] start = new long[count];
+        final long[] end = new long[count];
+        final boolean[] isReached = new boolean[count];
+        final int[] parents = new int[count];
+        for (int round = 0; round < measurements.getMeasurementCount(); round++) {
+            // get the intervals of reached executables
+            for (int e = 0; e < count; e++) {
+                isReached[e] = false;
+                long time = 0;
+                for (final int trapIdx : trapIndices.get(names.get(e))) {
+                    if (measurements.isMissing(trapIdx, round))
+                        continue;
+
+                    time += measurements.get(trapIdx, round);
+                    if (!isReached[e])
+                        start[e] = time;
+                    end[e] = time;
+                    isReached[e] = true;
+                }
+            }
+
+            // the caller is the executable entered last, ties are broken by the breadth-first order
+            final List<Integer> order = new ArrayList<>();
+            for (int e = 0; e < count; e++) {
+                parents[e] = -1;
+                if (!isReached[e])
+                    continue;
+
+                order.add(e);
+                for (final int caller : callers.get(e))
+                    if (isReached[caller] && isBefore(start, caller, e) &&
+                            (parents[e] == -1 || isBefore(start, parents[e], caller)))
+                        parents[e] = caller;
+            }
+
+            // callees are entered after their callers, so process them first
+            order.sort(Comparator.comparingLong((Integer e) -> start[e]).thenComparingInt(e -> e).reversed());
+            final double[] inclusive = new double[count];
+            final double[] calleeTime = new double[count];
+            for (final int e : order) {
+                inclusive[e] = end[e] - start[e];
+                final int parent = parents[e];
+                if (parent == -1)
+                    continue;
+
+                end[parent] = Math.max(end[parent], end[e]);
+                calleeTime[parent] += inclusive[e];
+                parentCounts[e][parent]++;
+            }
+
+            for (final int e : order) {
+                reached[e]++;
+                inclusiveSum[e] += inclusive[e];
+                exclusiveSum[e] += inclusive[e] - calleeTime[e];
+            }
+        }
+
+        // the displayed caller is the most frequent one, unreached executables are shown under a static caller
+        final List<List<Integer>> children = new ArrayList<>();
+        for (int e = 0; e < count; e++)
+            children.add(new ArrayList<>());
+        for (int e = 1; e < count; e++) {
+            int parent = callers.get(e).isEmpty() ? 0 : callers.get(e).get(0);
+            for (int caller = 0; caller < count; caller++)
+                if (parentCounts[e][caller] > parentCounts[e][parent])
+                    parent = caller;
+            children.get(parent).add(e);
+        }
+
+        final CallTree tree = new CallTree();
+        final boolean[] visited = new boolean[count];
+        final Deque<int[]> stack = new ArrayDeque<>(Collections.singletonList(new int[]{0, 0}));
+        while (!stack.isEmpty()) {
+            final int[] node = stack.pop();
+            final int e = node[0];
+            if (visited[e])
+                continue;
+
+            visited[e] = true;
+            tree.executables.add(names.get(e));
+            tree.depths.add(node[1]);
+            tree.reachedCounts.add((int) reached[e]);
+            tree.inclusiveTimes.add(reached[e] != 0 ? inclusiveSum[e] / reached[e] : Double.NaN);
+            tree.exclusiveTimes.add(reached[e] != 0 ? exclusiveSum[e] / reached[e] : Double.NaN);
+
+            final List<Integer> nodeChildren = children.get(e);
+            for (int i = nodeChildren.size() - 1; i >= 0; i--)
+                stack.push(new int[]{nodeChildren.get(i), node[1] + 1});
+        }
+
+        return tree;
+    }
+
+    /**
+     * Checks whether the first executable was entered before the second one.
+     *
+     * @param  start  times when the executables were entered
+     * @param  first  index of the first executable
+     * @param  second index of the second executable
+     * @return        true if the first executable was entered earlier or at the same time and precedes
+     *                the second one in the breadth-first order, otherwise false
+     */
+    private static boolean isBefore(final long[] start, final int first, final int second) {
+        return start[first] < start[second] || (start[first] == start[second] && first < second);
+    }
+
+    /**
+     * Returns the number of executables in the call tree.
+     *
+     * @return number of executables
+     */
+    public int size() {
+        return executables.size();
+    }
+
+    /**
+     * Returns the full signature of the given executable.
+     *
+     * @param  idx index of the executable
+     * @return     full signature of the executable
+     */
+    public String getExecutable(final int idx) {
+        return executables.get(idx);
+    }
+
+    /**
+     * Returns the depth of the given executable in the call tree.
+     *
+     * @param  idx index of the executable
+     * @return     depth of the executable, zero for the profiled executable
+     */
+    public int getDepth(final int idx) {
+        return depths.get(idx);
+    }
+
+    /**
+     * Returns the number of rounds in which the given executable was reached.
+     *
+     * @param  idx index of the executable
+     * @return     number of rounds
+     */
+    public int getReachedCount(final int idx) {
+        return reachedCounts.get(idx);
+    }
+
+    /**
+     * Returns the mean inclusive time of the given executable.
+     *
+     * @param  idx index of the executable
+     * @return     mean inclusive time or {@link Double#NaN} if the executable was never reached
+     */
+    public double getInclusiveTime(final int idx) {
+        return inclusiveTimes.get(idx);
+    }
+
+    /**
+     * Returns the mean exclusive time of the given executable.
+     *
+     * @param  idx index of the executable
+     * @return     mean exclusive time or {@link Double#NaN} if the executable was never reached
+     */
+    public double getExclusiveTime(final int idx) {
+        return exclusiveTimes.get(idx);
+    }
+
+    /**
+     * Stores the call tree to the given CSV file.
+     *
+     * @param  path path to the CSV file
+     *
+     * @throws RuntimeException if the file could not be written
+     */
+    public void store(final Path path) {
+        try (final CSVPrinter printer = new CSVPrinter(new FileWriter(path.toFile()),
+                JCProfilerUtil.getCSVFormat())) {
+            printer.printComment("executable,depth,reachedCount,inclusiveTime,exclusiveTime");
+            for (int i = 0; i < size(); i++)
+                printer.printRecord(executables.get(i), depths.get(i), reachedCounts.get(i),
+                        Double.isNaN(inclusiveTimes.get(i)) ? null : inclusiveTimes.get(i),
+                        Double.isNaN(exclusiveTimes.get(i)) ? null : exclusiveTimes.get(i));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
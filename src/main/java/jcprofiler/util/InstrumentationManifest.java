@@ -0,0 +1,349 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.enums.Mode;
+import jcprofiler.util.enums.Stage;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtType;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Metadata of the instrumented sources needed by the stages following the instrumentation.
+ * <br><br>
+ * The manifest contains the profiling mode, the entry point class, the signature and the pretty-printed source
+ * code of the profiled executable, the IDs and names of its performance traps and of the traps of instrumented
+ * executables transitively called by it, e.g. with {@link Args#transitive}, together with the calls between
+ * the instrumented executables.  It is stored next to the
+ * {@link JCProfilerUtil#INSTR_OUT_DIRNAME} directory together with a digest of the instrumented sources,
+ * so the later stages do not have to build a Spoon model of the instrumented sources as long as they
+ * did not change.
+ */
+public class InstrumentationManifest {
+    /**
+     * Default file name of the manifest
+     */
+    public static final String FILE_NAME = "instrumentation.csv";
+
+    private final Mode mode;
+    private final String entryPoint;
+    private final String executable;
+    private final String sourceCode;
+    private final String sourcesKey;
+
+    // use LinkedHashX to preserve insertion order
+    private final Map<Short, String> traps = new LinkedHashMap<>();
+    private final Map<String, String> trapExecutables = new LinkedHashMap<>();
+    private final Map<String, Set<String>> calls = new LinkedHashMap<>();
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentationManifest.class);
+
+    /**
+     * Constructs the {@link InstrumentationManifest} class.
+     *
+     * @param mode       profiling mode of the instrumented sources
+     * @param entryPoint fully qualified name of the entry point class
+     * @param executable full signature of the profiled executable
+     * @param sourceCode pretty-printed source code of the profiled executable
+     * @param sourcesKey digest of the instrumented sources
+     */
+    private InstrumentationManifest(final Mode mode, final String entryPoint, final String executable,
+                                    final String sourceCode, final String sourcesKey) {
+        this.mode = mode;
+        this.entryPoint = entryPoint;
+        this.executable = executable;
+        this.sourceCode = sourceCode;
+        this.sourcesKey = sourcesKey;
+    }
+
+    /**
+     * Creates the manifest from the given model of instrumented sources.
+     *
+     * @param  args  object with commandline arguments
+     * @param  model Spoon model of the instrumented sources
+     * @return       a {@link InstrumentationManifest} instance
+     *
+     * @throws RuntimeException if the instrumented sources could not be read
+     */
+    public static InstrumentationManifest create(final Args args, final CtModel model) {
+        final CtExecutable<?> profiledExecutable =
+                JCProfilerUtil.getProfiledExecutable(model, args.entryPoint, args.executable);
+        final InstrumentationManifest manifest = new InstrumentationManifest(args.mode,
+                JCProfilerUtil.getEntryPoint(model, args.entryPoint).getQualifiedName(),
+                JCProfilerUtil.getFullSignature(profiledExecutable), profiledExecutable.prettyprint(),
+                computeSourcesKey(args));
+
+        log.info("Looking for traps in the {}.", manifest.executable);
+        final CtType<?> PMC = JCProfilerUtil.getToplevelType(model, "PMC");
+        manifest.addTraps(profiledExecutable, PMC);
+
+        // only the profiled executable is instrumented
+        final String trapNamePrefix = JCProfilerUtil.getTrapNamePrefix(profiledExecutable);
+        if (PMC.getFields().stream().map(CtField::getSimpleName)
+                .allMatch(f -> !f.startsWith("TRAP_") || f.startsWith(trapNamePrefix)))
+            return manifest;
+
+        log.info("Looking for traps in executables called by the {}.", manifest.executable);
+        final Map<String, Set<String>> callGraph = JCProfilerUtil.getCallGraph(profiledExecutable, new HashSet<>(
+                Arrays.asList(JCProfilerUtil.getToplevelType(model, "PM").getQualifiedName(),
+                              PMC.getQualifiedName())));
+        final Map<String, CtExecutable<?>> executables = new HashMap<>();
+        model.getElements((CtExecutable<?> e) -> callGraph.containsKey(JCProfilerUtil.getFullSignature(e)))
+                .forEach(e -> executables.put(JCProfilerUtil.getFullSignature(e), e));
+
+        // the first trap is always inserted
+        final Set<String> instrumented = new HashSet<>(Collections.singleton(manifest.executable));
+        for (final String signature : callGraph.keySet()) {
+            final CtExecutable<?> callee = executables.get(signature);
+            if (instrumented.contains(signature) || callee == null ||
+                    PMC.getField(JCProfilerUtil.getTrapNamePrefix(callee) + "_1") == null)
+                continue;
+
+            manifest.addTraps(callee, PMC);
+            instrumented.add(signature);
+        }
+
+        // calls through executables without traps are attributed to their nearest instrumented caller
+        for (final String caller : callGraph.keySet()) {
+            if (!instrumented.contains(caller))
+                continue;
+
+            final Set<String> visited = new HashSet<>();
+            final Deque<String> queue = new ArrayDeque<>(callGraph.get(caller));
+            while (!queue.isEmpty()) {
+                final String callee = queue.poll();
+                if (callee.equals(caller) || !visited.add(callee))
+                    continue;
+
+                if (instrumented.contains(callee))
+                    manifest.calls.computeIfAbsent(caller, k -> new LinkedHashSet<>()).add(callee);
+                else
+                    queue.addAll(callGraph.get(callee));
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Adds the performance traps of the given instrumented executable.
+     *
+     * @param executable instrumented executable
+     * @param PMC        instance of the PMC class
+     */
+    private void addTraps(final CtExecutable<?> executable, final CtType<?> PMC) {
+        final String signature = JCProfilerUtil.getFullSignature(executable);
+        JCProfilerUtil.getTraps(executable, PMC).forEach((trapID, trapName) -> {
+            traps.put(trapID, trapName);
+            trapExecutables.put(trapName, signature);
+        });
+    }
+
+    /**
+     * Returns the manifest of the instrumented sources.  The manifest is loaded from
+     * the working directory if it is up-to-date and recreated otherwise.
+     *
+     * @param  args object with commandline arguments
+     * @return      a {@link InstrumentationManifest} instance
+     *
+     * @throws UnsupportedOperationException if the sources were instrumented for a different profiling mode
+     */
+    public static InstrumentationManifest get(final Args args) {
+        JCProfilerUtil.checkDirectory(JCProfilerUtil.getInstrOutputDirectory(args.workDir), Stage.instrumentation);
+
+        final Path path = args.workDir.resolve(FILE_NAME);
+        InstrumentationManifest manifest = null;
+        try {
+            if (Files.exists(path))
+                manifest = load(path);
+        } catch (RuntimeException e) {
+            log.debug("Loading instrumentation manifest from {} failed: {}", path, e.getMessage());
+        }
+
+        if (manifest == null || !manifest.sourcesKey.equals(computeSourcesKey(args))) {
+            log.info("Instrumentation manifest is missing or outdated, recreating it.");
+            manifest = create(args, JCProfilerUtil.getInstrumentedModel(args));
+            manifest.store(path);
+        } else {
+            log.info("Loaded instrumentation manifest from {}.", path);
+        }
+
+        if (manifest.mode != args.mode)
+            throw new UnsupportedOperationException(String.format(
+                    "Executed in %s mode but sources were instrumented in %s mode.",
+                    args.mode, manifest.mode));
+
+        return manifest;
+    }
+
+    /**
+     * Computes the digest of the instrumented sources.
+     *
+     * @param  args object with commandline arguments
+     * @return      hexadecimal digest
+     *
+     * @throws RuntimeException if the instrumented sources could not be read
+     */
+    private static String computeSourcesKey(final Args args) {
+        try {
+            return SpoonModelCache.computeKey(
+                    JCProfilerUtil.getInstrOutputDirectory(args.workDir), Collections.emptyList());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the profiling mode of the instrumented sources.
+     *
+     * @return profiling mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the fully qualified name of the entry point class.
+     *
+     * @return fully qualified name of the entry point class
+     */
+    public String getEntryPoint() {
+        return entryPoint;
+    }
+
+    /**
+     * Returns the full signature of the profiled executable.
+     *
+     * @return full signature of the profiled executable
+     */
+    public String getExecutable() {
+        return executable;
+    }
+
+    /**
+     * Returns the pretty-printed source code of the profiled executable.
+     *
+     * @return source code of the profiled executable
+     */
+    public String getSourceCode() {
+        return sourceCode;
+    }
+
+    /**
+     * Returns the IDs and names of the performance traps of the profiled executable followed by the traps
+     * of the instrumented executables called by it in the breadth-first order.
+     *
+     * @return unmodifiable map between trap IDs and trap names
+     */
+    public Map<Short, String> getTraps() {
+        return Collections.unmodifiableMap(traps);
+    }
+
+    /**
+     * Returns the full signature of the executable containing the given performance trap.
+     *
+     * @param  trapName name of the performance trap
+     * @return          full signature of the executable or null if there is no such trap
+     */
+    public String getTrapExecutable(final String trapName) {
+        return trapExecutables.get(trapName);
+    }
+
+    /**
+     * Returns the calls between the instrumented executables.
+     *
+     * @return unmodifiable map between full signatures of callers and full signatures of their callees
+     */
+    public Map<String, Set<String>> getCalls() {
+        return Collections.unmodifiableMap(calls);
+    }
+
+    /**
+     * Stores the manifest to the given CSV file.
+     *
+     * @param  path path to the CSV file
+     *
+     * @throws RuntimeException if the file could not be written
+     */
+    public void store(final Path path) {
+        try (final CSVPrinter printer = new CSVPrinter(new FileWriter(path.toFile()),
+                JCProfilerUtil.getCSVFormat())) {
+            printer.printComment("mode,entryPoint,executable,sourcesKey");
+            printer.printRecord(mode, entryPoint, executable, sourcesKey);
+            printer.printComment("sourceCode");
+            printer.printRecord(sourceCode);
+            printer.printComment("trapName,trapID,executable");
+            for (final Map.Entry<Short, String> trap : traps.entrySet())
+                printer.printRecord(trap.getValue(), trap.getKey(), trapExecutables.get(trap.getValue()));
+            printer.printComment("caller,callee");
+            for (final Map.Entry<String, Set<String>> caller : calls.entrySet())
+                for (final String callee : caller.getValue())
+                    printer.printRecord(caller.getKey(), callee);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the manifest from the given CSV file.
+     *
+     * @param  path path to the CSV file
+     * @return      a {@link InstrumentationManifest} instance
+     *
+     * @throws RuntimeException if the file could not be read or has invalid format
+     */
+    public static InstrumentationManifest load(final Path path) {
+        try (final CSVParser parser = CSVParser.parse(path, Charset.defaultCharset(), JCProfilerUtil.getCSVFormat())) {
+            final Iterator<CSVRecord> it = parser.iterator();
+            if (!it.hasNext())
+                throw new RuntimeException(path + " is empty!");
+
+            final CSVRecord header = it.next();
+            if (header.size() != 4 || !it.hasNext())
+                throw new RuntimeException("Invalid header of " + path + "!");
+
+            final InstrumentationManifest manifest = new InstrumentationManifest(
+                    Mode.valueOf(header.get(0)), header.get(1), header.get(2), it.next().get(0), header.get(3));
+            while (it.hasNext()) {
+                final CSVRecord record = it.next();
+                switch (record.size()) {
+                    case 3:
+                        manifest.traps.put(Short.parseShort(record.get(1)), record.get(0));
+                        manifest.trapExecutables.put(record.get(0), record.get(2));
+                        break;
+                    case 2:
+                        manifest.calls.computeIfAbsent(record.get(0), k -> new LinkedHashSet<>()).add(record.get(1));
+                        break;
+                    default:
+                        throw new RuntimeException(String.format(
+                                "Unexpected number of values on line %d of %s!", record.getRecordNumber(), path));
+                }
+            }
+
+            if (manifest.traps.isEmpty())
+                throw new RuntimeException(path + " does not contain any traps!");
+
+            return manifest;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
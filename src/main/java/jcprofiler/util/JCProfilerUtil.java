@@ -15,21 +15,25 @@ import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import spoon.Launcher;
 import spoon.SpoonAPI;
 import spoon.reflect.CtModel;
+import spoon.reflect.code.CtAbstractInvocation;
 import spoon.reflect.code.CtConstructorCall;
+import spoon.reflect.code.CtFieldAccess;
+import spoon.reflect.code.CtLiteral;
 import spoon.reflect.declaration.*;
 import spoon.reflect.reference.CtTypeReference;
 
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -72,6 +76,10 @@ public class JCProfilerUtil {
      * Default directory name for original sources
      */
     public static final String SRC_IN_DIRNAME     = "sources_original";
+    /**
+     * Default directory name for cached Spoon models
+     */
+    public static final String CACHE_DIRNAME      = "spoon_cache";
 
 
     /**
@@ -403,6 +411,27 @@ public class JCProfilerUtil {
         return executable;
     }
 
+    /**
+     * Checks whether the given name of an executable in the format accepted by
+     * {@link #getProfiledExecutable(CtModel, String)} selects the executable with the given full signature.
+     *
+     * @param  executableName name of the selected executable
+     * @param  fullSignature  full signature in the 'class#name(args)' format
+     * @return                true if yes, otherwise false
+     */
+    public static boolean isSelectedExecutable(final String executableName, final String fullSignature) {
+        final int hashIdx = fullSignature.indexOf('#');
+        final String className = fullSignature.substring(0, hashIdx);
+        final String signature = fullSignature.substring(hashIdx + 1);
+
+        final String[] split = executableName.split("#");
+        final String lastPart = split[split.length - 1];
+        final boolean sameSignature = lastPart.contains("(")
+                                      ? signature.equals(lastPart)
+                                      : signature.substring(0, signature.indexOf('(')).equals(lastPart);
+        return sameSignature && (split.length == 1 || className.equals(split[0]));
+    }
+
 
     // trap mangling
 
@@ -452,6 +481,110 @@ public class JCProfilerUtil {
                 .replace("[]", "_arr"); // used in arrays
     }
 
+    /**
+     * Returns the IDs and names of the performance traps of the given executable.
+     *
+     * @param  executable instance of the profiled executable
+     * @param  PMC        instance of the PMC class
+     * @return            map between trap IDs and trap names in the order of their usage in the executable
+     *
+     * @throws RuntimeException if the extraction of traps from profiled executable failed
+     */
+    public static Map<Short, String> getTraps(final CtExecutable<?> executable, final CtType<?> PMC) {
+        final String signature = getFullSignature(executable);
+        final String trapNamePrefix = getTrapNamePrefix(executable);
+
+        // get traps form profiledExecutable
+        final List<CtField<Short>> traps = executable.filterChildren(CtFieldAccess.class::isInstance)
+                .map((CtFieldAccess<Short> fa) -> fa.getVariable().getFieldDeclaration())
+                .filterChildren((CtField<Short> f) -> f.getSimpleName().startsWith(trapNamePrefix)).list();
+        if (traps.isEmpty())
+            throw new RuntimeException(String.format("Extraction of traps from %s failed!", signature));
+
+        // get given traps from PMC
+        final List<CtField<Short>> pmTraps = PMC.getElements(
+                (CtField<Short> f) -> f.getSimpleName().startsWith(trapNamePrefix));
+        if (pmTraps.isEmpty())
+            throw new RuntimeException("Extraction of traps from PMC failed!");
+
+        // check that the trap lists are the same
+        if (traps.size() != pmTraps.size() || !new HashSet<>(traps).containsAll(pmTraps))
+            throw new RuntimeException(String.format(
+                    "The profiled method and the PMC class contain different traps!%n" +
+                    "Please, reinstrument the given sources!"));
+
+        // use LinkedHashMap to preserve insertion order
+        final Map<Short, String> trapMap = new LinkedHashMap<>();
+        for (final CtField<Short> f : traps) {
+            final CtLiteral<Number> evaluated = f.getDefaultExpression().partiallyEvaluate();
+            trapMap.put(evaluated.getValue().shortValue(), f.getSimpleName());
+            log.info("Found {}.", f.getSimpleName());
+        }
+
+        return trapMap;
+    }
+
+    /**
+     * Returns the trap name prefix of the executable containing the given performance trap.
+     *
+     * @param  trapName name of the performance trap
+     * @return          trap name prefix of the corresponding executable
+     */
+    public static String getTrapNamePrefix(final String trapName) {
+        return trapName.substring(0, trapName.lastIndexOf('_'));
+    }
+
+    /**
+     * Returns the static call graph of executables with sources reachable from the given executable.
+     * Calls of methods are resolved to the called method and all methods overriding it.
+     *
+     * @param  executable    the root executable
+     * @param  excludedTypes qualified names of top-level types whose executables are skipped, e.g. PM and PMC
+     * @return               map between full signatures of reachable executables in the breadth-first order
+     *                       and full signatures of their callees
+     */
+    public static Map<String, Set<String>> getCallGraph(final CtExecutable<?> executable,
+                                                        final Set<String> excludedTypes) {
+        final Predicate<CtExecutable<?>> isIncluded = e -> {
+            final CtType<?> type = e.getParent(CtType.class);
+            return e.getBody() != null &&
+                   (type == null || !excludedTypes.contains(type.getTopLevelType().getQualifiedName()));
+        };
+        final List<CtMethod<?>> methods = executable.getFactory().getModel().getElements(
+                (CtMethod<?> m) -> isIncluded.test(m));
+
+        // use LinkedHashMap to preserve insertion order
+        final Map<String, Set<String>> callGraph = new LinkedHashMap<>();
+        final Deque<CtExecutable<?>> queue = new ArrayDeque<>(Collections.singletonList(executable));
+        while (!queue.isEmpty()) {
+            final CtExecutable<?> current = queue.poll();
+            final String signature = getFullSignature(current);
+            if (callGraph.containsKey(signature))
+                continue;
+
+            final Set<String> callees = new LinkedHashSet<>();
+            callGraph.put(signature, callees);
+            for (final CtAbstractInvocation<?> call : current.getBody().getElements(
+                    (CtAbstractInvocation<?> i) -> true)) {
+                final CtExecutable<?> callee = call.getExecutable().getExecutableDeclaration();
+                if (callee == null || !isIncluded.test(callee))
+                    continue;
+
+                final List<CtExecutable<?>> targets = new ArrayList<>(Collections.singletonList(callee));
+                if (callee instanceof CtMethod)
+                    methods.stream().filter(m -> m != callee && m.isOverriding((CtMethod<?>) callee))
+                            .forEach(targets::add);
+
+                for (final CtExecutable<?> target : targets) {
+                    callees.add(getFullSignature(target));
+                    queue.add(target);
+                }
+            }
+        }
+
+        return callGraph;
+    }
+
 
     // Path utils
 
@@ -495,6 +628,16 @@ public class JCProfilerUtil {
         return workDirPath.resolve(SRC_IN_DIRNAME);
     }
 
+    /**
+     * Return a path to directory name for cached Spoon models.
+     *
+     * @param  workDirPath path to the working directory
+     * @return             {@link Path} object pointing to a directory name for cached Spoon models
+     */
+    public static Path getCacheDirectory(final Path workDirPath) {
+        return workDirPath.resolve(CACHE_DIRNAME);
+    }
+
     /**
      * Checks that the given file exists.
      *
@@ -633,6 +776,52 @@ public class JCProfilerUtil {
         return new BigInteger(/* positive */ '+' + str, 16).bitCount();
     }
 
+    /**
+     * Returns a hexadecimal SHA-256 digest of the given string.
+     *
+     * @param  str a string
+     * @return     hexadecimal SHA-256 digest of the string encoded in UTF-8
+     */
+    public static String getDigest(final String str) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return String.format("%064x", new BigInteger(1, digest.digest(str.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the package name of the given fully qualified class name.
+     *
+     * @param  className fully qualified class name
+     * @return           fully qualified package name or an empty string for the default package
+     */
+    public static String getPackageName(final String className) {
+        final int idx = className.lastIndexOf('.');
+        return idx != -1 ? className.substring(0, idx) : "";
+    }
+
+    /**
+     * Returns the last segment of the package name of the given fully qualified class name.
+     *
+     * @param  className fully qualified class name
+     * @return           simple package name or an empty string for the default package
+     */
+    public static String getPackageSimpleName(final String className) {
+        return getSimpleName(getPackageName(className));
+    }
+
+    /**
+     * Returns the simple name of the given fully qualified class name.
+     *
+     * @param  className fully qualified class name
+     * @return           simple class name
+     */
+    public static String getSimpleName(final String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
 
     // Spoon helper methods
 
@@ -651,7 +840,16 @@ public class JCProfilerUtil {
         spoon.getEnvironment().setNoClasspath(false);
         spoon.getEnvironment().setAutoImports(true);
         spoon.getEnvironment().setCopyResources(false);
+        spoon.getEnvironment().setSourceClasspath(getSpoonClasspath(args).toArray(new String[0]));
+    }
 
+    /**
+     * Returns the Spoon class path, i.e. the JavaCard API JAR files and JAR files given by the {@code --jar} option.
+     *
+     * @param  args object with commandline arguments
+     * @return      list of class path entries
+     */
+    public static List<String> getSpoonClasspath(final Args args) {
         // construct the list of JavaCard API JAR files
         final List<String> apiJars = args.jcSDK.getApiJars().stream()
                 .map(File::getAbsolutePath).collect(Collectors.toList());
@@ -660,12 +858,14 @@ public class JCProfilerUtil {
             return j.toString();
         }).collect(Collectors.toSet()));
 
-        spoon.getEnvironment().setSourceClasspath(apiJars.toArray(new String[0]));
+        return apiJars;
     }
 
     /**
      * Build a Spoon model from instrumented sources.  Used to check
      * that the instrumentation did not produce malformed source code.
+     * <br><br>
+     * The model is loaded from {@link SpoonModelCache} if the instrumented sources did not change.
      *
      * @param  args object with commandline arguments
      * @return      a {@link SpoonAPI} instance
@@ -673,15 +873,23 @@ public class JCProfilerUtil {
     public static SpoonAPI getInstrumentedSpoon(final Args args) {
         log.info("Validating Spoon model.");
 
-        final Launcher spoon = new Launcher();
-        setupSpoon(spoon, args);
-
         final Path instrOutput = getInstrOutputDirectory(args.workDir);
         checkDirectory(instrOutput, Stage.instrumentation);
 
-        spoon.addInputResource(instrOutput.toString());
-        spoon.buildModel();
+        return SpoonModelCache.getSpoon(args, instrOutput);
+    }
+
+    /**
+     * Returns a read-only Spoon model of the instrumented sources shared by all stages.
+     * Use {@link #getInstrumentedSpoon(Args)} to get a model that may be modified.
+     *
+     * @param  args object with commandline arguments
+     * @return      a read-only {@link CtModel} instance
+     */
+    public static CtModel getInstrumentedModel(final Args args) {
+        final Path instrOutput = getInstrOutputDirectory(args.workDir);
+        checkDirectory(instrOutput, Stage.instrumentation);
 
-        return spoon;
+        return SpoonModelCache.getModel(args, instrOutput);
     }
 }
@@ -0,0 +1,137 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * History of free memory at the first and the last reached trap of repeated executions of the profiled executable.
+ * <br><br>
+ * Every row corresponds to a single execution and contains the free transient deselect, transient reset
+ * and persistent memory at the first trap followed by the same values at the last reached trap.
+ * The drift of a column is the slope of the least squares line fitted to its values, i.e. the change
+ * of free memory per execution.
+ */
+public class LeakHistory {
+    /**
+     * Default file name of the history
+     */
+    public static final String FILE_NAME = "leaks.csv";
+
+    /**
+     * Names of the columns
+     */
+    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "entryTransientDeselect", "entryTransientReset", "entryPersistent",
+            "exitTransientDeselect", "exitTransientReset", "exitPersistent"));
+
+    private final List<long[]> rows = new ArrayList<>();
+
+    /**
+     * Appends a single execution.
+     *
+     * @param row free memory in the order of {@link #COLUMNS}
+     *
+     * @throws IllegalArgumentException if the row has incorrect length
+     */
+    public void add(final long[] row) {
+        if (row.length != COLUMNS.size())
+            throw new IllegalArgumentException(String.format(
+                    "Unexpected number of values! Expected: %d Actual: %d", COLUMNS.size(), row.length));
+        rows.add(row.clone());
+    }
+
+    /**
+     * Returns the number of executions.
+     *
+     * @return number of executions
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the values of the given column.
+     *
+     * @param  column index of the column
+     * @return        list of values, one for every execution
+     */
+    public List<Long> getColumn(final int column) {
+        final List<Long> values = new ArrayList<>(rows.size());
+        rows.forEach(r -> values.add(r[column]));
+        return values;
+    }
+
+    /**
+     * Returns the drift of the given column.
+     *
+     * @param  column index of the column
+     * @return        change of free memory in bytes per execution or {@link Double#NaN}
+     *                if there are less than two executions
+     */
+    public double getDrift(final int column) {
+        final SimpleRegression regression = new SimpleRegression();
+        for (int i = 0; i < rows.size(); i++)
+            regression.addData(i + 1, rows.get(i)[column]);
+        return regression.getSlope();
+    }
+
+    /**
+     * Stores the history to the given CSV file.
+     *
+     * @param  path path to the CSV file
+     *
+     * @throws RuntimeException if the file could not be written
+     */
+    public void store(final Path path) {
+        try (final CSVPrinter printer = new CSVPrinter(new FileWriter(path.toFile()),
+                JCProfilerUtil.getCSVFormat())) {
+            printer.printComment("execution," + String.join(",", COLUMNS));
+            for (int i = 0; i < rows.size(); i++) {
+                printer.print(i + 1);
+                for (final long value : rows.get(i))
+                    printer.print(value);
+                printer.println();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the history from the given CSV file.
+     *
+     * @param  path path to the CSV file
+     * @return      a {@link LeakHistory} instance
+     *
+     * @throws RuntimeException if the file could not be read or has invalid format
+     */
+    public static LeakHistory load(final Path path) {
+        final LeakHistory history = new LeakHistory();
+        try (final CSVParser parser = CSVParser.parse(path, Charset.defaultCharset(), JCProfilerUtil.getCSVFormat())) {
+            for (final CSVRecord record : parser) {
+                if (record.size() != COLUMNS.size() + 1)
+                    throw new RuntimeException(String.format(
+                            "Unexpected number of values on line %d of %s!", record.getRecordNumber(), path));
+
+                final long[] row = new long[COLUMNS.size()];
+                for (int i = 0; i < row.length; i++)
+                    row[i] = Long.parseLong(record.get(i + 1));
+                history.add(row);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return history;
+    }
+}
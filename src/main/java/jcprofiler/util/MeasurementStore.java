@@ -0,0 +1,398 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import java.util.*;
+
+/**
+ * Columnar storage of measurements keyed by a dense trap index.
+ * <br><br>
+ * Every trap has a primitive {@code long[]} column with a fixed number of measurements, e.g. one for every
+ * profiling round.  Unreachable measurements are tracked in a single bitset, so the store does not need any
+ * boxed values.  Measurements that were deliberately not taken, e.g. of traps that have already converged,
+ * are tracked in a separate bitset, so they are never mistaken for unreachable ones.  {@link List} and
+ * {@link Map} views with {@code null} representing a missing measurement are provided for code that expects
+ * them, e.g. the Velocity templates.
+ * <br><br>
+ * All accessors of the measurements are synchronized, so the store can be shared by parallel simulator workers.
+ */
+public class MeasurementStore {
+    /**
+     * CSV representation of a measurement that was not sampled
+     */
+    public static final String NOT_SAMPLED = "-";
+
+    private final int measurementCount;
+
+    // use LinkedHashX to preserve insertion order
+    private final Map<String, Integer> trapIndices = new LinkedHashMap<>();
+    private final List<String> trapNames = new ArrayList<>();
+    private final List<long[]> columns = new ArrayList<>();
+    private final BitSet unreachable = new BitSet();
+    private final BitSet notSampled = new BitSet();
+
+    /**
+     * Constructs the {@link MeasurementStore} class.
+     *
+     * @param measurementCount number of measurements of each trap
+     */
+    public MeasurementStore(final int measurementCount) {
+        if (measurementCount < 0)
+            throw new IllegalArgumentException("Negative number of measurements: " + measurementCount);
+        this.measurementCount = measurementCount;
+    }
+
+    /**
+     * Adds a new trap with all its measurements set to zero.
+     *
+     * @param  trapName name of the performance trap
+     * @return          index of the added trap
+     *
+     * @throws RuntimeException if the trap is already present
+     */
+    public synchronized int addTrap(final String trapName) {
+        if (trapIndices.containsKey(trapName))
+            throw new RuntimeException("Duplicate trap: " + trapName);
+        if ((long) (trapNames.size() + 1) * measurementCount > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("Too many measurements to be stored!");
+
+        final int trapIdx = trapNames.size();
+        trapIndices.put(trapName, trapIdx);
+        trapNames.add(trapName);
+        columns.add(new long[measurementCount]);
+        return trapIdx;
+    }
+
+    /**
+     * Returns the index of the given trap.
+     *
+     * @param  trapName name of the performance trap
+     * @return          index of the trap or -1 if the trap is not present
+     */
+    public synchronized int getTrapIndex(final String trapName) {
+        return trapIndices.getOrDefault(trapName, -1);
+    }
+
+    /**
+     * Checks that the given trap is present.
+     *
+     * @param  trapName name of the performance trap
+     * @return          true if yes, otherwise false
+     */
+    public synchronized boolean containsTrap(final String trapName) {
+        return trapIndices.containsKey(trapName);
+    }
+
+    /**
+     * Returns names of all traps in the order of their indices.
+     *
+     * @return unmodifiable list of trap names
+     */
+    public List<String> getTrapNames() {
+        return Collections.unmodifiableList(trapNames);
+    }
+
+    /**
+     * Returns the number of traps.
+     *
+     * @return number of traps
+     */
+    public synchronized int getTrapCount() {
+        return trapNames.size();
+    }
+
+    /**
+     * Returns the number of measurements of each trap.
+     *
+     * @return number of measurements
+     */
+    public int getMeasurementCount() {
+        return measurementCount;
+    }
+
+    /**
+     * Stores the given measurement.
+     *
+     * @param trapIdx index of the performance trap
+     * @param idx     index of the measurement
+     * @param value   measured value
+     */
+    public synchronized void set(final int trapIdx, final int idx, final long value) {
+        columns.get(trapIdx)[checkIndex(idx)] = value;
+        unreachable.clear(getBitIndex(trapIdx, idx));
+        notSampled.clear(getBitIndex(trapIdx, idx));
+    }
+
+    /**
+     * Marks the given measurement as unreachable.
+     *
+     * @param trapIdx index of the performance trap
+     * @param idx     index of the measurement
+     */
+    public synchronized void setUnreachable(final int trapIdx, final int idx) {
+        columns.get(trapIdx)[checkIndex(idx)] = 0;
+        unreachable.set(getBitIndex(trapIdx, idx));
+        notSampled.clear(getBitIndex(trapIdx, idx));
+    }
+
+    /**
+     * Marks the given measurement as not sampled, i.e. it was not taken on purpose.
+     *
+     * @param trapIdx index of the performance trap
+     * @param idx     index of the measurement
+     */
+    public synchronized void setNotSampled(final int trapIdx, final int idx) {
+        columns.get(trapIdx)[checkIndex(idx)] = 0;
+        unreachable.clear(getBitIndex(trapIdx, idx));
+        notSampled.set(getBitIndex(trapIdx, idx));
+    }
+
+    /**
+     * Returns the given measurement.
+     *
+     * @param  trapIdx index of the performance trap
+     * @param  idx     index of the measurement
+     * @return         measured value, zero if the measurement is missing
+     */
+    public synchronized long get(final int trapIdx, final int idx) {
+        return columns.get(trapIdx)[idx];
+    }
+
+    /**
+     * Checks whether the given measurement is unreachable.
+     *
+     * @param  trapIdx index of the performance trap
+     * @param  idx     index of the measurement
+     * @return         true if yes, otherwise false
+     */
+    public synchronized boolean isUnreachable(final int trapIdx, final int idx) {
+        return unreachable.get(getBitIndex(trapIdx, checkIndex(idx)));
+    }
+
+    /**
+     * Checks whether the given measurement was not sampled.
+     *
+     * @param  trapIdx index of the performance trap
+     * @param  idx     index of the measurement
+     * @return         true if yes, otherwise false
+     */
+    public synchronized boolean isNotSampled(final int trapIdx, final int idx) {
+        return notSampled.get(getBitIndex(trapIdx, checkIndex(idx)));
+    }
+
+    /**
+     * Checks whether the given measurement is missing, i.e. it is either unreachable or not sampled.
+     *
+     * @param  trapIdx index of the performance trap
+     * @param  idx     index of the measurement
+     * @return         true if yes, otherwise false
+     */
+    public synchronized boolean isMissing(final int trapIdx, final int idx) {
+        return isUnreachable(trapIdx, idx) || isNotSampled(trapIdx, idx);
+    }
+
+    /**
+     * Returns the number of unreachable measurements of the given trap.
+     *
+     * @param  trapIdx index of the performance trap
+     * @return         number of unreachable measurements
+     */
+    public int getUnreachableCount(final int trapIdx) {
+        return getUnreachableCount(trapIdx, 0, measurementCount);
+    }
+
+    /**
+     * Returns the number of unreachable measurements of the given trap in the given range.
+     *
+     * @param  trapIdx index of the performance trap
+     * @param  fromIdx index of the first measurement (inclusive)
+     * @param  toIdx   index of the last measurement (exclusive)
+     * @return         number of unreachable measurements
+     */
+    public synchronized int getUnreachableCount(final int trapIdx, final int fromIdx, final int toIdx) {
+        if (fromIdx < 0 || toIdx > measurementCount || fromIdx > toIdx)
+            throw new IndexOutOfBoundsException(String.format(
+                    "Unexpected measurement range: [%d, %d)", fromIdx, toIdx));
+        return unreachable.get(getBitIndex(trapIdx, fromIdx), getBitIndex(trapIdx, toIdx)).cardinality();
+    }
+
+    /**
+     * Returns the number of measurements of the given trap that were not sampled.
+     *
+     * @param  trapIdx index of the performance trap
+     * @return         number of measurements that were not sampled
+     */
+    public synchronized int getNotSampledCount(final int trapIdx) {
+        return notSampled.get(getBitIndex(trapIdx, 0), getBitIndex(trapIdx, measurementCount)).cardinality();
+    }
+
+    /**
+     * Returns a read-only {@link List} view of the measurements of the given trap.
+     *
+     * @param  trapIdx index of the performance trap
+     * @return         list view, {@code null} represents a missing measurement
+     */
+    public List<Long> getValues(final int trapIdx) {
+        if (trapIdx < 0 || trapIdx >= trapNames.size())
+            throw new IndexOutOfBoundsException("Unexpected trap index: " + trapIdx);
+        return new ColumnView(trapIdx);
+    }
+
+    /**
+     * Returns a read-only {@link List} view of the measurements of the given trap.
+     *
+     * @param  trapName name of the performance trap
+     * @return          list view, {@code null} represents a missing measurement,
+     *                  or {@code null} if the trap is not present
+     */
+    public List<Long> getValues(final String trapName) {
+        final Integer trapIdx = trapIndices.get(trapName);
+        return trapIdx != null ? getValues(trapIdx) : null;
+    }
+
+    /**
+     * Returns a read-only {@link Map} view between traps and their measurements.
+     *
+     * @return map view between trap names and {@link #getValues(int)} views
+     */
+    public Map<String, List<Long>> asMap() {
+        final Map<String, List<Long>> map = new LinkedHashMap<>();
+        for (int trapIdx = 0; trapIdx < trapNames.size(); trapIdx++)
+            map.put(trapNames.get(trapIdx), getValues(trapIdx));
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Returns a read-only {@link Map} view between traps with measurements that were not sampled
+     * and the flags of their measurements.
+     *
+     * @return map view between trap names and lists of flags, true represents a measurement
+     *         that was not sampled
+     */
+    public Map<String, List<Boolean>> getNotSampledMap() {
+        final Map<String, List<Boolean>> map = new LinkedHashMap<>();
+        for (int trapIdx = 0; trapIdx < trapNames.size(); trapIdx++) {
+            if (getNotSampledCount(trapIdx) == 0)
+                continue;
+
+            map.put(trapNames.get(trapIdx), new NotSampledView(trapIdx));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Returns a read-only {@link List} view of the given primitive array.
+     *
+     * @param  values array of values, {@link Double#NaN} represents a missing value
+     * @return        list view, {@code null} represents a missing value
+     */
+    public static List<Double> asList(final double[] values) {
+        return new DoubleArrayView(values);
+    }
+
+    /**
+     * Checks that the given measurement index is in bounds.
+     *
+     * @param  idx index of the measurement
+     * @return     the given index
+     *
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    private int checkIndex(final int idx) {
+        if (idx < 0 || idx >= measurementCount)
+            throw new IndexOutOfBoundsException("Unexpected measurement index: " + idx);
+        return idx;
+    }
+
+    /**
+     * Returns the index of the given measurement in the bitsets of missing measurements.
+     *
+     * @param  trapIdx index of the performance trap
+     * @param  idx     index of the measurement
+     * @return         bit index
+     */
+    private int getBitIndex(final int trapIdx, final int idx) {
+        return trapIdx * measurementCount + idx;
+    }
+
+    /**
+     * Read-only view of a single column
+     */
+    private class ColumnView extends AbstractList<Long> implements RandomAccess {
+        private final int trapIdx;
+
+        /**
+         * Constructs the {@link ColumnView} class.
+         *
+         * @param trapIdx index of the performance trap
+         */
+        private ColumnView(final int trapIdx) {
+            this.trapIdx = trapIdx;
+        }
+
+        @Override
+        public Long get(final int idx) {
+            synchronized (MeasurementStore.this) {
+                return isMissing(trapIdx, idx) ? null : MeasurementStore.this.get(trapIdx, idx);
+            }
+        }
+
+        @Override
+        public int size() {
+            return measurementCount;
+        }
+    }
+
+    /**
+     * Read-only view of the not sampled flags of a single column
+     */
+    private class NotSampledView extends AbstractList<Boolean> implements RandomAccess {
+        private final int trapIdx;
+
+        /**
+         * Constructs the {@link NotSampledView} class.
+         *
+         * @param trapIdx index of the performance trap
+         */
+        private NotSampledView(final int trapIdx) {
+            this.trapIdx = trapIdx;
+        }
+
+        @Override
+        public Boolean get(final int idx) {
+            return isNotSampled(trapIdx, idx);
+        }
+
+        @Override
+        public int size() {
+            return measurementCount;
+        }
+    }
+
+    /**
+     * Read-only view of a primitive array of doubles
+     */
+    private static class DoubleArrayView extends AbstractList<Double> implements RandomAccess {
+        private final double[] values;
+
+        /**
+         * Constructs the {@link DoubleArrayView} class.
+         *
+         * @param values array of values
+         */
+        private DoubleArrayView(final double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Double get(final int idx) {
+            return Double.isNaN(values[idx]) ? null : values[idx];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import jcprofiler.args.Args;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spoon.IncrementalLauncher;
+import spoon.SpoonException;
+import spoon.reflect.CtModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of Spoon models shared by all stages and reruns.
+ * <br><br>
+ * Every source directory has its own cache in the {@link JCProfilerUtil#CACHE_DIRNAME} directory.  The model is
+ * stored by {@link IncrementalLauncher} and is reused only if the SHA-256 digest of the Java sources and the class
+ * path, i.e. the JavaCard API JAR files and the files given by the {@code --jar} option, did not change.
+ * Otherwise, the model is rebuilt from scratch.
+ * <br><br>
+ * Read-only models of the recently used source directories are also kept in memory, so they are shared
+ * by all stages of a single execution and by all executions served by the same {@link jcprofiler.Daemon}.
+ */
+public class SpoonModelCache {
+    private static final String KEY_FILENAME = "key.sha256";
+    private static final int MAX_MODELS_IN_MEMORY = 8;
+
+    // use an access-ordered LinkedHashMap to evict the least recently used models
+    private static final Map<Path, Pair<String, CtModel>> models =
+            new LinkedHashMap<Path, Pair<String, CtModel>>(16, 0.75f, /* accessOrder */ true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Path, Pair<String, CtModel>> eldest) {
+                    return size() > MAX_MODELS_IN_MEMORY;
+                }
+            };
+
+    private static final Logger log = LoggerFactory.getLogger(SpoonModelCache.class);
+
+    // static class!
+    private SpoonModelCache() {}
+
+    /**
+     * Returns a Spoon instance with a built model of the given source directory.  The model is loaded
+     * from the cache if possible and the cache is updated otherwise.
+     * <br><br>
+     * Every call returns a new copy of the model, so it may be modified freely.
+     *
+     * @param  args    object with commandline arguments
+     * @param  sources path to the directory with sources
+     * @return         an {@link IncrementalLauncher} instance with a built model
+     *
+     * @throws RuntimeException if the cache could not be accessed
+     */
+    public static IncrementalLauncher getSpoon(final Args args, final Path sources) {
+        final List<String> classpath = JCProfilerUtil.getSpoonClasspath(args);
+        try {
+            return getSpoon(args, sources, classpath, computeKey(sources, classpath));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a built model of the given source directory shared with other callers, so it must not be modified.
+     * The model is kept in memory as long as the sources and the class path do not change and is loaded
+     * by {@link #getSpoon(Args, Path)} otherwise.
+     *
+     * @param  args    object with commandline arguments
+     * @param  sources path to the directory with sources
+     * @return         a read-only {@link CtModel} instance
+     *
+     * @throws RuntimeException if the cache could not be accessed
+     */
+    public static synchronized CtModel getModel(final Args args, final Path sources) {
+        final Path path = sources.toAbsolutePath().normalize();
+        final List<String> classpath = JCProfilerUtil.getSpoonClasspath(args);
+
+        try {
+            final String key = computeKey(sources, classpath);
+            final Pair<String, CtModel> cached = models.get(path);
+            if (!args.noModelCache && cached != null && cached.getLeft().equals(key)) {
+                log.debug("Reusing in-memory Spoon model of {}.", sources);
+                return cached.getRight();
+            }
+
+            final CtModel model = getSpoon(args, sources, classpath, key).getModel();
+            models.put(path, Pair.of(key, model));
+            return model;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a Spoon instance with a built model of the given source directory with the given cache key.
+     *
+     * @param  args      object with commandline arguments
+     * @param  sources   path to the directory with sources
+     * @param  classpath Spoon class path
+     * @param  key       cache key of the sources and the class path
+     * @return           an {@link IncrementalLauncher} instance with a built model
+     *
+     * @throws IOException if the cache could not be accessed
+     */
+    private static IncrementalLauncher getSpoon(final Args args, final Path sources, final List<String> classpath,
+                                                final String key) throws IOException {
+        final Path cacheDir = JCProfilerUtil.getCacheDirectory(args.workDir).resolve(sources.getFileName());
+        final Path keyFile = cacheDir.resolve(KEY_FILENAME);
+
+        Files.createDirectories(cacheDir);
+
+        final boolean isValid = !args.noModelCache && Files.exists(keyFile) &&
+                                new String(Files.readAllBytes(keyFile), StandardCharsets.UTF_8).equals(key);
+        if (!isValid)
+            log.debug("Spoon model cache of {} is missing or outdated.", sources);
+
+        IncrementalLauncher spoon;
+        try {
+            spoon = createSpoon(args, sources, classpath, cacheDir, /* forceRebuild */ !isValid);
+        } catch (SpoonException e) {
+            log.warn("Loading Spoon model of {} from cache failed: {}", sources, e.getMessage());
+            spoon = createSpoon(args, sources, classpath, cacheDir, /* forceRebuild */ true);
+        }
+
+        if (spoon.changesPresent()) {
+            log.debug("Building Spoon model of {}.", sources);
+
+            // invalidate the key first so that a failed build cannot leave a stale cache behind
+            Files.deleteIfExists(keyFile);
+            spoon.buildModel();
+            spoon.saveCache();
+            Files.write(keyFile, key.getBytes(StandardCharsets.UTF_8));
+        } else {
+            log.info("Loading Spoon model of {} from cache.", sources);
+            spoon.buildModel();
+        }
+
+        return spoon;
+    }
+
+    /**
+     * Creates and sets up a new {@link IncrementalLauncher} instance.
+     *
+     * @param  args         object with commandline arguments
+     * @param  sources      path to the directory with sources
+     * @param  classpath    Spoon class path
+     * @param  cacheDir     path to the cache directory
+     * @param  forceRebuild if true, the cached model is ignored
+     * @return              an {@link IncrementalLauncher} instance
+     */
+    private static IncrementalLauncher createSpoon(final Args args, final Path sources, final List<String> classpath,
+                                                   final Path cacheDir, final boolean forceRebuild) {
+        final IncrementalLauncher spoon = new IncrementalLauncher(
+                Collections.singleton(sources.toFile()), new HashSet<>(classpath), cacheDir.toFile(), forceRebuild);
+        JCProfilerUtil.setupSpoon(spoon, args);
+        return spoon;
+    }
+
+    /**
+     * Computes the cache key of the given source directory and class path, i.e. a SHA-256 digest
+     * of paths and contents of all Java sources and class path entries.
+     *
+     * @param  sources   path to the directory with sources
+     * @param  classpath list of class path entries
+     * @return           hexadecimal digest
+     *
+     * @throws IOException if a file could not be read
+     */
+    public static String computeKey(final Path sources, final List<String> classpath) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        // sort the inputs so that the key does not depend on the order of files
+        final List<Path> javaFiles;
+        try (final Stream<Path> files = Files.walk(sources)) {
+            javaFiles = files.filter(f -> Files.isRegularFile(f) && f.toString().endsWith(".java"))
+                    .sorted().collect(Collectors.toList());
+        }
+
+        for (final Path file : javaFiles)
+            update(digest, sources.relativize(file).toString(), file);
+        for (final String entry : classpath.stream().sorted().collect(Collectors.toList()))
+            update(digest, entry, Paths.get(entry));
+
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Updates the digest with the given name and the contents of the given file or directory.
+     *
+     * @param  digest digest instance
+     * @param  name   name of the file
+     * @param  file   path to the file
+     *
+     * @throws IOException if the file could not be read
+     */
+    private static void update(final MessageDigest digest, final String name, final Path file) throws IOException {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+
+        // class path may contain directories with classes
+        final List<File> files = Files.isDirectory(file)
+                                 ? FileUtils.listFiles(file.toFile(), null, true).stream().sorted()
+                                         .collect(Collectors.toList())
+                                 : Collections.singletonList(file.toFile());
+        for (final File f : files)
+            if (f.exists())
+                digest.update(Files.readAllBytes(f.toPath()));
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,31 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util.enums;
+
+/**
+ * Enum with possible clock sources for time profiling
+ */
+public enum ClockSource {
+    wall,
+    threadCpu,
+    bytecode;
+
+    /**
+     * Returns a pretty name for given enum value.
+     *
+     * @return a {@link String} with pretty printed name
+     */
+    public String prettyPrint() {
+        switch (this) {
+            case wall:
+                return "wall-clock time";
+            case threadCpu:
+                return "thread CPU time";
+            case bytecode:
+                return "executed bytecodes";
+            default:
+                throw new RuntimeException("Unreachable statement reached!");
+        }
+    }
+}
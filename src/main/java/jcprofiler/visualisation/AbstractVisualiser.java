@@ -4,7 +4,10 @@
 package jcprofiler.visualisation;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.InstrumentationManifest;
 import jcprofiler.util.JCProfilerUtil;
+import jcprofiler.util.MeasurementStore;
+import jcprofiler.util.enums.ClockSource;
 import jcprofiler.util.enums.InputDivision;
 import jcprofiler.util.enums.Mode;
 import jcprofiler.util.enums.Stage;
@@ -24,14 +27,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import spoon.SpoonAPI;
-import spoon.reflect.CtModel;
-import spoon.reflect.declaration.CtExecutable;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This class represents the visualisation stage.
@@ -42,9 +44,9 @@ public abstract class AbstractVisualiser {
      */
     protected final Args args;
     /**
-     * Spoon model
+     * Manifest of the instrumented sources
      */
-    protected final CtModel model;
+    protected final InstrumentationManifest manifest;
 
 
     // CSV header
@@ -77,6 +79,10 @@ public abstract class AbstractVisualiser {
      * Parsed {@link InputDivision}
      */
     protected InputDivision inputDivision;
+    /**
+     * Parsed {@link ClockSource}
+     */
+    protected ClockSource clockSource;
 
 
     // CSV contents
@@ -90,41 +96,46 @@ public abstract class AbstractVisualiser {
      */
     protected final List<List<Double>> heatmapValues = new ArrayList<>();
     /**
-     * Map between traps and measurements
+     * Store with measurements of every trap
      */
-    protected final Map<String, List<Long>> measurements = new LinkedHashMap<>();
+    protected MeasurementStore measurements;
 
     /**
      * List with source code lines of the profiled executable
      */
     protected List<String> sourceCode;
 
+    // initialized lazily and shared by all visualisations, e.g. those served by the daemon
+    private static VelocityEngine velocityEngine;
+
     private static final Logger log = LoggerFactory.getLogger(AbstractVisualiser.class);
 
     /**
      * Constructs the {@link AbstractVisualiser} class.
      *
-     * @param args  object with commandline arguments
-     * @param model Spoon model
+     * @param args     object with commandline arguments
+     * @param manifest manifest of the instrumented sources
      */
-    protected AbstractVisualiser(final Args args, final CtModel model) {
+    protected AbstractVisualiser(final Args args, final InstrumentationManifest manifest) {
         this.args = args;
-        this.model = model;
+        this.manifest = manifest;
     }
 
     /**
      * Factory method
      *
-     * @param  args  object with commandline arguments
-     * @param  model a Spoon model
-     * @return       constructed {@link AbstractVisualiser} object
+     * @param  args     object with commandline arguments
+     * @param  manifest manifest of the instrumented sources
+     * @return          constructed {@link AbstractVisualiser} object
      */
-    public static AbstractVisualiser create(final Args args, final CtModel model) {
+    public static AbstractVisualiser create(final Args args, final InstrumentationManifest manifest) {
         switch (args.mode) {
             case memory:
-                return new MemoryVisualiser(args, model);
+                return new MemoryVisualiser(args, manifest);
             case time:
-                return new TimeVisualiser(args, model);
+                return new TimeVisualiser(args, manifest);
+            case writes:
+                return new WritesVisualiser(args, manifest);
             default:
                 throw new RuntimeException("Unreachable statement reached!");
         }
@@ -164,15 +175,32 @@ public abstract class AbstractVisualiser {
             apduHeader = header.get(4);
             inputDescription = header.get(5).split(":", 2);
             inputDivision = InputDivision.valueOf(header.get(6));
+            // older CSV files do not contain the clock source
+            clockSource = header.size() > 7 ? ClockSource.valueOf(header.get(7)) : ClockSource.wall;
 
             // parse inputs
             inputs = it.next().toList();
 
             // parse measurements
             do {
-                final List<String> line = it.next().toList();
-                final List<Long> values = line.stream().skip(1).map(this::convertValues).collect(Collectors.toList());
-                measurements.put(line.get(0), values);
+                final CSVRecord line = it.next();
+                if (measurements == null)
+                    measurements = new MeasurementStore(line.size() - 1);
+                else if (line.size() - 1 != measurements.getMeasurementCount())
+                    throw new RuntimeException(String.format(
+                            "Unexpected number of measurements of %s! Expected: %d Actual: %d",
+                            line.get(0), measurements.getMeasurementCount(), line.size() - 1));
+
+                final int trapIdx = measurements.addTrap(line.get(0));
+                for (int i = 1; i < line.size(); i++) {
+                    final String value = line.get(i);
+                    if (value.isEmpty())
+                        measurements.setUnreachable(trapIdx, i - 1);
+                    else if (value.equals(MeasurementStore.NOT_SAMPLED))
+                        measurements.setNotSampled(trapIdx, i - 1);
+                    else
+                        measurements.set(trapIdx, i - 1, convertValue(Long.parseLong(value)));
+                }
             } while (it.hasNext());
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -180,26 +208,29 @@ public abstract class AbstractVisualiser {
     }
 
     /**
-     * Loads the source code of the profiled executable.
+     * Loads the source code of the profiled executable from the instrumentation manifest.
+     *
+     * @throws RuntimeException if the measurements do not belong to the instrumented executable
      */
     private void loadSourceCode() {
+        if (!manifest.getExecutable().equals(profiledExecutableSignature))
+            throw new RuntimeException(String.format(
+                    "Measurements of %s do not belong to the instrumented %s! Please, profile it again.",
+                    profiledExecutableSignature, manifest.getExecutable()));
+
         // get source code, escape it for HTML and strip empty lines
-        final CtExecutable<?> executable = JCProfilerUtil.getProfiledExecutable(model, profiledExecutableSignature);
-        sourceCode = Arrays.stream(StringEscapeUtils.escapeHtml4(executable.prettyprint())
+        sourceCode = Arrays.stream(StringEscapeUtils.escapeHtml4(manifest.getSourceCode())
                 .split(System.lineSeparator())).filter(x -> !x.isEmpty()).collect(Collectors.toList());
     }
 
     /**
-     * Converts the input CSV value into its numerical counterpart, or null if the measurement is missing.
+     * Converts the parsed CSV value into the unit used in the visualisation.
      *
-     * @param  value single CSV value
-     * @return       parsed {@link Long} value or {@code null} if the value is empty.
+     * @param  value single parsed CSV value
+     * @return       converted value
      */
-    protected Long convertValues(final String value) {
-        if (value.isEmpty())
-            return null;
-
-        return Long.parseLong(value);
+    protected long convertValue(final long value) {
+        return value;
     }
 
     /**
@@ -234,9 +265,15 @@ public abstract class AbstractVisualiser {
     protected abstract void prepareVelocityContext(final VelocityContext context);
 
     /**
-     * Generates the HTML page with interactive visualisation.
+     * Returns the initialized {@link VelocityEngine} instance.  The engine is created only once
+     * as its initialization and the template parsing are expensive.
+     *
+     * @return {@link VelocityEngine} instance
      */
-    public void generateHTML() {
+    private static synchronized VelocityEngine getVelocityEngine() {
+        if (velocityEngine != null)
+            return velocityEngine;
+
         log.info("Initializing Apache Velocity.");
         final Properties props = new Properties();
         props.put(RuntimeConstants.EVENTHANDLER_INCLUDE, IncludeRelativePath.class.getName());
@@ -245,8 +282,16 @@ public abstract class AbstractVisualiser {
         props.put(RuntimeConstants.RESOURCE_LOADER + '.' + RuntimeConstants.RESOURCE_LOADER_CLASS + ".class",
                 ClasspathResourceLoader.class.getName());
 
-        final VelocityEngine velocityEngine = new VelocityEngine(props);
+        velocityEngine = new VelocityEngine(props);
         velocityEngine.init();
+        return velocityEngine;
+    }
+
+    /**
+     * Generates the HTML page with interactive visualisation.
+     */
+    public void generateHTML() {
+        final VelocityEngine velocityEngine = getVelocityEngine();
 
         // the heatmap is in reverse
         Collections.reverse(heatmapValues);
@@ -261,8 +306,10 @@ public abstract class AbstractVisualiser {
         context.put("inputDescription", inputDescription);
         context.put("inputDivision", inputDivision.prettyPrint());
         context.put("inputs", inputs.stream().map(s -> "'" + s + "'").collect(Collectors.toList()));
-        context.put("measurements", measurements);
+        context.put("measurements", measurements.asMap());
         context.put("mode", args.mode);
+        context.put("unreachableCounts", IntStream.range(0, measurements.getTrapCount()).boxed().collect(
+                Collectors.toMap(measurements.getTrapNames()::get, measurements::getUnreachableCount)));
 
         // add mode specific stuff
         prepareVelocityContext(context);
@@ -4,74 +4,112 @@
 package jcprofiler.visualisation;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.InstrumentationManifest;
+import jcprofiler.util.AllocationSites;
+import jcprofiler.util.LeakHistory;
 import jcprofiler.visualisation.processors.AbstractInsertMeasurementsProcessor;
 import jcprofiler.visualisation.processors.InsertMemoryMeasurementsProcessor;
 
+import org.apache.commons.text.StringEscapeUtils;
 import org.apache.velocity.VelocityContext;
 
-import spoon.reflect.CtModel;
-
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Class for visualisation of measurements in memory mode
  */
 public class MemoryVisualiser extends AbstractVisualiser {
+    // history of free memory in executions, null if not measured with --leak-detection
+    private LeakHistory leakHistory;
+    // memory allocated at allocation sites, null if not measured with --allocation-sites
+    private AllocationSites allocationSites;
+
     /**
      * Constructs the {@link MemoryVisualiser} class.
      *
-     * @param args  object with commandline arguments
-     * @param model Spoon model
+     * @param args     object with commandline arguments
+     * @param manifest manifest of the instrumented sources
      */
-    public MemoryVisualiser(final Args args, final CtModel model) {
-        super(args, model);
+    public MemoryVisualiser(final Args args, final InstrumentationManifest manifest) {
+        super(args, manifest);
     }
 
     /**
      * Loads and parses the CSV file with measurements, loads the source code of the profiled
-     * executable and prepares input data for the heatmap.
+     * executable and prepares input data for the heatmap.  The history of free memory in executions
+     * and the allocation sites are loaded as well if they exist.
      */
     @Override
     public void loadAndProcessMeasurements() {
         super.loadAndProcessMeasurements();
         prepareHeatmap();
+
+        final Path leaksCSV = args.workDir.resolve(LeakHistory.FILE_NAME);
+        if (Files.exists(leaksCSV))
+            leakHistory = LeakHistory.load(leaksCSV);
+
+        final Path sitesCSV = args.workDir.resolve(AllocationSites.FILE_NAME);
+        if (Files.exists(sitesCSV))
+            allocationSites = AllocationSites.load(sitesCSV);
+    }
+
+    /**
+     * Checks whether the measurements contain the unused commit capacity.
+     * CSV files created by older versions contain only free memory.
+     *
+     * @return true if the unused commit capacity was measured, otherwise false
+     */
+    private boolean hasCommitCapacity() {
+        return measurements.getMeasurementCount() > 3;
     }
 
     /**
      * Prepares heatmap traces.
      */
     private void prepareHeatmap() {
-        String prevActualTrap = null;
+        final boolean commitCapacity = hasCommitCapacity();
+        int prevActualTrap = -1;
         // prepare values for the heatMap
         for (final String line : sourceCode) {
             if (!line.contains("PM.check(PMC.TRAP")) {
-                heatmapValues.add(Arrays.asList(null, null));
+                heatmapValues.add(commitCapacity ? Arrays.asList(null, null, null) : Arrays.asList(null, null));
                 continue;
             }
 
             final int beginPos = line.indexOf('(') + 1 + "PMC.".length();
             final int endPos = line.indexOf(')');
-            final String currentTrap = line.substring(beginPos, endPos);
+            final int currentTrap = measurements.getTrapIndex(line.substring(beginPos, endPos));
 
             // unreachable trap or first reachable trap
-            if (measurements.get(currentTrap).contains(null) || prevActualTrap == null) {
-                heatmapValues.add(Arrays.asList(0.0, 0.0));
+            if (measurements.getUnreachableCount(currentTrap) != 0 || prevActualTrap == -1) {
+                heatmapValues.add(commitCapacity ? Arrays.asList(0.0, 0.0, 0.0) : Arrays.asList(0.0, 0.0));
 
                 // first reachable processed trap
-                if (prevActualTrap == null)
+                if (prevActualTrap == -1)
                     prevActualTrap = currentTrap;
 
                 continue;
             }
 
-            final List<Long> prev = measurements.get(prevActualTrap);
-            final List<Long> current = measurements.get(currentTrap);
-
             // get the biggest difference in available memory
-            final double trans = (double) Math.max(prev.get(0) - current.get(0), prev.get(1) - current.get(1));
-            final double pers = (double) (prev.get(2) - current.get(2));
-            heatmapValues.add(Arrays.asList(trans, pers));
+            final double trans = (double) Math.max(
+                    measurements.get(prevActualTrap, 0) - measurements.get(currentTrap, 0),
+                    measurements.get(prevActualTrap, 1) - measurements.get(currentTrap, 1));
+            final double pers = (double) (measurements.get(prevActualTrap, 2) - measurements.get(currentTrap, 2));
+            if (commitCapacity) {
+                final double commit = (double) (measurements.get(prevActualTrap, 3) -
+                        measurements.get(currentTrap, 3));
+                heatmapValues.add(Arrays.asList(trans, pers, commit));
+            } else {
+                heatmapValues.add(Arrays.asList(trans, pers));
+            }
 
             prevActualTrap = currentTrap;
         }
@@ -95,7 +133,44 @@ public class MemoryVisualiser extends AbstractVisualiser {
     @Override
     protected void prepareVelocityContext(final VelocityContext context) {
         context.put("measureUnit", "B");
+        context.put("commitCapacity", hasCommitCapacity());
         context.put("nonemptyHeatmap", heatmapValues.stream().anyMatch(
                 l -> l.stream().anyMatch(e -> e != null && e != 0.0)));
+
+        if (allocationSites != null && allocationSites.size() != 0)
+            prepareAllocationSites(context);
+        if (leakHistory == null)
+            return;
+
+        final Map<String, List<Long>> leakTrend = new LinkedHashMap<>();
+        final Map<String, String> leakDrift = new LinkedHashMap<>();
+        for (int i = 0; i < LeakHistory.COLUMNS.size(); i++) {
+            final String column = LeakHistory.COLUMNS.get(i);
+            final double drift = leakHistory.getDrift(i);
+            leakTrend.put(column, leakHistory.getColumn(i));
+            leakDrift.put(column, Double.isNaN(drift) ? "NaN" : String.format("%.2f", drift));
+        }
+
+        context.put("leakTrend", leakTrend);
+        context.put("leakDrift", leakDrift);
+    }
+
+    /**
+     * Adds the allocation sites to the given {@link VelocityContext} instance.
+     *
+     * @param context {@link VelocityContext} instance
+     */
+    private void prepareAllocationSites(final VelocityContext context) {
+        final List<String> labels = IntStream.range(0, allocationSites.size())
+                .mapToObj(i -> "'" + StringEscapeUtils.escapeEcmaScript(
+                        allocationSites.getLocation(i) + ": " + allocationSites.getAllocation(i)) + "'")
+                .collect(Collectors.toList());
+
+        final Map<String, List<Long>> values = new LinkedHashMap<>();
+        for (int i = 0; i < AllocationSites.COLUMNS.size(); i++)
+            values.put(AllocationSites.COLUMNS.get(i), allocationSites.getColumn(i));
+
+        context.put("allocationLabels", labels);
+        context.put("allocationValues", values);
     }
 }
@@ -4,17 +4,20 @@
 package jcprofiler.visualisation;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.CallTree;
+import jcprofiler.util.InstrumentationManifest;
+import jcprofiler.util.MeasurementStore;
+import jcprofiler.util.enums.ClockSource;
 import jcprofiler.visualisation.processors.AbstractInsertMeasurementsProcessor;
 
 import jcprofiler.visualisation.processors.InsertTimeMeasurementsProcessor;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.text.StringEscapeUtils;
 import org.apache.velocity.VelocityContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import spoon.reflect.CtModel;
-
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -23,27 +26,32 @@ import java.util.stream.Collectors;
  * Class for visualisation of measurements in time mode
  */
 public class TimeVisualiser extends AbstractVisualiser {
-    private final Map<String, List<Long>> filteredMeasurements = new LinkedHashMap<>();
+    private MeasurementStore filteredMeasurements;
     private final Map<String, DescriptiveStatistics> filteredStatistics = new LinkedHashMap<>();
 
-    private final Map<String, List<Double>> movingAverages = new LinkedHashMap<>();
+    // Double.NaN represents a missing value
+    private final Map<String, double[]> movingAverages = new LinkedHashMap<>();
+
+    // inclusive and exclusive time of callees, null if not instrumented with --transitive
+    private CallTree callTree;
 
     private static final Logger log = LoggerFactory.getLogger(TimeVisualiser.class);
 
     /**
      * Constructs the {@link TimeVisualiser} class.
      *
-     * @param args  object with commandline arguments
-     * @param model Spoon model
+     * @param args     object with commandline arguments
+     * @param manifest manifest of the instrumented sources
      */
-    public TimeVisualiser(final Args args, final CtModel model) {
-        super(args, model);
+    public TimeVisualiser(final Args args, final InstrumentationManifest manifest) {
+        super(args, manifest);
     }
 
     /**
      * Loads and parses the CSV file with measurements, loads the source code of the profiled
      * executable, computes moving averages of measurements, filters obvious outliers
-     * and prepares input data for the heatmap.
+     * and prepares input data for the heatmap.  The call tree is computed as well
+     * if the callees of the profiled executable were instrumented.
      */
     @Override
     public void loadAndProcessMeasurements() {
@@ -51,6 +59,22 @@ public class TimeVisualiser extends AbstractVisualiser {
         computeMovingAverages();
         filterOutliers();
         prepareHeatmap();
+        computeCallTree();
+    }
+
+    /**
+     * Computes the inclusive and exclusive time of the profiled executable and its instrumented callees
+     * and stores it to the {@link CallTree#FILE_NAME} file.
+     */
+    private void computeCallTree() {
+        if (manifest.getCalls().isEmpty())
+            return;
+
+        // outliers are not filtered as the time of an executable is the sum of its measurements
+        log.info("Computing the call tree of {}.", manifest.getExecutable());
+        callTree = CallTree.compute(measurements, manifest::getTrapExecutable, manifest.getCalls(),
+                manifest.getExecutable());
+        callTree.store(args.workDir.resolve(CallTree.FILE_NAME));
     }
 
     /**
@@ -58,35 +82,52 @@ public class TimeVisualiser extends AbstractVisualiser {
      */
     private void filterOutliers() {
         log.info("Filtering outliers from the loaded measurements.");
-        measurements.forEach((k, v) -> {
-            final DescriptiveStatistics ds = new DescriptiveStatistics();
-            v.stream().filter(Objects::nonNull).map(Long::doubleValue).forEach(ds::addValue);
-
-            if (ds.getN() == 0) {
-                filteredMeasurements.put(k, new ArrayList<>());
-                filteredStatistics.put(k, ds);
-                return;
-            }
+        filteredMeasurements = new MeasurementStore(measurements.getMeasurementCount());
+        for (int trapIdx = 0; trapIdx < measurements.getTrapCount(); trapIdx++) {
+            final String trapName = measurements.getTrapNames().get(trapIdx);
+            final int filteredIdx = filteredMeasurements.addTrap(trapName);
+            final DescriptiveStatistics ds = getStatistics(measurements, trapIdx);
 
             final long n = ds.getN();
             final double mean = ds.getMean();
             final double standardDeviation = ds.getStandardDeviation();
 
-            final List<Long> filteredValues = v.stream().map(l -> {
-                if (l == null || n == 1)
-                    return l;
+            for (int i = 0; i < measurements.getMeasurementCount(); i++) {
+                if (measurements.isUnreachable(trapIdx, i)) {
+                    filteredMeasurements.setUnreachable(filteredIdx, i);
+                    continue;
+                }
+                if (measurements.isNotSampled(trapIdx, i)) {
+                    filteredMeasurements.setNotSampled(filteredIdx, i);
+                    continue;
+                }
 
                 // replace outliers with null
-                double zValue = Math.abs(l - mean) / standardDeviation;
-                return zValue <= 3. ? l : null;
-            }).collect(Collectors.toList());
+                final long value = measurements.get(trapIdx, i);
+                if (n == 1 || Math.abs(value - mean) / standardDeviation <= 3.)
+                    filteredMeasurements.set(filteredIdx, i, value);
+                else
+                    filteredMeasurements.setUnreachable(filteredIdx, i);
+            }
 
-            filteredMeasurements.put(k, filteredValues);
+            filteredStatistics.put(trapName, getStatistics(filteredMeasurements, filteredIdx));
+        }
+    }
 
-            final DescriptiveStatistics filteredDs = new DescriptiveStatistics();
-            filteredValues.stream().filter(Objects::nonNull).map(Long::doubleValue).forEach(filteredDs::addValue);
-            filteredStatistics.put(k, filteredDs);
-        });
+    /**
+     * Computes statistics of sampled reachable measurements of the given trap.
+     *
+     * @param  store   store with measurements
+     * @param  trapIdx index of the performance trap
+     * @return         {@link DescriptiveStatistics} instance
+     */
+    private static DescriptiveStatistics getStatistics(final MeasurementStore store, final int trapIdx) {
+        final DescriptiveStatistics ds = new DescriptiveStatistics();
+        for (int i = 0; i < store.getMeasurementCount(); i++) {
+            if (!store.isMissing(trapIdx, i))
+                ds.addValue(store.get(trapIdx, i));
+        }
+        return ds;
     }
 
     /**
@@ -95,18 +136,44 @@ public class TimeVisualiser extends AbstractVisualiser {
     private void computeMovingAverages() {
         // compute moving averages
         final DescriptiveStatistics movingAverage = new DescriptiveStatistics(/* window */ 10);
-        measurements.forEach((k, v) -> {
+        for (int trapIdx = 0; trapIdx < measurements.getTrapCount(); trapIdx++) {
             movingAverage.clear();
-            movingAverages.put(k, v.stream().map(l -> {
-                if (l == null) {
+            final double[] values = new double[measurements.getMeasurementCount()];
+            for (int i = 0; i < values.length; i++) {
+                if (measurements.isMissing(trapIdx, i)) {
                     movingAverage.clear();
-                    return null;
+                    values[i] = Double.NaN;
+                    continue;
                 }
 
-                movingAverage.addValue(l.doubleValue());
-                return movingAverage.getMean();
-            }).collect(Collectors.toList()));
-        });
+                movingAverage.addValue(measurements.get(trapIdx, i));
+                values[i] = movingAverage.getMean();
+            }
+
+            movingAverages.put(measurements.getTrapNames().get(trapIdx), values);
+        }
+    }
+
+    /**
+     * Computes the mean of reachable measurements of the given trap in the given range.
+     *
+     * @param  trapIdx index of the performance trap
+     * @param  from    index of the first measurement
+     * @param  to      index after the last measurement
+     * @return         the mean or zero if there are no such measurements
+     */
+    private double getFilteredAverage(final int trapIdx, final int from, final int to) {
+        double sum = 0;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (filteredMeasurements.isMissing(trapIdx, i))
+                continue;
+
+            sum += filteredMeasurements.get(trapIdx, i);
+            count++;
+        }
+
+        return count != 0 ? sum / count : .0;
     }
 
     /**
@@ -134,12 +201,12 @@ public class TimeVisualiser extends AbstractVisualiser {
             switch (inputDivision) {
                 case effectiveBitLength:
                 case hammingWeight:
-                    final List<Long> values = filteredMeasurements.get(trapName);
+                    final int trapIdx = filteredMeasurements.getTrapIndex(trapName);
+                    final int half = filteredMeasurements.getMeasurementCount() / 2;
 
-                    final double minAvg = values.stream().limit(values.size() / 2)
-                            .filter(Objects::nonNull).mapToLong(Long::longValue).average().orElse(.0);
-                    final double maxAvg = values.stream().skip(values.size() / 2)
-                            .filter(Objects::nonNull).mapToLong(Long::longValue).average().orElse(.0);
+                    final double minAvg = getFilteredAverage(trapIdx, 0, half);
+                    final double maxAvg = getFilteredAverage(trapIdx, half,
+                            filteredMeasurements.getMeasurementCount());
 
                     heatmapValues.add(Collections.singletonList(Math.abs(minAvg - maxAvg)));
                     break;
@@ -155,19 +222,18 @@ public class TimeVisualiser extends AbstractVisualiser {
     }
 
     /**
-     * Converts the input CSV value into its numerical counterpart and converts it according
-     * to selected {@link TimeUnit}, or null if the measurement is missing.
+     * Converts the parsed CSV value according to selected {@link TimeUnit}.
+     * Values measured with {@link ClockSource#bytecode} are kept as they are.
      *
-     * @param  value single CSV value
-     * @return       parsed {@link Long} value in given {@link TimeUnit}
-     *               or {@code null} if the value is empty.
+     * @param  nanos single parsed CSV value in nanoseconds
+     * @return       value in given {@link TimeUnit}
      */
     @Override
-    protected Long convertValues(final String value) {
-        if (value.isEmpty())
-            return null;
+    protected long convertValue(final long nanos) {
+        // bytecode counts are not time
+        if (clockSource == ClockSource.bytecode)
+            return nanos;
 
-        long nanos = Long.parseLong(value);
         switch (args.timeUnit) {
             case nano:
                 return nanos; // noop
@@ -182,6 +248,15 @@ public class TimeVisualiser extends AbstractVisualiser {
         }
     }
 
+    /**
+     * Returns the unit of the measurements.
+     *
+     * @return unit symbol
+     */
+    private String getMeasureUnit() {
+        return clockSource == ClockSource.bytecode ? "bytecodes" : args.timeUnit.prettyPrint();
+    }
+
     /**
      * Returns an {@link InsertTimeMeasurementsProcessor} instance.
      *
@@ -189,7 +264,7 @@ public class TimeVisualiser extends AbstractVisualiser {
      */
     @Override
     protected AbstractInsertMeasurementsProcessor getInsertMeasurementsProcessor() {
-        return new InsertTimeMeasurementsProcessor(args, measurements, filteredStatistics);
+        return new InsertTimeMeasurementsProcessor(args, measurements, filteredStatistics, getMeasureUnit());
     }
 
     /**
@@ -199,9 +274,45 @@ public class TimeVisualiser extends AbstractVisualiser {
      */
     @Override
     protected void prepareVelocityContext(final VelocityContext context) {
-        context.put("filteredMeasurements", filteredMeasurements);
-        context.put("measureUnit", args.timeUnit.prettyPrint());
-        context.put("movingAverages", movingAverages);
-        context.put("roundCount", measurements.values().iterator().next().size());
+        context.put("filteredMeasurements", filteredMeasurements.asMap());
+        context.put("measureUnit", getMeasureUnit());
+        context.put("notSampled", measurements.getNotSampledMap());
+        context.put("movingAverages", movingAverages.entrySet().stream().collect(Collectors.toMap(
+                Map.Entry::getKey, e -> MeasurementStore.asList(e.getValue()), (a, b) -> a, LinkedHashMap::new)));
+        context.put("roundCount", measurements.getMeasurementCount());
+        if (callTree != null)
+            prepareCallTree(context);
+    }
+
+    /**
+     * Adds the rows of the call tree to the given {@link VelocityContext} instance.
+     *
+     * @param context {@link VelocityContext} instance
+     */
+    private void prepareCallTree(final VelocityContext context) {
+        final List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < callTree.size(); i++) {
+            // use LinkedHashMap to preserve insertion order
+            final Map<String, Object> row = new LinkedHashMap<>();
+            row.put("executable", StringEscapeUtils.escapeHtml4(callTree.getExecutable(i)));
+            row.put("depth", callTree.getDepth(i));
+            row.put("reachedCount", callTree.getReachedCount(i));
+            row.put("inclusiveTime", roundTime(callTree.getInclusiveTime(i)));
+            row.put("exclusiveTime", roundTime(callTree.getExclusiveTime(i)));
+            rows.add(row);
+        }
+
+        context.put("callTree", rows);
+        context.put("callTreeFile", CallTree.FILE_NAME);
+    }
+
+    /**
+     * Rounds the given time to two decimal places.
+     *
+     * @param  time time in the measure unit
+     * @return      the rounded time or null if the time is {@link Double#NaN}
+     */
+    private static Double roundTime(final double time) {
+        return Double.isNaN(time) ? null : Math.round(time * 100.) / 100.;
     }
 }
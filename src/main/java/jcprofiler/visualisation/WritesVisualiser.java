@@ -0,0 +1,87 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.visualisation;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.InstrumentationManifest;
+import jcprofiler.visualisation.processors.AbstractInsertMeasurementsProcessor;
+import jcprofiler.visualisation.processors.InsertWritesMeasurementsProcessor;
+
+import org.apache.velocity.VelocityContext;
+
+import java.util.Arrays;
+
+/**
+ * Class for visualisation of measurements in writes mode
+ */
+public class WritesVisualiser extends AbstractVisualiser {
+    /**
+     * Constructs the {@link WritesVisualiser} class.
+     *
+     * @param args     object with commandline arguments
+     * @param manifest manifest of the instrumented sources
+     */
+    public WritesVisualiser(final Args args, final InstrumentationManifest manifest) {
+        super(args, manifest);
+    }
+
+    /**
+     * Loads and parses the CSV file with measurements, loads the source code of the profiled
+     * executable without the write counters and prepares input data for the heatmap.
+     */
+    @Override
+    public void loadAndProcessMeasurements() {
+        super.loadAndProcessMeasurements();
+        sourceCode.removeIf(line -> line.trim().startsWith("PM.write("));
+        prepareHeatmap();
+    }
+
+    /**
+     * Prepares heatmap traces.  The writes of a trap are shown on its line as they
+     * are executed after it.
+     */
+    private void prepareHeatmap() {
+        for (final String line : sourceCode) {
+            if (!line.contains("PM.check(PMC.TRAP")) {
+                heatmapValues.add(Arrays.asList(null, null));
+                continue;
+            }
+
+            final int beginPos = line.indexOf('(') + 1 + "PMC.".length();
+            final int endPos = line.indexOf(')');
+            final int currentTrap = measurements.getTrapIndex(line.substring(beginPos, endPos));
+
+            // unreachable trap
+            if (measurements.getUnreachableCount(currentTrap) != 0) {
+                heatmapValues.add(Arrays.asList(0.0, 0.0));
+                continue;
+            }
+
+            heatmapValues.add(Arrays.asList(
+                    (double) measurements.get(currentTrap, 0), (double) measurements.get(currentTrap, 1)));
+        }
+    }
+
+    /**
+     * Returns an {@link InsertWritesMeasurementsProcessor} instance.
+     *
+     * @return {@link InsertWritesMeasurementsProcessor} instance
+     */
+    @Override
+    protected AbstractInsertMeasurementsProcessor getInsertMeasurementsProcessor() {
+        return new InsertWritesMeasurementsProcessor(args, measurements);
+    }
+
+    /**
+     * Adds elements exclusive for the writes mode to the given {@link VelocityContext} instance.
+     *
+     * @param context {@link VelocityContext} instance
+     */
+    @Override
+    protected void prepareVelocityContext(final VelocityContext context) {
+        context.put("measureUnit", "");
+        context.put("nonemptyHeatmap", heatmapValues.stream().anyMatch(
+                l -> l.stream().anyMatch(e -> e != null && e != 0.0)));
+    }
+}
@@ -4,6 +4,7 @@
 package jcprofiler.visualisation.processors;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.MeasurementStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,9 +14,6 @@ import spoon.reflect.code.CtFieldRead;
 import spoon.reflect.code.CtInvocation;
 import spoon.reflect.reference.CtExecutableReference;
 
-import java.util.List;
-import java.util.Map;
-
 /**
  * General class for annotation of profiled sources
  */
@@ -25,9 +23,9 @@ public abstract class AbstractInsertMeasurementsProcessor extends AbstractProces
      */
     protected final Args args;
     /**
-     * Map between traps and measurements
+     * Store with measurements of every trap
      */
-    protected final Map<String, List<Long>> measurements;
+    protected final MeasurementStore measurements;
 
     private static final Logger log = LoggerFactory.getLogger(AbstractInsertMeasurementsProcessor.class);
 
@@ -35,9 +33,9 @@ public abstract class AbstractInsertMeasurementsProcessor extends AbstractProces
      * Constructs the {@link AbstractInsertMeasurementsProcessor} class.
      *
      * @param args         object with commandline arguments
-     * @param measurements map between traps and measurements
+     * @param measurements store with measurements of every trap
      */
-    protected AbstractInsertMeasurementsProcessor(final Args args, final Map<String, List<Long>> measurements) {
+    protected AbstractInsertMeasurementsProcessor(final Args args, final MeasurementStore measurements) {
         this.args = args;
         this.measurements = measurements;
     }
@@ -79,7 +77,7 @@ public abstract class AbstractInsertMeasurementsProcessor extends AbstractProces
         final String fieldName = trapFieldRead.getVariable().getSimpleName();
 
         // skip if this trap was not measured
-        if (!measurements.containsKey(fieldName))
+        if (!measurements.containsTrap(fieldName))
             return;
 
         final String commentContents = getCommentString(fieldName);
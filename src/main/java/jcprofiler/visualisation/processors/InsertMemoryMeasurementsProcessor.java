@@ -4,9 +4,15 @@
 package jcprofiler.visualisation.processors;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.MeasurementStore;
 
+import spoon.reflect.code.CtExpression;
+import spoon.reflect.code.CtInvocation;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtTypeReference;
+
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Class for annotation of profiled sources in memory mode
@@ -16,12 +22,47 @@ public class InsertMemoryMeasurementsProcessor extends AbstractInsertMeasurement
      * Constructs the {@link InsertMemoryMeasurementsProcessor} class.
      *
      * @param args         object with commandline arguments
-     * @param measurements map between traps and measurements
+     * @param measurements store with measurements of every trap
      */
-    public InsertMemoryMeasurementsProcessor(final Args args, final Map<String, List<Long>> measurements) {
+    public InsertMemoryMeasurementsProcessor(final Args args, final MeasurementStore measurements) {
         super(args, measurements);
     }
 
+    /**
+     * Decides whether the input {@link CtInvocation} corresponds to
+     * a {@code PM#check(short)} or a {@code PM.allocated} call.
+     *
+     * @param  statement the candidate invocation
+     * @return           true if yes, otherwise false
+     */
+    @Override
+    public boolean isToBeProcessed(final CtInvocation<Void> statement) {
+        return isAllocationSite(statement) || super.isToBeProcessed(statement);
+    }
+
+    /**
+     * Replaces the {@code PM#check(short)} calls with a commentary with measurement statistics
+     * and unwraps the allocations wrapped in {@code PM.allocated} calls.
+     *
+     * @param invocation invocation to be processed
+     */
+    @Override
+    public void process(final CtInvocation<Void> invocation) {
+        if (!isAllocationSite(invocation)) {
+            super.process(invocation);
+            return;
+        }
+
+        // drop the type cast inserted together with the PM.allocated call
+        final CtExpression<?> allocation = invocation.getArguments().get(invocation.getArguments().size() - 1);
+        final List<CtTypeReference<?>> casts = new ArrayList<>(invocation.getTypeCasts());
+        if (casts.size() == 1 && casts.get(0).equals(allocation.getType()))
+            casts.clear();
+
+        invocation.replace(allocation);
+        allocation.setTypeCasts(casts);
+    }
+
     /**
      * Returns a commentary contents to replace the {@code PM#check(short)} call
      * for given performance trap.
@@ -31,14 +72,32 @@ public class InsertMemoryMeasurementsProcessor extends AbstractInsertMeasurement
      */
     @Override
     protected String getCommentString(String fieldName) {
-        final List<Long> values = measurements.get(fieldName);
+        final int trapIdx = measurements.getTrapIndex(fieldName);
 
         // trap was unreachable
-        if (values.contains(null))
+        if (measurements.getUnreachableCount(trapIdx) != 0)
             return "Unreachable";
 
-        return String.format(
+        final String comment = String.format(
                 "Free Transient Deselect: %d B, Free Transient Reset: %d B, Free Persistent: %d B",
-                values.get(0), values.get(1), values.get(2));
+                measurements.get(trapIdx, 0), measurements.get(trapIdx, 1), measurements.get(trapIdx, 2));
+
+        // CSV files created by older versions do not contain the unused commit capacity
+        if (measurements.getMeasurementCount() < 4)
+            return comment;
+        return String.format("%s, Unused Commit Capacity: %d B", comment, measurements.get(trapIdx, 3));
+    }
+
+    /**
+     * Checks whether the given invocation is a {@code PM.allocated} call.
+     *
+     * @param  invocation the candidate invocation
+     * @return            true if yes, otherwise false
+     */
+    private boolean isAllocationSite(final CtInvocation<Void> invocation) {
+        final CtExecutableReference<?> executable = invocation.getExecutable();
+        return executable.getDeclaringType() != null &&
+               executable.getDeclaringType().getSimpleName().equals("PM") &&
+               executable.getSimpleName().equals("allocated") && executable.isStatic();
     }
 }
@@ -4,30 +4,33 @@
 package jcprofiler.visualisation.processors;
 
 import jcprofiler.args.Args;
+import jcprofiler.util.MeasurementStore;
 
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
-import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 /**
  * Class for annotation of profiled sources in time mode
  */
 public class InsertTimeMeasurementsProcessor extends AbstractInsertMeasurementsProcessor {
     private final Map<String, DescriptiveStatistics> statisticsMap;
+    private final String unitSymbol;
 
     /**
      * Constructs the {@link InsertTimeMeasurementsProcessor} class.
      *
      * @param args          object with commandline arguments
-     * @param measurements  map between traps and measurements
+     * @param measurements  store with measurements of every trap
      * @param statisticsMap map between traps and measurement statistics
+     * @param unitSymbol    unit of the measurements
      */
-    public InsertTimeMeasurementsProcessor(final Args args, final Map<String, List<Long>> measurements,
-                                           final Map<String, DescriptiveStatistics> statisticsMap) {
+    public InsertTimeMeasurementsProcessor(final Args args, final MeasurementStore measurements,
+                                           final Map<String, DescriptiveStatistics> statisticsMap,
+                                           final String unitSymbol) {
         super(args, measurements);
         this.statisticsMap = statisticsMap;
+        this.unitSymbol = unitSymbol;
     }
 
     /**
@@ -39,18 +42,20 @@ public class InsertTimeMeasurementsProcessor extends AbstractInsertMeasurementsP
      */
     @Override
     protected String getCommentString(String fieldName) {
-        final List<Long> values = measurements.get(fieldName);
+        final int trapIdx = measurements.getTrapIndex(fieldName);
+        final int count = measurements.getMeasurementCount();
         final DescriptiveStatistics statistics = statisticsMap.get(fieldName);
-        final String unitSymbol = args.timeUnit.prettyPrint();
-        final long unreachableCount = values.stream().filter(Objects::isNull).count();
+        final long unreachableCount = measurements.getUnreachableCount(trapIdx);
+        final long notSampledCount = measurements.getNotSampledCount(trapIdx);
 
         return String.format(
-                "Mean: %.2f %s, Std Dev: %.2f %s, Max: %d %s, Min: %d %s, Unreachable: %d/%d, %d outliers skipped",
+                "Mean: %.2f %s, Std Dev: %.2f %s, Max: %d %s, Min: %d %s, Unreachable: %d/%d, %d outliers skipped%s",
                 statistics.getMean(), unitSymbol,
                 statistics.getStandardDeviation(), unitSymbol,
                 (int) statistics.getMax(), unitSymbol,
                 (int) statistics.getMin(), unitSymbol,
-                unreachableCount, values.size(),
-                values.size() - unreachableCount - statistics.getN());
+                unreachableCount, count,
+                count - unreachableCount - notSampledCount - statistics.getN(),
+                notSampledCount != 0 ? String.format(", Not sampled: %d/%d", notSampledCount, count) : "");
     }
 }
@@ -0,0 +1,85 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.visualisation.processors;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.MeasurementStore;
+
+import spoon.reflect.code.CtInvocation;
+import spoon.reflect.reference.CtExecutableReference;
+
+/**
+ * Class for annotation of profiled sources in writes mode
+ */
+public class InsertWritesMeasurementsProcessor extends AbstractInsertMeasurementsProcessor {
+    /**
+     * Constructs the {@link InsertWritesMeasurementsProcessor} class.
+     *
+     * @param args         object with commandline arguments
+     * @param measurements store with measurements of every trap
+     */
+    public InsertWritesMeasurementsProcessor(final Args args, final MeasurementStore measurements) {
+        super(args, measurements);
+    }
+
+    /**
+     * Decides whether the input {@link CtInvocation} corresponds to
+     * a {@code PM#check(short)} or a {@code PM.write} call.
+     *
+     * @param  statement the candidate invocation
+     * @return           true if yes, otherwise false
+     */
+    @Override
+    public boolean isToBeProcessed(final CtInvocation<Void> statement) {
+        return super.isToBeProcessed(statement) || isWriteCounter(statement);
+    }
+
+    /**
+     * Replaces the {@code PM#check(short)} calls with a commentary with measurement statistics
+     * and removes the {@code PM.write} calls.
+     *
+     * @param invocation invocation to be processed
+     */
+    @Override
+    public void process(final CtInvocation<Void> invocation) {
+        if (isWriteCounter(invocation)) {
+            invocation.delete();
+            return;
+        }
+
+        super.process(invocation);
+    }
+
+    /**
+     * Returns a commentary contents to replace the {@code PM#check(short)} call
+     * for given performance trap.
+     *
+     * @param  fieldName name of the performance trap field
+     * @return           comment annotation contents
+     */
+    @Override
+    protected String getCommentString(String fieldName) {
+        final int trapIdx = measurements.getTrapIndex(fieldName);
+
+        // trap was unreachable
+        if (measurements.getUnreachableCount(trapIdx) != 0)
+            return "Unreachable";
+
+        return String.format("Persistent writes until the next trap: %d, Written bytes: %d B",
+                measurements.get(trapIdx, 0), measurements.get(trapIdx, 1));
+    }
+
+    /**
+     * Checks whether the given invocation is a {@code PM.write} call.
+     *
+     * @param  invocation the candidate invocation
+     * @return            true if yes, otherwise false
+     */
+    private boolean isWriteCounter(final CtInvocation<Void> invocation) {
+        final CtExecutableReference<?> executable = invocation.getExecutable();
+        return executable.getDeclaringType() != null &&
+               executable.getDeclaringType().getSimpleName().equals("PM") &&
+               executable.getSimpleName().equals("write") && executable.isStatic();
+    }
+}
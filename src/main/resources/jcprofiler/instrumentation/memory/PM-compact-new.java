@@ -0,0 +1,239 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: MIT
+
+package jcprofiler;
+
+// Explicit imports to ensure that they are not shadowed by other classes from the applet package.
+import java.lang.Integer;
+import java.lang.Short;
+
+import javacard.framework.APDU;
+import javacard.framework.ISO7816;
+import javacard.framework.ISOException;
+import javacard.framework.JCSystem;
+import javacard.framework.Util;
+
+/**
+ * Low-footprint PM class for memory usage measurement for JCSDK 3.0.4 and newer
+ * <br><br>
+ * Only the reached traps are stored in a single array of user-defined size.  The array starts
+ * with a header containing the overflow flag, the number of used bytes, the free memory
+ * of all three types and the unused commit capacity at the first check followed by a list of entries.
+ * Each entry contains the trap ID and the differences of all four values from the header as shorts.
+ * If a difference does not fit into a short, the entry contains the values as integers instead
+ * and its trap ID has the highest bit set.
+ */
+public class PM {
+    private static final short ARRAY_LENGTH = 0;
+
+    // selects all memory types at once, must not collide with JCSystem.MEMORY_TYPE_* constants
+    private static final byte MEMORY_TYPE_ALL = (byte) 0x7F;
+
+    // layout of the header
+    private static final short OFFSET_OVERFLOW = 0;
+    private static final short OFFSET_USED = 1;
+    private static final short OFFSET_BASE = 3;
+    private static final short HEADER_LENGTH = (short) (OFFSET_BASE + 4 * Integer.BYTES);
+
+    // layout of the entries
+    private static final short WIDE_ENTRY = (short) 0x8000;
+    private static final short NARROW_ENTRY_LENGTH = (short) (Short.BYTES + 4 * Short.BYTES);
+    private static final short WIDE_ENTRY_LENGTH = (short) (Short.BYTES + 4 * Integer.BYTES);
+
+    // marks a difference that does not fit into a short
+    private static final short NO_DELTA = Short.MIN_VALUE;
+
+    // Array storing the header and entries of reached traps
+    private static final byte[] compactMemoryUsage = new byte[ARRAY_LENGTH];
+
+    // free memory of all three types and the unused commit capacity as integers
+    private static final short[] buffer = new short[8];
+
+    private static boolean initialised = false;
+
+    /**
+     * Initialise the header with the values measured at the first check.
+     */
+    private static void initialise() {
+        compactMemoryUsage[OFFSET_OVERFLOW] = 0;
+        Util.setShort(compactMemoryUsage, OFFSET_USED, HEADER_LENGTH);
+        for (short i = 0; i < 8; i++)
+            Util.setShort(compactMemoryUsage, (short) (OFFSET_BASE + i * Short.BYTES), buffer[i]);
+
+        initialised = true;
+    }
+
+    /**
+     * Stores the minimal amount of free memory and unused commit capacity for the given trap
+     * across all its visits.  The maximum value of free memory is capped by {@link Integer#MAX_VALUE}.
+     *
+     * @param stopCondition ID of the reached trap
+     */
+    public static void check(short stopCondition) {
+        JCSystem.getAvailableMemory(buffer, (short) 0, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
+        JCSystem.getAvailableMemory(buffer, (short) 2, JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
+        JCSystem.getAvailableMemory(buffer, (short) 4, JCSystem.MEMORY_TYPE_PERSISTENT);
+        buffer[6] = 0;
+        buffer[7] = JCSystem.getUnusedCommitCapacity();
+
+        if (!initialised)
+            initialise();
+
+        short entry = findEntry(stopCondition);
+        boolean narrow = true;
+        for (short i = 0; i < 4; i++)
+            narrow &= getDelta(i) != NO_DELTA;
+
+        // entries only grow wider, the narrow entry is superseded by a new wide one
+        if (entry >= 0 && (short) (Util.getShort(compactMemoryUsage, entry) & WIDE_ENTRY) == 0 && !narrow)
+            entry = -1;
+
+        if (entry < 0) {
+            entry = appendEntry(stopCondition, narrow);
+            if (entry < 0)
+                return;
+        }
+
+        if ((short) (Util.getShort(compactMemoryUsage, entry) & WIDE_ENTRY) == 0) {
+            for (short i = 0; i < 4; i++)
+                storeMaximumDelta((short) (entry + Short.BYTES + i * Short.BYTES), getDelta(i));
+            return;
+        }
+
+        for (short i = 0; i < 4; i++)
+            storeMinimum((short) (entry + Short.BYTES + i * Integer.BYTES), i);
+    }
+
+    /**
+     * Finds the last entry of the given trap.
+     *
+     * @param  stopCondition ID of the reached trap
+     * @return               offset of the entry or -1 if the trap has not been reached yet
+     */
+    private static short findEntry(short stopCondition) {
+        short found = -1;
+        short used = Util.getShort(compactMemoryUsage, OFFSET_USED);
+        for (short offset = HEADER_LENGTH; offset < used; ) {
+            short trapID = Util.getShort(compactMemoryUsage, offset);
+            if ((short) (trapID & (short) ~WIDE_ENTRY) == stopCondition)
+                found = offset;
+            offset += (short) (trapID & WIDE_ENTRY) == 0 ? NARROW_ENTRY_LENGTH : WIDE_ENTRY_LENGTH;
+        }
+        return found;
+    }
+
+    /**
+     * Appends a new entry for the given trap initialised to the currently measured values.
+     * The overflow flag is set if the entry does not fit into the array.
+     *
+     * @param  stopCondition ID of the reached trap
+     * @param  narrow        true if the differences fit into shorts
+     * @return               offset of the entry or -1 if the array is full
+     */
+    private static short appendEntry(short stopCondition, boolean narrow) {
+        short entry = Util.getShort(compactMemoryUsage, OFFSET_USED);
+        short length = narrow ? NARROW_ENTRY_LENGTH : WIDE_ENTRY_LENGTH;
+        if (length > (short) (ARRAY_LENGTH - entry)) {
+            compactMemoryUsage[OFFSET_OVERFLOW] = 1;
+            return -1;
+        }
+
+        Util.setShort(compactMemoryUsage, entry, narrow ? stopCondition : (short) (stopCondition | WIDE_ENTRY));
+        if (narrow) {
+            for (short i = 0; i < 4; i++)
+                Util.setShort(compactMemoryUsage, (short) (entry + Short.BYTES + i * Short.BYTES), getDelta(i));
+        } else {
+            for (short i = 0; i < 8; i++)
+                Util.setShort(compactMemoryUsage, (short) (entry + Short.BYTES + i * Short.BYTES), buffer[i]);
+        }
+
+        Util.setShort(compactMemoryUsage, OFFSET_USED, (short) (entry + length));
+        return entry;
+    }
+
+    /**
+     * Computes the difference between the value in the header and the measured value of the given type.
+     *
+     * @param  type index of the memory type or 3 for the unused commit capacity
+     * @return      the difference or {@link #NO_DELTA} if it does not fit into a short
+     */
+    private static short getDelta(short type) {
+        short baseOffset = (short) (OFFSET_BASE + type * Integer.BYTES);
+        short baseHigh = Util.getShort(compactMemoryUsage, baseOffset);
+        short baseLow = Util.getShort(compactMemoryUsage, (short) (baseOffset + Short.BYTES));
+        short valueHigh = buffer[(short) (type * 2)];
+        short valueLow = buffer[(short) (type * 2 + 1)];
+
+        // subtract the lower halves as unsigned and borrow from the upper halves
+        short low = (short) (baseLow - valueLow);
+        short high = (short) (baseHigh - valueHigh);
+        if ((short) (baseLow ^ (short) 0x8000) < (short) (valueLow ^ (short) 0x8000))
+            high--;
+
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0 && low != NO_DELTA))
+            return low;
+        return NO_DELTA;
+    }
+
+    /**
+     * Stores the given difference of free memory if it is greater than the stored one.
+     *
+     * @param offset offset of the stored difference
+     * @param delta  difference of free memory
+     */
+    private static void storeMaximumDelta(short offset, short delta) {
+        if (delta > Util.getShort(compactMemoryUsage, offset))
+            Util.setShort(compactMemoryUsage, offset, delta);
+    }
+
+    /**
+     * Stores the integer of the given type in the {@link #buffer} if it is smaller than the stored value.
+     *
+     * @param offset offset of the stored integer
+     * @param type   index of the memory type or 3 for the unused commit capacity
+     */
+    private static void storeMinimum(short offset, short type) {
+        short valueHigh = buffer[(short) (type * 2)];
+        short valueLow = buffer[(short) (type * 2 + 1)];
+        short storedHigh = Util.getShort(compactMemoryUsage, offset);
+        short storedLow = Util.getShort(compactMemoryUsage, (short) (offset + Short.BYTES));
+
+        // the lower halves are compared as unsigned
+        if (valueHigh > storedHigh || (valueHigh == storedHigh &&
+                (short) (valueLow ^ (short) 0x8000) >= (short) (storedLow ^ (short) 0x8000)))
+            return;
+
+        Util.setShort(compactMemoryUsage, offset, valueHigh);
+        Util.setShort(compactMemoryUsage, (short) (offset + Short.BYTES), valueLow);
+    }
+
+    /**
+     * Sends the P2th part of the used part of the array back to the profiler.  The length
+     * of the part is given by the expected length of the response.  If no trap has been
+     * reached yet, only the overflow flag and the number of used bytes equal to zero are sent.
+     *
+     * @param  apdu         input APDU
+     * @throws ISOException if the P1 byte, the P2 byte or the expected length has a wrong value
+     */
+    public static void send(APDU apdu) {
+        byte[] apduBuffer = apdu.getBuffer();
+        if (apduBuffer[ISO7816.OFFSET_P1] != MEMORY_TYPE_ALL)
+            ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
+
+        short part = (short) (apduBuffer[ISO7816.OFFSET_P2] & 0x00FF);
+        short partLength = apdu.setOutgoing();
+        short usedLength = initialised ? Util.getShort(compactMemoryUsage, OFFSET_USED) : OFFSET_BASE;
+
+        if (partLength <= 0)
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+        if (part > (short) (usedLength / partLength))
+            ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
+
+        short beginOffset = (short) (part * partLength);
+        short remainingLength = (short) (usedLength - beginOffset);
+        short length = remainingLength > partLength ? partLength : remainingLength;
+
+        apdu.setOutgoingLength(length);
+        apdu.sendBytesLong(compactMemoryUsage, beginOffset, length);
+    }
+}
@@ -0,0 +1,160 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: MIT
+
+package jcprofiler;
+
+// Explicit imports to ensure that they are not shadowed by other classes from the applet package.
+import java.lang.Short;
+
+import javacard.framework.APDU;
+import javacard.framework.ISO7816;
+import javacard.framework.ISOException;
+import javacard.framework.JCSystem;
+import javacard.framework.Util;
+
+/**
+ * Low-footprint PM class for memory usage measurement for JCSDK 3.0.3 and older
+ * <br><br>
+ * Only the reached traps are stored in a single array of user-defined size.  The array starts
+ * with a header containing the overflow flag, the number of used bytes, the free memory
+ * of all three types and the unused commit capacity at the first check followed by a list of entries.
+ * Each entry contains the trap ID and the differences of all four values from the header as shorts.
+ * As the values are capped by {@link Short#MAX_VALUE}, the difference always fits into a short.
+ */
+public class PM {
+    private static final short ARRAY_LENGTH = 0;
+
+    // selects all memory types at once, must not collide with JCSystem.MEMORY_TYPE_* constants
+    private static final byte MEMORY_TYPE_ALL = (byte) 0x7F;
+
+    // layout of the header
+    private static final short OFFSET_OVERFLOW = 0;
+    private static final short OFFSET_USED = 1;
+    private static final short OFFSET_BASE = 3;
+    private static final short HEADER_LENGTH = (short) (OFFSET_BASE + 4 * Short.BYTES);
+
+    // layout of the entries
+    private static final short ENTRY_LENGTH = (short) (Short.BYTES + 4 * Short.BYTES);
+
+    // Array storing the header and entries of reached traps
+    private static final byte[] compactMemoryUsage = new byte[ARRAY_LENGTH];
+
+    private static boolean initialised = false;
+
+    /**
+     * Stores the minimal amount of free memory and unused commit capacity for the given trap
+     * across all its visits.
+     * The maximum value is capped by {@link Short#MAX_VALUE}.
+     *
+     * @param stopCondition ID of the reached trap
+     */
+    public static void check(short stopCondition) {
+        short transientDeselect = JCSystem.getAvailableMemory(JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
+        short transientReset = JCSystem.getAvailableMemory(JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
+        short persistent = JCSystem.getAvailableMemory(JCSystem.MEMORY_TYPE_PERSISTENT);
+        short commitCapacity = JCSystem.getUnusedCommitCapacity();
+
+        if (!initialised) {
+            compactMemoryUsage[OFFSET_OVERFLOW] = 0;
+            Util.setShort(compactMemoryUsage, OFFSET_USED, HEADER_LENGTH);
+            Util.setShort(compactMemoryUsage, OFFSET_BASE, transientDeselect);
+            Util.setShort(compactMemoryUsage, (short) (OFFSET_BASE + Short.BYTES), transientReset);
+            Util.setShort(compactMemoryUsage, (short) (OFFSET_BASE + 2 * Short.BYTES), persistent);
+            Util.setShort(compactMemoryUsage, (short) (OFFSET_BASE + 3 * Short.BYTES), commitCapacity);
+            initialised = true;
+        }
+
+        short entry = findEntry(stopCondition);
+        if (entry < 0) {
+            entry = appendEntry(stopCondition);
+            if (entry < 0)
+                return;
+        }
+
+        storeMaximumDelta(entry, (short) 0, transientDeselect);
+        storeMaximumDelta(entry, (short) 1, transientReset);
+        storeMaximumDelta(entry, (short) 2, persistent);
+        storeMaximumDelta(entry, (short) 3, commitCapacity);
+    }
+
+    /**
+     * Finds the entry of the given trap.
+     *
+     * @param  stopCondition ID of the reached trap
+     * @return               offset of the entry or -1 if the trap has not been reached yet
+     */
+    private static short findEntry(short stopCondition) {
+        short used = Util.getShort(compactMemoryUsage, OFFSET_USED);
+        for (short offset = HEADER_LENGTH; offset < used; offset += ENTRY_LENGTH)
+            if (Util.getShort(compactMemoryUsage, offset) == stopCondition)
+                return offset;
+        return -1;
+    }
+
+    /**
+     * Appends a new entry for the given trap with the smallest possible differences.
+     * The overflow flag is set if the entry does not fit into the array.
+     *
+     * @param  stopCondition ID of the reached trap
+     * @return               offset of the entry or -1 if the array is full
+     */
+    private static short appendEntry(short stopCondition) {
+        short entry = Util.getShort(compactMemoryUsage, OFFSET_USED);
+        if (ENTRY_LENGTH > (short) (ARRAY_LENGTH - entry)) {
+            compactMemoryUsage[OFFSET_OVERFLOW] = 1;
+            return -1;
+        }
+
+        Util.setShort(compactMemoryUsage, entry, stopCondition);
+        for (short i = 0; i < 4; i++)
+            Util.setShort(compactMemoryUsage, (short) (entry + Short.BYTES + i * Short.BYTES), Short.MIN_VALUE);
+
+        Util.setShort(compactMemoryUsage, OFFSET_USED, (short) (entry + ENTRY_LENGTH));
+        return entry;
+    }
+
+    /**
+     * Stores the difference between the value of the given type in the header and the given value
+     * if it is greater than the stored one.
+     *
+     * @param entry offset of the entry
+     * @param type  index of the memory type or 3 for the unused commit capacity
+     * @param value free memory of the given type or the unused commit capacity
+     */
+    private static void storeMaximumDelta(short entry, short type, short value) {
+        short offset = (short) (entry + Short.BYTES + type * Short.BYTES);
+        short delta = (short) (Util.getShort(compactMemoryUsage, (short) (OFFSET_BASE + type * Short.BYTES)) - value);
+        if (delta > Util.getShort(compactMemoryUsage, offset))
+            Util.setShort(compactMemoryUsage, offset, delta);
+    }
+
+    /**
+     * Sends the P2th part of the used part of the array back to the profiler.  The length
+     * of the part is given by the expected length of the response.  If no trap has been
+     * reached yet, only the overflow flag and the number of used bytes equal to zero are sent.
+     *
+     * @param  apdu         input APDU
+     * @throws ISOException if the P1 byte, the P2 byte or the expected length has a wrong value
+     */
+    public static void send(APDU apdu) {
+        byte[] apduBuffer = apdu.getBuffer();
+        if (apduBuffer[ISO7816.OFFSET_P1] != MEMORY_TYPE_ALL)
+            ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
+
+        short part = (short) (apduBuffer[ISO7816.OFFSET_P2] & 0x00FF);
+        short partLength = apdu.setOutgoing();
+        short usedLength = initialised ? Util.getShort(compactMemoryUsage, OFFSET_USED) : OFFSET_BASE;
+
+        if (partLength <= 0)
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+        if (part > (short) (usedLength / partLength))
+            ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
+
+        short beginOffset = (short) (part * partLength);
+        short remainingLength = (short) (usedLength - beginOffset);
+        short length = remainingLength > partLength ? partLength : remainingLength;
+
+        apdu.setOutgoingLength(length);
+        apdu.sendBytesLong(compactMemoryUsage, beginOffset, length);
+    }
+}
@@ -18,16 +18,56 @@ import javacard.framework.Util;
  */
 public class PM {
     private static final short ARRAY_LENGTH = 0;
-    private static final short MAX_APDU_LENGTH = 256;
+    private static final short MAX_ARRAYS_LENGTH = (short) 0x7FFF;
+    private static final short SITE_COUNT = 0;
+    // equal to ARRAY_LENGTH if the unused commit capacity is tracked, otherwise 0
+    private static final short COMMIT_CAPACITY_LENGTH = 0;
+
+    // selects all memory types at once, must not collide with JCSystem.MEMORY_TYPE_* constants
+    private static final byte MEMORY_TYPE_ALL = (byte) 0x7F;
+    // selects the history of executions, must not collide with JCSystem.MEMORY_TYPE_* constants
+    private static final byte MEMORY_HISTORY = (byte) 0x7E;
+    // selects the unused commit capacity, must not collide with JCSystem.MEMORY_TYPE_* constants
+    private static final byte MEMORY_COMMIT_CAPACITY = (byte) 0x7D;
+    // selects the allocation sites, must not collide with JCSystem.MEMORY_TYPE_* constants
+    private static final byte MEMORY_ALLOCATION_SITES = (byte) 0x7C;
+
+    // ID of the trap at the beginning of the profiled executable
+    private static final short FIRST_TRAP = /* PERF_START */ 2;
+    // number of executions stored in the history before it has to be read, 0 without leak detection
+    private static final short HISTORY_ROWS = 0;
+    // free memory of all three types at the first and at the last reached trap
+    private static final short HISTORY_ROW_LENGTH = (short) (6 * Integer.BYTES);
+
+    // number of nested allocations whose free memory before the allocation is stored
+    private static final short MAX_SITE_DEPTH = 8;
+    // number of allocations followed by the allocated bytes of all three types
+    private static final short SITE_LENGTH = (short) (Short.BYTES + 3 * Integer.BYTES);
+    // free memory before the pending allocations is stored only if there are any allocation sites
+    private static final short SITE_BASELINES_LENGTH =
+            SITE_COUNT == 0 ? 0 : (short) (MAX_SITE_DEPTH * 3 * Integer.BYTES);
 
     // Arrays storing the amount of free memory for each trap as integers
     private static final byte[] memoryUsageTransientDeselect = new byte[ARRAY_LENGTH];
     private static final byte[] memoryUsageTransientReset = new byte[ARRAY_LENGTH];
     private static final byte[] memoryUsagePersistent = new byte[ARRAY_LENGTH];
+    // Array storing the unused commit capacity of the transaction buffer for each trap as integers
+    private static final byte[] memoryUsageCommitCapacity = new byte[COMMIT_CAPACITY_LENGTH];
 
     // buffer
     private static final short[] buffer = new short[Integer.BYTES];
 
+    // Array storing the number of allocations and allocated bytes for each allocation site as integers
+    private static final byte[] allocationSites = new byte[(short) (SITE_COUNT * SITE_LENGTH)];
+    // Free memory of all three types before the pending allocations as integers
+    private static final byte[] siteBaselines = new byte[SITE_BASELINES_LENGTH];
+    private static short siteDepth = 0;
+
+    // History of free memory in executions as integers
+    private static final byte[] history = new byte[(short) (HISTORY_ROWS * HISTORY_ROW_LENGTH)];
+    private static short historyRows = 0;
+    private static boolean historyOverflow = false;
+
     private static boolean initialised = false;
 
     /**
@@ -38,13 +78,14 @@ public class PM {
         Util.arrayFillNonAtomic(memoryUsageTransientDeselect, (short) 0, ARRAY_LENGTH, (byte) 0xFF);
         Util.arrayFillNonAtomic(memoryUsageTransientReset, (short) 0, ARRAY_LENGTH, (byte) 0xFF);
         Util.arrayFillNonAtomic(memoryUsagePersistent, (short) 0, ARRAY_LENGTH, (byte) 0xFF);
+        Util.arrayFillNonAtomic(memoryUsageCommitCapacity, (short) 0, COMMIT_CAPACITY_LENGTH, (byte) 0xFF);
 
         initialised = true;
     }
 
     /**
-     * Stores the amount of free memory for the given trap.
-     * The maximum value is capped by {@link Integer#MAX_VALUE}.
+     * Stores the minimal amount of free memory and, if tracked, unused commit capacity for the given trap
+     * across all its visits.  The maximum value of free memory is capped by {@link Integer#MAX_VALUE}.
      *
      * @param stopCondition ID of the reached trap
      */
@@ -53,46 +94,263 @@ public class PM {
             initialise();
 
         short trapID = (short) ((stopCondition - /* PERF_START */ 2) * Integer.BYTES);
+        boolean firstTrap = startExecution(stopCondition);
 
         JCSystem.getAvailableMemory(buffer, (short) 0, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
-        Util.setShort(memoryUsageTransientDeselect, trapID, buffer[0]);
-        Util.setShort(memoryUsageTransientDeselect, (short) (trapID + Short.BYTES), buffer[1]);
+        storeMinimum(memoryUsageTransientDeselect, trapID);
+        storeHistory((short) 0, firstTrap);
 
         JCSystem.getAvailableMemory(buffer, (short) 0, JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
-        Util.setShort(memoryUsageTransientReset, trapID, buffer[0]);
-        Util.setShort(memoryUsageTransientReset, (short) (trapID + Short.BYTES), buffer[1]);
+        storeMinimum(memoryUsageTransientReset, trapID);
+        storeHistory((short) 1, firstTrap);
 
         JCSystem.getAvailableMemory(buffer, (short) 0, JCSystem.MEMORY_TYPE_PERSISTENT);
-        Util.setShort(memoryUsagePersistent, trapID, buffer[0]);
-        Util.setShort(memoryUsagePersistent, (short) (trapID + Short.BYTES), buffer[1]);
+        storeMinimum(memoryUsagePersistent, trapID);
+        storeHistory((short) 2, firstTrap);
+
+        if (COMMIT_CAPACITY_LENGTH == 0)
+            return;
+
+        buffer[0] = 0;
+        buffer[1] = JCSystem.getUnusedCommitCapacity();
+        storeMinimum(memoryUsageCommitCapacity, trapID);
+    }
+
+    /**
+     * Starts a new row of the history if the given trap is the first trap
+     * of the profiled executable.  Executions that do not fit into the history
+     * are not recorded and the overflow is reported once the history is read.
+     *
+     * @param  stopCondition ID of the reached trap
+     * @return               true if a new execution has started, otherwise false
+     */
+    private static boolean startExecution(short stopCondition) {
+        if (stopCondition != FIRST_TRAP)
+            return false;
+
+        // allocations interrupted by an exception in the previous execution were never finished
+        siteDepth = 0;
+        if (HISTORY_ROWS == 0)
+            return true;
+
+        if (historyRows == HISTORY_ROWS)
+            historyOverflow = true;
+        else
+            historyRows++;
+        return true;
     }
 
     /**
-     * Copy and send the P2th part of the selected byte
-     * array back to the profiler.
+     * Stores the integer in the {@link #buffer} to the current row of the history
+     * as the free memory at the last reached trap and, if the execution has just
+     * started, also at the first trap.
+     *
+     * @param column    index of the memory type in the row
+     * @param firstTrap true if the execution has just started
+     */
+    private static void storeHistory(short column, boolean firstTrap) {
+        if (historyRows == 0 || historyOverflow)
+            return;
+
+        short offset = (short) ((short) (historyRows - 1) * HISTORY_ROW_LENGTH + column * Integer.BYTES);
+        short lastOffset = (short) (offset + 3 * Integer.BYTES);
+        Util.setShort(history, lastOffset, buffer[0]);
+        Util.setShort(history, (short) (lastOffset + Short.BYTES), buffer[1]);
+
+        if (!firstTrap)
+            return;
+
+        Util.setShort(history, offset, buffer[0]);
+        Util.setShort(history, (short) (offset + Short.BYTES), buffer[1]);
+    }
+
+    /**
+     * Stores the integer in the {@link #buffer} to the given array if it is smaller
+     * than the stored value or if the trap was not reached yet.
+     *
+     * @param arr    byte array
+     * @param offset offset of the stored integer
+     */
+    private static void storeMinimum(byte[] arr, short offset) {
+        short storedHigh = Util.getShort(arr, offset);
+        short storedLow = Util.getShort(arr, (short) (offset + Short.BYTES));
+
+        // -1 corresponds to an unreachable trap, the lower halves are compared as unsigned
+        if (storedHigh >= 0 && (buffer[0] > storedHigh || (buffer[0] == storedHigh &&
+                (short) (buffer[1] ^ (short) 0x8000) >= (short) (storedLow ^ (short) 0x8000))))
+            return;
+
+        Util.setShort(arr, offset, buffer[0]);
+        Util.setShort(arr, (short) (offset + Short.BYTES), buffer[1]);
+    }
+
+    /**
+     * Stores free memory of all three types before an allocation.  Nested allocations
+     * deeper than {@link #MAX_SITE_DEPTH} are not measured.
+     *
+     * @return always true, the result is only used to evaluate the call before the allocation
+     */
+    public static boolean mark() {
+        if (siteDepth < MAX_SITE_DEPTH) {
+            short offset = (short) (siteDepth * 3 * Integer.BYTES);
+            storeBaseline(offset, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
+            storeBaseline((short) (offset + Integer.BYTES), JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
+            storeBaseline((short) (offset + 2 * Integer.BYTES), JCSystem.MEMORY_TYPE_PERSISTENT);
+        }
+
+        siteDepth++;
+        return true;
+    }
+
+    /**
+     * Adds the difference between free memory before and after the allocation
+     * to the given allocation site and counts the allocation.  The allocated bytes
+     * include the nested allocations, e.g. in constructors.
+     *
+     * @param  site   ID of the allocation site
+     * @param  marked result of the {@link #mark()} call
+     * @param  object allocated object
+     * @return        the allocated object
+     */
+    public static Object allocated(short site, boolean marked, Object object) {
+        siteDepth--;
+        if (siteDepth >= MAX_SITE_DEPTH)
+            return object;
+
+        short offset = (short) (site * SITE_LENGTH);
+        short count = Util.getShort(allocationSites, offset);
+        if (count != Short.MAX_VALUE)
+            Util.setShort(allocationSites, offset, (short) (count + 1));
+
+        short baseline = (short) (siteDepth * 3 * Integer.BYTES);
+        offset += Short.BYTES;
+        storeAllocated(offset, baseline, JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT);
+
+        offset += Integer.BYTES;
+        baseline += Integer.BYTES;
+        storeAllocated(offset, baseline, JCSystem.MEMORY_TYPE_TRANSIENT_RESET);
+
+        offset += Integer.BYTES;
+        baseline += Integer.BYTES;
+        storeAllocated(offset, baseline, JCSystem.MEMORY_TYPE_PERSISTENT);
+        return object;
+    }
+
+    /**
+     * Stores free memory of the given type to the {@link #siteBaselines} array as an integer.
+     *
+     * @param offset  offset of the stored integer
+     * @param memType {@link JCSystem} constant representing the memory type
+     */
+    private static void storeBaseline(short offset, byte memType) {
+        JCSystem.getAvailableMemory(buffer, (short) 0, memType);
+        Util.setShort(siteBaselines, offset, buffer[0]);
+        Util.setShort(siteBaselines, (short) (offset + Short.BYTES), buffer[1]);
+    }
+
+    /**
+     * Adds the difference between the stored and the current free memory of the given type
+     * to the integer in the {@link #allocationSites} array.
+     *
+     * @param offset   offset of the allocated bytes in the {@link #allocationSites} array
+     * @param baseline offset of the stored free memory in the {@link #siteBaselines} array
+     * @param memType  {@link JCSystem} constant representing the memory type
+     */
+    private static void storeAllocated(short offset, short baseline, byte memType) {
+        JCSystem.getAvailableMemory(buffer, (short) 0, memType);
+        short storedHigh = Util.getShort(allocationSites, offset);
+        short storedLow = Util.getShort(allocationSites, (short) (offset + Short.BYTES));
+        short baseHigh = Util.getShort(siteBaselines, baseline);
+        short baseLow = Util.getShort(siteBaselines, (short) (baseline + Short.BYTES));
+
+        // stored + baseline - free memory, the lower halves are added and subtracted as unsigned
+        short low = (short) (storedLow + baseLow);
+        short high = (short) (storedHigh + baseHigh);
+        if ((short) (low ^ (short) 0x8000) < (short) (storedLow ^ (short) 0x8000))
+            high++;
+        if ((short) (low ^ (short) 0x8000) < (short) (buffer[1] ^ (short) 0x8000))
+            high--;
+
+        Util.setShort(allocationSites, offset, (short) (high - buffer[0]));
+        Util.setShort(allocationSites, (short) (offset + Short.BYTES), (short) (low - buffer[1]));
+    }
+
+    /**
+     * Sends the P2th part of the selected byte array back to the profiler.
+     * The length of the part is given by the expected length of the response,
+     * so the whole array can be sent at once with an extended length APDU.
      *
      * @param  arr          byte array
      * @param  apdu         input APDU
-     * @throws ISOException if the P2 byte has a wrong value
+     * @throws ISOException if the P2 byte or the expected length has a wrong value
      */
     private static void sendArray(byte[] arr, APDU apdu) {
         short part = (short) (apdu.getBuffer()[ISO7816.OFFSET_P2] & 0x00FF);
-        short beginOffset = (short) (part * MAX_APDU_LENGTH);
+        short partLength = apdu.setOutgoing();
 
-        if (beginOffset > ARRAY_LENGTH)
+        if (partLength <= 0)
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+        if (part > (short) (arr.length / partLength))
             ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
 
-        short remainingLength = (short) (ARRAY_LENGTH - beginOffset);
-        short length = remainingLength > MAX_APDU_LENGTH ? MAX_APDU_LENGTH : remainingLength;
+        short beginOffset = (short) (part * partLength);
+        short remainingLength = (short) (arr.length - beginOffset);
+        short length = remainingLength > partLength ? partLength : remainingLength;
+
+        apdu.setOutgoingLength(length);
+        apdu.sendBytesLong(arr, beginOffset, length);
+    }
+
+    /**
+     * Sends all three or four byte arrays back to the profiler in a single response.
+     * The commit capacity array is sent only if it is tracked.
+     *
+     * @param  apdu         input APDU
+     * @throws ISOException if the expected length of the response is too small
+     */
+    private static void sendAllArrays(APDU apdu) {
+        if (ARRAY_LENGTH > (short) (MAX_ARRAYS_LENGTH / 4))
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+
+        short length = (short) (3 * ARRAY_LENGTH + COMMIT_CAPACITY_LENGTH);
+        if (apdu.setOutgoing() < length)
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
 
-        Util.arrayCopyNonAtomic(arr, beginOffset, apdu.getBuffer(), (short) 0, length);
-        apdu.setOutgoingAndSend((short) 0, length);
+        apdu.setOutgoingLength(length);
+        apdu.sendBytesLong(memoryUsageTransientDeselect, (short) 0, ARRAY_LENGTH);
+        apdu.sendBytesLong(memoryUsageTransientReset, (short) 0, ARRAY_LENGTH);
+        apdu.sendBytesLong(memoryUsagePersistent, (short) 0, ARRAY_LENGTH);
+        apdu.sendBytesLong(memoryUsageCommitCapacity, (short) 0, COMMIT_CAPACITY_LENGTH);
+    }
+
+    /**
+     * Sends the overflow flag, the number of recorded executions and the history
+     * of free memory back to the profiler.  The history is cleared afterwards.
+     *
+     * @param apdu input APDU
+     */
+    private static void sendHistory(APDU apdu) {
+        byte[] apduBuffer = apdu.getBuffer();
+        short length = (short) (historyRows * HISTORY_ROW_LENGTH);
+
+        apdu.setOutgoing();
+        apdu.setOutgoingLength((short) (length + 2));
+
+        apduBuffer[0] = historyOverflow ? (byte) 1 : (byte) 0;
+        apduBuffer[1] = (byte) historyRows;
+        apdu.sendBytes((short) 0, (short) 2);
+        apdu.sendBytesLong(history, (short) 0, length);
+
+        historyRows = 0;
+        historyOverflow = false;
     }
 
     /**
      * Sends a part of the memory usage info back to the profiler.
-     * The P1 byte selects the memory type. See {@link #sendArray}
-     * for details about the P2 byte.
+     * The P1 byte selects the memory type, the commit capacity, all of them, the history
+     * or the allocation sites.
+     * See {@link #sendArray}, {@link #sendAllArrays} and {@link #sendHistory}
+     * for details.
      *
      * @param  apdu         input APDU
      * @throws ISOException if the P1 byte has a wrong value
@@ -108,6 +366,18 @@ public class PM {
             case JCSystem.MEMORY_TYPE_PERSISTENT:
                 sendArray(memoryUsagePersistent, apdu);
                 break;
+            case MEMORY_COMMIT_CAPACITY:
+                sendArray(memoryUsageCommitCapacity, apdu);
+                break;
+            case MEMORY_TYPE_ALL:
+                sendAllArrays(apdu);
+                break;
+            case MEMORY_HISTORY:
+                sendHistory(apdu);
+                break;
+            case MEMORY_ALLOCATION_SITES:
+                sendArray(allocationSites, apdu);
+                break;
             default:
                 ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
         }
@@ -0,0 +1,146 @@
+// SPDX-FileCopyrightText: 2017-2021 Petr Švenda <petrsgit@gmail.com>
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: MIT
+
+package jcprofiler;
+
+import javacard.framework.APDU;
+import javacard.framework.ISO7816;
+import javacard.framework.ISOException;
+import javacard.framework.JCSystem;
+import javacard.framework.Util;
+
+/**
+ * PM class for time measurement with an on-card trap cursor
+ */
+public class PM {
+    // length of the bitmap of reached traps, 0 without reachability checks
+    private static final short ARRAY_LENGTH = 0;
+
+    private static final byte P1_SET_TRAP = (byte) 0x00;
+    private static final byte P1_START_RECORDING = (byte) 0x01;
+    private static final byte P1_SEND_REACHED = (byte) 0x02;
+
+    // Performance measurement stop indicator
+    private static short nextPerfStop = PMC.PERF_START;
+
+    // Bitmap of traps reached while recording, allocated in transient memory on the first use
+    // so that recording does not write to persistent memory
+    private static byte[] reachedTraps;
+    private static boolean[] recording;
+
+    // Bounds of the trap schedule
+    private static short firstPerfStop = PMC.PERF_START;
+    private static short lastPerfStop = PMC.PERF_START;
+
+    /**
+     * If the argument equals to {@link #nextPerfStop}, the cursor is advanced
+     * to the next trap in the schedule and an exception with its ID as the
+     * cause will be thrown.
+     * <br><br>
+     * The cursor wraps around to {@link #firstPerfStop} once the {@link #lastPerfStop}
+     * trap is reached.  While recording, the trap is only marked as reached
+     * in {@link #reachedTraps} instead.
+     *
+     * @param  stopCondition ID of the currently visited trap
+     * @throws ISOException  if the fatal trap was reached
+     */
+    public static void check(short stopCondition) {
+        // compiled out unless the sources were instrumented with reachability checks
+        if (ARRAY_LENGTH != 0) {
+            if (recording != null && recording[0]) {
+                markReached(stopCondition);
+                return;
+            }
+        }
+
+        if (nextPerfStop != stopCondition)
+            return;
+
+        nextPerfStop = stopCondition == lastPerfStop ? firstPerfStop : (short) (stopCondition + 1);
+        ISOException.throwIt(stopCondition);
+    }
+
+    /**
+     * Set the ID of next fatal trap.  If the APDU contains two more shorts,
+     * they are used as the new bounds of the trap schedule.
+     *
+     * @param apdu input APDU
+     */
+    private static void setTrap(APDU apdu) {
+        byte[] buffer = apdu.getBuffer();
+        nextPerfStop = Util.getShort(buffer, ISO7816.OFFSET_CDATA);
+
+        if ((short) (buffer[ISO7816.OFFSET_LC] & 0x00FF) < (short) 6)
+            return;
+
+        firstPerfStop = Util.getShort(buffer, (short) (ISO7816.OFFSET_CDATA + 2));
+        lastPerfStop = Util.getShort(buffer, (short) (ISO7816.OFFSET_CDATA + 4));
+    }
+
+    /**
+     * Allocates {@link #reachedTraps} and the recording flag unless it was already done.
+     * Both are cleared when the applet is deselected.
+     */
+    private static void initialise() {
+        if (reachedTraps != null)
+            return;
+
+        reachedTraps = JCSystem.makeTransientByteArray(ARRAY_LENGTH, JCSystem.CLEAR_ON_DESELECT);
+        recording = JCSystem.makeTransientBooleanArray((short) 1, JCSystem.CLEAR_ON_DESELECT);
+    }
+
+    /**
+     * Marks the given trap as reached unless it is already marked.
+     *
+     * @param stopCondition ID of the currently visited trap
+     */
+    private static void markReached(short stopCondition) {
+        short trapIdx = (short) (stopCondition - /* PERF_START */ 2);
+        short byteIdx = (short) (trapIdx >> 3);
+        byte mask = (byte) (1 << (trapIdx & 0x07));
+        if ((byte) (reachedTraps[byteIdx] & mask) == 0)
+            reachedTraps[byteIdx] = (byte) (reachedTraps[byteIdx] | mask);
+    }
+
+    /**
+     * Send the bitmap of reached traps back to the profiler and stop recording.
+     *
+     * @param apdu input APDU
+     */
+    private static void sendReached(APDU apdu) {
+        initialise();
+        recording[0] = false;
+        Util.arrayCopyNonAtomic(reachedTraps, (short) 0, apdu.getBuffer(), (short) 0, ARRAY_LENGTH);
+        apdu.setOutgoingAndSend((short) 0, ARRAY_LENGTH);
+    }
+
+    /**
+     * Handles the profiler instruction.  The P1 byte selects the operation:
+     * <ol>
+     *   <li>{@link #P1_SET_TRAP} sets the next fatal trap,</li>
+     *   <li>{@link #P1_START_RECORDING} clears {@link #reachedTraps} and starts recording of reached traps,</li>
+     *   <li>{@link #P1_SEND_REACHED} sends {@link #reachedTraps} back and stops recording.</li>
+     * </ol>
+     *
+     * @param  apdu         input APDU
+     * @throws ISOException if the P1 byte has a wrong value
+     */
+    public static void set(APDU apdu) {
+        switch (apdu.getBuffer()[ISO7816.OFFSET_P1]) {
+            case P1_SET_TRAP:
+                setTrap(apdu);
+                break;
+            case P1_START_RECORDING:
+                initialise();
+                Util.arrayFillNonAtomic(reachedTraps, (short) 0, ARRAY_LENGTH, (byte) 0);
+                recording[0] = true;
+                break;
+            case P1_SEND_REACHED:
+                sendReached(apdu);
+                break;
+            default:
+                ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: MIT
+
+package jcprofiler;
+
+// Explicit imports to ensure that they are not shadowed by other classes from the applet package.
+import java.lang.Object;
+import java.lang.Short;
+
+import javacard.framework.APDU;
+import javacard.framework.ISO7816;
+import javacard.framework.ISOException;
+import javacard.framework.JCSystem;
+import javacard.framework.Util;
+
+/**
+ * PM class for counting of writes to persistent memory
+ * <br><br>
+ * Every write is attributed to the last reached trap.  For each trap, the array stores the number
+ * of writes followed by the number of written bytes, both as shorts capped by {@link Short#MAX_VALUE}.
+ * The counters are kept in transient memory so that counting does not write to persistent memory itself.
+ * As transient memory is cleared on card reset, the counters are reinitialised on the first use after it.
+ */
+public class PM {
+    private static final short ARRAY_LENGTH = 0;
+
+    // Array storing the number of writes and written bytes for each trap, allocated on the first check
+    private static byte[] writeCounters;
+
+    // offset of the counters of the last reached trap, -1 before the first trap is reached
+    private static short[] currentTrap;
+
+    // true if the counters were initialised since the last card reset
+    private static boolean[] initialised;
+
+    /**
+     * Allocates the counters if needed and initialises them with -1 short values
+     * which correspond to unreachable traps unless it was already done since the last card reset.
+     */
+    private static void initialise() {
+        if (writeCounters == null) {
+            writeCounters = JCSystem.makeTransientByteArray(ARRAY_LENGTH, JCSystem.CLEAR_ON_RESET);
+            currentTrap = JCSystem.makeTransientShortArray((short) 1, JCSystem.CLEAR_ON_RESET);
+            initialised = JCSystem.makeTransientBooleanArray((short) 1, JCSystem.CLEAR_ON_RESET);
+        }
+
+        if (initialised[0])
+            return;
+
+        Util.arrayFillNonAtomic(writeCounters, (short) 0, ARRAY_LENGTH, (byte) 0xFF);
+        currentTrap[0] = -1;
+        initialised[0] = true;
+    }
+
+    /**
+     * Makes the given trap the one the following writes are attributed to.
+     *
+     * @param stopCondition ID of the reached trap
+     */
+    public static void check(short stopCondition) {
+        initialise();
+
+        short trapID = (short) ((stopCondition - /* PERF_START */ 2) * 2 * Short.BYTES);
+        currentTrap[0] = trapID;
+
+        // mark the trap as reached
+        if (Util.getShort(writeCounters, trapID) < 0)
+            Util.arrayFillNonAtomic(writeCounters, trapID, (short) (2 * Short.BYTES), (byte) 0);
+    }
+
+    /**
+     * Counts a write of the given number of bytes to persistent memory, e.g. to a field.
+     *
+     * @param bytes number of written bytes
+     */
+    public static void write(short bytes) {
+        if (initialised == null || !initialised[0] || currentTrap[0] < 0)
+            return;
+
+        short offset = currentTrap[0];
+        addCapped(offset, (short) 1);
+        addCapped((short) (offset + Short.BYTES), bytes);
+    }
+
+    /**
+     * Counts a write of the given number of bytes to the given array if it is persistent.
+     *
+     * @param array written array
+     * @param bytes number of written bytes
+     */
+    public static void write(Object array, short bytes) {
+        if (array == null || JCSystem.isTransient(array) != JCSystem.NOT_A_TRANSIENT_OBJECT)
+            return;
+        write(bytes);
+    }
+
+    /**
+     * Adds the given value to the counter at the given offset.
+     * The result is capped by {@link Short#MAX_VALUE}.
+     *
+     * @param offset offset of the counter
+     * @param value  non-negative value
+     */
+    private static void addCapped(short offset, short value) {
+        short counter = Util.getShort(writeCounters, offset);
+        counter = value > (short) (Short.MAX_VALUE - counter) ? Short.MAX_VALUE : (short) (counter + value);
+        Util.setShort(writeCounters, offset, counter);
+    }
+
+    /**
+     * Sends the P2th part of the counters back to the profiler.  The length
+     * of the part is given by the expected length of the response.
+     *
+     * @param  apdu         input APDU
+     * @throws ISOException if the P2 byte or the expected length has a wrong value
+     */
+    public static void send(APDU apdu) {
+        initialise();
+
+        short part = (short) (apdu.getBuffer()[ISO7816.OFFSET_P2] & 0x00FF);
+        short partLength = apdu.setOutgoing();
+
+        if (partLength <= 0)
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+        if (part > (short) (ARRAY_LENGTH / partLength))
+            ISOException.throwIt(ISO7816.SW_INCORRECT_P1P2);
+
+        short beginOffset = (short) (part * partLength);
+        short remainingLength = (short) (ARRAY_LENGTH - beginOffset);
+        short length = remainingLength > partLength ? partLength : remainingLength;
+
+        apdu.setOutgoingLength(length);
+        apdu.sendBytesLong(writeCounters, beginOffset, length);
+    }
+}
@@ -0,0 +1,223 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link BytecodeCountingClassLoader} class
+ */
+class BytecodeCountingClassLoaderTest {
+    private static final String SAMPLE_CLASS = "sample.CountingSample";
+
+    /**
+     * Generates the sample class with ASM, so that the expected counts do not depend on the bytecode
+     * emitted by the Java compiler.
+     *
+     * @param  tempDir temporary directory
+     * @return         URL of the directory with the generated class
+     *
+     * @throws IOException if the class could not be written
+     */
+    private static URL[] generateSample(final Path tempDir) throws IOException {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, SAMPLE_CLASS.replace('.', '/'), null, "java/lang/Object", null);
+
+        // 6: return x * 2 + 1
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "straight", "(I)I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.ICONST_2);
+        mv.visitInsn(Opcodes.IMUL);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // 4 if x == 0, 5 otherwise: if (x != 0) x += 5; return x
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "branch", "(I)I", null, null);
+        mv.visitCode();
+        final Label skip = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, skip);
+        mv.visitIincInsn(0, 5);
+        mv.visitLabel(skip);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // 7 + 5 * n: int i = 0; while (i < n) i++; return i
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "loop", "(I)I", null, null);
+        mv.visitCode();
+        final Label cond = new Label();
+        final Label end = new Label();
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitLabel(cond);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+        mv.visitIincInsn(1, 1);
+        mv.visitJumpInsn(Opcodes.GOTO, cond);
+        mv.visitLabel(end);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // 6 if x != 0, 3 otherwise: if (x != 0) throw new IllegalStateException()
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "fail", "(I)V", null, null);
+        mv.visitCode();
+        final Label ok = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, ok);
+        mv.visitTypeInsn(Opcodes.NEW, "java/lang/IllegalStateException");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitLabel(ok);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // 2 + fail(x) + 3 if x != 0, 2 + fail(x) + 2 otherwise:
+        // try { fail(x); return 0; } catch (Throwable t) { return 1; }
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "catcher", "(I)I", null, null);
+        mv.visitCode();
+        final Label tryStart = new Label();
+        final Label tryEnd = new Label();
+        final Label handler = new Label();
+        mv.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/Throwable");
+        mv.visitLabel(tryStart);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, SAMPLE_CLASS.replace('.', '/'), "fail", "(I)V", false);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(tryEnd);
+        mv.visitLabel(handler);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // 3 plus the weight of Math.abs: return Math.abs(x)
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "weighted", "(I)I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "abs", "(I)I", false);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+
+        final Path classFile = tempDir.resolve(SAMPLE_CLASS.replace('.', '/') + ".class");
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, cw.toByteArray());
+        return new URL[]{tempDir.toUri().toURL()};
+    }
+
+    private static long count(final Class<?> cls, final String method, final int arg) throws Exception {
+        final Method m = cls.getMethod(method, int.class);
+        final long start = BytecodeCounter.get();
+        m.invoke(null, arg);
+        return BytecodeCounter.get() - start;
+    }
+
+    @Test
+    void straightLineAndBranches(@TempDir final Path tempDir) throws Exception {
+        try (final BytecodeCountingClassLoader loader = new BytecodeCountingClassLoader(
+                generateSample(tempDir), Collections.emptySet(), Collections.emptyMap())) {
+            final Class<?> cls = loader.loadClass(SAMPLE_CLASS);
+            assertEquals(6, count(cls, "straight", 3));
+
+            // the skipped bytecode is flushed at the label, so it is not counted on the jump
+            assertEquals(4, count(cls, "branch", 0));
+            assertEquals(5, count(cls, "branch", 1));
+        }
+    }
+
+    @Test
+    void loop(@TempDir final Path tempDir) throws Exception {
+        try (final BytecodeCountingClassLoader loader = new BytecodeCountingClassLoader(
+                generateSample(tempDir), Collections.emptySet(), Collections.emptyMap())) {
+            final Class<?> cls = loader.loadClass(SAMPLE_CLASS);
+            assertEquals(7, count(cls, "loop", 0));
+            assertEquals(12, count(cls, "loop", 1));
+            assertEquals(7 + 5 * 1000, count(cls, "loop", 1000));
+        }
+    }
+
+    @Test
+    void exceptionPath(@TempDir final Path tempDir) throws Exception {
+        try (final BytecodeCountingClassLoader loader = new BytecodeCountingClassLoader(
+                generateSample(tempDir), Collections.emptySet(), Collections.emptyMap())) {
+            final Class<?> cls = loader.loadClass(SAMPLE_CLASS);
+            assertEquals(3, count(cls, "fail", 0));
+
+            // the bytecodes before the throw are counted even though the method does not return
+            final Method fail = cls.getMethod("fail", int.class);
+            final long start = BytecodeCounter.get();
+            final InvocationTargetException e =
+                    assertThrows(InvocationTargetException.class, () -> fail.invoke(null, 1));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertEquals(6, BytecodeCounter.get() - start);
+
+            // the invocation is counted before the callee throws and the handler afterwards
+            assertEquals(2 + 3 + 2, count(cls, "catcher", 0));
+            assertEquals(2 + 6 + 3, count(cls, "catcher", 1));
+        }
+    }
+
+    @Test
+    void costWeights(@TempDir final Path tempDir) throws Exception {
+        final URL[] urls = generateSample(tempDir);
+        try (final BytecodeCountingClassLoader loader = new BytecodeCountingClassLoader(
+                urls, Collections.emptySet(), Collections.emptyMap())) {
+            assertEquals(3, count(loader.loadClass(SAMPLE_CLASS), "weighted", -1));
+        }
+
+        final Map<String, Integer> weights = Collections.singletonMap("java.lang.Math.abs", 10);
+        try (final BytecodeCountingClassLoader loader = new BytecodeCountingClassLoader(
+                urls, Collections.emptySet(), weights)) {
+            final Class<?> cls = loader.loadClass(SAMPLE_CLASS);
+            assertEquals(3 + 10, count(cls, "weighted", -1));
+
+            // weights apply to invocations of the given method only
+            assertEquals(2 + 3 + 2, count(cls, "catcher", 0));
+        }
+    }
+
+    @Test
+    void excludedClass(@TempDir final Path tempDir) throws Exception {
+        final Set<String> excluded = Collections.singleton(SAMPLE_CLASS);
+        try (final BytecodeCountingClassLoader loader = new BytecodeCountingClassLoader(
+                generateSample(tempDir), excluded, Collections.emptyMap())) {
+            final Class<?> cls = loader.loadClass(SAMPLE_CLASS);
+            assertEquals(0, count(cls, "straight", 3));
+            assertEquals(0, count(cls, "loop", 1000));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import javacard.framework.APDU;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ProcessTimingClassLoader} class
+ */
+class ProcessTimingClassLoaderTest {
+    @Test
+    void processIsTimed(@TempDir final Path tempDir) throws Exception {
+        try (final ProcessTimingClassLoader loader = new ProcessTimingClassLoader(
+                TestClassCompiler.compile(tempDir, "ProcessTimingSample.java", "ProcessTimingSubSample.java"))) {
+            final Class<?> cls = loader.loadClass("sample.ProcessTimingSample");
+            final Method renamed = cls.getDeclaredMethod("process$jcprofiler", APDU.class);
+            assertTrue(Modifier.isPrivate(renamed.getModifiers()));
+
+            final Object sample = cls.getConstructor().newInstance();
+            final Method process = cls.getMethod("process", APDU.class);
+
+            final long start = ProcessCpuTimer.get();
+            process.invoke(sample, (Object) null);
+            final long afterReturn = ProcessCpuTimer.get();
+            assertTrue(afterReturn > start);
+
+            // the time is also taken when the execution is stopped by an exception
+            cls.getField("fail").setBoolean(null, true);
+            final InvocationTargetException e = assertThrows(InvocationTargetException.class,
+                    () -> process.invoke(sample, (Object) null));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            final long afterThrow = ProcessCpuTimer.get();
+            assertTrue(afterThrow > afterReturn);
+
+            cls.getField("fail").setBoolean(null, false);
+            process.invoke(sample, (Object) null);
+            assertTrue(ProcessCpuTimer.get() > afterThrow);
+        }
+    }
+
+    @Test
+    void nestedProcessCalls(@TempDir final Path tempDir) throws Exception {
+        try (final ProcessTimingClassLoader loader = new ProcessTimingClassLoader(
+                TestClassCompiler.compile(tempDir, "ProcessTimingSample.java", "ProcessTimingSubSample.java"))) {
+            final Class<?> cls = loader.loadClass("sample.ProcessTimingSubSample");
+            final Object sample = cls.getConstructor().newInstance();
+            final Method process = cls.getMethod("process", APDU.class);
+
+            final long start = ProcessCpuTimer.get();
+            process.invoke(sample, (Object) null);
+            final long afterFirst = ProcessCpuTimer.get();
+            assertTrue(afterFirst > start);
+
+            // the nesting depth returned to zero, so the next call is measured as well
+            process.invoke(sample, (Object) null);
+            assertTrue(ProcessCpuTimer.get() > afterFirst);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.installation;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compiles test inputs from resources outside the test classpath, so that they can be loaded
+ * by the instrumenting class loaders instead of their parent.
+ */
+final class TestClassCompiler {
+    // static class
+    private TestClassCompiler() {}
+
+    /**
+     * Compiles the given resources of this package.
+     *
+     * @param  tempDir   temporary directory
+     * @param  resources file names of the sources
+     * @return           URL of the directory with compiled classes
+     *
+     * @throws IOException if the sources could not be copied or compiled
+     */
+    static URL[] compile(final Path tempDir, final String... resources) throws IOException {
+        final Path srcDir = Files.createDirectories(tempDir.resolve("src"));
+        final Path outDir = Files.createDirectories(tempDir.resolve("out"));
+
+        final List<String> compilerArgs = new ArrayList<>();
+        compilerArgs.add("-classpath");
+        compilerArgs.add(System.getProperty("java.class.path"));
+        compilerArgs.add("-d");
+        compilerArgs.add(outDir.toString());
+        for (final String resource : resources) {
+            final Path src = srcDir.resolve(resource);
+            try (final InputStream is = Objects.requireNonNull(
+                    TestClassCompiler.class.getResourceAsStream(resource))) {
+                Files.copy(is, src, StandardCopyOption.REPLACE_EXISTING);
+            }
+            compilerArgs.add(src.toString());
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler.run(null, null, null, compilerArgs.toArray(new String[0])) != 0)
+            throw new IOException("Compilation of test inputs failed!");
+        return new URL[]{outDir.toUri().toURL()};
+    }
+}
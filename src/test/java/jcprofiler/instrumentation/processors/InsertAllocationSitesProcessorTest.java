@@ -0,0 +1,51 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.instrumentation.processors;
+
+import jcprofiler.args.Args;
+
+import org.junit.jupiter.api.Test;
+
+import spoon.Launcher;
+import spoon.reflect.declaration.CtClass;
+import spoon.support.compiler.VirtualFile;
+
+import java.util.Objects;
+
+import static spoon.testing.Assert.assertThat;
+
+/**
+ * Tests for insertion of allocation site measurements
+ */
+class InsertAllocationSitesProcessorTest {
+    @Test
+    public void process() {
+        final CtClass<?> input = parseClass("InsertAllocationSitesProcessorTestInput.java");
+        final CtClass<?> expected = parseClass("InsertAllocationSitesProcessorTestExpected.java");
+
+        final Args args = new Args();
+        args.executable = "SimpleClass#entry()";
+
+        assertThat(input).withProcessor(new InsertAllocationSitesProcessor(args)).isEqualTo(expected);
+    }
+
+    private CtClass<?> parseClass(final String fileName) {
+        final Launcher spoon = new Launcher();
+
+        // add PM and PMC stubs
+        spoon.addInputResource(new VirtualFile(
+                "public class PM {" +
+                "    private static final short SITE_COUNT = 0;" +
+                "    public static boolean mark() { return true; }" +
+                "    public static Object allocated(short site, boolean marked, Object object) { return object; }" +
+                "}", "PM.java"));
+        spoon.addInputResource(new VirtualFile("public class PMC {}", "PMC.java"));
+
+        // add the input
+        spoon.addInputResource(Objects.requireNonNull(getClass().getResource(fileName)).getPath());
+        spoon.buildModel();
+
+        return spoon.getModel().getElements((CtClass<?> cls) -> cls.getSimpleName().equals("SimpleClass")).get(0);
+    }
+}
@@ -0,0 +1,47 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.instrumentation.processors;
+
+import jcprofiler.args.Args;
+
+import org.junit.jupiter.api.Test;
+
+import spoon.Launcher;
+import spoon.reflect.declaration.CtClass;
+import spoon.support.compiler.VirtualFile;
+
+import java.util.Objects;
+
+import static spoon.testing.Assert.assertThat;
+
+/**
+ * Tests for insertion of persistent memory write counters
+ */
+class InsertWriteCountersProcessorTest {
+    @Test
+    public void process() {
+        final CtClass<?> input = parseClass("InsertWriteCountersProcessorTestInput.java");
+        final CtClass<?> expected = parseClass("InsertWriteCountersProcessorTestExpected.java");
+
+        assertThat(input).withProcessor(new InsertWriteCountersProcessor(new Args())).isEqualTo(expected);
+    }
+
+    private CtClass<?> parseClass(final String fileName) {
+        final Launcher spoon = new Launcher();
+
+        // add PM and PMC stubs
+        spoon.addInputResource(new VirtualFile(
+                "public class PM {" +
+                "    public static void write(short bytes) {}" +
+                "    public static void write(Object array, short bytes) {}" +
+                "}", "PM.java"));
+        spoon.addInputResource(new VirtualFile("public class PMC {}", "PMC.java"));
+
+        // add the input
+        spoon.addInputResource(Objects.requireNonNull(getClass().getResource(fileName)).getPath());
+        spoon.buildModel();
+
+        return spoon.getModel().getElements((CtClass<?> cls) -> cls.getSimpleName().equals("SimpleClass")).get(0);
+    }
+}
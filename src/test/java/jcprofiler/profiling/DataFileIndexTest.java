@@ -0,0 +1,123 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link DataFileIndex} class
+ */
+class DataFileIndexTest {
+    private static final List<String> LINES =
+            Arrays.asList("00", "0123456789ABCDEF", "FFFF", "DEADBEEFCAFEBABE0011", "AB");
+
+    private static Path write(final Path file, final String contents) throws IOException {
+        return Files.write(file, contents.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void assertLines(final List<String> expected, final DataFileIndex index) {
+        assertEquals(expected.size(), index.getLineCount());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i), index.getLine(i), "line " + i);
+    }
+
+    @Test
+    void readLines(@TempDir final Path tempDir) throws IOException {
+        final Path file = write(tempDir.resolve("data.txt"), String.join("\n", LINES) + "\n");
+        assertLines(LINES, new DataFileIndex(file));
+        assertTrue(Files.isRegularFile(tempDir.resolve("data.txt" + DataFileIndex.INDEX_SUFFIX)));
+
+        // the cached index is used and CRLF line terminators are stripped
+        final Path crlf = write(tempDir.resolve("crlf.txt"), String.join("\r\n", LINES));
+        assertLines(LINES, new DataFileIndex(crlf));
+        assertLines(LINES, new DataFileIndex(crlf));
+
+        final DataFileIndex index = new DataFileIndex(file);
+        assertThrows(IndexOutOfBoundsException.class, () -> index.getLine(LINES.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.getLine(-1));
+    }
+
+    @Test
+    void readLinesAcrossSegments(@TempDir final Path tempDir) throws IOException {
+        final Path file = write(tempDir.resolve("data.txt"), String.join("\r\n", LINES) + "\r\n");
+
+        // lines and line terminators span the boundaries of segments of 2, 4 and 8 bytes
+        for (int segmentBits = 1; segmentBits <= 3; segmentBits++) {
+            Files.deleteIfExists(tempDir.resolve("data.txt" + DataFileIndex.INDEX_SUFFIX));
+            assertLines(LINES, new DataFileIndex(file, segmentBits));
+            assertLines(LINES, new DataFileIndex(file, segmentBits));
+        }
+    }
+
+    @Test
+    void readLineAcrossGiBBoundary(@TempDir final Path tempDir) throws IOException {
+        final long boundary = 1L << 30;
+        final String line = "0123456789ABCDEF";
+        final Path file = tempDir.resolve("large.txt");
+
+        // sparse file whose only valid lines are around the boundary of the first 1 GiB segment
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(boundary + 64);
+            raf.seek(boundary - line.length() / 2 - 1);
+            raf.write(("\n" + line + "\n" + line + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        final DataFileIndex index = new DataFileIndex(file);
+        assertEquals(4, index.getLineCount());
+        assertEquals(line, index.getLine(1));
+        assertEquals(line, index.getLine(2));
+        assertThrows(RuntimeException.class, () -> index.getLine(3));
+    }
+
+    @Test
+    void staleIndex(@TempDir final Path tempDir) throws IOException {
+        final Path file = write(tempDir.resolve("data.txt"), String.join("\n", LINES));
+        final Path indexFile = tempDir.resolve("data.txt" + DataFileIndex.INDEX_SUFFIX);
+        assertLines(LINES, new DataFileIndex(file));
+
+        // different size
+        final List<String> appended = Arrays.asList("00", "0123456789ABCDEF", "FFFF", "DEADBEEF", "AB", "BB");
+        write(file, String.join("\n", appended));
+        assertLines(appended, new DataFileIndex(file));
+
+        // same size, different modification time
+        final List<String> moved = Arrays.asList("0012", "3456789ABCDEF0", "FFFF", "DEADBEEF", "AB", "BB");
+        write(file, String.join("\n", moved));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        assertLines(moved, new DataFileIndex(file));
+
+        // corrupted index
+        final byte[] corrupted = Files.readAllBytes(indexFile);
+        corrupted[0] ^= 0xFF;
+        Files.write(indexFile, corrupted);
+        assertLines(moved, new DataFileIndex(file));
+
+        // truncated index
+        Files.write(indexFile, new byte[3]);
+        assertLines(moved, new DataFileIndex(file));
+    }
+
+    @Test
+    void invalidInputs(@TempDir final Path tempDir) throws IOException {
+        assertThrows(RuntimeException.class, () -> new DataFileIndex(write(tempDir.resolve("empty.txt"), "")));
+
+        // lines are validated when they are read
+        final DataFileIndex index = new DataFileIndex(write(tempDir.resolve("invalid.txt"), "00\nXYZ\n11"));
+        assertEquals("00", index.getLine(0));
+        assertThrows(RuntimeException.class, () -> index.getLine(1));
+        assertEquals("11", index.getLine(2));
+    }
+}
@@ -0,0 +1,106 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import jcprofiler.args.Args;
+import jcprofiler.util.enums.InputDivision;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link InputGenerator} class
+ */
+class InputGeneratorTest {
+    // enough candidates for more than one chunk in every division
+    private static final int UNDIVIDED_SIZE = 150_000;
+    private static final int DIVIDED_SIZE = 1_501;
+
+    private static InputGenerator createGenerator(final InputDivision division) {
+        final Args args = new Args();
+        args.dataRegex = "[0-9A-F]{4}";
+        args.inputDivision = division;
+        return new InputGenerator(args);
+    }
+
+    private static List<String> generate(final InputGenerator generator, final int size, final long seed,
+                                         final int parallelism) throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // parallel streams run in the pool of the calling task
+            return pool.submit(() -> generator.generate(size, new Random(seed))).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void sameSeedSameInputs() throws Exception {
+        for (final InputDivision division : InputDivision.values()) {
+            final InputGenerator generator = createGenerator(division);
+            final int size = division == InputDivision.none ? UNDIVIDED_SIZE : DIVIDED_SIZE;
+
+            final List<String> expected = generate(generator, size, 42, 1);
+            assertEquals(size, expected.size());
+            assertEquals(expected, generate(generator, size, 42, 4), division.toString());
+            assertEquals(expected, generator.generate(size, new Random(42)), division.toString());
+            assertNotEquals(expected, generate(generator, size, 43, 4), division.toString());
+        }
+    }
+
+    @Test
+    void generateDividedInputs() {
+        for (final InputDivision division : EnumSet.of(InputDivision.effectiveBitLength, InputDivision.hammingWeight)) {
+            final InputGenerator generator = createGenerator(division);
+            final Comparator<String> comparator = generator.getComparator();
+            final List<String> inputs = generator.generate(DIVIDED_SIZE, new Random(42));
+            assertEquals(DIVIDED_SIZE, inputs.size());
+
+            // the first half contains the smallest and the second half the largest candidates
+            final List<String> low = inputs.subList(0, DIVIDED_SIZE / 2);
+            final List<String> high = inputs.subList(DIVIDED_SIZE / 2, DIVIDED_SIZE);
+            assertEquals(DIVIDED_SIZE / 2 + 1, high.size());
+            assertEquals(low.stream().sorted(comparator).collect(Collectors.toList()), low);
+            assertEquals(high.stream().sorted(comparator).collect(Collectors.toList()), high);
+            assertTrue(comparator.compare(low.get(low.size() - 1), high.get(0)) <= 0, division.toString());
+        }
+    }
+
+    @Test
+    void boundedSelection() {
+        final Random random = new Random(42);
+        final List<String> candidates = IntStream.range(0, 10_000)
+                .mapToObj(i -> String.format("%04X", random.nextInt(1 << 16))).collect(Collectors.toList());
+
+        for (final InputDivision division : EnumSet.of(InputDivision.effectiveBitLength, InputDivision.hammingWeight)) {
+            final Comparator<String> comparator = createGenerator(division).getComparator();
+            final List<String> sorted = candidates.stream().sorted(comparator).collect(Collectors.toList());
+
+            for (final int[] capacities : new int[][]{{50, 51}, {0, 1}, {1, 0}}) {
+                final List<String> expected = new ArrayList<>(sorted.subList(0, capacities[0]));
+                expected.addAll(sorted.subList(sorted.size() - capacities[1], sorted.size()));
+
+                // the result does not depend on how the candidates are split into chunks and merged
+                for (final int chunkCount : new int[]{1, 3, 16}) {
+                    final List<InputGenerator.Selection> selections = new ArrayList<>();
+                    for (int i = 0; i < chunkCount; i++)
+                        selections.add(new InputGenerator.Selection(capacities[0], capacities[1], comparator));
+                    for (int i = 0; i < candidates.size(); i++)
+                        selections.get(i % chunkCount).offer(candidates.get(i));
+
+                    final String message = division + " " + Arrays.toString(capacities) + " " + chunkCount;
+                    Collections.reverse(selections);
+                    assertEquals(expected, selections.stream().reduce(InputGenerator.Selection::merge)
+                            .orElseThrow(AssertionError::new).toList(), message);
+                }
+            }
+        }
+    }
+}
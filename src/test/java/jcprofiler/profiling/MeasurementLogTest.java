@@ -0,0 +1,49 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import jcprofiler.util.MeasurementStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link MeasurementLog} class
+ */
+class MeasurementLogTest {
+    @Test
+    void resumeLongInput(@TempDir final Path tempDir) throws Exception {
+        final Path path = tempDir.resolve(MeasurementLog.FILE_NAME);
+        final List<String> trapNames = Arrays.asList("TRAP_1", "TRAP_2");
+        // longer than the 65535 B limit of DataOutputStream.writeUTF
+        final char[] longInput = new char[100_000];
+        Arrays.fill(longInput, 'A');
+        final List<String> inputs = Arrays.asList(new String(longInput), "0102");
+
+        final MeasurementStore store = new MeasurementStore(2);
+        trapNames.forEach(store::addTrap);
+        store.set(0, 0, 10);
+        store.setUnreachable(1, 0);
+        try (final MeasurementLog log = MeasurementLog.create(path, "Applet#process", 2, trapNames, inputs)) {
+            log.append(1, store);
+        }
+
+        final List<String> restoredInputs = new ArrayList<>();
+        final MeasurementStore restored = new MeasurementStore(2);
+        trapNames.forEach(restored::addTrap);
+        final BitSet completed = new BitSet();
+        MeasurementLog.resume(path, "Applet#process", 2, trapNames, restoredInputs, restored, completed).close();
+
+        assertEquals(inputs, restoredInputs);
+        assertEquals(10, restored.get(0, 0));
+        assertTrue(restored.isUnreachable(1, 0));
+        assertTrue(completed.get(0));
+        assertFalse(completed.get(1));
+    }
+}
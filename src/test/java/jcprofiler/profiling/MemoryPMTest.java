@@ -0,0 +1,122 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import com.licel.jcardsim.smartcardio.CardSimulator;
+import com.licel.jcardsim.utils.AIDUtil;
+
+import javacard.framework.AID;
+import javacard.framework.Applet;
+
+import org.apache.commons.io.IOUtils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Simulator tests of the bulk readout of the memory PM class for JCSDK 3.0.3 and older
+ */
+class MemoryPMTest {
+    private static final byte INS_TRIGGER = 0x01;
+    private static final byte INS_PERF_GETMEM = 0x02;
+    // must match PM.MEMORY_TYPE_ALL
+    private static final byte MEMORY_TYPE_ALL = 0x7F;
+    // two traps with short values
+    private static final int ARRAY_LENGTH = 2 * Short.BYTES;
+
+    @Test
+    void bulkReadoutWithoutCommitCapacity(@TempDir final Path tempDir) throws Exception {
+        final byte[] data = readAll(tempDir, /* commitCapacity */ false, 3 * ARRAY_LENGTH);
+        assertReached(data, 3);
+    }
+
+    @Test
+    void bulkReadoutWithCommitCapacity(@TempDir final Path tempDir) throws Exception {
+        final byte[] data = readAll(tempDir, /* commitCapacity */ true, 4 * ARRAY_LENGTH);
+        assertReached(data, 4);
+    }
+
+    /**
+     * Checks that the first trap was reached and the second one was not in every array.
+     */
+    private static void assertReached(final byte[] data, final int arrayCount) {
+        for (int i = 0; i < arrayCount; i++) {
+            final int offset = i * ARRAY_LENGTH;
+            assertTrue(getShort(data, offset) >= 0, "array " + i);
+            assertEquals(-1, getShort(data, offset + Short.BYTES), "array " + i);
+        }
+    }
+
+    private static short getShort(final byte[] data, final int offset) {
+        return (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
+    }
+
+    /**
+     * Compiles the PM class with the given constants, reaches the first trap in the simulator
+     * and requests all arrays in a single response.
+     */
+    private byte[] readAll(final Path tempDir, final boolean commitCapacity, final int expectedLength)
+            throws Exception {
+        String pm = readResource("/jcprofiler/instrumentation/memory/PM-old.java");
+        pm = replaceConstant(pm, "ARRAY_LENGTH", ARRAY_LENGTH);
+        pm = replaceConstant(pm, "COMMIT_CAPACITY_LENGTH", commitCapacity ? ARRAY_LENGTH : 0);
+
+        final Path srcDir = Files.createDirectories(tempDir.resolve("src").resolve("jcprofiler"));
+        final Path pmFile = Files.write(srcDir.resolve("PM.java"), pm.getBytes(StandardCharsets.UTF_8));
+        final Path appletFile = Files.write(srcDir.resolve("MemoryPMTestApplet.java"),
+                readResource("MemoryPMTestApplet.java").getBytes(StandardCharsets.UTF_8));
+
+        final Path outDir = Files.createDirectories(tempDir.resolve("out"));
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-classpath", System.getProperty("java.class.path"),
+                "-d", outDir.toString(), pmFile.toString(), appletFile.toString()));
+
+        try (final URLClassLoader classLoader = new URLClassLoader(
+                new URL[]{outDir.toUri().toURL()}, getClass().getClassLoader())) {
+            final Class<? extends Applet> cls = classLoader.loadClass("jcprofiler.MemoryPMTestApplet")
+                    .asSubclass(Applet.class);
+
+            final CardSimulator simulator = new CardSimulator();
+            final AID aid = AIDUtil.create("F000000001");
+            simulator.installApplet(aid, cls);
+            simulator.selectApplet(aid);
+
+            assertEquals(0x9000, simulator.transmitCommand(new CommandAPDU(0, INS_TRIGGER, 0, 0)).getSW());
+
+            final ResponseAPDU response = simulator.transmitCommand(
+                    new CommandAPDU(0, INS_PERF_GETMEM, MEMORY_TYPE_ALL, 0, expectedLength));
+            assertEquals(0x9000, response.getSW());
+            assertEquals(expectedLength, response.getData().length);
+            return response.getData();
+        }
+    }
+
+    private static String replaceConstant(final String source, final String name, final int value) {
+        final String declaration = "private static final short " + name + " = ";
+        final String original = declaration + "0;";
+        assertTrue(source.contains(original), name);
+        return source.replace(original, declaration + "(short) " + value + ";");
+    }
+
+    private String readResource(final String name) throws IOException {
+        try (final InputStream is = Objects.requireNonNull(getClass().getResourceAsStream(name))) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+}
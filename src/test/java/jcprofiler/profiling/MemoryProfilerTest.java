@@ -0,0 +1,123 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link MemoryProfiler} class
+ */
+class MemoryProfilerTest {
+    private static final Set<Short> TRAP_IDS = new HashSet<>(Arrays.asList((short) 1, (short) 2));
+    private static final short WIDE_ENTRY = (short) 0x8000;
+
+    // free transient deselect, transient reset and persistent memory and the unused commit capacity
+    private static final int[] BASE = {100_000, 2_000, 70_000, 500};
+
+    private static ByteBuffer header(final int capacity, final int valueBytes, final int[] base) {
+        final ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.put((byte) 0).putShort((short) capacity);
+        for (final int value : base) {
+            if (valueBytes == Short.BYTES)
+                buffer.putShort((short) value);
+            else
+                buffer.putInt(value);
+        }
+        return buffer;
+    }
+
+    private static void putNarrow(final ByteBuffer buffer, final int trapID, final int... deltas) {
+        buffer.putShort((short) trapID);
+        Arrays.stream(deltas).forEach(d -> buffer.putShort((short) d));
+    }
+
+    private static void putWide(final ByteBuffer buffer, final int trapID, final int... values) {
+        buffer.putShort((short) (trapID | WIDE_ENTRY));
+        Arrays.stream(values).forEach(buffer::putInt);
+    }
+
+    @Test
+    void minimalMemoryBudget() {
+        // header of 3 + 4 * 4 B and a wide entry of 2 + 4 * 4 B
+        assertEquals(37, MemoryProfiler.getMinimalMemoryBudget(Integer.BYTES));
+        // header of 3 + 4 * 2 B and a narrow entry of 2 + 4 * 2 B
+        assertEquals(21, MemoryProfiler.getMinimalMemoryBudget(Short.BYTES));
+    }
+
+    @Test
+    void decodeCompactEntriesWideEntryFitsMinimalBudget() {
+        final int budget = MemoryProfiler.getMinimalMemoryBudget(Integer.BYTES);
+        final ByteBuffer buffer = header(budget, Integer.BYTES, BASE);
+        putWide(buffer, 1, 30_000, 1_000, 5_000, 100);
+        assertFalse(buffer.hasRemaining());
+
+        final Map<Short, int[]> minima =
+                MemoryProfiler.decodeCompactEntries(buffer.array(), Integer.BYTES, 4, TRAP_IDS);
+        assertEquals(1, minima.size());
+        assertArrayEquals(new int[]{30_000, 1_000, 5_000, 100}, minima.get((short) 1));
+    }
+
+    @Test
+    void decodeCompactEntriesNarrow() {
+        final int length = 11 + 3 * 10;
+        final ByteBuffer buffer = header(length, Short.BYTES, new int[]{10_000, 2_000, 7_000, 500});
+        putNarrow(buffer, 1, 100, 0, 50, 10);
+        putNarrow(buffer, 2, 0, 0, 0, 0);
+        putNarrow(buffer, 1, 50, 20, 70, -5);
+
+        final Map<Short, int[]> minima =
+                MemoryProfiler.decodeCompactEntries(buffer.array(), Short.BYTES, 4, TRAP_IDS);
+        assertEquals(2, minima.size());
+        assertArrayEquals(new int[]{9_900, 1_980, 6_930, 490}, minima.get((short) 1));
+        assertArrayEquals(new int[]{10_000, 2_000, 7_000, 500}, minima.get((short) 2));
+    }
+
+    @Test
+    void decodeCompactEntriesNarrowToWide() {
+        final int length = 19 + 10 + 18 + 10;
+        final ByteBuffer buffer = header(length, Integer.BYTES, BASE);
+        putNarrow(buffer, 1, 1_000, 100, 1_000, 50);
+        // the difference of transient deselect memory does not fit into a short anymore
+        putWide(buffer, 1, 50_000, 1_950, 69_500, 480);
+        putNarrow(buffer, 2, -10, 0, 0, 0);
+
+        final Map<Short, int[]> minima =
+                MemoryProfiler.decodeCompactEntries(buffer.array(), Integer.BYTES, 4, TRAP_IDS);
+        assertEquals(2, minima.size());
+        assertArrayEquals(new int[]{50_000, 1_900, 69_000, 450}, minima.get((short) 1));
+        assertArrayEquals(new int[]{100_010, 2_000, 70_000, 500}, minima.get((short) 2));
+    }
+
+    @Test
+    void decodeCompactEntriesInvalid() {
+        // wide entries are not used with JCSDK 3.0.3 and older
+        final ByteBuffer old = header(11 + 10, Short.BYTES, new int[]{10_000, 2_000, 7_000, 500});
+        old.putShort((short) (1 | WIDE_ENTRY)).putLong(0);
+        assertThrows(RuntimeException.class,
+                () -> MemoryProfiler.decodeCompactEntries(old.array(), Short.BYTES, 4, TRAP_IDS));
+
+        final ByteBuffer unknown = header(19 + 10, Integer.BYTES, BASE);
+        putNarrow(unknown, 3, 0, 0, 0, 0);
+        assertThrows(RuntimeException.class,
+                () -> MemoryProfiler.decodeCompactEntries(unknown.array(), Integer.BYTES, 4, TRAP_IDS));
+
+        // the narrow entry was superseded by a wide one that does not fit into the array
+        final ByteBuffer truncated = header(19 + 10 + 10, Integer.BYTES, BASE);
+        putNarrow(truncated, 1, 0, 0, 0, 0);
+        truncated.putShort((short) (1 | WIDE_ENTRY)).putLong(0);
+        assertThrows(RuntimeException.class,
+                () -> MemoryProfiler.decodeCompactEntries(truncated.array(), Integer.BYTES, 4, TRAP_IDS));
+
+        assertThrows(RuntimeException.class,
+                () -> MemoryProfiler.decodeCompactEntries(new byte[10], Integer.BYTES, 4, TRAP_IDS));
+    }
+}
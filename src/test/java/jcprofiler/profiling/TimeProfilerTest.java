@@ -0,0 +1,99 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.profiling;
+
+import jcprofiler.util.MeasurementStore;
+
+import org.junit.jupiter.api.Test;
+
+import javax.smartcardio.CardException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link TimeProfiler} class
+ */
+class TimeProfilerTest {
+    // elapsed times of the traps from the start of the APDU
+    private static final long[] ELAPSED = {10, 30, 60};
+
+    private final List<Integer> measuredTraps = new ArrayList<>();
+
+    // the second trap is unreachable if requested
+    private long measure(final int trapIdx, final boolean secondReachable) {
+        measuredTraps.add(trapIdx);
+        return trapIdx == 1 && !secondReachable ? TimeProfiler.TrapMeasurement.UNREACHABLE : ELAPSED[trapIdx];
+    }
+
+    private MeasurementStore createStore(final int rounds) {
+        final MeasurementStore store = new MeasurementStore(rounds);
+        for (int i = 1; i <= ELAPSED.length; i++)
+            store.addTrap("TRAP_" + i);
+        return store;
+    }
+
+    private static BitSet bits(final int... indices) {
+        final BitSet bitSet = new BitSet();
+        Arrays.stream(indices).forEach(bitSet::set);
+        return bitSet;
+    }
+
+    @Test
+    void measureRoundConvergedBeforeNext() throws CardException {
+        final MeasurementStore store = createStore(4);
+        final BitSet all = bits(0, 1, 2);
+        final BitSet starts = bits(0);
+
+        TimeProfiler.measureRound(store, 1, starts, new BitSet(), all, false, i -> measure(i, true));
+        assertEquals(Arrays.asList(10L, 20L, 30L), Arrays.asList(store.get(0, 0), store.get(1, 0), store.get(2, 0)));
+
+        // the first trap converged before the second one, it is still reached as its baseline
+        measuredTraps.clear();
+        TimeProfiler.measureRound(store, 2, starts, bits(0), all, false, i -> measure(i, true));
+        assertEquals(Arrays.asList(0, 1, 2), measuredTraps);
+        assertTrue(store.isNotSampled(0, 1));
+        assertFalse(store.isUnreachable(0, 1));
+        assertEquals(20, store.get(1, 1));
+        assertEquals(30, store.get(2, 1));
+
+        // with known reachability, only the last converged trap before a pending one is reached
+        measuredTraps.clear();
+        TimeProfiler.measureRound(store, 3, starts, bits(0, 1), all, true, i -> measure(i, true));
+        assertEquals(Arrays.asList(1, 2), measuredTraps);
+        assertTrue(store.isNotSampled(0, 2));
+        assertTrue(store.isNotSampled(1, 2));
+        assertEquals(30, store.get(2, 2));
+
+        // nothing is reached once all traps have converged
+        measuredTraps.clear();
+        TimeProfiler.measureRound(store, 4, starts, all, all, false, i -> measure(i, true));
+        assertTrue(measuredTraps.isEmpty());
+        assertEquals(3, store.getNotSampledMap().size());
+        for (int trapIdx = 0; trapIdx < store.getTrapCount(); trapIdx++)
+            assertEquals(0, store.getUnreachableCount(trapIdx));
+    }
+
+    @Test
+    void measureRoundUnreachable() throws CardException {
+        final MeasurementStore store = createStore(2);
+        final BitSet all = bits(0, 1, 2);
+
+        // the third trap is measured from the converged first one
+        TimeProfiler.measureRound(store, 1, bits(0), bits(0), all, false, i -> measure(i, false));
+        assertTrue(store.isNotSampled(0, 0));
+        assertTrue(store.isUnreachable(1, 0));
+        assertEquals(50, store.get(2, 0));
+
+        // converged traps of another executable are not a baseline
+        measuredTraps.clear();
+        TimeProfiler.measureRound(store, 2, bits(0, 2), bits(0, 1), all, false, i -> measure(i, true));
+        assertEquals(Collections.singletonList(2), measuredTraps);
+        assertEquals(60, store.get(2, 1));
+    }
+}
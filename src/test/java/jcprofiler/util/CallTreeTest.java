@@ -0,0 +1,74 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link CallTree} class
+ */
+class CallTreeTest {
+    @Test
+    void compute() {
+        // root calls a, a calls b, c is never reached
+        final MeasurementStore store = new MeasurementStore(2);
+        final String[] traps = {"root_1", "root_2", "a_1", "a_2", "b_1", "b_2", "c_1"};
+        for (final String trap : traps)
+            store.addTrap(trap);
+
+        // root: 0 -> 100, a: 10 -> 80, b: 20 -> 50
+        final long[] values = {0, 100, 10, 70, 20, 30};
+        for (int trapIdx = 0; trapIdx < values.length; trapIdx++)
+            for (int round = 0; round < store.getMeasurementCount(); round++)
+                store.set(trapIdx, round, values[trapIdx]);
+        store.setUnreachable(6, 0);
+        store.setUnreachable(6, 1);
+
+        final Map<String, Set<String>> calls = new HashMap<>();
+        calls.put("root", new HashSet<>(Arrays.asList("a", "c")));
+        calls.put("a", Collections.singleton("b"));
+
+        final CallTree tree = CallTree.compute(store, JCProfilerUtil::getTrapNamePrefix, calls, "root");
+        assertEquals(4, tree.size());
+
+        assertEquals(Arrays.asList("root", "a", "b", "c"),
+                Arrays.asList(tree.getExecutable(0), tree.getExecutable(1), tree.getExecutable(2),
+                        tree.getExecutable(3)));
+        assertEquals(Arrays.asList(0, 1, 2, 1),
+                Arrays.asList(tree.getDepth(0), tree.getDepth(1), tree.getDepth(2), tree.getDepth(3)));
+
+        assertEquals(2, tree.getReachedCount(0));
+        assertEquals(100., tree.getInclusiveTime(0));
+        assertEquals(30., tree.getExclusiveTime(0));
+        assertEquals(70., tree.getInclusiveTime(1));
+        assertEquals(40., tree.getExclusiveTime(1));
+        assertEquals(30., tree.getInclusiveTime(2));
+        assertEquals(30., tree.getExclusiveTime(2));
+
+        assertEquals(0, tree.getReachedCount(3));
+        assertTrue(Double.isNaN(tree.getInclusiveTime(3)));
+    }
+
+    @Test
+    void computeCalleeInReturn() {
+        // root returns the result of a, so it ends before a ends
+        final MeasurementStore store = new MeasurementStore(1);
+        final String[] traps = {"root_1", "root_2", "a_1", "a_2"};
+        final long[] values = {0, 10, 20, 50};
+        for (int trapIdx = 0; trapIdx < traps.length; trapIdx++) {
+            store.addTrap(traps[trapIdx]);
+            store.set(trapIdx, 0, values[trapIdx]);
+        }
+
+        final CallTree tree = CallTree.compute(store, JCProfilerUtil::getTrapNamePrefix,
+                Collections.singletonMap("root", Collections.singleton("a")), "root");
+        assertEquals(70., tree.getInclusiveTime(0));
+        assertEquals(20., tree.getExclusiveTime(0));
+        assertEquals(50., tree.getInclusiveTime(1));
+    }
+}
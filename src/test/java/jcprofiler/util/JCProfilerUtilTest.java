@@ -667,4 +667,34 @@ class JCProfilerUtilTest {
 
         assertEquals(constructor, JCProfilerUtil.getEntryPointConstructor(model, null));
     }
+
+    @Test
+    void isSelectedExecutable() {
+        final String method = "test.Test#foo(java.lang.Integer)";
+        assertTrue(JCProfilerUtil.isSelectedExecutable("foo", method));
+        assertTrue(JCProfilerUtil.isSelectedExecutable("foo(java.lang.Integer)", method));
+        assertTrue(JCProfilerUtil.isSelectedExecutable("test.Test#foo", method));
+        assertTrue(JCProfilerUtil.isSelectedExecutable(method, method));
+
+        assertFalse(JCProfilerUtil.isSelectedExecutable("bar", method));
+        assertFalse(JCProfilerUtil.isSelectedExecutable("fo", method));
+        assertFalse(JCProfilerUtil.isSelectedExecutable("foo()", method));
+        assertFalse(JCProfilerUtil.isSelectedExecutable("test.Test2#foo", method));
+
+        final String constructor = "test.Entry#Entry(byte[])";
+        assertTrue(JCProfilerUtil.isSelectedExecutable("Entry", constructor));
+        assertTrue(JCProfilerUtil.isSelectedExecutable("test.Entry#Entry(byte[])", constructor));
+        assertFalse(JCProfilerUtil.isSelectedExecutable("Entry()", constructor));
+    }
+
+    @Test
+    void classNameParts() {
+        assertEquals("org.example.applet", JCProfilerUtil.getPackageName("org.example.applet.Entry"));
+        assertEquals("applet", JCProfilerUtil.getPackageSimpleName("org.example.applet.Entry"));
+        assertEquals("Entry", JCProfilerUtil.getSimpleName("org.example.applet.Entry"));
+
+        assertEquals("", JCProfilerUtil.getPackageName("Entry"));
+        assertEquals("", JCProfilerUtil.getPackageSimpleName("Entry"));
+        assertEquals("Entry", JCProfilerUtil.getSimpleName("Entry"));
+    }
 }
@@ -0,0 +1,53 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link LeakHistory} class
+ */
+class LeakHistoryTest {
+    @Test
+    void drift() {
+        final LeakHistory history = new LeakHistory();
+        assertTrue(Double.isNaN(history.getDrift(0)));
+
+        // persistent memory at the exit trap decreases by 16 B per execution
+        for (int i = 0; i < 5; i++)
+            history.add(new long[]{100, 200, 1000, 90, 200, 984 - 16L * i});
+
+        assertEquals(5, history.size());
+        assertEquals(0., history.getDrift(0), 1e-9);
+        assertEquals(0., history.getDrift(2), 1e-9);
+        assertEquals(-16., history.getDrift(5), 1e-9);
+        assertEquals(Arrays.asList(984L, 968L, 952L, 936L, 920L), history.getColumn(5));
+    }
+
+    @Test
+    void storeAndLoad(@TempDir final Path tempDir) {
+        final LeakHistory history = new LeakHistory();
+        history.add(new long[]{1, 2, 3, 4, 5, 6});
+        history.add(new long[]{7, 8, 9, 10, 11, 12});
+
+        final Path csv = tempDir.resolve(LeakHistory.FILE_NAME);
+        history.store(csv);
+
+        final LeakHistory loaded = LeakHistory.load(csv);
+        assertEquals(2, loaded.size());
+        for (int i = 0; i < LeakHistory.COLUMNS.size(); i++)
+            assertEquals(history.getColumn(i), loaded.getColumn(i));
+    }
+
+    @Test
+    void invalidRow() {
+        assertThrows(IllegalArgumentException.class, () -> new LeakHistory().add(new long[]{1, 2, 3}));
+    }
+}
@@ -0,0 +1,107 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link MeasurementStore} class
+ */
+class MeasurementStoreTest {
+    @Test
+    void setAndGet() {
+        final MeasurementStore store = new MeasurementStore(3);
+        final int first = store.addTrap("TRAP_1");
+        final int second = store.addTrap("TRAP_2");
+
+        store.set(first, 0, 10);
+        store.setUnreachable(first, 1);
+        store.set(first, 2, 30);
+        store.setUnreachable(second, 0);
+        store.setUnreachable(second, 1);
+        store.setUnreachable(second, 2);
+
+        assertEquals(0, store.getTrapIndex("TRAP_1"));
+        assertEquals(1, store.getTrapIndex("TRAP_2"));
+        assertEquals(-1, store.getTrapIndex("TRAP_3"));
+        assertEquals(30, store.get(first, 2));
+        assertTrue(store.isUnreachable(first, 1));
+        assertFalse(store.isUnreachable(first, 2));
+        assertEquals(1, store.getUnreachableCount(first));
+        assertEquals(3, store.getUnreachableCount(second));
+
+        // overwriting an unreachable measurement makes it reachable
+        store.set(second, 1, 20);
+        assertFalse(store.isUnreachable(second, 1));
+        assertEquals(2, store.getUnreachableCount(second));
+    }
+
+    @Test
+    void views() {
+        final MeasurementStore store = new MeasurementStore(2);
+        store.addTrap("TRAP_1");
+        store.addTrap("TRAP_2");
+        store.set(0, 0, 1);
+        store.setUnreachable(0, 1);
+        store.set(1, 0, 3);
+        store.set(1, 1, 4);
+
+        final Map<String, List<Long>> map = store.asMap();
+        assertEquals(Arrays.asList("TRAP_1", "TRAP_2"), Arrays.asList(map.keySet().toArray()));
+        assertEquals(Arrays.asList(1L, null), map.get("TRAP_1"));
+        assertEquals("[3, 4]", map.get("TRAP_2").toString());
+        assertNull(store.getValues("TRAP_3"));
+
+        assertEquals("[1.5, null]", MeasurementStore.asList(new double[]{1.5, Double.NaN}).toString());
+    }
+
+    @Test
+    void notSampled() {
+        final MeasurementStore store = new MeasurementStore(3);
+        store.addTrap("TRAP_1");
+        store.addTrap("TRAP_2");
+        store.set(0, 0, 10);
+        store.setUnreachable(0, 1);
+        store.setNotSampled(0, 2);
+        store.set(1, 0, 1);
+        store.set(1, 1, 2);
+        store.set(1, 2, 3);
+
+        // not sampled measurements are missing but not unreachable
+        assertTrue(store.isNotSampled(0, 2));
+        assertFalse(store.isUnreachable(0, 2));
+        assertTrue(store.isMissing(0, 2));
+        assertTrue(store.isMissing(0, 1));
+        assertEquals(1, store.getUnreachableCount(0));
+        assertEquals(1, store.getNotSampledCount(0));
+        assertEquals(Arrays.asList(10L, null, null), store.getValues(0));
+
+        // only traps with not sampled measurements are in the map
+        assertEquals(Collections.singletonMap("TRAP_1", Arrays.asList(false, false, true)),
+                store.getNotSampledMap());
+
+        // overwriting a not sampled measurement makes it sampled
+        store.setUnreachable(0, 2);
+        assertFalse(store.isNotSampled(0, 2));
+        assertEquals(0, store.getNotSampledCount(0));
+        assertTrue(store.getNotSampledMap().isEmpty());
+    }
+
+    @Test
+    void invalidAccess() {
+        final MeasurementStore store = new MeasurementStore(1);
+        store.addTrap("TRAP_1");
+
+        assertThrows(RuntimeException.class, () -> store.addTrap("TRAP_1"));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.set(0, 1, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getValues(1));
+    }
+}
@@ -0,0 +1,58 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+package jcprofiler.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link SpoonModelCache} class
+ */
+class SpoonModelCacheTest {
+    @Test
+    void computeKey(@TempDir final Path tempDir) throws IOException {
+        final Path sources = Files.createDirectories(tempDir.resolve("sources").resolve("test"));
+        final Path jar = Files.write(tempDir.resolve("api.jar"), new byte[]{1, 2, 3});
+        final List<String> classpath = Collections.singletonList(jar.toString());
+
+        Files.write(sources.resolve("A.java"), "class A {}".getBytes());
+        Files.write(sources.resolve("README"), "ignored".getBytes());
+        final String key = SpoonModelCache.computeKey(sources.getParent(), classpath);
+        assertEquals(64, key.length());
+        assertEquals(key, SpoonModelCache.computeKey(sources.getParent(), classpath));
+
+        // other files than Java sources are ignored
+        Files.write(sources.resolve("README"), "still ignored".getBytes());
+        assertEquals(key, SpoonModelCache.computeKey(sources.getParent(), classpath));
+
+        // the order of class path entries does not matter
+        final String otherJar = Files.write(tempDir.resolve("other.jar"), new byte[]{4}).toString();
+        assertEquals(SpoonModelCache.computeKey(sources.getParent(), Arrays.asList(jar.toString(), otherJar)),
+                     SpoonModelCache.computeKey(sources.getParent(), Arrays.asList(otherJar, jar.toString())));
+
+        // changed class path
+        assertNotEquals(key, SpoonModelCache.computeKey(sources.getParent(), Collections.emptyList()));
+        Files.write(jar, new byte[]{3, 2, 1});
+        final String jarKey = SpoonModelCache.computeKey(sources.getParent(), classpath);
+        assertNotEquals(key, jarKey);
+
+        // changed sources
+        Files.write(sources.resolve("A.java"), "class A { int a; }".getBytes());
+        final String sourceKey = SpoonModelCache.computeKey(sources.getParent(), classpath);
+        assertNotEquals(jarKey, sourceKey);
+
+        // renamed source
+        Files.move(sources.resolve("A.java"), sources.resolve("B.java"));
+        assertNotEquals(sourceKey, SpoonModelCache.computeKey(sources.getParent(), classpath));
+    }
+}
@@ -0,0 +1,18 @@
+package sample;
+
+import javacard.framework.APDU;
+
+public class ProcessTimingSample {
+    public static boolean fail;
+    public static long sink;
+
+    public void process(APDU apdu) {
+        long sum = 0;
+        for (int i = 0; i < 1000000; i++)
+            sum += i * 31L;
+        sink = sum;
+
+        if (fail)
+            throw new IllegalStateException();
+    }
+}
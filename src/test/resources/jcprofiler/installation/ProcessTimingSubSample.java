@@ -0,0 +1,10 @@
+package sample;
+
+import javacard.framework.APDU;
+
+public class ProcessTimingSubSample extends ProcessTimingSample {
+    public void process(APDU apdu) {
+        super.process(apdu);
+        super.process(apdu);
+    }
+}
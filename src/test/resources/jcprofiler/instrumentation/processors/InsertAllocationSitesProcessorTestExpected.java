@@ -0,0 +1,38 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+import javacard.framework.JCSystem;
+
+public class SimpleClass {
+    private byte[] buffer = (byte[]) PM.allocated((short) 5, PM.mark(), new byte[16]);
+    private short[] values;
+
+    public SimpleClass() {
+        helper();
+    }
+
+    public void entry() {
+        byte[] local = (byte[]) PM.allocated((short) 0, PM.mark(), new byte[8]);
+        Helper h = (Helper) PM.allocated((short) 1, PM.mark(), new Helper());
+        PM.allocated((short) 2, PM.mark(), new SimpleClass());
+        values = (short[]) PM.allocated((short) 3, PM.mark(),
+                JCSystem.makeTransientShortArray((short) 2, JCSystem.CLEAR_ON_RESET));
+    }
+
+    private void helper() {
+        buffer = (byte[]) PM.allocated((short) 6, PM.mark(),
+                JCSystem.makeTransientByteArray((short) 4, JCSystem.CLEAR_ON_DESELECT));
+    }
+
+    public void unreachable() {
+        buffer = new byte[2];
+    }
+
+    private static class Helper {
+        private short[] data;
+
+        Helper() {
+            data = (short[]) PM.allocated((short) 4, PM.mark(), new short[2]);
+        }
+    }
+}
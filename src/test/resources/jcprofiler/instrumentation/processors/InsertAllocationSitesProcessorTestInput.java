@@ -0,0 +1,36 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+import javacard.framework.JCSystem;
+
+public class SimpleClass {
+    private byte[] buffer = new byte[16];
+    private short[] values;
+
+    public SimpleClass() {
+        helper();
+    }
+
+    public void entry() {
+        byte[] local = new byte[8];
+        Helper h = new Helper();
+        new SimpleClass();
+        values = JCSystem.makeTransientShortArray((short) 2, JCSystem.CLEAR_ON_RESET);
+    }
+
+    private void helper() {
+        buffer = JCSystem.makeTransientByteArray((short) 4, JCSystem.CLEAR_ON_DESELECT);
+    }
+
+    public void unreachable() {
+        buffer = new byte[2];
+    }
+
+    private static class Helper {
+        private short[] data;
+
+        Helper() {
+            data = new short[2];
+        }
+    }
+}
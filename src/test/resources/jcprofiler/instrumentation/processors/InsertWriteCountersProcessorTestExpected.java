@@ -0,0 +1,53 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+import javacard.framework.*;
+
+public class SimpleClass {
+    private static short counter;
+    private byte flag;
+    private byte[] persistent;
+    private short[] values;
+
+    public void fieldWrite() {
+        PM.write((short) 1);
+        flag = 1;
+        PM.write((short) 2);
+        counter++;
+    }
+
+    public void arrayWrite(short i) {
+        PM.write(persistent, (short) 1);
+        persistent[i] = 0;
+        PM.write(values, (short) 2);
+        values[i] += 1;
+    }
+
+    public void utilCalls(byte[] src, short len) {
+        PM.write(persistent, len);
+        Util.arrayCopy(src, (short) 0, persistent, (short) 0, len);
+        PM.write(persistent, len);
+        Util.arrayFillNonAtomic(persistent, (short) 0, len, (byte) 0);
+        PM.write(persistent, (short) 2);
+        Util.setShort(persistent, (short) 0, len);
+    }
+
+    public void localWrite(short a) {
+        a = 1;
+        byte[] buf = persistent;
+        PM.write(buf, (short) 1);
+        buf[0] = 1;
+    }
+
+    public void skipped(short len) {
+        for (short i = 0; i < len; counter++)
+            i++;
+        if (len > 0 && (flag = 1) == 1)
+            return;
+        getArray()[0] = 1;
+    }
+
+    private byte[] getArray() {
+        return persistent;
+    }
+}
@@ -0,0 +1,45 @@
+// SPDX-FileCopyrightText: 2022-2026 Lukáš Zaoral <lukaszaoral@outlook.com>
+// SPDX-License-Identifier: GPL-3.0-only
+
+import javacard.framework.*;
+
+public class SimpleClass {
+    private static short counter;
+    private byte flag;
+    private byte[] persistent;
+    private short[] values;
+
+    public void fieldWrite() {
+        flag = 1;
+        counter++;
+    }
+
+    public void arrayWrite(short i) {
+        persistent[i] = 0;
+        values[i] += 1;
+    }
+
+    public void utilCalls(byte[] src, short len) {
+        Util.arrayCopy(src, (short) 0, persistent, (short) 0, len);
+        Util.arrayFillNonAtomic(persistent, (short) 0, len, (byte) 0);
+        Util.setShort(persistent, (short) 0, len);
+    }
+
+    public void localWrite(short a) {
+        a = 1;
+        byte[] buf = persistent;
+        buf[0] = 1;
+    }
+
+    public void skipped(short len) {
+        for (short i = 0; i < len; counter++)
+            i++;
+        if (len > 0 && (flag = 1) == 1)
+            return;
+        getArray()[0] = 1;
+    }
+
+    private byte[] getArray() {
+        return persistent;
+    }
+}
@@ -0,0 +1,30 @@
+package jcprofiler;
+
+import javacard.framework.APDU;
+import javacard.framework.Applet;
+import javacard.framework.ISO7816;
+
+public class MemoryPMTestApplet extends Applet {
+    public static final byte INS_TRIGGER = (byte) 0x01;
+    public static final byte INS_PERF_GETMEM = (byte) 0x02;
+
+    public static void install(byte[] bArray, short bOffset, byte bLength) {
+        new MemoryPMTestApplet().register();
+    }
+
+    public void process(APDU apdu) {
+        if (selectingApplet())
+            return;
+
+        switch (apdu.getBuffer()[ISO7816.OFFSET_INS]) {
+            case INS_TRIGGER:
+                PM.check((short) 2);
+                break;
+            case INS_PERF_GETMEM:
+                PM.send(apdu);
+                break;
+            default:
+                break;
+        }
+    }
+}